@@ -0,0 +1,139 @@
+package com.lausy.contentretriever;
+
+import android.os.Debug;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static android.support.test.InstrumentationRegistry.getInstrumentation;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * <h1>Bind Allocation Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Rebinds the rows on screen in place, as a refresh or a notifyDataSetChanged does, and counts
+ * the objects allocated on the UI thread with the runtime's allocation counters.  The rows have
+ * images, so the image requests are covered as well as the text.  Prefetching is turned off so
+ * only the bind itself is counted.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContentBindAllocationTest {
+    private static final String TAG = ContentBindAllocationTest.class.getSimpleName();
+
+    private static final int ITEM_COUNT = 500;
+    private static final int BINDS = 1000;
+
+    @Rule
+    public ActivityTestRule<ContentRetrievalActivity> mActivityRule = new ActivityTestRule<>(
+            ContentRetrievalActivity.class);
+
+    private static ContentStore imageList(int count) {
+        ContentStore.Builder builder = new ContentStore.Builder(count);
+        for (int i = 0; i < count; i++) {
+            builder.add(300000 + i, "Synthetic Title " + i,
+                    "android.resource://com.lausy.contentretriever/drawable/placeholder?bind=" + i);
+        }
+        return builder.build();
+    }
+
+    private List<ContentListDataAdapter.ViewHolder> showList(final RecyclerView list,
+                                                             final ContentListDataAdapter adapter)
+            throws Throwable {
+        final ContentStore items = imageList(ITEM_COUNT);
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                adapter.getImageLoader().setPrefetchEnabled(false);
+                adapter.onReceiveContent(items, true, true);
+                list.scrollToPosition(0);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        List<ContentListDataAdapter.ViewHolder> holders = new ArrayList<>();
+        for (int i = 0; i < list.getChildCount(); i++) {
+            holders.add((ContentListDataAdapter.ViewHolder) list.getChildViewHolder(list.getChildAt(i)));
+        }
+        assertFalse("no rows on screen", holders.isEmpty());
+        return holders;
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void rebindingRowsAllocatesNothing() throws Throwable {
+        final RecyclerView list = (RecyclerView) mActivityRule.getActivity().findViewById(R.id.content_listview);
+        final ContentListDataAdapter adapter = (ContentListDataAdapter) list.getAdapter();
+        final List<ContentListDataAdapter.ViewHolder> holders = showList(list, adapter);
+        final int[] allocations = new int[1];
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                // One pass first, so anything created lazily on the first bind is not counted.
+                for (ContentListDataAdapter.ViewHolder holder : holders) {
+                    adapter.onBindViewHolder(holder, holder.getAdapterPosition());
+                }
+
+                Debug.startAllocCounting();
+                Debug.resetThreadAllocCount();
+                for (int i = 0; i < BINDS; i++) {
+                    ContentListDataAdapter.ViewHolder holder = holders.get(i % holders.size());
+                    adapter.onBindViewHolder(holder, holder.getAdapterPosition());
+                }
+                allocations[0] = Debug.getThreadAllocCount();
+                Debug.stopAllocCounting();
+            }
+        });
+
+        Log.i(TAG, BINDS + " binds over " + holders.size() + " rows allocated " + allocations[0] + " objects");
+
+        assertEquals(0, allocations[0]);
+    }
+
+    @Test
+    public void bindingAnotherRowShowsIt() throws Throwable {
+        final RecyclerView list = (RecyclerView) mActivityRule.getActivity().findViewById(R.id.content_listview);
+        final ContentListDataAdapter adapter = (ContentListDataAdapter) list.getAdapter();
+        final ContentListDataAdapter.ViewHolder holder = showList(list, adapter).get(0);
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                adapter.onBindViewHolder(holder, ITEM_COUNT - 1);
+                assertEquals(String.valueOf(300000 + ITEM_COUNT - 1), holder.id.getText().toString());
+                assertEquals("Synthetic Title " + (ITEM_COUNT - 1), holder.title.getText().toString());
+                assertEquals("android.resource://com.lausy.contentretriever/drawable/placeholder?bind="
+                        + (ITEM_COUNT - 1), adapter.getImageLoader().getShownUrl(holder.image));
+
+                adapter.onBindViewHolder(holder, holder.getAdapterPosition());
+                assertEquals(String.valueOf(300000 + holder.getAdapterPosition()), holder.id.getText().toString());
+            }
+        });
+    }
+
+    @Test
+    public void idsAreFormattedLikeStringValueOf() {
+        char[] buffer = new char[11];
+        int[] ids = {0, 7, 10, 302437, -1, -302437, Integer.MAX_VALUE, Integer.MIN_VALUE};
+
+        for (int id : ids) {
+            int start = ContentListDataAdapter.formatId(id, buffer);
+            assertEquals(String.valueOf(id), new String(buffer, start, buffer.length - start));
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.lausy.contentretriever;
+
+import android.os.SystemClock;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.squareup.picasso.Picasso;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static android.support.test.InstrumentationRegistry.getInstrumentation;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <h1>Scroll Performance Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Flings through a large synthetic list and records the time between frames with a Choreographer
+ * frame callback.  A frame that takes longer than the 60 fps budget is counted as janky.  The
+ * jank percentage is logged under the test's tag so runs can be compared.
+ *
+ * The same flings are first run through a ListView bound the way the list was before it moved
+ * to RecyclerView:  a row is inflated without its parent, its views are looked up on every bind,
+ * and every bind formats the ID and loads the placeholder through Picasso.  The ListView takes
+ * the place of the RecyclerView in the layout, so both are measured at the same size, and the
+ * jank of both is logged together.
+ *
+ * The image prefetch test drags through a list with an image on every row, once with
+ * prefetching off and once with it on, and logs the fraction of binds that found the image
+ * in the memory cache.  The images are app resources so the numbers do not depend on the
+ * network; each run uses URLs of its own so it starts with a cold cache.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContentListScrollPerformanceTest {
+    private static final String TAG = ContentListScrollPerformanceTest.class.getSimpleName();
+
+    private static final int ITEM_COUNT = 50000;
+    private static final int FLINGS = 20;
+    private static final int FLING_DISTANCE_PX = 20000;
+    private static final int FLING_DURATION_MS = 2000;
+    private static final long FRAME_BUDGET_NANOS = 16666667L;
+    private static final double MAX_JANK_PERCENT = 10.0;
+
+    private static final int IMAGE_ITEM_COUNT = 5000;
+    private static final int DRAG_FRAMES = 600;
+    private static final int DRAG_PX_PER_FRAME = 40;
+
+    @Rule
+    public ActivityTestRule<ContentRetrievalActivity> mActivityRule = new ActivityTestRule<>(
+            ContentRetrievalActivity.class);
+
+    /**
+     * Records the interval between consecutive frames while running.
+     */
+    private static class FrameRecorder implements Choreographer.FrameCallback {
+        private long mLastFrameNanos;
+        private volatile boolean mRunning;
+        int frames;
+        int jankyFrames;
+
+        void start() {
+            mRunning = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mRunning = false;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mLastFrameNanos != 0) {
+                frames++;
+                if (frameTimeNanos - mLastFrameNanos > FRAME_BUDGET_NANOS) {
+                    jankyFrames++;
+                }
+            }
+            mLastFrameNanos = frameTimeNanos;
+
+            if (mRunning) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    }
+
+    /**
+     * Scrolls the list by a fixed distance every frame, like a steady drag.  Unlike a fling the
+     * list stays out of the settling state, so image requests are not paused.
+     */
+    private static class FrameDragger implements Choreographer.FrameCallback {
+        private final RecyclerView mList;
+        private int mFramesLeft = DRAG_FRAMES;
+        final CountDownLatch done = new CountDownLatch(1);
+
+        FrameDragger(RecyclerView list) {
+            mList = list;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mList.scrollBy(0, DRAG_PX_PER_FRAME);
+
+            if (--mFramesLeft > 0) {
+                Choreographer.getInstance().postFrameCallback(this);
+            } else {
+                done.countDown();
+            }
+        }
+    }
+
+    /**
+     * The list adapter as it was before RecyclerView, over detached copies of the rows.
+     */
+    private static class BaselineListAdapter extends BaseAdapter {
+        private final List<ContentListDataAdapter.ViewData> mViewDataList;
+
+        BaselineListAdapter(ContentStore store) {
+            mViewDataList = new ArrayList<>(store.size());
+            ContentStore.Row row = new ContentStore.Row();
+            for (int i = 0; i < store.size(); i++) {
+                mViewDataList.add(ContentListDataAdapter.ViewData.of(row.moveTo(store, i)));
+            }
+        }
+
+        private static class ViewHolder {
+            TextView id;
+            TextView title;
+            ImageView image;
+        }
+
+        @Override
+        public int getCount() { return mViewDataList.size(); }
+
+        @Override
+        public Object getItem(int position) { return mViewDataList.get(position); }
+
+        @Override
+        public long getItemId(int position) { return position; }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            ViewHolder holder;
+
+            if (convertView == null) {
+                holder = new ViewHolder();
+                convertView = View.inflate(parent.getContext(), R.layout.list_item, null);
+                convertView.setTag(holder);
+            } else {
+                holder = (ViewHolder) convertView.getTag();
+            }
+
+            holder.id = (TextView) convertView.findViewById(R.id.content_id);
+            holder.image = (ImageView) convertView.findViewById(R.id.content_image);
+            holder.title = (TextView) convertView.findViewById(R.id.content_title);
+
+            holder.id.setText(String.valueOf(mViewDataList.get(position).getId()));
+            holder.title.setText(mViewDataList.get(position).getTitle());
+            Picasso.with(parent.getContext()).load(R.drawable.placeholder).into(holder.image);
+
+            return convertView;
+        }
+    }
+
+    /**
+     * Keeps the scroll state of a ListView, which has no getter for it.
+     */
+    private static class ScrollStateListener implements AbsListView.OnScrollListener {
+        volatile int state = SCROLL_STATE_IDLE;
+
+        @Override
+        public void onScrollStateChanged(AbsListView view, int scrollState) {
+            state = scrollState;
+        }
+
+        @Override
+        public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        }
+    }
+
+    private static double jankPercent(FrameRecorder recorder) {
+        return recorder.frames == 0 ? 0 : 100.0 * recorder.jankyFrames / recorder.frames;
+    }
+
+    private static ContentStore syntheticList(int count) {
+        ContentStore.Builder builder = new ContentStore.Builder(count);
+        for (int i = 0; i < count; i++) {
+            builder.add(300000 + i, "Synthetic Title " + i, "");
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return A list whose rows all show the placeholder resource under a URL of their own.
+     */
+    private static ContentStore imageList(int count, String run) {
+        ContentStore.Builder builder = new ContentStore.Builder(count);
+        for (int i = 0; i < count; i++) {
+            builder.add(300000 + i, "Synthetic Title " + i,
+                    "android.resource://com.lausy.contentretriever/drawable/placeholder?run=" + run + "&row=" + i);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void flingThroughLargeList() throws Throwable {
+        final RecyclerView list = (RecyclerView) mActivityRule.getActivity().findViewById(R.id.content_listview);
+        final ContentListDataAdapter adapter = (ContentListDataAdapter) list.getAdapter();
+        final ContentStore items = syntheticList(ITEM_COUNT);
+        final FrameRecorder recorder = new FrameRecorder();
+
+        double baselinePercent = flingThroughListView(list, items);
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                adapter.onReceiveContent(items, true, true);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                recorder.start();
+            }
+        });
+
+        for (int i = 0; i < FLINGS; i++) {
+            mActivityRule.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    list.smoothScrollBy(0, FLING_DISTANCE_PX);
+                }
+            });
+            while (list.getScrollState() != RecyclerView.SCROLL_STATE_IDLE) {
+                SystemClock.sleep(50);
+            }
+            getInstrumentation().waitForIdleSync();
+        }
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                recorder.stop();
+            }
+        });
+
+        double jankPercent = jankPercent(recorder);
+        Log.i(TAG, "RecyclerView frames=" + recorder.frames + ", janky=" + recorder.jankyFrames
+                + ", jank=" + String.format(Locale.US, "%.2f", jankPercent) + "%");
+        Log.i(TAG, String.format(Locale.US, "Jank before (ListView) %.2f%%, after (RecyclerView) %.2f%%",
+                baselinePercent, jankPercent));
+
+        assertTrue("jank " + jankPercent + "% over " + MAX_JANK_PERCENT + "%", jankPercent < MAX_JANK_PERCENT);
+    }
+
+    /**
+     * Puts a ListView with the baseline adapter in place of the RecyclerView, flings through
+     * the items, and puts the RecyclerView back.
+     *
+     * @return Percentage of janky frames.
+     */
+    private double flingThroughListView(final RecyclerView recyclerView, ContentStore items) throws Throwable {
+        final ListView listView = new ListView(mActivityRule.getActivity());
+        final BaselineListAdapter baselineAdapter = new BaselineListAdapter(items);
+        final ScrollStateListener scrollState = new ScrollStateListener();
+        final FrameRecorder recorder = new FrameRecorder();
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                ViewGroup parent = (ViewGroup) recyclerView.getParent();
+                listView.setAdapter(baselineAdapter);
+                listView.setOnScrollListener(scrollState);
+                parent.addView(listView, parent.indexOfChild(recyclerView), recyclerView.getLayoutParams());
+                recyclerView.setVisibility(View.GONE);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                recorder.start();
+            }
+        });
+
+        for (int i = 0; i < FLINGS; i++) {
+            mActivityRule.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    listView.smoothScrollBy(FLING_DISTANCE_PX, FLING_DURATION_MS);
+                }
+            });
+            getInstrumentation().waitForIdleSync();
+            while (scrollState.state != AbsListView.OnScrollListener.SCROLL_STATE_IDLE) {
+                SystemClock.sleep(50);
+            }
+            getInstrumentation().waitForIdleSync();
+        }
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                recorder.stop();
+                ((ViewGroup) listView.getParent()).removeView(listView);
+                recyclerView.setVisibility(View.VISIBLE);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        double jankPercent = jankPercent(recorder);
+        Log.i(TAG, "ListView frames=" + recorder.frames + ", janky=" + recorder.jankyFrames
+                + ", jank=" + String.format(Locale.US, "%.2f", jankPercent) + "%");
+        return jankPercent;
+    }
+
+    @Test
+    public void prefetchRaisesBindHitRate() throws Throwable {
+        float off = dragAndMeasureHitRate(false, "off");
+        float on = dragAndMeasureHitRate(true, "on");
+
+        Log.i(TAG, String.format(Locale.US, "Bind memory cache hits: prefetch off %.1f%%, on %.1f%%",
+                off * 100, on * 100));
+
+        assertTrue("hit rate with prefetch " + on + " below " + off, on >= off);
+    }
+
+    private float dragAndMeasureHitRate(final boolean prefetch, String run) throws Throwable {
+        final RecyclerView list = (RecyclerView) mActivityRule.getActivity().findViewById(R.id.content_listview);
+        final ContentListDataAdapter adapter = (ContentListDataAdapter) list.getAdapter();
+        final ContentImageLoader loader = adapter.getImageLoader();
+        final ContentStore items = imageList(IMAGE_ITEM_COUNT, run);
+        final FrameDragger dragger = new FrameDragger(list);
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                loader.setPrefetchEnabled(prefetch);
+                adapter.onReceiveContent(items, true, true);
+                list.scrollToPosition(0);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                loader.resetBindStats();
+                Choreographer.getInstance().postFrameCallback(dragger);
+            }
+        });
+        assertTrue(dragger.done.await(60, TimeUnit.SECONDS));
+        getInstrumentation().waitForIdleSync();
+
+        final float[] rate = new float[1];
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                rate[0] = loader.getBindHitRate();
+                Log.i(TAG, "prefetch=" + prefetch + " binds=" + loader.getBindCount()
+                        + " prefetches=" + loader.getPrefetchCount()
+                        + " lookahead=" + loader.getPrefetcher().getLookahead());
+            }
+        });
+        return rate[0];
+    }
+}
@@ -0,0 +1,90 @@
+package com.lausy.contentretriever;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static android.support.test.InstrumentationRegistry.getTargetContext;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * <h1>Startup Timing Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Measures the time from activity creation to the first row shown, with a saved snapshot and
+ * without one.  Without a snapshot the first row has to come from the server, so that case is
+ * skipped when the device is offline.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContentStartupTimingTest {
+    private static final String TAG = ContentStartupTimingTest.class.getName();
+
+    private static final int SNAPSHOT_ROWS = 5000;
+    private static final long SNAPSHOT_FIRST_ROW_LIMIT_MS = 1000;
+    private static final long NETWORK_TIMEOUT_MS = 30000;
+
+    @Rule
+    public ActivityTestRule<ContentRetrievalActivity> mActivityRule = new ActivityTestRule<>(
+            ContentRetrievalActivity.class, false, false);
+
+    private static File snapshotFile() {
+        Context context = getTargetContext();
+        return new File(context.getFilesDir(), ContentSnapshotFile.FILE_NAME);
+    }
+
+    private ContentListDataAdapter launch() {
+        ContentRetrievalActivity activity = mActivityRule.launchActivity(null);
+        RecyclerView list = (RecyclerView) activity.findViewById(R.id.content_listview);
+        return (ContentListDataAdapter) list.getAdapter();
+    }
+
+    private static long waitForFirstRow(ContentListDataAdapter adapter, long timeoutMs) {
+        long deadline = SystemClock.uptimeMillis() + timeoutMs;
+        while (adapter.getStartupToFirstRowMillis() < 0 && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(10);
+        }
+        return adapter.getStartupToFirstRowMillis();
+    }
+
+    @Test
+    public void firstRowWithSnapshot() throws Exception {
+        ContentStore.Builder builder = new ContentStore.Builder(SNAPSHOT_ROWS);
+        for (int i = 0; i < SNAPSHOT_ROWS; i++) {
+            builder.add(300000 + i, "Snapshot Title " + i, "");
+        }
+        new ContentSnapshotFile(snapshotFile()).write(builder.build());
+
+        ContentListDataAdapter adapter = launch();
+        long millis = waitForFirstRow(adapter, NETWORK_TIMEOUT_MS);
+
+        Log.i(TAG, "Startup to first row with snapshot:  " + millis + " ms");
+        assertTrue(adapter.isRestoredFromSnapshot());
+        assertTrue("first row after " + millis + " ms", millis >= 0 && millis < SNAPSHOT_FIRST_ROW_LIMIT_MS);
+    }
+
+    @Test
+    public void firstRowWithoutSnapshot() throws Exception {
+        snapshotFile().delete();
+
+        ContentListDataAdapter adapter = launch();
+        long millis = waitForFirstRow(adapter, NETWORK_TIMEOUT_MS);
+
+        Log.i(TAG, "Startup to first row without snapshot:  " + millis + " ms");
+        assumeTrue("no row from the server", millis >= 0);
+        assertTrue(!adapter.isRestoredFromSnapshot());
+    }
+}
@@ -3,8 +3,8 @@ package com.lausy.contentretriever;
 import android.support.test.espresso.core.internal.deps.guava.collect.Ordering;
 import android.support.test.rule.ActivityTestRule;
 import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
 import android.view.View;
-import android.widget.ListView;
 
 import org.hamcrest.Matcher;
 import org.hamcrest.TypeSafeMatcher;
@@ -107,7 +107,7 @@ public class ListAdapterActivityTest {
 
             @Override
             protected boolean matchesSafely(View item) {
-                ListView my_list = (ListView) item;
+                RecyclerView my_list = (RecyclerView) item;
                 ContentListDataAdapter my_adapter = (ContentListDataAdapter) my_list.getAdapter();
 
                 my_titles.clear();
@@ -0,0 +1,136 @@
+package com.lausy.contentretriever;
+
+import java.io.IOException;
+
+/**
+ * <h1>CircuitBreaker</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Stops requests to a server that keeps failing.  After a number of failures in a row the
+ * circuit opens and requests fail at once without going to the network.  Once the open period
+ * has passed one trial request is let through.  If it succeeds the circuit closes again, if it
+ * fails the circuit stays open for another period.
+ *
+ * Thread safe.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Reported for a request that was not sent because the circuit is open.
+     */
+    static final class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        OpenException(long remainingMillis) {
+            super("Circuit open, not retrying for " + remainingMillis + " ms.");
+        }
+    }
+
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    static final long DEFAULT_OPEN_MILLIS = 30000;
+
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+    private final RetryPolicy.Scheduler mClock;
+
+    private State mState = State.CLOSED;
+    private int mFailures;
+    private long mOpenedAt;
+    private long mTrialAt;
+
+    /**
+     * @param failureThreshold Failures in a row that open the circuit.
+     * @param openMillis How long the circuit stays open before a trial request.
+     * @param clock Time source.
+     */
+    CircuitBreaker(int failureThreshold, long openMillis, RetryPolicy.Scheduler clock) {
+        if (failureThreshold < 1 || openMillis < 0) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings.");
+        }
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+        mClock = clock;
+    }
+
+    /**
+     * Called before a request is sent.
+     *
+     * @return True if the request may be sent.  In the half open state only the first caller
+     *         gets true, and it should report the outcome.  If it never does, for example
+     *         because it was cancelled, another trial is let through after the open period.
+     */
+    synchronized boolean allowRequest()
+    {
+        long now = mClock.now();
+
+        switch (mState) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - mOpenedAt >= mOpenMillis) {
+                    mState = State.HALF_OPEN;
+                    mTrialAt = now;
+                    return true;
+                }
+                return false;
+            default:
+                if (now - mTrialAt >= mOpenMillis) {
+                    mTrialAt = now;
+                    return true;
+                }
+                return false;
+        }
+    }
+
+    /**
+     * The server answered, even if with a client error.
+     */
+    synchronized void onSuccess()
+    {
+        mState = State.CLOSED;
+        mFailures = 0;
+    }
+
+    /**
+     * A request failed in a way that may be the server's or the network's fault.
+     */
+    synchronized void onFailure()
+    {
+        mFailures++;
+
+        if (mState == State.HALF_OPEN || mFailures >= mFailureThreshold) {
+            mState = State.OPEN;
+            mOpenedAt = mClock.now();
+        }
+    }
+
+    synchronized State getState()
+    {
+        // An open circuit whose period has passed will let the next request through.
+        if (mState == State.OPEN && mClock.now() - mOpenedAt >= mOpenMillis) {
+            return State.HALF_OPEN;
+        }
+        return mState;
+    }
+
+    /**
+     * @return Milliseconds until a trial request is let through, or 0 if not open.
+     */
+    synchronized long getRemainingOpenMillis()
+    {
+        if (mState != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, mOpenedAt + mOpenMillis - mClock.now());
+    }
+}
@@ -0,0 +1,79 @@
+package com.lausy.contentretriever;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Response;
+
+/**
+ * <h1>ContentCacheStats</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Counters for the HTTP disk cache that sits under the content list request.  Each response is
+ * classified as a plain cache hit, a conditional request answered with 304, or a miss that went
+ * to the network for a full body.  Bytes served from the cache are counted so the bandwidth
+ * saved can be measured.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+class ContentCacheStats {
+
+    /**
+     * How a response was satisfied.
+     */
+    enum Outcome {
+        HIT,
+        REVALIDATED,
+        MISS
+    }
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mRevalidations = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mBytesSaved = new AtomicLong();
+
+    /**
+     * Classifies the raw OkHttp response and updates the counters.
+     *
+     * @param raw The raw response, as returned by retrofit2.Response.raw().
+     * @return How the response was satisfied.
+     */
+    Outcome record(Response raw)
+    {
+        Response network = raw.networkResponse();
+        Response cached = raw.cacheResponse();
+        Outcome outcome;
+
+        if (network == null && cached != null) {
+            outcome = Outcome.HIT;
+            mHits.incrementAndGet();
+        } else if (network != null && cached != null && network.code() == 304) {
+            outcome = Outcome.REVALIDATED;
+            mRevalidations.incrementAndGet();
+        } else {
+            outcome = Outcome.MISS;
+            mMisses.incrementAndGet();
+        }
+
+        if (outcome != Outcome.MISS && raw.body() != null) {
+            long length = raw.body().contentLength();
+            if (length > 0) {
+                mBytesSaved.addAndGet(length);
+            }
+        }
+
+        return outcome;
+    }
+
+    long getHitCount() { return mHits.get(); }
+    long getRevalidatedCount() { return mRevalidations.get(); }
+    long getMissCount() { return mMisses.get(); }
+    long getBytesSaved() { return mBytesSaved.get(); }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHitCount() + ", revalidated=" + getRevalidatedCount()
+                + ", misses=" + getMissCount() + ", bytesSaved=" + getBytesSaved();
+    }
+}
@@ -0,0 +1,439 @@
+package com.lausy.contentretriever;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * <h1>ContentFanOutRequest</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Fetches a content list that is split over several sources and merges it into one.  Up to
+ * a set number of sources are requested at once, and the next one starts as soon as one
+ * finishes.  Each body is parsed as it arrives on the download executor, and its rows are
+ * merged by ContentMerger, so the first rows can be shown while the other sources are still
+ * downloading.  Rows whose content ID was already delivered are dropped.  The download
+ * executor should have a thread for each source in flight; with fewer, a slow body holds back
+ * the bodies queued behind it.
+ *
+ * Every source has its own SingleFlightRequest and circuit breaker, so a transient failure is
+ * retried for that source alone, and a source that keeps failing only opens its own circuit.
+ * A source is given the source timeout to answer, retries included, and then the source timeout
+ * again from when its body starts being read.  The timeout is stopped while the body waits for a
+ * download thread, so that time does not count against it.  A source that runs out of time is
+ * counted as failed, and its call is cancelled, which closes its body and frees the download
+ * thread reading it.  The rows it delivered before then are kept, and the other sources carry
+ * on.  The merged list is
+ * complete once every source has finished or failed.  If every source fails before any row
+ * arrives, an error is reported instead.
+ *
+ * Results go to the listener on the delivery executor, which must run tasks one at a time in
+ * order, as the main thread does.  start and cancel must be called on that thread too.
+ * Nothing is delivered after cancel returns.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentFanOutRequest {
+    static final int DEFAULT_MAX_PARALLEL = 4;
+    static final long DEFAULT_SOURCE_TIMEOUT_MILLIS = 15000;
+
+    /**
+     * Decodes a response body into chunks, with the parser for its content type.
+     */
+    interface Parser {
+        void parse(ResponseBody body, ContentChunkListener listener) throws IOException;
+    }
+
+    /**
+     * Gives the circuit breaker of a source.
+     */
+    interface CircuitBreakers {
+        CircuitBreaker of(ContentSource source);
+    }
+
+    /**
+     * Receives the merged list.  Called on the delivery executor.
+     */
+    interface Listener {
+        /**
+         * @param chunk Rows not delivered before, in the order they arrived.
+         * @param first True for the first chunk of the merged list.
+         * @param last True once every source has finished.  The chunk may then be empty.
+         */
+        void onReceiveContent(ContentStore chunk, boolean first, boolean last);
+
+        /**
+         * A source failed or timed out.  The list goes on without the rest of its rows.
+         *
+         * @param errorCode HTTP status, or -1 for any other failure.
+         */
+        void onSourceFailed(ContentSource source, int errorCode, boolean timedOut);
+
+        /**
+         * Every source failed and no rows were delivered.
+         *
+         * @param errorCode Error of the last source to fail.
+         */
+        void onReceiveError(int errorCode);
+    }
+
+    private final class Shard {
+        final ContentSource source;
+        final SingleFlightRequest<ResponseBody> request;
+        boolean finished;
+
+        /**
+         * The latest call of the request.  Kept after the response, since cancelling it is what
+         * closes a body still being read.
+         */
+        volatile Call<ResponseBody> call;
+
+        /**
+         * Set once the source timed out or the request was cancelled.  Its body is then no
+         * longer read.
+         */
+        volatile boolean abandoned;
+
+        /**
+         * Changes when the timeout is stopped or started again, so the timeout before is dropped.
+         */
+        volatile int timeoutGeneration;
+
+        Shard(ContentSource source) {
+            this.source = source;
+            request = new SingleFlightRequest<>(mRetryPolicy,
+                    mCircuitBreakers == null ? null : mCircuitBreakers.of(source), mScheduler);
+        }
+    }
+
+    private final List<ContentSource> mSources;
+    private final Parser mParser;
+    private final Executor mCallbackExecutor;
+    private final Executor mDownloadExecutor;
+    private final Executor mDeliveryExecutor;
+    private final RetryPolicy.Scheduler mScheduler;
+
+    private int mMaxParallel = DEFAULT_MAX_PARALLEL;
+    private long mSourceTimeoutMillis = DEFAULT_SOURCE_TIMEOUT_MILLIS;
+    private RetryPolicy mRetryPolicy = RetryPolicy.NONE;
+    private CircuitBreakers mCircuitBreakers;
+
+    /**
+     * Only touched on the delivery executor.
+     */
+    private final List<Shard> mShards = new ArrayList<>();
+    private final ContentMerger mMerger = new ContentMerger();
+    private Listener mListener;
+    private int mNext;
+    private int mRunning;
+    private int mMaxRunning;
+    private int mFinished;
+    private int mFailed;
+    private int mTimedOut;
+    private int mLastError;
+    private boolean mDelivered;
+    private boolean mDone;
+    private boolean mCancelled;
+
+    /**
+     * @param sources Sources to fetch.  Rows of earlier sources are not preferred; whichever
+     *                row with an ID arrives first is kept.
+     * @param parser Decodes the bodies.
+     * @param callbackExecutor Executor that Retrofit delivers responses to.  Never the main
+     *                         thread.
+     * @param downloadExecutor Executor that bodies are read and parsed on, with a thread for
+     *                         each source in flight.  Never the main thread.
+     * @param deliveryExecutor Runs every callback of the listener, one at a time.
+     * @param scheduler Runs retries and source timeouts.
+     */
+    ContentFanOutRequest(List<ContentSource> sources, Parser parser, Executor callbackExecutor,
+                         Executor downloadExecutor, Executor deliveryExecutor,
+                         RetryPolicy.Scheduler scheduler) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("No sources to fetch.");
+        }
+        mSources = Collections.unmodifiableList(new ArrayList<>(sources));
+        mParser = parser;
+        mCallbackExecutor = callbackExecutor;
+        mDownloadExecutor = downloadExecutor;
+        mDeliveryExecutor = deliveryExecutor;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Sets how many sources are requested at once.  Must be called before start.
+     */
+    void setMaxParallel(int maxParallel)
+    {
+        if (maxParallel < 1) {
+            throw new IllegalArgumentException("maxParallel must be at least 1, not " + maxParallel);
+        }
+        mMaxParallel = maxParallel;
+    }
+
+    /**
+     * Sets how long a source may take to answer, and again how long it may take to read its
+     * body once reading starts.  Must be called before start.
+     */
+    void setSourceTimeoutMillis(long millis)
+    {
+        mSourceTimeoutMillis = millis;
+    }
+
+    /**
+     * Sets how each source is retried, and the circuit breakers their attempts are reported
+     * to, one for each source.  The breakers may be null.  Must be called before start.
+     */
+    void setRetryPolicy(RetryPolicy policy, CircuitBreakers breakers)
+    {
+        mRetryPolicy = policy;
+        mCircuitBreakers = breakers;
+    }
+
+    List<ContentSource> getSources() { return mSources; }
+
+    /**
+     * @return True once the merged list is complete or the error has been reported.
+     */
+    boolean isDone() { return mDone; }
+    boolean isCancelled() { return mCancelled; }
+
+    int getFailedCount() { return mFailed; }
+    int getTimedOutCount() { return mTimedOut; }
+    int getDuplicateCount() { return mMerger.getDuplicateCount(); }
+
+    /**
+     * @return Most sources that were in flight at the same time.
+     */
+    int getMaxRunning() { return mMaxRunning; }
+
+    /**
+     * Starts the first sources.  Can only be called once.
+     */
+    void start(Listener listener)
+    {
+        if (mListener != null) {
+            throw new IllegalStateException("Already started.");
+        }
+        mListener = listener;
+
+        for (ContentSource source : mSources) {
+            mShards.add(new Shard(source));
+        }
+        startNext();
+    }
+
+    /**
+     * Cancels every source in flight.  Nothing more is delivered.
+     */
+    void cancel()
+    {
+        mCancelled = true;
+
+        for (Shard shard : mShards) {
+            abandon(shard);
+        }
+    }
+
+    private void startNext()
+    {
+        while (!mCancelled && mRunning < mMaxParallel && mNext < mShards.size()) {
+            start(mShards.get(mNext++));
+        }
+    }
+
+    private void start(final Shard shard)
+    {
+        mRunning++;
+        mMaxRunning = Math.max(mMaxRunning, mRunning);
+
+        final NetworkService.NetworkApiService client =
+                NetworkClientRegistry.getService(shard.source.getBaseUri(), mCallbackExecutor);
+        final String path = shard.source.getPath();
+
+        // Before the request, so a quick response cannot start reading before it.
+        scheduleTimeout(shard);
+
+        shard.request.enqueue(shard.source.getUrl(), new SingleFlightRequest.CallFactory<ResponseBody>() {
+            @Override
+            public Call<ResponseBody> create() {
+                Call<ResponseBody> call = client.fetchContentList(path);
+                shard.call = call;
+                return call;
+            }
+        }, new SingleFlightRequest.Listener<ResponseBody>() {
+            @Override
+            public void onResponse(int generation, final Response<ResponseBody> response) {
+                int code = response.code();
+
+                if (code != 200) {
+                    postFinish(shard, code);
+                    return;
+                }
+
+                // The body may wait for a download thread, which is not the source's fault.
+                shard.timeoutGeneration++;
+                mDownloadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        read(shard, response.body());
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(int generation, Throwable t) {
+                postFinish(shard, -1);
+            }
+        });
+    }
+
+    /**
+     * Reads and parses the body on the download executor.  The timeout starts again here.
+     */
+    private void read(final Shard shard, ResponseBody body)
+    {
+        if (shard.abandoned) {
+            body.close();
+            return;
+        }
+        scheduleTimeout(shard);
+
+        try {
+            mParser.parse(body, new ContentChunkListener() {
+                @Override
+                public void onChunk(final ContentStore chunk, boolean first, boolean last) {
+                    if (shard.abandoned) {
+                        return;
+                    }
+                    mDeliveryExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            deliver(shard, chunk);
+                        }
+                    });
+                }
+            });
+            postFinish(shard, 0);
+        } catch (IOException | IllegalStateException e) {
+            postFinish(shard, -1);
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Fails the source if it is not finished within the source timeout, unless the timeout is
+     * started again in the meantime.
+     */
+    private void scheduleTimeout(final Shard shard)
+    {
+        final int generation = ++shard.timeoutGeneration;
+
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mDeliveryExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (shard.timeoutGeneration == generation) {
+                            finish(shard, -1, true);
+                        }
+                    }
+                });
+            }
+        }, mSourceTimeoutMillis);
+    }
+
+    private void postFinish(final Shard shard, final int errorCode)
+    {
+        mDeliveryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                finish(shard, errorCode, false);
+            }
+        });
+    }
+
+    /**
+     * Stops the source.  Cancelling its call also closes a body being read, so the read fails
+     * at once instead of holding its download thread until the body ends.
+     */
+    private void abandon(Shard shard)
+    {
+        shard.abandoned = true;
+        shard.request.cancel();
+
+        Call<ResponseBody> call = shard.call;
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    /**
+     * Passes on the rows of the chunk that are new.  Chunks still arriving from a source that
+     * timed out are dropped.
+     */
+    private void deliver(Shard shard, ContentStore chunk)
+    {
+        if (mCancelled || shard.finished) {
+            return;
+        }
+
+        ContentStore rows = mMerger.add(chunk);
+        if (rows.size() == 0) {
+            return;
+        }
+
+        boolean first = !mDelivered;
+        mDelivered = true;
+        mListener.onReceiveContent(rows, first, false);
+    }
+
+    /**
+     * Marks the source finished, at most once, and starts the next one.  Called for the end of
+     * the body, a failure, or the timeout, whichever comes first.
+     *
+     * @param errorCode Zero if the source was read to the end.
+     */
+    private void finish(Shard shard, int errorCode, boolean timedOut)
+    {
+        if (mCancelled || shard.finished) {
+            return;
+        }
+
+        shard.finished = true;
+        mRunning--;
+        mFinished++;
+
+        if (errorCode != 0) {
+            mFailed++;
+            mLastError = errorCode;
+            if (timedOut) {
+                mTimedOut++;
+            }
+            abandon(shard);
+            mListener.onSourceFailed(shard.source, errorCode, timedOut);
+        }
+
+        if (mFinished < mShards.size()) {
+            startNext();
+            return;
+        }
+
+        mDone = true;
+        if (!mDelivered && mFailed == mShards.size()) {
+            mListener.onReceiveError(mLastError);
+        } else {
+            mListener.onReceiveContent(ContentStore.EMPTY, !mDelivered, true);
+        }
+    }
+}
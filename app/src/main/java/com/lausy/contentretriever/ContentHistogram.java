@@ -0,0 +1,129 @@
+package com.lausy.contentretriever;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <h1>ContentHistogram</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Histogram of durations in nanoseconds with log-linear buckets:  every power of two is split
+ * into SUB_BUCKETS buckets, so a percentile is off by at most an eighth.  Values up to about 18
+ * minutes have a bucket of their own and longer ones go in the last bucket.
+ *
+ * Recording is a few atomic updates on arrays allocated up front, so it never allocates and can
+ * be called from any thread.  Reads are not atomic as a whole; a snapshot taken while values
+ * are recorded can be off by the values recorded meanwhile.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentHistogram {
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    void record(long nanos)
+    {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        mCounts.incrementAndGet(bucketOf(nanos));
+        mCount.incrementAndGet();
+        mSum.addAndGet(nanos);
+
+        long max = mMax.get();
+        while (nanos > max && !mMax.compareAndSet(max, nanos)) {
+            max = mMax.get();
+        }
+    }
+
+    void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    long getCount() { return mCount.get(); }
+
+    long getMaxNanos() { return mMax.get(); }
+
+    /**
+     * @return Mean in nanoseconds, or zero if nothing was recorded.
+     */
+    long getMeanNanos()
+    {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+
+    /**
+     * @param percentile From 0 to 100.
+     * @return Upper bound of the bucket holding the percentile, no more than the maximum, or
+     *         zero if nothing was recorded.
+     */
+    long getPercentileNanos(double percentile)
+    {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += mCounts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                long upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(upper, mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    /**
+     * @return Index of the bucket of the value.
+     */
+    static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return Smallest value in the bucket.
+     */
+    static long lowerBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,72 @@
+package com.lausy.contentretriever;
+
+import android.graphics.Bitmap;
+
+import com.squareup.picasso.Cache;
+
+/**
+ * <h1>ContentImageCache</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Picasso memory cache of decoded row images, bounded by bitmap bytes.  It replaces Picasso's
+ * default cache so its size is chosen by the app and its counters can be read.
+ *
+ * Picasso keys start with the image URL followed by a newline and the transformations, so
+ * images are pinned by URL:  while a row shows a URL, every size of that image is kept ahead of
+ * the images of rows that have scrolled away.  The URL is cut from the key once, when the image
+ * is put.
+ *
+ * The cache belongs to the shared Picasso instance, so it lives as long as the process and the
+ * images on screen are still cached when the activity is recreated on rotation.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+class ContentImageCache extends ContentLruCache<Bitmap> implements Cache {
+
+    ContentImageCache(int maxBytes) {
+        super(maxBytes);
+    }
+
+    @Override
+    protected int sizeOf(Bitmap value) {
+        return value.getByteCount();
+    }
+
+    @Override
+    protected String pinKeyOf(String key) {
+        int end = key.indexOf('\n');
+        return end < 0 ? key : key.substring(0, end);
+    }
+
+    @Override
+    public Bitmap get(String key) {
+        return super.get(key);
+    }
+
+    @Override
+    public void set(String key, Bitmap bitmap) {
+        put(key, bitmap);
+    }
+
+    @Override
+    public int size() {
+        return (int) getBytes();
+    }
+
+    @Override
+    public int maxSize() {
+        return (int) getMaxBytes();
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+    }
+
+    @Override
+    public void clearKeyUri(String uri) {
+        removePinKey(uri);
+    }
+}
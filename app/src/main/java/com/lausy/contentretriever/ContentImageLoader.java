@@ -0,0 +1,442 @@
+package com.lausy.contentretriever;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+import com.squareup.picasso.StatsSnapshot;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+/**
+ * <h1>ContentImageLoader</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Loads the row images of one list.  Every request is resized to the size of the row image
+ * view and decoded as RGB_565, and is tagged with this loader so the requests of the list can
+ * be paused together.  While the list is flinging, requests are paused so rows that only pass
+ * by on screen do not start downloads and decodes; they resume when the list is dragged or
+ * comes to rest.
+ *
+ * Images of the rows just ahead of the scroll are fetched and decoded into the memory cache
+ * before they are bound, so most binds are served from memory.  The rows are chosen by a
+ * ContentPrefetcher from the binds reported by the adapter, and loaded at low priority, a few
+ * at a time, under a tag of their own.  Prefetching stops while the list flings.
+ *
+ * All loaders share one Picasso instance and its two cache tiers, which live as long as the
+ * process and so survive rotation.  Decoded bitmaps are kept in a ContentImageCache bounded by
+ * bytes, in which the images shown by bound rows are pinned.  Downloads go through the shared
+ * OkHttp client with an LRU disk cache of its own for the encoded images.  Both sizes can be set
+ * before the first loader is created, and both caches shrink on onTrimMemory.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+class ContentImageLoader {
+    private static final String TAG = ContentImageLoader.class.getName();
+
+    static final long IMAGE_CACHE_SIZE = 50 * 1024 * 1024;
+
+    /**
+     * Share of the app's memory class given to decoded images by default.
+     */
+    static final int MEMORY_CACHE_DIVISOR = 8;
+
+    /**
+     * Most prefetches running at once, so they do not hold up the images of bound rows.
+     */
+    static final int MAX_PREFETCHES = 4;
+
+    /**
+     * Rows of the list, as seen by the prefetcher.
+     */
+    interface RowSource {
+        int getCount();
+
+        /**
+         * @return The image URL of the row, or null if it has none or is not loaded.
+         */
+        String getImgUrl(int position);
+    }
+
+    private static Picasso sPicasso;
+    private static final ContentImageStats sStats = new ContentImageStats();
+
+    private static int sMemoryCacheSize;
+    private static long sDiskCacheSize = IMAGE_CACHE_SIZE;
+    private static ContentImageCache sMemoryCache;
+    private static Cache sDiskCache;
+
+    private final Picasso mPicasso;
+    private boolean mPaused;
+
+    private final ContentPrefetcher mPrefetcher = new ContentPrefetcher();
+    private final Object mPrefetchTag = new Object();
+    private RowSource mRowSource;
+    private boolean mPrefetchEnabled = true;
+    private int mPrefetching;
+    private int mPrefetchCount;
+
+    /**
+     * True while a bound row's request is started, so a synchronous success is a memory hit.
+     */
+    private boolean mInBind;
+    private int mBindCount;
+    private int mBindHits;
+
+    /**
+     * URL shown by each bound image view, pinned in the memory cache until the view is
+     * recycled or shows something else.
+     */
+    private final Map<ImageView, String> mShownUrls = new HashMap<>();
+
+    ContentImageLoader(Context context) {
+        mPicasso = getPicasso(context);
+    }
+
+    /**
+     * Sets the cache sizes.  Must be called before the shared Picasso instance is created.
+     *
+     * @param memoryBytes Bytes of decoded bitmaps kept in memory, or 0 for a share of the
+     *                    memory class.
+     * @param diskBytes Bytes of encoded images kept on disk.
+     */
+    static synchronized void setCacheSizes(int memoryBytes, long diskBytes)
+    {
+        if (sPicasso != null) {
+            throw new IllegalStateException("Image caches are already created.");
+        }
+        if (memoryBytes < 0 || diskBytes <= 0) {
+            throw new IllegalArgumentException("Invalid cache sizes.");
+        }
+        sMemoryCacheSize = memoryBytes;
+        sDiskCacheSize = diskBytes;
+    }
+
+    /**
+     * @return The shared Picasso instance.  It is created on first use.
+     */
+    static synchronized Picasso getPicasso(Context context)
+    {
+        if (sPicasso == null) {
+            Context app = context.getApplicationContext();
+
+            int memoryBytes = sMemoryCacheSize;
+            if (memoryBytes == 0) {
+                ActivityManager am = (ActivityManager) app.getSystemService(Context.ACTIVITY_SERVICE);
+                memoryBytes = am.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_DIVISOR;
+            }
+            sMemoryCache = new ContentImageCache(memoryBytes);
+            sDiskCache = new Cache(new File(app.getCacheDir(), "images"), sDiskCacheSize);
+
+            OkHttpClient client = NetworkClientRegistry.getHttpClient().newBuilder()
+                    .cache(sDiskCache)
+                    .build();
+
+            sPicasso = new Picasso.Builder(app)
+                    .defaultBitmapConfig(Bitmap.Config.RGB_565)
+                    .memoryCache(sMemoryCache)
+                    .addRequestHandler(new ContentImageRequestHandler(client, sStats))
+                    .build();
+        }
+        return sPicasso;
+    }
+
+    /**
+     * Shrinks the memory cache for a level passed to onTrimMemory.  The disk cache holds no
+     * memory and is left alone.
+     */
+    static synchronized void trimMemory(int level)
+    {
+        if (sMemoryCache == null) {
+            return;
+        }
+        sMemoryCache.trimMemory(level);
+        Log.d(TAG, "Trimmed image memory cache for level " + level + ":  " + sMemoryCache);
+    }
+
+    /**
+     * @return The memory cache of decoded images, or null before the first loader is created.
+     */
+    static synchronized ContentImageCache getMemoryCache() { return sMemoryCache; }
+
+    /**
+     * @return The disk cache of encoded images, or null before the first loader is created.
+     *         Its hit, network and request counts and its size are the disk tier's stats.
+     */
+    static synchronized Cache getDiskCache() { return sDiskCache; }
+
+    /**
+     * Loads the image into the view at the size of the row image, showing the placeholder
+     * until it arrives.
+     */
+    void load(String url, ImageView view)
+    {
+        show(view, url);
+        mBindCount++;
+        mInBind = true;
+        try {
+            request(url)
+                    .tag(this)
+                    .placeholder(R.drawable.placeholder)
+                    .into(view, mBindCallback);
+        } finally {
+            mInBind = false;
+        }
+    }
+
+    /**
+     * @return The URL last loaded into the view.  Null if the view shows the placeholder or
+     *         was recycled since.  The request for it may still be running.
+     */
+    String getShownUrl(ImageView view) { return mShownUrls.get(view); }
+
+    /**
+     * Unpins the image of a view whose row was recycled.
+     */
+    void onViewRecycled(ImageView view)
+    {
+        show(view, null);
+    }
+
+    /**
+     * Records the URL shown by the view, moving its pin in the memory cache.
+     */
+    private void show(ImageView view, String url)
+    {
+        String previous = url == null ? mShownUrls.remove(view) : mShownUrls.put(view, url);
+
+        if (previous != null) {
+            sMemoryCache.unpin(previous);
+        }
+        if (url != null) {
+            sMemoryCache.pin(url);
+        }
+    }
+
+    /**
+     * Starts a request decoded the same way as a bound row, so a prefetched image is found in
+     * the memory cache under the same key.
+     */
+    private RequestCreator request(String url)
+    {
+        return mPicasso.load(url)
+                .resizeDimen(R.dimen.content_image_size, R.dimen.content_image_size)
+                .centerInside()
+                .onlyScaleDown()
+                .config(Bitmap.Config.RGB_565);
+    }
+
+    /**
+     * Picasso reports a memory cache hit before into() returns, and anything else later.
+     */
+    private final Callback mBindCallback = new Callback() {
+        @Override
+        public void onSuccess() {
+            if (mInBind) {
+                mBindHits++;
+            }
+        }
+
+        @Override
+        public void onError() {
+        }
+    };
+
+    /**
+     * Sets the rows to prefetch images for.  Until it is set, nothing is prefetched.
+     */
+    void setRowSource(RowSource source)
+    {
+        mRowSource = source;
+        resetPrefetch();
+    }
+
+    /**
+     * Reports that the row at the position was bound, and prefetches the images of the rows
+     * ahead of it.
+     */
+    void onBind(int position)
+    {
+        if (!mPrefetchEnabled || mRowSource == null) {
+            return;
+        }
+        mPrefetcher.onBind(position, SystemClock.uptimeMillis(), mRowSource.getCount());
+        prefetch();
+    }
+
+    /**
+     * Forgets the scroll and the queued rows.  Called when the rows of the list change.
+     */
+    void resetPrefetch()
+    {
+        mPrefetcher.reset();
+    }
+
+    void setPrefetchEnabled(boolean enabled)
+    {
+        mPrefetchEnabled = enabled;
+        if (!enabled) {
+            mPrefetcher.reset();
+            mPicasso.cancelTag(mPrefetchTag);
+            mPrefetching = 0;
+        }
+    }
+
+    boolean isPrefetchEnabled() { return mPrefetchEnabled; }
+
+    /**
+     * Starts queued prefetches until MAX_PREFETCHES are running.
+     */
+    private void prefetch()
+    {
+        while (!mPaused && mPrefetching < MAX_PREFETCHES) {
+            int position = mPrefetcher.poll();
+            if (position < 0) {
+                return;
+            }
+
+            String url = mRowSource.getImgUrl(position);
+            if (url == null || url.isEmpty()) {
+                continue;
+            }
+
+            mPrefetching++;
+            mPrefetchCount++;
+            request(url)
+                    .tag(mPrefetchTag)
+                    .priority(Picasso.Priority.LOW)
+                    .fetch(mPrefetchCallback);
+        }
+    }
+
+    private final Callback mPrefetchCallback = new Callback() {
+        @Override
+        public void onSuccess() {
+            onPrefetchDone();
+        }
+
+        @Override
+        public void onError() {
+            onPrefetchDone();
+        }
+    };
+
+    private void onPrefetchDone()
+    {
+        if (mPrefetching > 0) {
+            mPrefetching--;
+        }
+        if (mPrefetchEnabled && mRowSource != null) {
+            prefetch();
+        }
+    }
+
+    /**
+     * Shows the placeholder and cancels any request still running for the view.
+     */
+    void loadPlaceholder(ImageView view)
+    {
+        show(view, null);
+        mPicasso.cancelRequest(view);
+        view.setImageResource(R.drawable.placeholder);
+    }
+
+    /**
+     * Pauses requests while the list flings and resumes them when it is dragged or stops.
+     */
+    void attachTo(RecyclerView list)
+    {
+        list.addOnScrollListener(mScrollListener);
+    }
+
+    /**
+     * Cancels every request of this loader.
+     */
+    void cancelAll()
+    {
+        mPicasso.cancelTag(this);
+        mPicasso.cancelTag(mPrefetchTag);
+        mPrefetcher.reset();
+        mPrefetching = 0;
+        mRowSource = null;
+
+        for (String url : mShownUrls.values()) {
+            sMemoryCache.unpin(url);
+        }
+        mShownUrls.clear();
+    }
+
+    private final RecyclerView.OnScrollListener mScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            boolean pause = newState == RecyclerView.SCROLL_STATE_SETTLING;
+
+            if (pause && !mPaused) {
+                mPicasso.pauseTag(ContentImageLoader.this);
+            } else if (!pause && mPaused) {
+                mPicasso.resumeTag(ContentImageLoader.this);
+            }
+            mPaused = pause;
+
+            if (!pause && mPrefetchEnabled && mRowSource != null) {
+                prefetch();
+            }
+        }
+    };
+
+    boolean isPaused() { return mPaused; }
+
+    /**
+     * @return Fraction of requests served from the memory cache, or zero before any request.
+     */
+    float getMemoryHitRate()
+    {
+        StatsSnapshot snapshot = mPicasso.getSnapshot();
+        long lookups = snapshot.cacheHits + snapshot.cacheMisses;
+        return lookups == 0 ? 0 : (float) snapshot.cacheHits / lookups;
+    }
+
+    /**
+     * @return Fraction of bound rows with an image that found it in the memory cache, or zero
+     *         before any bind.  Rows rebound in place with the image they show are not counted.
+     */
+    float getBindHitRate()
+    {
+        return mBindCount == 0 ? 0 : (float) mBindHits / mBindCount;
+    }
+
+    int getBindCount() { return mBindCount; }
+
+    /**
+     * @return Number of prefetches started.
+     */
+    int getPrefetchCount() { return mPrefetchCount; }
+
+    ContentPrefetcher getPrefetcher() { return mPrefetcher; }
+
+    void resetBindStats()
+    {
+        mBindCount = 0;
+        mBindHits = 0;
+        mPrefetchCount = 0;
+    }
+
+    /**
+     * @return Decode counters shared by all loaders.
+     */
+    static ContentImageStats getStats() { return sStats; }
+}
@@ -0,0 +1,128 @@
+package com.lausy.contentretriever;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Request;
+import com.squareup.picasso.RequestHandler;
+
+import java.io.IOException;
+
+import okhttp3.CacheControl;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * <h1>ContentImageRequestHandler</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Picasso request handler for content images.  Images are downloaded with OkHttp, so they
+ * share the connection pool of the content requests and sit in an HTTP disk cache.  The bitmap
+ * is then decoded at the size of the request:  the bounds are read first and the image is
+ * subsampled by the largest power of two that still covers the target size.  Picasso does the
+ * final scaling.  Bitmaps are decoded as RGB_565 unless the request asks for another config.
+ *
+ * Every decode is timed and recorded in ContentImageStats.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+class ContentImageRequestHandler extends RequestHandler {
+    private final OkHttpClient mClient;
+    private final ContentImageStats mStats;
+
+    ContentImageRequestHandler(OkHttpClient client, ContentImageStats stats) {
+        mClient = client;
+        mStats = stats;
+    }
+
+    @Override
+    public boolean canHandleRequest(Request data) {
+        String scheme = data.uri == null ? null : data.uri.getScheme();
+        return "http".equals(scheme) || "https".equals(scheme);
+    }
+
+    @Override
+    public Result load(Request request, int networkPolicy) throws IOException
+    {
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder().url(request.uri.toString());
+
+        if (NetworkPolicy.isOfflineOnly(networkPolicy)) {
+            builder.cacheControl(CacheControl.FORCE_CACHE);
+        } else {
+            CacheControl.Builder cacheControl = new CacheControl.Builder();
+            if (!NetworkPolicy.shouldReadFromDiskCache(networkPolicy)) {
+                cacheControl.noCache();
+            }
+            if (!NetworkPolicy.shouldWriteToDiskCache(networkPolicy)) {
+                cacheControl.noStore();
+            }
+            builder.cacheControl(cacheControl.build());
+        }
+
+        Response response = mClient.newCall(builder.build()).execute();
+        ResponseBody body = response.body();
+        byte[] bytes;
+
+        try {
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("Image request failed:  " + response.code() + " " + request.uri);
+            }
+            bytes = body.bytes();
+        } finally {
+            if (body != null) {
+                body.close();
+            }
+        }
+
+        Picasso.LoadedFrom loadedFrom = response.networkResponse() == null
+                ? Picasso.LoadedFrom.DISK : Picasso.LoadedFrom.NETWORK;
+
+        return new Result(decode(bytes, request), loadedFrom);
+    }
+
+    private Bitmap decode(byte[] bytes, Request request) throws IOException
+    {
+        long start = System.nanoTime();
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+
+        int sourceWidth = options.outWidth;
+        int sourceHeight = options.outHeight;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(sourceWidth, sourceHeight, request.targetWidth, request.targetHeight);
+        options.inPreferredConfig = request.config != null ? request.config : Bitmap.Config.RGB_565;
+
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (bitmap == null) {
+            throw new IOException("Could not decode image " + request.uri);
+        }
+
+        mStats.recordDecode(System.nanoTime() - start, bitmap.getByteCount(), sourceWidth, sourceHeight);
+        return bitmap;
+    }
+
+    /**
+     * @return The largest power of two that the image can be divided by and still be at least
+     *         the target size in both directions.  A target of zero means no limit on that side.
+     */
+    static int sampleSize(int width, int height, int targetWidth, int targetHeight)
+    {
+        if (width <= 0 || height <= 0 || (targetWidth <= 0 && targetHeight <= 0)) {
+            return 1;
+        }
+
+        int sample = 1;
+        while (width / (sample * 2) >= targetWidth && height / (sample * 2) >= targetHeight) {
+            sample *= 2;
+        }
+        return sample;
+    }
+}
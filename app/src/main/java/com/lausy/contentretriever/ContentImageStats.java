@@ -0,0 +1,61 @@
+package com.lausy.contentretriever;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>ContentImageStats</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Counters for image decoding.  Each decode records how long it took and how many bytes the
+ * bitmap uses, next to what a full size ARGB_8888 decode of the same image would have used, so
+ * the memory saved by sized, low-depth decoding can be measured.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+class ContentImageStats {
+    private final AtomicLong mDecodes = new AtomicLong();
+    private final AtomicLong mDecodeNanos = new AtomicLong();
+    private final AtomicLong mDecodedBytes = new AtomicLong();
+    private final AtomicLong mFullSizeBytes = new AtomicLong();
+
+    /**
+     * Records one decode.
+     *
+     * @param nanos Time the decode took.
+     * @param decodedBytes Bytes used by the decoded bitmap.
+     * @param sourceWidth Width of the encoded image.
+     * @param sourceHeight Height of the encoded image.
+     */
+    void recordDecode(long nanos, long decodedBytes, int sourceWidth, int sourceHeight)
+    {
+        mDecodes.incrementAndGet();
+        mDecodeNanos.addAndGet(nanos);
+        mDecodedBytes.addAndGet(decodedBytes);
+        mFullSizeBytes.addAndGet(4L * sourceWidth * sourceHeight);
+    }
+
+    long getDecodeCount() { return mDecodes.get(); }
+    long getDecodedBytes() { return mDecodedBytes.get(); }
+
+    /**
+     * @return Bytes saved against decoding every image at full size in ARGB_8888.
+     */
+    long getBytesSaved() { return mFullSizeBytes.get() - mDecodedBytes.get(); }
+
+    /**
+     * @return Average decode time in milliseconds, or zero if nothing was decoded.
+     */
+    double getAverageDecodeMillis()
+    {
+        long decodes = mDecodes.get();
+        return decodes == 0 ? 0 : mDecodeNanos.get() / 1e6 / decodes;
+    }
+
+    @Override
+    public String toString() {
+        return "decodes=" + getDecodeCount() + ", averageDecodeMillis=" + getAverageDecodeMillis()
+                + ", decodedBytes=" + getDecodedBytes() + ", bytesSaved=" + getBytesSaved();
+    }
+}
@@ -2,25 +2,31 @@ package com.lausy.contentretriever;
 
 import android.app.Activity;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
 import android.widget.ImageView;
-import android.widget.ListView;
 import android.widget.TextView;
 
-import com.squareup.picasso.Picasso;
-
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <h1>ContentListDataAdapter</h1>
@@ -31,22 +37,130 @@ import java.util.List;
  * a well known JSON object.  Images of the list view are updated accordingly through addition
  * REST calls after the initial list is setup.
  *
+ * The list is a RecyclerView.  Item IDs are the content IDs, so rows keep their identity across
+ * refreshes and incremental updates animate only the rows that changed.  Stable IDs must be
+ * unique, so a row whose content ID is already in the list is dropped when the list is taken
+ * in.
+ *
+ * Rows are held in a columnar ContentStore rather than one object per row, and are bound
+ * through a single reusable row accessor.
+ *
  * @author Rick Lau
  * @version 1.0
  */
 
-class ContentListDataAdapter extends BaseAdapter implements ContentServiceCallback {
+class ContentListDataAdapter extends RecyclerView.Adapter<ContentListDataAdapter.ViewHolder>
+        implements ContentServiceCallback {
     private static final String TAG = ContentListDataAdapter.class.getName();
 
+    /**
+     * Number of row views kept in a recycled view pool.  Enough for a fling on a tall screen.
+     */
+    static final int MAX_RECYCLED_VIEWS = 20;
+
+    /**
+     * Queries over lists shorter than this run on the calling thread.  They take less time
+     * than a frame, and this avoids showing the old order for a frame.
+     */
+    private static final int BACKGROUND_QUERY_THRESHOLD = 2000;
+
+    /**
+     * Most Strings kept for reuse:  lower case titles for the query engine, and image URLs for
+     * the image loader.
+     */
+    private static final int MAX_POOLED_TITLES = 1 << 17;
+    private static final int MAX_POOLED_URLS = 4096;
+
     private Context mContext;
 
     /**
-     * Class structure for the listview elements and layout for each list item.
+     * Chars in the longest content ID, Integer.MIN_VALUE.
+     */
+    private static final int ID_CHARS = 11;
+
+    /**
+     * Class structure for the listview elements and layout for each list item.  The child views
+     * are looked up once when the holder is created.
+     *
+     * The text views are only updated when the text changes.  The ID is written into a buffer
+     * owned by the holder, which the ID view keeps showing, so binding a row allocates nothing.
+     */
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        final ImageView image;
+        final TextView title;
+        final TextView id;
+
+        private final char[] mIdChars = new char[ID_CHARS];
+        private int mBoundId;
+        private boolean mIdBound;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            image = (ImageView) itemView.findViewById(R.id.content_image);
+            title = (TextView) itemView.findViewById(R.id.content_title);
+            id = (TextView) itemView.findViewById(R.id.content_id);
+        }
+
+        void setId(int contentId) {
+            if (mIdBound && mBoundId == contentId) {
+                return;
+            }
+            int start = formatId(contentId, mIdChars);
+            id.setText(mIdChars, start, mIdChars.length - start);
+            mBoundId = contentId;
+            mIdBound = true;
+        }
+
+        void setTitle(char[] chars, int start, int length) {
+            if (!showsText(title, chars, start, length)) {
+                title.setText(chars, start, length);
+            }
+        }
+
+        void clear() {
+            id.setText("");
+            title.setText("");
+            mIdBound = false;
+        }
+    }
+
+    /**
+     * Writes the decimal digits of an ID at the end of the buffer.
+     *
+     * @return The index of the first char written.
+     */
+    static int formatId(int value, char[] buffer)
+    {
+        int pos = buffer.length;
+        long remaining = Math.abs((long) value);
+
+        do {
+            buffer[--pos] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+
+        if (value < 0) {
+            buffer[--pos] = '-';
+        }
+        return pos;
+    }
+
+    /**
+     * @return True if the view already shows the chars.
      */
-    public class ViewHolder {
-        ImageView image;
-        TextView title;
-        TextView id;
+    private static boolean showsText(TextView view, char[] chars, int start, int length)
+    {
+        CharSequence text = view.getText();
+
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -54,8 +168,12 @@ class ContentListDataAdapter extends BaseAdapter implements ContentServiceCallba
      * to sort the data structure by using the content ID is the natural sort order.
      *
      * Could not use lambdas because my phone is 6.0.1/API 23.  Java 8 requires API24.
+     *
+     * Declared static so that the network parser can build items without holding on to an
+     * adapter instance.  The list itself is kept in a ContentStore, so a ViewData is a detached
+     * copy of one row for callers that need a row object.
      */
-    public class ViewData implements Comparable<ViewData> {
+    public static class ViewData implements Comparable<ViewData> {
         String title;
         public String getTitle() { return title; }
         public void setTitle(String t) { title = t; }
@@ -70,16 +188,47 @@ class ContentListDataAdapter extends BaseAdapter implements ContentServiceCallba
 
         @Override
         public int compareTo(@NonNull ViewData o) {
-            return this.contentID - o.contentID;
+            return Integer.compare(this.contentID, o.contentID);
+        }
+
+        /**
+         * @return A detached copy of the row the accessor is on.
+         */
+        static ViewData of(ContentStore.Row row) {
+            ViewData data = new ViewData();
+            data.setId(row.getId());
+            data.setTitle(row.getTitle());
+            data.setImgUrl(row.getImgUrl());
+            return data;
         }
     }
 
-    private ArrayList<ViewData> mViewDataList;
+    /**
+     * The rows from the server.  A store is immutable, so it is replaced rather than edited.
+     * While a list is streaming in, mAssembler collects its chunks and mStore is the latest
+     * snapshot of it.
+     */
+    private ContentStore mStore = ContentStore.EMPTY;
+
+    /**
+     * Accessor used to read rows on the UI thread.
+     */
+    private final ContentStore.Row mRow = new ContentStore.Row();
+
+    /**
+     * Accessor used by the image prefetcher, which reads rows while mRow is in use by a bind.
+     */
+    private final ContentStore.Row mPrefetchRow = new ContentStore.Row();
 
     /**
      * Listview that complements the list adapter.
      */
-    private ListView mListView;
+    private RecyclerView mListView;
+
+    /**
+     * Loads the row images.  Its requests are paused while the list flings.
+     */
+    private ContentImageLoader mImageLoader;
 
     /**
      * mActivity is used to access the UI elements of the calling activity.  Could have casted
@@ -95,87 +244,336 @@ class ContentListDataAdapter extends BaseAdapter implements ContentServiceCallba
     private String mBaseUri;
     private String mPath;
 
+    /**
+     * Sources the list is merged from when it is split over more than one.
+     */
+    private List<ContentSource> mSources = Collections.emptyList();
+
+    /**
+     * True if mStore holds the list last fetched from the server, as opposed to nothing
+     * or the local test data.  Only then can a not modified response reuse it.
+     */
+    private boolean mHasNetworkContent;
+
+    /**
+     * Where the last list from the server is saved so the next launch can show it straight
+     * away.  Null if snapshots are off.  The file is read and written on the query thread.
+     */
+    private ContentSnapshotFile mSnapshotFile;
+
+    /**
+     * Uptime the activity started at, until the first row is shown.  The time from start to
+     * first row is kept in mStartupToFirstRowMillis.
+     */
+    private long mStartTime;
+    private long mStartupToFirstRowMillis = -1;
+    private boolean mRestoredFromSnapshot;
+
+    /**
+     * Version of mStore given by the server, or null if it sent none or mStore is not its list.
+     * With delta sync on, a refresh asks for the changes since it.  It is only kept in memory,
+     * so the first fetch after a launch is a whole list.  A new base URI, path or set of
+     * sources clears it, since the version is of the list at the old one.
+     */
+    private String mContentVersion;
+    private boolean mDeltaSync = true;
+
+    /**
+     * Non-null when paging is on.  Rows then come from a bounded window of pages instead of
+     * mStore, and pages are fetched as the user scrolls.
+     */
+    private PagedContentWindow mPagedWindow;
+
+    /**
+     * One service for the life of the adapter, so a refresh while a fetch is still running
+     * joins it instead of starting another.  Once mReleased is set nothing is fetched or shown.
+     */
+    private NetworkService mNetworkService;
+    private boolean mReleased;
+
+    /**
+     * Sorting and filtering run on ContentExecutors.query(), off the UI thread.  mQueryEngine is
+     * only touched on that thread and is rebuilt when the list generation changes.  mTitlePool
+     * is too, so the rebuilt engine reuses the titles of the one before.
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Executor mMainExecutor = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mMainHandler.post(command);
+        }
+    };
+    private ContentQueryEngine mQueryEngine;
+    private int mQueryEngineGeneration = -1;
+    private final ContentStringPool mTitlePool = new ContentStringPool(MAX_POOLED_TITLES);
+
+    /**
+     * Image URLs handed to the image loader, on the main thread.  A new generation starts with
+     * each fetch, so the URLs of rows that come back in a refresh are not built again.
+     */
+    private final ContentStringPool mUrlPool = new ContentStringPool(MAX_POOLED_URLS);
+
+    /**
+     * mListGeneration changes whenever mStore is replaced.  mQueryGeneration changes
+     * whenever a query is started, so a query still running for an older list or older text
+     * is cancelled and its result dropped.
+     */
+    private int mListGeneration;
+    private final AtomicInteger mQueryGeneration = new AtomicInteger();
+
+    /**
+     * Builds mStore from the chunks of a fetch, streaming a new list in or diffing a refresh
+     * against the list shown.  It is reset whenever mStore is replaced some other way.
+     */
+    private final ContentListAssembler mAssembler = new ContentListAssembler(
+            new AssemblerListener(), ContentExecutors.query(), mMainExecutor);
+
+    /**
+     * The rows shown are mDisplayRows, which index into mStore, or all of mStore if it is
+     * null.  mDescending shows them back to front, so switching direction does not
+     * sort again.  mDisplayQuery is the query mDisplayRows was built from.
+     */
+    private ContentQueryEngine.Query mQuery = new ContentQueryEngine.Query(
+            "", ContentQueryEngine.FilterType.SUBSTRING, ContentQueryEngine.SortKey.NONE);
+    private ContentQueryEngine.Query mDisplayQuery = mQuery;
+    private int[] mDisplayRows;
+    private boolean mDescending;
+    private boolean mRequestedDescending;
+
 
     /**
      * Constructor for the class.
      *
      * @param context The calling activity passes in its context.
+     * @param viewPool Pool of row views, from newViewPool.  It is owned by the activity, so it
+     *                 outlives the adapter and can be shared with other lists of the same rows.
      */
-    ContentListDataAdapter(Context context) {
+    ContentListDataAdapter(Context context, RecyclerView.RecycledViewPool viewPool) {
         mContext = context;
         mActivity = (Activity) context;
-        mListView = (ListView) mActivity.findViewById(R.id.content_listview);
+        ContentExecutors.setMainThread(Looper.getMainLooper().getThread());
+        mListView = (RecyclerView) mActivity.findViewById(R.id.content_listview);
+
+        // Rows prefetch while the UI thread is idle between frames.
+        LinearLayoutManager layoutManager = new LinearLayoutManager(mContext);
+        layoutManager.setItemPrefetchEnabled(true);
 
-        // array needs to be initialized first before setting the adapter.
-        mViewDataList = new ArrayList<ViewData>();
+        mListView.setLayoutManager(layoutManager);
+        mListView.setHasFixedSize(true);
+        mListView.setRecycledViewPool(viewPool);
 
+        mImageLoader = new ContentImageLoader(mContext);
+        mImageLoader.attachTo(mListView);
+        mImageLoader.setRowSource(new ContentImageLoader.RowSource() {
+            @Override
+            public int getCount() {
+                return getItemCount();
+            }
+
+            @Override
+            public String getImgUrl(int position) {
+                ContentStore.Row row = getRowAt(position, mPrefetchRow);
+                return row != null && row.hasImgUrl() ? row.getImgUrl(mUrlPool) : null;
+            }
+        });
+
+        setHasStableIds(true);
         mListView.setAdapter(this);
     }
 
     @Override
-    public int getCount() {
-        return mViewDataList.size();
+    public int getItemCount() {
+        if (mPagedWindow != null) {
+            return mPagedWindow.getCount();
+        }
+        if (mDisplayRows != null) {
+            return mDisplayRows.length;
+        }
+        return mStore.size();
     }
 
+    /**
+     * Content IDs are unique in the list, since duplicates are dropped as the list is taken
+     * in, so they serve as stable IDs.
+     *
+     * With paging on, the ID is the position.  Rows stay in server order while paging, and a
+     * placeholder keeps its ID when its page arrives, and again when the page is evicted.
+     * Pages are fetched separately, so a content ID may repeat across them.
+     */
     @Override
-    public Object getItem(int i)
+    public long getItemId(int position)
+    {
+        if (mPagedWindow != null) {
+            return position;
+        }
+        return getRowAt(position, mRow).getId();
+    }
+
+    /**
+     * Moves the accessor to the row at the position.
+     *
+     * @return The accessor, or null if paging is on and the page of the row is not loaded.
+     */
+    private ContentStore.Row getRowAt(int position, ContentStore.Row row)
+    {
+        if (mPagedWindow != null) {
+            return mPagedWindow.get(position, row);
+        }
+        if (mDisplayRows == null) {
+            return row.moveTo(mStore, position);
+        }
+        if (mDescending) {
+            position = mDisplayRows.length - 1 - position;
+        }
+        return row.moveTo(mStore, mDisplayRows[position]);
+    }
+
+    /**
+     * @return True if every row of mStore is shown in list order, so list positions are view
+     *         positions.
+     */
+    private boolean isShowingAllRows()
     {
-        return null;
+        return mDisplayRows == null;
+    }
+
+    /**
+     * Must be called whenever mStore is replaced.  All rows are shown in list order until
+     * the active query is run again, and any query still running is cancelled.
+     */
+    private void onListEdited()
+    {
+        mListGeneration++;
+        mQueryGeneration.incrementAndGet();
+        mDisplayRows = null;
+        mDisplayQuery = new ContentQueryEngine.Query(
+                "", mQuery.filterType, ContentQueryEngine.SortKey.NONE);
+        mDescending = false;
+
+        if (mImageLoader != null) {
+            mImageLoader.resetPrefetch();
+        }
     }
 
     @Override
-    public long getItemId(int i)
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType)
     {
-        return 0;
+        View view = mActivity.getLayoutInflater().inflate(R.layout.list_item, parent, false);
+        return new ViewHolder(view);
     }
 
     @Override
-    public View getView(int position, View convertView, ViewGroup parent)
+    public void onBindViewHolder(ViewHolder holder, int position)
+    {
+        long start = ContentMetrics.start();
+        bind(holder, position);
+        ContentMetrics.end(ContentMetrics.Span.BIND, start);
+    }
+
+    private void bind(ViewHolder holder, int position)
     {
-        ViewHolder holder;
+        // Binding is what shows a row, so it is what fetches the pages around it.
+        if (mPagedWindow != null) {
+            mPagedWindow.onRowShown(position);
+        }
 
-        if (convertView == null) {
-            holder = new ViewHolder();
-            convertView = mActivity.getLayoutInflater().inflate(R.layout.list_item, null);
+        ContentStore.Row row = getRowAt(position, mRow);
 
-            convertView.setTag(holder);
-        } else {
-            holder = (ViewHolder) convertView.getTag();
+        if (row == null) {
+            holder.clear();
+            mImageLoader.loadPlaceholder(holder.image);
+            return;
         }
 
-        holder.id = (TextView) convertView.findViewById(R.id.content_id);
-        holder.image = (ImageView) convertView.findViewById(R.id.content_image);
-        holder.title = (TextView) convertView.findViewById(R.id.content_title);
+        if (mStartTime != 0) {
+            reportFirstRow();
+        }
 
-        holder.id.setText(String.valueOf(mViewDataList.get(position).getId()));
-        holder.title.setText(mViewDataList.get(position).getTitle());
+        holder.setId(row.getId());
+        holder.setTitle(row.getTitleBuffer(), row.getTitleStart(), row.getTitleLength());
 
-        // Use Picasso to load the image to imageview.  Use a placeholder image where
-        // necessary.
-        if ((mViewDataList.get(position).getImgUrl() != null && mViewDataList.get(position).getImgUrl().length() > 0)) {
-            Picasso.with(mContext).load(mViewDataList.get(position).getImgUrl()).placeholder(R.drawable.placeholder).into(holder.image);
-        } else {
-            Picasso.with(mContext).load(R.drawable.placeholder).into(holder.image);
+        // Use Picasso to load the image to imageview, decoded at the size of the view.  Use a
+        // placeholder image where necessary.  A row rebound in place with the same image, as
+        // after a title change or a refresh, keeps the image or the request it has.
+        if (!row.hasImgUrl()) {
+            mImageLoader.loadPlaceholder(holder.image);
+        } else if (!row.imgUrlEquals(mImageLoader.getShownUrl(holder.image))) {
+            mImageLoader.load(row.getImgUrl(mUrlPool), holder.image);
         }
+        mImageLoader.onBind(position);
+    }
 
-        return convertView;
+    @Override
+    public void onViewRecycled(ViewHolder holder)
+    {
+        mImageLoader.onViewRecycled(holder.image);
+    }
+
+    /**
+     * @return A pool sized for the rows of this adapter.
+     */
+    static RecyclerView.RecycledViewPool newViewPool()
+    {
+        RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        pool.setMaxRecycledViews(0, MAX_RECYCLED_VIEWS);
+        return pool;
     }
 
+    /**
+     * @return The image loader of the list, for its memory cache hit rate.  Decode counters
+     *         are in ContentImageLoader.getStats().
+     */
+    ContentImageLoader getImageLoader() { return mImageLoader; }
+
     /**
      * mBaseUri needs to be set before fetch can be called.  This format falls inline with
      * retrofit formats.  Getter and setter are implemented here.
      */
 
-    public void setBaseUri(String uri) { mBaseUri = uri; }
+    public void setBaseUri(String uri)
+    {
+        if (!TextUtils.equals(uri, mBaseUri)) {
+            mContentVersion = null;
+        }
+        mBaseUri = uri;
+    }
+
     public String getBaseUri() { return mBaseUri; }
 
     /**
      * mPath needs to be set before fetch can be called.  This format falls inline with
      * retrofit formats.  Getter and setter are implemented here.
      */
-    public void setServerPath(String url) { mPath = url; }
+    public void setServerPath(String url)
+    {
+        if (!TextUtils.equals(url, mPath)) {
+            mContentVersion = null;
+        }
+        mPath = url;
+    }
+
     public String getServerPath() { return mPath; }
 
+    /**
+     * Sets the sources the list is fetched from.  With more than one, they are fetched in
+     * parallel and their rows are merged into one list by content ID.  The first source is also
+     * set as the base URI and path, which paging reads from.
+     */
+    public void setSources(List<ContentSource> sources)
+    {
+        if (!sources.equals(mSources)) {
+            mContentVersion = null;
+        }
+        mSources = new ArrayList<>(sources);
+
+        if (!mSources.isEmpty()) {
+            setBaseUri(mSources.get(0).getBaseUri());
+            setServerPath(mSources.get(0).getPath());
+        }
+    }
+
+    public List<ContentSource> getSources() { return Collections.unmodifiableList(mSources); }
+
 
     /**
      * This is a network call to the server to retrieve a list of content.
@@ -185,44 +583,223 @@ class ContentListDataAdapter extends BaseAdapter implements ContentServiceCallba
      */
     public void getList()
     {
-        NetworkService net = new NetworkService(mContext, this);
+        if (mReleased) {
+            return;
+        }
+
+        if (mNetworkService == null) {
+            mNetworkService = new NetworkService(mContext, this);
+        }
+
+        mNetworkService.setBaseUri(mBaseUri);
+        mNetworkService.setPath(mPath);
+        mNetworkService.setSources(mSources);
+
+        if (mPagedWindow != null) {
+            // Pages still in flight are of the list before.
+            mNetworkService.cancelPages();
+            mPagedWindow.reset();
+            this.notifyDataSetChanged();
+            return;
+        }
+
+        ContentMetrics.recordPool(ContentMetrics.Pool.URL, mUrlPool);
+        mUrlPool.nextGeneration();
+
+        mNetworkService.setHasContent(mHasNetworkContent);
+        mNetworkService.setContentVersion(mDeltaSync && mHasNetworkContent ? mContentVersion : null);
+        mNetworkService.fetchContentList();
+    }
+
+    /**
+     * Cancels every request in flight and stops anything more from being delivered to this
+     * adapter.  Called when the activity is destroyed.  The adapter cannot be used afterwards.
+     */
+    public void release()
+    {
+        mReleased = true;
+
+        if (mNetworkService != null) {
+            mNetworkService.cancel();
+            mNetworkService = null;
+        }
+
+        mAssembler.reset();
+        mQueryGeneration.incrementAndGet();
+        mImageLoader.cancelAll();
+    }
+
+    /**
+     * Turns paging on or off.  With paging on, getList fetches the list a page at a time and
+     * only a window of pages around the visible rows is kept in memory.  Sorting is not
+     * available in paging mode since rows are shown in server order.
+     *
+     * @param enabled True to turn paging on.
+     * @param pageSize Number of items per page.
+     * @param maxResidentPages Maximum number of pages kept in memory.
+     */
+    public void setPagingEnabled(boolean enabled, int pageSize, int maxResidentPages)
+    {
+        if (enabled) {
+            mPagedWindow = new PagedContentWindow(pageSize, maxResidentPages, mPageLoader);
+        } else {
+            mPagedWindow = null;
+        }
 
-        net.setBaseUri(mBaseUri);
-        net.setPath(mPath);
-        net.fetchContentList();
+        // Whatever is in flight was requested for the other mode.
+        if (mNetworkService != null) {
+            mNetworkService.cancel();
+            mNetworkService = null;
+        }
+
+        mStore = ContentStore.EMPTY;
+        mAssembler.reset();
+        onListEdited();
+        mHasNetworkContent = false;
+        mContentVersion = null;
+        this.notifyDataSetChanged();
     }
 
+    public boolean isPagingEnabled() { return mPagedWindow != null; }
+
+    private final PagedContentWindow.PageLoader mPageLoader = new PagedContentWindow.PageLoader() {
+        @Override
+        public void loadPage(int generation, int offset, int limit) {
+            if (mNetworkService != null) {
+                mNetworkService.fetchContentPage(generation, offset, limit);
+            } else {
+                mPagedWindow.onPageFailed(generation, offset);
+            }
+        }
+    };
+
     /**
-     * setList will overwrite the existing list of items.  If format of JSON object is not
-     * known, this method call will be ignored.
+     * Callback method from the network when a page of the content list is retrieved.  Only
+     * the rows of the page and any change in the row count are announced to the list.  A page
+     * requested before the window was last reset is dropped.
+     *
+     * @param generation Generation of the window the page was requested in.
+     * @param offset Offset the page was requested at.
+     * @param page Items of the page.
+     */
+    public void onReceivePage(int generation, int offset, ContentStore page)
+    {
+        ContentExecutors.checkMainThread("onReceivePage");
+
+        if (mPagedWindow == null) {
+            return;
+        }
+
+        int before = mPagedWindow.getCount();
+        if (!mPagedWindow.onPageLoaded(generation, offset, page)) {
+            Log.d(TAG, "Dropping page at offset " + offset + " requested before the last refresh.");
+            return;
+        }
+        int after = mPagedWindow.getCount();
+
+        int changedEnd = Math.min(offset + page.size(), Math.min(before, after));
+        if (changedEnd > offset) {
+            this.notifyItemRangeChanged(offset, changedEnd - offset);
+        }
+
+        if (after > before) {
+            this.notifyItemRangeInserted(before, after - before);
+        } else if (after < before) {
+            this.notifyItemRangeRemoved(after, before - after);
+        }
+    }
+
+    /**
+     * If a page cannot be retrieved it is requested again the next time one of its rows is
+     * shown.
+     */
+    public void onReceivePageError(int generation, int offset, int errorCode)
+    {
+        Log.e(TAG, "Could not retrieve page at offset " + offset + ".  Error " + errorCode + " received.");
+
+        if (mPagedWindow != null) {
+            mPagedWindow.onPageFailed(generation, offset);
+        }
+    }
+
+    /**
+     * setList will overwrite the existing list of items.  Entries are read by the same rules as
+     * ContentLenientParser:  an entry without a usable ID is dropped, a missing title or image
+     * is left empty, and the defects are logged once for the whole list.
      *
      * @param jsonArray: takes in a JSON array to parse.
      * @return Nothing
      */
     public void setList(JSONArray jsonArray)
     {
+        long start = ContentMetrics.start();
         clearList();
 
+        ContentStore.Builder builder = new ContentStore.Builder(jsonArray.length());
+        int[] defects = new int[ContentLenientParser.Defect.values().length];
+
         for (int i=0; i<jsonArray.length(); i++)
         {
-            try {
-                JSONObject item = jsonArray.getJSONObject(i);
-
-                ViewData data = new ViewData();
+            JSONObject item = jsonArray.optJSONObject(i);
+            if (item == null) {
+                defects[ContentLenientParser.Defect.NOT_AN_OBJECT.ordinal()]++;
+                continue;
+            }
 
-                data.setId(Integer.parseInt(item.getString("id")));
-                data.setImgUrl(item.getString("image"));
-                data.setTitle(item.getString("title"));
+            Object id = item.opt("id");
+            if (id == null || id == JSONObject.NULL) {
+                defects[ContentLenientParser.Defect.MISSING_ID.ordinal()]++;
+                continue;
+            }
 
-                mViewDataList.add(data);
-            } catch (JSONException e) {
-                Log.e(TAG, "Error in parsing JSON object.");
-                //e.printStackTrace();
+            int parsedId;
+            try {
+                parsedId = Integer.parseInt(id.toString());
+            } catch (NumberFormatException e) {
+                defects[ContentLenientParser.Defect.BAD_ID.ordinal()]++;
+                continue;
             }
 
+            builder.add(parsedId,
+                    optText(item, "title", ContentLenientParser.Defect.MISSING_TITLE, defects),
+                    optText(item, "image", ContentLenientParser.Defect.MISSING_IMAGE, defects));
+        }
+
+        String summary = ContentLenientParser.summarize(defects);
+        if (!summary.isEmpty()) {
+            Log.w(TAG, "Malformed list items:  " + summary);
         }
 
+        ContentMerger merger = new ContentMerger();
+        mStore = merger.add(builder.build().trimmed());
+        mAssembler.reset();
+        if (merger.getDuplicateCount() > 0) {
+            Log.w(TAG, "Dropped " + merger.getDuplicateCount() + " items with a repeated ID.");
+        }
+        onListEdited();
+        ContentMetrics.end(ContentMetrics.Span.BUILD, start);
+
         this.notifyDataSetChanged();
+        runQuery();
+    }
+
+    /**
+     * @return The string or number value of the field, or an empty string if it is missing,
+     *         null or of another type.  The defect is counted in defects.
+     */
+    private static String optText(JSONObject item, String name, ContentLenientParser.Defect missing,
+                                  int[] defects)
+    {
+        Object value = item.opt(name);
+        if (value instanceof String || value instanceof Number) {
+            return value.toString();
+        }
+        if (value == null || value == JSONObject.NULL) {
+            defects[missing.ordinal()]++;
+        } else {
+            defects[ContentLenientParser.Defect.WRONG_TYPE.ordinal()]++;
+        }
+        return "";
     }
 
     /**
@@ -232,18 +809,316 @@ class ContentListDataAdapter extends BaseAdapter implements ContentServiceCallba
      */
     public void clearList()
     {
-        mViewDataList.clear();
+        mStore = ContentStore.EMPTY;
+        mAssembler.reset();
+        onListEdited();
+        mHasNetworkContent = false;
+        mContentVersion = null;
         this.notifyDataSetChanged();
     }
 
     /**
-     * Callback method from the network when a list of content is retrieved.
+     * Sets the file the list is saved to after each fetch, and restored from by
+     * restoreSnapshot.  Null turns snapshots off.
+     */
+    public void setSnapshotFile(File file)
+    {
+        mSnapshotFile = file == null ? null : new ContentSnapshotFile(file);
+    }
+
+    /**
+     * Shows the list saved by the last fetch, if there is one and nothing has been shown yet.
+     * The file is read on the query thread.  A damaged snapshot is deleted.
+     *
+     * @param whenDone Run on the UI thread once the snapshot is shown or found missing.  May be
+     *                 null.
+     */
+    public void restoreSnapshot(final Runnable whenDone)
+    {
+        final ContentSnapshotFile snapshotFile = mSnapshotFile;
+        final int listGeneration = mListGeneration;
+
+        if (snapshotFile == null || mPagedWindow != null) {
+            if (whenDone != null) {
+                whenDone.run();
+            }
+            return;
+        }
+
+        ContentExecutors.query().execute(new Runnable() {
+            @Override
+            public void run() {
+                ContentStore store = null;
+                long start = SystemClock.uptimeMillis();
+
+                try {
+                    // The file is trusted no more than a response, so repeated IDs are dropped.
+                    store = new ContentMerger().add(snapshotFile.read());
+                    Log.d(TAG, "Read snapshot of " + store.size() + " items in "
+                            + (SystemClock.uptimeMillis() - start) + " ms.");
+                } catch (FileNotFoundException e) {
+                    Log.d(TAG, "No content snapshot.");
+                } catch (IOException e) {
+                    Log.e(TAG, "Discarding damaged content snapshot:  " + e.getMessage());
+                    snapshotFile.delete();
+                }
+
+                final ContentStore restored = store;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mReleased) {
+                            return;
+                        }
+
+                        // Anything shown since the read started is newer than the snapshot.
+                        if (restored != null && restored.size() > 0 && listGeneration == mListGeneration
+                                && mStore.size() == 0 && mPagedWindow == null) {
+                            mStore = restored;
+                            mAssembler.reset();
+                            onListEdited();
+                            mHasNetworkContent = true;
+                            mRestoredFromSnapshot = true;
+                            notifyDataSetChanged();
+                            runQuery();
+                        }
+                        if (whenDone != null) {
+                            whenDone.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Saves the current list on the query thread, replacing the previous snapshot.
+     */
+    private void saveSnapshot()
+    {
+        final ContentSnapshotFile snapshotFile = mSnapshotFile;
+        final ContentStore store = mStore;
+
+        if (snapshotFile == null) {
+            return;
+        }
+
+        ContentExecutors.query().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    snapshotFile.write(store);
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not save content snapshot:  " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts timing from launch to the first row shown.
+     *
+     * @param uptimeMillis SystemClock.uptimeMillis() when the activity was created.
+     */
+    public void markStartTime(long uptimeMillis)
+    {
+        mStartTime = uptimeMillis;
+        mStartupToFirstRowMillis = -1;
+        mRestoredFromSnapshot = false;
+    }
+
+    /**
+     * @return Milliseconds from markStartTime to the first row shown, or -1 if no row has been
+     *         shown yet.
+     */
+    public long getStartupToFirstRowMillis() { return mStartupToFirstRowMillis; }
+
+    /**
+     * @return True if the first rows shown came from the snapshot.
+     */
+    public boolean isRestoredFromSnapshot() { return mRestoredFromSnapshot; }
+
+    private void reportFirstRow()
+    {
+        mStartupToFirstRowMillis = SystemClock.uptimeMillis() - mStartTime;
+        mStartTime = 0;
+
+        Log.i(TAG, "Startup to first row:  " + mStartupToFirstRowMillis + " ms, "
+                + (mRestoredFromSnapshot ? "from snapshot." : "no snapshot."));
+    }
+
+    /**
+     * Turns incremental updates on or off.  Getter and setter are implemented here.
+     */
+    public void setIncrementalUpdates(boolean incremental) { mAssembler.setIncrementalUpdates(incremental); }
+    public boolean getIncrementalUpdates() { return mAssembler.getIncrementalUpdates(); }
+
+    /**
+     * Turns delta sync on or off.  When on and the server versions its list, a refresh fetches
+     * only the changes since the list shown.  Getter and setter are implemented here.
+     */
+    public void setDeltaSync(boolean deltaSync) { mDeltaSync = deltaSync; }
+    public boolean getDeltaSync() { return mDeltaSync; }
+
+    /**
+     * Callback method from the network when a chunk of the content list is retrieved.  The
+     * first chunk replaces whatever is currently shown, later chunks are appended so rows
+     * render before the whole payload has been downloaded.
+     *
+     * If incremental updates are on and a list is already shown, the chunks are collected
+     * instead and the complete list is diffed against the current one.
      *
-     * @param arr An array of JSON objects that contains the content.
+     * @param chunk Items decoded from the stream since the previous chunk.
+     * @param first True if this is the first chunk of a new list.
+     * @param last True if no more chunks will follow for this list.
      */
-    public void onReceiveContent(JSONArray arr)
+    public void onReceiveContent(ContentStore chunk, boolean first, boolean last)
     {
-        setList(arr);
+        ContentExecutors.checkMainThread("onReceiveContent");
+
+        long start = ContentMetrics.start();
+        receiveContent(chunk, first, last);
+        ContentMetrics.end(ContentMetrics.Span.BUILD, start);
+    }
+
+    private void receiveContent(ContentStore chunk, boolean first, boolean last)
+    {
+        if (first) {
+            // The version of the list shown is not the version of the one on its way.
+            mContentVersion = null;
+        }
+        mAssembler.onChunk(mStore, chunk, first, last);
+    }
+
+    /**
+     * Shows the list mAssembler builds.  A streamed list replaces the list shown and grows as
+     * chunks arrive.  A refresh is shown once its diff is done, passing each operation on to the
+     * list view so only the affected rows are rebound, or rebinding the whole list if it is
+     * sorted or filtered.
+     */
+    private class AssemblerListener implements ContentListAssembler.Listener {
+        @Override
+        public void onListStarted(ContentStore list) {
+            mStore = list;
+            onListEdited();
+            mHasNetworkContent = false;
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public void onRowsAppended(ContentStore list, int start, int count) {
+            mStore = list;
+            onListEdited();
+            notifyItemRangeInserted(start, count);
+        }
+
+        @Override
+        public void onListComplete(ContentStore list) {
+            mStore = list;
+            mHasNetworkContent = true;
+            saveSnapshot();
+            runQuery();
+        }
+
+        @Override
+        public void onRefreshComplete(ContentStore list, ContentListDiff diff) {
+            if (mReleased) {
+                return;
+            }
+
+            if (diff != null) {
+                diff.dispatch(mDiffCallback);
+                Log.d(TAG, "Incremental update:  inserted=" + diff.getInsertedCount()
+                        + ", removed=" + diff.getRemovedCount() + ", moved=" + diff.getMovedCount()
+                        + ", changed=" + diff.getChangedCount());
+            } else {
+                Log.d(TAG, "List is sorted or filtered, rebinding all " + list.size() + " items.");
+            }
+
+            mStore = list;
+            onListEdited();
+            if (diff == null) {
+                notifyDataSetChanged();
+            }
+
+            mHasNetworkContent = true;
+            saveSnapshot();
+            runQuery();
+        }
+
+        @Override
+        public boolean isDiffWanted() {
+            return isShowingAllRows();
+        }
+    }
+
+    private final ContentListDiff.Callback mDiffCallback = new ContentListDiff.Callback() {
+        @Override
+        public void onInserted(int position) { notifyItemInserted(position); }
+
+        @Override
+        public void onRemoved(int position) { notifyItemRemoved(position); }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) { notifyItemMoved(fromPosition, toPosition); }
+
+        @Override
+        public void onChanged(int position) { notifyItemChanged(position); }
+    };
+
+    /**
+     * Callback method from the network with the version of the list just received.  A refresh
+     * can then ask for only the changes since it.
+     */
+    public void onReceiveVersion(String version)
+    {
+        mContentVersion = version;
+    }
+
+    /**
+     * Callback method from the network with the changes since the version of the current list.
+     * Only the rows that changed are copied from the delta, and only they are rebound.
+     */
+    public void onReceiveDelta(ContentDelta delta)
+    {
+        ContentExecutors.checkMainThread("onReceiveDelta");
+
+        if (delta.isEmpty()) {
+            Log.d(TAG, "Content list unchanged at version " + delta.getVersion() + ".");
+            mContentVersion = delta.getVersion();
+            return;
+        }
+
+        long start = ContentMetrics.start();
+        boolean direct = isShowingAllRows();
+        int size = mStore.size();
+
+        mStore = delta.applyTo(mStore, direct ? mDiffCallback : null);
+        mAssembler.reset();
+        onListEdited();
+        if (!direct) {
+            this.notifyDataSetChanged();
+        }
+        ContentMetrics.end(ContentMetrics.Span.BUILD, start);
+
+        mContentVersion = delta.getVersion();
+        mHasNetworkContent = true;
+
+        Log.d(TAG, "Applied delta to version " + mContentVersion + ":  upserts="
+                + delta.getUpsertCount() + ", removed=" + delta.getRemovedCount()
+                + ", items " + size + " -> " + mStore.size());
+
+        saveSnapshot();
+        runQuery();
+    }
+
+    /**
+     * Callback method from the network when the content list has not changed since the last
+     * fetch.  The current list is kept as is.
+     */
+    public void onContentNotModified()
+    {
+        Log.d(TAG, "Content list not modified, keeping " + mStore.size() + " items.");
     }
 
     /**
@@ -261,28 +1136,185 @@ class ContentListDataAdapter extends BaseAdapter implements ContentServiceCallba
      * filterList will filter the list according to the enum type FilterType.
      * FilterType is used to control what types of filtering can be done.
      *
+     * Sorts by content ID.  Same as sortBy(SortKey.ID, ascending).
+     *
      * @param ascending If true, then list is sorted in ascending order.  Else list
      *                  is sorted in descending order.
      */
     public void sort(Boolean ascending)
     {
-        if (ascending) {
-            Collections.sort(mViewDataList);
-        } else {
-            // Only good for API24 and above devices.  Cannot use on 6.0.1 device.
-            //Collections.sort(mViewDataList, Comparator.reverseOrder());
-            Collections.sort(mViewDataList, new Comparator<ViewData>() {
-                @Override
-                public int compare(ViewData o1, ViewData o2) {
-                    return o2.compareTo(o1);
+        sortBy(ContentQueryEngine.SortKey.ID, ascending);
+    }
+
+    /**
+     * Sorts the list on a background thread using prebuilt indexes, keeping the current filter.
+     * Once sorted by a key, switching between ascending and descending only changes which end
+     * of the result is shown first.
+     *
+     * @param key Key to sort by.  NONE restores server order.
+     * @param ascending If true, then list is sorted in ascending order.
+     */
+    public void sortBy(ContentQueryEngine.SortKey key, boolean ascending)
+    {
+        if (mPagedWindow != null) {
+            Log.w(TAG, "Sorting is not available in paging mode.");
+            return;
+        }
+
+        mRequestedDescending = !ascending && key != ContentQueryEngine.SortKey.NONE;
+        mQuery = new ContentQueryEngine.Query(mQuery.text, mQuery.filterType, key);
+
+        if (mQuery.equals(mDisplayQuery)) {
+            if (mDescending != mRequestedDescending) {
+                mDescending = mRequestedDescending;
+                mImageLoader.resetPrefetch();
+                this.notifyDataSetChanged();
+            }
+            return;
+        }
+
+        runQuery();
+    }
+
+    /**
+     * Filters the list by title as the user types.  Matching is case-insensitive.  The filter
+     * runs on a background thread, and a new call cancels a filter that has not finished.
+     *
+     * @param text Text to match.  Empty shows all rows.
+     */
+    public void filter(String text)
+    {
+        if (mPagedWindow != null) {
+            Log.w(TAG, "Filtering is not available in paging mode.");
+            return;
+        }
+
+        mQuery = new ContentQueryEngine.Query(text, mQuery.filterType, mQuery.sortKey);
+
+        if (!mQuery.equals(mDisplayQuery)) {
+            runQuery();
+        }
+    }
+
+    /**
+     * Sets whether the filter text must match the start of the title or anywhere in it.
+     */
+    public void setFilterType(ContentQueryEngine.FilterType type)
+    {
+        mQuery = new ContentQueryEngine.Query(mQuery.text, type, mQuery.sortKey);
+
+        if (!mQuery.equals(mDisplayQuery)) {
+            runQuery();
+        }
+    }
+
+    public ContentQueryEngine.FilterType getFilterType() { return mQuery.filterType; }
+
+    /**
+     * Runs the active query against the current list.  Short lists are queried in place.
+     * Longer lists are queried on the query thread and the result is posted back, unless a
+     * newer query or a list edit has happened in the meantime.
+     */
+    private void runQuery()
+    {
+        if (mPagedWindow != null) {
+            return;
+        }
+
+        final int queryGeneration = mQueryGeneration.incrementAndGet();
+        final int listGeneration = mListGeneration;
+        final ContentQueryEngine.Query query = mQuery;
+        final boolean descending = mRequestedDescending;
+
+        if (query.isTrivial()) {
+            publishQuery(queryGeneration, listGeneration, query, null, false);
+            return;
+        }
+
+        // A store never changes, so it can be read on the query thread as it is.
+        final ContentStore snapshot = mStore;
+
+        if (snapshot.size() < BACKGROUND_QUERY_THRESHOLD) {
+            int[] rows = new ContentQueryEngine(snapshot).run(query, null);
+            publishQuery(queryGeneration, listGeneration, query, rows, descending);
+            return;
+        }
+
+        ContentExecutors.query().execute(new Runnable() {
+            @Override
+            public void run() {
+                ContentQueryEngine.Cancellation cancellation = new ContentQueryEngine.Cancellation() {
+                    @Override
+                    public boolean isCancelled() {
+                        return mQueryGeneration.get() != queryGeneration;
+                    }
+                };
+
+                if (cancellation.isCancelled()) {
+                    return;
                 }
-            });
+
+                if (mQueryEngine == null || mQueryEngineGeneration != listGeneration) {
+                    ContentMetrics.recordPool(ContentMetrics.Pool.TITLE, mTitlePool);
+                    mTitlePool.nextGeneration();
+                    mQueryEngine = new ContentQueryEngine(snapshot, mTitlePool);
+                    mQueryEngineGeneration = listGeneration;
+                }
+
+                long start = ContentMetrics.start();
+                final int[] rows = mQueryEngine.run(query, cancellation);
+                ContentMetrics.end(ContentMetrics.Span.SORT, start);
+                if (rows == null) {
+                    return;
+                }
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        publishQuery(queryGeneration, listGeneration, query, rows, descending);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Shows a query result on the main thread, unless it is stale.
+     */
+    private void publishQuery(int queryGeneration, int listGeneration, ContentQueryEngine.Query query,
+                              int[] rows, boolean descending)
+    {
+        if (queryGeneration != mQueryGeneration.get() || listGeneration != mListGeneration) {
+            Log.d(TAG, "Dropping stale query result.");
+            return;
         }
 
+        mDisplayRows = query.isTrivial() ? null : rows;
+        mDisplayQuery = query;
+        mDescending = descending;
+        mImageLoader.resetPrefetch();
         this.notifyDataSetChanged();
     }
 
+    /**
+     * @return The rows in the order they are shown.  Empty in paging mode.
+     */
     public List<ViewData> getAllData() {
-        return Collections.unmodifiableList(mViewDataList);
+        if (mPagedWindow != null) {
+            return Collections.emptyList();
+        }
+        return new DisplayList();
+    }
+
+    /**
+     * Read only view of the rows as they are shown.  Each row is copied out of the store when
+     * it is read.
+     */
+    private class DisplayList extends AbstractList<ViewData> {
+        @Override
+        public ViewData get(int index) { return ViewData.of(getRowAt(index, new ContentStore.Row())); }
+
+        @Override
+        public int size() { return getItemCount(); }
     }
 }
@@ -0,0 +1,389 @@
+package com.lausy.contentretriever;
+
+import android.content.ComponentCallbacks2;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * <h1>ContentLruCache</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Memory cache bounded by the total size of its values rather than their number.  When a put
+ * takes the cache over its limit, the least recently used values are evicted until it fits.
+ *
+ * Values can be pinned while they are on screen.  Pinned values are evicted only after every
+ * unpinned one, so scrolling new rows in does not push out the images still being shown.  Pins
+ * are counted, since the same value can be shown by more than one view, and are kept by pin
+ * key, which subclasses can derive from the cache key.
+ *
+ * Unpinned and pinned values are kept on two LRU lists of their own, and the values of a pin key
+ * are linked together, so pinning moves only the values of that key and an eviction takes the
+ * head of a list.  The pin key of a value is derived once, when it is put, so evicting does not
+ * allocate.  A value that is pinned or unpinned counts as used at that moment.
+ *
+ * The cache counts hits, misses, puts and evictions, and shrinks on onTrimMemory.  All methods
+ * are synchronized, so it can be shared by the main thread and loader threads.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+abstract class ContentLruCache<V> {
+
+    /**
+     * A cached value.  It is on one of the two LRU lists, and on the list of its pin key.
+     */
+    private static final class Entry<V> {
+        final String key;
+        final PinKey<V> pinKey;
+        V value;
+        int size;
+
+        Entry<V> prev;
+        Entry<V> next;
+        Entry<V> prevOfKey;
+        Entry<V> nextOfKey;
+
+        Entry(String key, PinKey<V> pinKey) {
+            this.key = key;
+            this.pinKey = pinKey;
+        }
+    }
+
+    /**
+     * A pin key, with its pin count and the values under it.  It is kept while it has either.
+     */
+    private static final class PinKey<V> {
+        final String key;
+        int pins;
+        Entry<V> first;
+
+        PinKey(String key) {
+            this.key = key;
+        }
+    }
+
+    private final HashMap<String, Entry<V>> mMap = new HashMap<>();
+    private final HashMap<String, PinKey<V>> mPinKeys = new HashMap<>();
+
+    /**
+     * Heads of the circular LRU lists, least recently used first.
+     */
+    private final Entry<V> mUnpinned = newList();
+    private final Entry<V> mPinned = newList();
+    private int mPinnedKeys;
+
+    private final long mMaxBytes;
+    private long mBytes;
+
+    private long mHits;
+    private long mMisses;
+    private long mPuts;
+    private long mEvictions;
+    private long mEvictedBytes;
+
+    ContentLruCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return Size of the value in bytes.  It must not change while the value is cached.
+     */
+    protected abstract int sizeOf(V value);
+
+    /**
+     * @return Key under which the value with the cache key is pinned.  The cache key itself by
+     *         default.  Called once per put of a new key.
+     */
+    protected String pinKeyOf(String key)
+    {
+        return key;
+    }
+
+    synchronized V get(String key)
+    {
+        Entry<V> entry = mMap.get(key);
+
+        if (entry == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        unlink(entry);
+        append(entry.pinKey.pins > 0 ? mPinned : mUnpinned, entry);
+        return entry.value;
+    }
+
+    /**
+     * Caches the value, evicting others if needed.  A value larger than the whole cache is not
+     * cached, and the value it replaces is dropped.
+     */
+    synchronized void put(String key, V value)
+    {
+        if (key == null || value == null) {
+            throw new NullPointerException("key and value must not be null");
+        }
+
+        mPuts++;
+        int size = sizeOf(value);
+        Entry<V> entry = mMap.get(key);
+
+        if (size > mMaxBytes) {
+            if (entry != null) {
+                removeEntry(entry);
+            }
+            return;
+        }
+
+        if (entry != null) {
+            mBytes -= entry.size;
+            unlink(entry);
+        } else {
+            String pinKeyName = pinKeyOf(key);
+            PinKey<V> pinKey = mPinKeys.get(pinKeyName);
+            if (pinKey == null) {
+                pinKey = new PinKey<>(pinKeyName);
+                mPinKeys.put(pinKeyName, pinKey);
+            }
+            entry = new Entry<>(key, pinKey);
+            linkToKey(entry);
+            mMap.put(key, entry);
+        }
+
+        entry.value = value;
+        entry.size = size;
+        mBytes += size;
+        append(entry.pinKey.pins > 0 ? mPinned : mUnpinned, entry);
+        trimTo(mMaxBytes);
+    }
+
+    synchronized V remove(String key)
+    {
+        Entry<V> entry = mMap.get(key);
+
+        if (entry == null) {
+            return null;
+        }
+        removeEntry(entry);
+        return entry.value;
+    }
+
+    /**
+     * Removes every value under the pin key.
+     */
+    synchronized void removePinKey(String pinKey)
+    {
+        PinKey<V> group = mPinKeys.get(pinKey);
+
+        while (group != null && group.first != null) {
+            removeEntry(group.first);
+        }
+    }
+
+    synchronized void clear()
+    {
+        mMap.clear();
+        mUnpinned.next = mUnpinned;
+        mUnpinned.prev = mUnpinned;
+        mPinned.next = mPinned;
+        mPinned.prev = mPinned;
+        mBytes = 0;
+
+        // Pins outlive the values, as they do an eviction.
+        Iterator<PinKey<V>> it = mPinKeys.values().iterator();
+        while (it.hasNext()) {
+            PinKey<V> pinKey = it.next();
+            pinKey.first = null;
+            if (pinKey.pins == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Protects the values under the pin key from eviction ahead of unpinned values.
+     */
+    synchronized void pin(String pinKey)
+    {
+        PinKey<V> group = mPinKeys.get(pinKey);
+
+        if (group == null) {
+            group = new PinKey<>(pinKey);
+            mPinKeys.put(pinKey, group);
+        }
+        if (group.pins++ == 0) {
+            mPinnedKeys++;
+            moveValues(group, mPinned);
+        }
+    }
+
+    /**
+     * Undoes one call to pin.
+     */
+    synchronized void unpin(String pinKey)
+    {
+        PinKey<V> group = mPinKeys.get(pinKey);
+
+        if (group == null || group.pins == 0) {
+            return;
+        }
+        if (--group.pins == 0) {
+            mPinnedKeys--;
+            moveValues(group, mUnpinned);
+            if (group.first == null) {
+                mPinKeys.remove(pinKey);
+            }
+        }
+    }
+
+    synchronized boolean isPinned(String key)
+    {
+        Entry<V> entry = mMap.get(key);
+        PinKey<V> group = entry != null ? entry.pinKey : mPinKeys.get(pinKeyOf(key));
+
+        return group != null && group.pins > 0;
+    }
+
+    /**
+     * Evicts values until the cache holds at most the number of bytes.
+     */
+    synchronized void trimToSize(long bytes)
+    {
+        trimTo(Math.max(0, bytes));
+    }
+
+    /**
+     * Shrinks the cache for a level passed to ComponentCallbacks2.onTrimMemory.  In the
+     * background everything goes.  While running low, or once the UI is hidden, half goes.
+     */
+    void trimMemory(int level)
+    {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(getBytes() / 2);
+        }
+    }
+
+    /**
+     * Evicts unpinned values from least to most recently used, then pinned values the same way.
+     */
+    private void trimTo(long bytes)
+    {
+        while (mBytes > bytes) {
+            Entry<V> eldest = mUnpinned.next != mUnpinned ? mUnpinned.next : mPinned.next;
+            if (eldest == mPinned) {
+                return;
+            }
+
+            removeEntry(eldest);
+            mEvictions++;
+            mEvictedBytes += eldest.size;
+        }
+    }
+
+    /**
+     * Drops the value from the map and both of its lists.
+     */
+    private void removeEntry(Entry<V> entry)
+    {
+        mMap.remove(entry.key);
+        unlink(entry);
+        mBytes -= entry.size;
+
+        PinKey<V> group = entry.pinKey;
+        if (entry.prevOfKey != null) {
+            entry.prevOfKey.nextOfKey = entry.nextOfKey;
+        } else {
+            group.first = entry.nextOfKey;
+        }
+        if (entry.nextOfKey != null) {
+            entry.nextOfKey.prevOfKey = entry.prevOfKey;
+        }
+        if (group.first == null && group.pins == 0) {
+            mPinKeys.remove(group.key);
+        }
+    }
+
+    private void linkToKey(Entry<V> entry)
+    {
+        PinKey<V> group = entry.pinKey;
+
+        entry.nextOfKey = group.first;
+        if (group.first != null) {
+            group.first.prevOfKey = entry;
+        }
+        group.first = entry;
+    }
+
+    /**
+     * Moves the values under the pin key to the most recently used end of the list.
+     */
+    private void moveValues(PinKey<V> group, Entry<V> list)
+    {
+        for (Entry<V> entry = group.first; entry != null; entry = entry.nextOfKey) {
+            unlink(entry);
+            append(list, entry);
+        }
+    }
+
+    private static <V> Entry<V> newList()
+    {
+        Entry<V> head = new Entry<>(null, null);
+        head.prev = head;
+        head.next = head;
+        return head;
+    }
+
+    private static <V> void append(Entry<V> list, Entry<V> entry)
+    {
+        entry.prev = list.prev;
+        entry.next = list;
+        list.prev.next = entry;
+        list.prev = entry;
+    }
+
+    private static <V> void unlink(Entry<V> entry)
+    {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    synchronized long getBytes() { return mBytes; }
+
+    long getMaxBytes() { return mMaxBytes; }
+
+    synchronized int getCount() { return mMap.size(); }
+
+    synchronized long getHitCount() { return mHits; }
+
+    synchronized long getMissCount() { return mMisses; }
+
+    synchronized long getPutCount() { return mPuts; }
+
+    synchronized long getEvictionCount() { return mEvictions; }
+
+    synchronized long getEvictedBytes() { return mEvictedBytes; }
+
+    /**
+     * @return Fraction of lookups that found a value, or zero before any lookup.
+     */
+    synchronized float getHitRate()
+    {
+        long lookups = mHits + mMisses;
+        return lookups == 0 ? 0 : (float) mHits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "count=" + mMap.size() + ", bytes=" + mBytes + "/" + mMaxBytes + ", hits=" + mHits
+                + ", misses=" + mMisses + ", puts=" + mPuts + ", evictions=" + mEvictions
+                + ", evictedBytes=" + mEvictedBytes + ", pinned=" + mPinnedKeys;
+    }
+}
@@ -0,0 +1,209 @@
+package com.lausy.contentretriever;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <h1>ContentMetrics</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Timing of the hot paths from fetch to bind, one ContentHistogram per span.  A span is timed
+ * with a pair of calls:
+ *
+ *   long start = ContentMetrics.start();
+ *   ...
+ *   ContentMetrics.end(ContentMetrics.Span.BIND, start);
+ *
+ * Metrics are off by default.  Then start returns zero without reading the clock and end returns
+ * at once, so a timed path costs one volatile read.  When on, each span costs two clock reads
+ * and a few atomic updates, with no allocation.
+ *
+ * The owners of the string pools record their counts with recordPool once per list, and those
+ * are kept next to the spans.
+ *
+ * The histograms and pool counts can be read with get and getPoolCount, or written as text with
+ * dump.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentMetrics {
+
+    /**
+     * Timed stages of the pipeline.
+     */
+    enum Span {
+        /** Host name lookup. */
+        DNS,
+        /** TCP connect, without the TLS handshake. */
+        CONNECT,
+        /** From sending a request to receiving the response headers. */
+        TTFB,
+        /** From the response headers to the end of the body.  Overlaps PARSE, since the list is
+         *  parsed as it streams in. */
+        BODY,
+        /** Parsing a content list or page. */
+        PARSE,
+        /** Building the store of the list on the main thread as chunks arrive. */
+        BUILD,
+        /** Filtering and sorting the list. */
+        SORT,
+        /** Binding one row. */
+        BIND
+    }
+
+    private static final Span[] SPANS = Span.values();
+
+    /**
+     * String pools that report their counts.
+     */
+    enum Pool {
+        /** Lower case titles of the query engine. */
+        TITLE,
+        /** Image URLs handed to the image loader. */
+        URL
+    }
+
+    /**
+     * Counts kept per pool.
+     */
+    enum PoolCount {
+        /** Strings in the pool. */
+        SIZE,
+        HITS,
+        MISSES,
+        /** Estimate of the bytes the hits did not allocate. */
+        SAVED_BYTES
+    }
+
+    private static final Pool[] POOLS = Pool.values();
+    private static final PoolCount[] POOL_COUNTS = PoolCount.values();
+
+    private static final AtomicLongArray sPoolCounts = new AtomicLongArray(POOLS.length * POOL_COUNTS.length);
+
+    private static final ContentHistogram[] sHistograms = new ContentHistogram[SPANS.length];
+
+    static {
+        for (int i = 0; i < SPANS.length; i++) {
+            sHistograms[i] = new ContentHistogram();
+        }
+    }
+
+    private static volatile boolean sEnabled;
+
+    private ContentMetrics() {}
+
+    static void setEnabled(boolean enabled) { sEnabled = enabled; }
+
+    static boolean isEnabled() { return sEnabled; }
+
+    /**
+     * @return Start time of a span, or zero if metrics are off.
+     */
+    static long start()
+    {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the span that began at the start time.  Does nothing if the start time is zero.
+     */
+    static void end(Span span, long start)
+    {
+        if (start != 0) {
+            sHistograms[span.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a span measured elsewhere, if metrics are on.
+     */
+    static void record(Span span, long nanos)
+    {
+        if (sEnabled) {
+            sHistograms[span.ordinal()].record(nanos);
+        }
+    }
+
+    static ContentHistogram get(Span span) { return sHistograms[span.ordinal()]; }
+
+    /**
+     * Records the counts of a string pool, if metrics are on.  Called by the thread that owns
+     * the pool.
+     */
+    static void recordPool(Pool pool, ContentStringPool strings)
+    {
+        if (sEnabled) {
+            int base = pool.ordinal() * POOL_COUNTS.length;
+            sPoolCounts.set(base + PoolCount.SIZE.ordinal(), strings.size());
+            sPoolCounts.set(base + PoolCount.HITS.ordinal(), strings.getHitCount());
+            sPoolCounts.set(base + PoolCount.MISSES.ordinal(), strings.getMissCount());
+            sPoolCounts.set(base + PoolCount.SAVED_BYTES.ordinal(), strings.getSavedBytes());
+        }
+    }
+
+    /**
+     * @return The count as last recorded for the pool, or zero if it never was.
+     */
+    static long getPoolCount(Pool pool, PoolCount count)
+    {
+        return sPoolCounts.get(pool.ordinal() * POOL_COUNTS.length + count.ordinal());
+    }
+
+    static void reset()
+    {
+        for (ContentHistogram histogram : sHistograms) {
+            histogram.reset();
+        }
+        for (int i = 0; i < sPoolCounts.length(); i++) {
+            sPoolCounts.set(i, 0);
+        }
+    }
+
+    /**
+     * Writes one line per span with its count, mean, percentiles and maximum in milliseconds,
+     * then one line per string pool with its counts.
+     */
+    static void dump(Writer out) throws IOException
+    {
+        out.write("span count mean_ms p50_ms p90_ms p99_ms max_ms\n");
+
+        for (Span span : SPANS) {
+            ContentHistogram h = get(span);
+            out.write(String.format(Locale.US, "%s %d %.3f %.3f %.3f %.3f %.3f\n",
+                    span.name(), h.getCount(), h.getMeanNanos() / 1e6,
+                    h.getPercentileNanos(50) / 1e6, h.getPercentileNanos(90) / 1e6,
+                    h.getPercentileNanos(99) / 1e6, h.getMaxNanos() / 1e6));
+        }
+
+        out.write("pool size hits misses saved_kb\n");
+        for (Pool pool : POOLS) {
+            out.write(String.format(Locale.US, "%s %d %d %d %d\n", pool.name(),
+                    getPoolCount(pool, PoolCount.SIZE), getPoolCount(pool, PoolCount.HITS),
+                    getPoolCount(pool, PoolCount.MISSES), getPoolCount(pool, PoolCount.SAVED_BYTES) / 1024));
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the dump to the file, replacing it.  Must not be called on the main thread.
+     */
+    static void dump(File file) throws IOException
+    {
+        ContentExecutors.checkNotMainThread("Writing the metrics dump");
+
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            dump(out);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.lausy.contentretriever;
+
+/**
+ * <h1>ContentPrefetcher</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Decides which rows to load images for before they are shown.  Every bind reports its position
+ * and time.  From these the prefetcher keeps a smoothed bind rate in rows per second and the
+ * direction of the scroll, and looks ahead far enough to cover the rows that will be bound
+ * while an image is fetched and decoded, between MIN_LOOKAHEAD and MAX_LOOKAHEAD rows.
+ *
+ * Rows to prefetch wait in a small bounded queue ordered by distance from the last bound row.
+ * When the queue is full the farthest row is dropped.  Rows the user has scrolled past, and
+ * every queued row when the direction changes, are dropped as well.
+ *
+ * Only used on the main thread.  Nothing is allocated after construction.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentPrefetcher {
+    static final int MIN_LOOKAHEAD = 2;
+    static final int MAX_LOOKAHEAD = 24;
+    static final int QUEUE_CAPACITY = MAX_LOOKAHEAD;
+
+    /**
+     * Time to fetch and decode one image, which is how far ahead in time rows are prefetched.
+     */
+    static final long LEAD_TIME_MILLIS = 750;
+
+    /**
+     * Binds further apart than this are a new scroll, and the rate starts over.
+     */
+    static final long IDLE_MILLIS = 500;
+
+    /**
+     * Weight of the newest sample in the smoothed rate.
+     */
+    private static final float SMOOTHING = 0.3f;
+
+    private int mLastPosition = -1;
+    private long mLastBindMillis;
+    private int mDirection = 1;
+    private float mRowsPerSecond;
+
+    /**
+     * The farthest row queued so far in the current direction.  Rows up to it are not queued
+     * again.
+     */
+    private int mQueuedUpTo = -1;
+
+    private final int[] mQueue = new int[QUEUE_CAPACITY];
+    private int mQueueSize;
+
+    private int mDroppedCount;
+
+    /**
+     * Records a bind and queues the rows ahead of it.
+     *
+     * @param position Position of the bound row.
+     * @param nowMillis Time of the bind.
+     * @param count Number of rows in the list.
+     */
+    void onBind(int position, long nowMillis, int count)
+    {
+        if (mLastPosition >= 0 && nowMillis - mLastBindMillis < IDLE_MILLIS) {
+            int delta = position - mLastPosition;
+            long elapsed = Math.max(1, nowMillis - mLastBindMillis);
+
+            if (delta != 0) {
+                int direction = delta > 0 ? 1 : -1;
+                if (direction != mDirection) {
+                    mDirection = direction;
+                    mQueuedUpTo = -1;
+                    mDroppedCount += mQueueSize;
+                    mQueueSize = 0;
+                }
+
+                float rate = Math.abs(delta) * 1000f / elapsed;
+                mRowsPerSecond += SMOOTHING * (rate - mRowsPerSecond);
+            }
+        } else {
+            mRowsPerSecond = 0;
+        }
+
+        mLastPosition = position;
+        mLastBindMillis = nowMillis;
+
+        dropPassed(position);
+        queueAhead(position, count);
+    }
+
+    /**
+     * @return The queued row nearest to the last bound row, removed from the queue, or -1 if the
+     *         queue is empty.
+     */
+    int poll()
+    {
+        if (mQueueSize == 0) {
+            return -1;
+        }
+
+        int best = 0;
+        for (int i = 1; i < mQueueSize; i++) {
+            if (distance(mQueue[i]) < distance(mQueue[best])) {
+                best = i;
+            }
+        }
+
+        int position = mQueue[best];
+        mQueue[best] = mQueue[--mQueueSize];
+        return position;
+    }
+
+    /**
+     * Forgets the scroll and empties the queue, for example when the list changes.
+     */
+    void reset()
+    {
+        mLastPosition = -1;
+        mRowsPerSecond = 0;
+        mQueuedUpTo = -1;
+        mQueueSize = 0;
+    }
+
+    /**
+     * @return Rows looked ahead at the current bind rate.
+     */
+    int getLookahead()
+    {
+        int rows = (int) Math.ceil(mRowsPerSecond * LEAD_TIME_MILLIS / 1000f);
+        return Math.max(MIN_LOOKAHEAD, Math.min(MAX_LOOKAHEAD, rows));
+    }
+
+    float getRowsPerSecond() { return mRowsPerSecond; }
+
+    int getDirection() { return mDirection; }
+
+    int getQueueSize() { return mQueueSize; }
+
+    /**
+     * @return Number of queued rows dropped before they were polled.
+     */
+    int getDroppedCount() { return mDroppedCount; }
+
+    private void queueAhead(int position, int count)
+    {
+        int lookahead = getLookahead();
+        int from = position + mDirection;
+
+        if (mQueuedUpTo >= 0 && distance(mQueuedUpTo) >= distance(from)) {
+            from = mQueuedUpTo + mDirection;
+        }
+
+        for (int p = from; distance(p) <= lookahead; p += mDirection) {
+            if (p < 0 || p >= count) {
+                break;
+            }
+            offer(p);
+            mQueuedUpTo = p;
+        }
+    }
+
+    /**
+     * Adds the row, dropping the farthest queued row if the queue is full and it is farther.
+     */
+    private void offer(int position)
+    {
+        if (mQueueSize < QUEUE_CAPACITY) {
+            mQueue[mQueueSize++] = position;
+            return;
+        }
+
+        int worst = 0;
+        for (int i = 1; i < mQueueSize; i++) {
+            if (distance(mQueue[i]) > distance(mQueue[worst])) {
+                worst = i;
+            }
+        }
+
+        mDroppedCount++;
+        if (distance(position) < distance(mQueue[worst])) {
+            mQueue[worst] = position;
+        }
+    }
+
+    /**
+     * Drops queued rows at or behind the position in the scroll direction.
+     */
+    private void dropPassed(int position)
+    {
+        for (int i = mQueueSize - 1; i >= 0; i--) {
+            if ((mQueue[i] - position) * mDirection <= 0) {
+                mQueue[i] = mQueue[--mQueueSize];
+                mDroppedCount++;
+            }
+        }
+    }
+
+    /**
+     * @return Rows from the last bound row to the position in the scroll direction.  Negative
+     *         if the position is behind.
+     */
+    private int distance(int position)
+    {
+        return (position - mLastPosition) * mDirection;
+    }
+}
@@ -2,9 +2,12 @@ package com.lausy.contentretriever;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.VisibleForTesting;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
 import android.view.View;
@@ -14,6 +17,11 @@ import android.view.MenuItem;
 import org.json.JSONArray;
 import org.json.JSONException;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * <h1>ContentRetrievalActivity</h1>
  *
@@ -23,6 +31,12 @@ import org.json.JSONException;
  * retrieved from the server.  This activity was meant to be kept simple and to have all the
  * business logic in other non-activity classes.
  *
+ * On launch the list saved by the last fetch is shown straight away, and is then refreshed
+ * from the server in the background.
+ *
+ * The list is fetched from mSources.  A catalogue split into shards is listed there one
+ * source per shard, and the shards are fetched in parallel and merged.
+ *
  * @author Rick Lau
  * @version 1.0
  */
@@ -32,26 +46,49 @@ public class ContentRetrievalActivity extends AppCompatActivity {
     private Context mContext;
     private ContentListDataAdapter mContentList;
 
+    /**
+     * Row views for every list of the activity.  Kept here rather than in an adapter so a
+     * list given a new adapter keeps its views.
+     */
+    private RecyclerView.RecycledViewPool mViewPool;
+
     static private final String DEFAULT_BASEURI = "http://eng-assets.s3-website-us-west-2.amazonaws.com/";
     static private final String DEFAULT_SERVER_PATH = "fixture/movies.json";
+    static private final String METRICS_FILE_NAME = "metrics.txt";
 
-    private String mBaseUri;
-    private String mServerPath;
+    private List<ContentSource> mSources;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long startTime = SystemClock.uptimeMillis();
         super.onCreate(savedInstanceState);
 
         mContext = this;
 
+        // Timings of the pipeline are kept in debug builds and dumped when the activity stops.
+        ContentMetrics.setEnabled(BuildConfig.DEBUG);
+
         // setup the view layouts and toolbar
         setContentView(R.layout.activity_content_retrieval);
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
-        mContentList = new ContentListDataAdapter(mContext);
-        mBaseUri = DEFAULT_BASEURI;
-        mServerPath = DEFAULT_SERVER_PATH;
+        mViewPool = ContentListDataAdapter.newViewPool();
+        mContentList = new ContentListDataAdapter(mContext, mViewPool);
+        mSources = Collections.singletonList(new ContentSource(DEFAULT_BASEURI, DEFAULT_SERVER_PATH));
+
+        // Show the last list while the server is asked whether it has changed.
+        mContentList.markStartTime(startTime);
+        mContentList.setSnapshotFile(new File(getFilesDir(), ContentSnapshotFile.FILE_NAME));
+        mContentList.restoreSnapshot(new Runnable() {
+            @Override
+            public void run() {
+                Log.d(TAG, "Revalidating content list...");
+
+                mContentList.setSources(mSources);
+                mContentList.getList();
+            }
+        });
 
         // floating button.
         FloatingActionButton fab = (FloatingActionButton) findViewById(R.id.refresh);
@@ -61,17 +98,70 @@ public class ContentRetrievalActivity extends AppCompatActivity {
             public void onClick(View view) {
                 Log.d(TAG, "Fetching content list...");
 
-                mContentList.setBaseUri(mBaseUri);
-                mContentList.setServerPath(mServerPath);
+                mContentList.setSources(mSources);
                 mContentList.getList();
             }
         });
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        if (ContentMetrics.isEnabled()) {
+            final File dump = new File(getCacheDir(), METRICS_FILE_NAME);
+            ContentExecutors.query().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ContentMetrics.dump(dump);
+                        Log.d(TAG, "Wrote metrics to " + dump);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Could not write metrics:  " + e.getMessage());
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        // Requests still running must not deliver into this activity's list.
+        mContentList.release();
+        super.onDestroy();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ContentImageLoader.trimMemory(level);
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.menu_content_retrieval, menu);
+
+        // Filter the list by title as the user types.  Titles match anywhere unless the user
+        // asks for the start of the title, which is a binary search and keeps up on long lists.
+        menu.findItem(R.id.action_match_title_start).setChecked(
+                mContentList.getFilterType() == ContentQueryEngine.FilterType.PREFIX);
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setQueryHint(getString(R.string.action_search));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mContentList.filter(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mContentList.filter(newText);
+                return true;
+            }
+        });
+
         return true;
     }
 
@@ -83,7 +173,13 @@ public class ContentRetrievalActivity extends AppCompatActivity {
         int id = item.getItemId();
 
         //noinspection SimplifiableIfStatement
-        if (id == R.id.action_sort_ascending) {
+        if (id == R.id.action_match_title_start) {
+            boolean prefix = !item.isChecked();
+            item.setChecked(prefix);
+            mContentList.setFilterType(prefix
+                    ? ContentQueryEngine.FilterType.PREFIX : ContentQueryEngine.FilterType.SUBSTRING);
+            return true;
+        } else if (id == R.id.action_sort_ascending) {
             Log.d(TAG, "Sorting in ascending order...");
             mContentList.sort(true);
             return true;
@@ -91,6 +187,14 @@ public class ContentRetrievalActivity extends AppCompatActivity {
             Log.d(TAG, "Sorting in descending order...");
             mContentList.sort(false);
             return true;
+        } else if (id == R.id.action_sort_title_ascending) {
+            Log.d(TAG, "Sorting by title in ascending order...");
+            mContentList.sortBy(ContentQueryEngine.SortKey.TITLE, true);
+            return true;
+        } else if (id == R.id.action_sort_title_descending) {
+            Log.d(TAG, "Sorting by title in descending order...");
+            mContentList.sortBy(ContentQueryEngine.SortKey.TITLE, false);
+            return true;
         } else if (id == R.id.action_load_testdata) {
             Log.d(TAG, "loading test data...");
 
@@ -1,18 +1,29 @@
 package com.lausy.contentretriever;
 
-import org.json.JSONArray;
-
 /**
  * <h1>ContentServiceCallback</h1>
  *
  * Copyright 2018:  Rick Lau
  *
- * Interface class to that listens for data coming back from the server.
+ * Interface class to that listens for data coming back from the server.  Content is delivered
+ * in chunks as it is decoded from the response stream.  If the server reports that the list has
+ * not changed since the last fetch, onContentNotModified is called instead.  Pages requested
+ * with fetchContentPage come back through onReceivePage, with the generation they were
+ * requested in.  Rows arrive as ContentStore chunks rather than one object per row.
+ *
+ * If the server versions its list, the version of a list is passed to onReceiveVersion after
+ * its last chunk.  A fetch since that version may then come back as a delta through
+ * onReceiveDelta.
  *
  * @author Rick Lau
  * @version 1.0
  */
 public interface ContentServiceCallback {
-    public void onReceiveContent(JSONArray arr);
+    public void onReceiveContent(ContentStore chunk, boolean first, boolean last);
+    public void onContentNotModified();
+    public void onReceiveVersion(String version);
+    public void onReceiveDelta(ContentDelta delta);
+    public void onReceivePage(int generation, int offset, ContentStore page);
+    public void onReceivePageError(int generation, int offset, int errorCode);
     public void onReceiveError(int errorCode);
 }
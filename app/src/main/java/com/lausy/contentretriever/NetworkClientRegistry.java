@@ -0,0 +1,150 @@
+package com.lausy.contentretriever;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * <h1>NetworkClientRegistry</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Process wide registry of network clients.  A single OkHttpClient is shared by every request so
+ * that the connection pool, TLS sessions and dispatcher survive between refreshes.  Retrofit
+ * proxies are built once per base URI and then reused.
+ *
+ * The shared client has a bounded HTTP disk cache once a cache directory has been set.  OkHttp
+ * then sends If-None-Match/If-Modified-Since on its own and serves the cached body on a 304.
+ *
+ * The client reports DNS, connect and response timings to ContentMetrics through NetworkTimings.
+ *
+ * One circuit breaker is shared by the list and page requests, so when the server keeps failing
+ * a refresh fails at once instead of adding to its load.  Each source of a fan-out fetch has a
+ * breaker of its own, so one failing source does not cut off the others.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class NetworkClientRegistry {
+    static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+
+    private static OkHttpClient sHttpClient;
+    private static File sCacheDirectory;
+
+    private static final Map<String, NetworkService.NetworkApiService> sServices = new HashMap<>();
+
+    private static final ContentCacheStats sCacheStats = new ContentCacheStats();
+
+    private static final CircuitBreaker sCircuitBreaker = new CircuitBreaker(
+            CircuitBreaker.DEFAULT_FAILURE_THRESHOLD, CircuitBreaker.DEFAULT_OPEN_MILLIS,
+            ContentExecutors.retry());
+
+    private static final Map<ContentSource, CircuitBreaker> sSourceBreakers = new HashMap<>();
+
+    private NetworkClientRegistry() {}
+
+    /**
+     * Sets the directory of the HTTP disk cache.  This only has an effect before the shared
+     * client is first used.
+     *
+     * @param directory Directory owned by the cache, usually under Context.getCacheDir().
+     */
+    static synchronized void setCacheDirectory(File directory)
+    {
+        if (sHttpClient == null) {
+            sCacheDirectory = directory;
+        }
+    }
+
+    /**
+     * @return The shared OkHttpClient.  It is created on first use.
+     */
+    static synchronized OkHttpClient getHttpClient()
+    {
+        if (sHttpClient == null) {
+            sHttpClient = buildHttpClient(sCacheDirectory);
+        }
+        return sHttpClient;
+    }
+
+    /**
+     * @return Hit/miss/revalidate counters for responses that went through the shared client.
+     */
+    static ContentCacheStats getCacheStats() { return sCacheStats; }
+
+    /**
+     * @return The circuit breaker of the content server.
+     */
+    static CircuitBreaker getCircuitBreaker() { return sCircuitBreaker; }
+
+    /**
+     * @return The circuit breaker of a fan-out source, created the first time it is seen.
+     */
+    static synchronized CircuitBreaker getCircuitBreaker(ContentSource source)
+    {
+        CircuitBreaker breaker = sSourceBreakers.get(source);
+
+        if (breaker == null) {
+            breaker = new CircuitBreaker(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD,
+                    CircuitBreaker.DEFAULT_OPEN_MILLIS, ContentExecutors.retry());
+            sSourceBreakers.put(source, breaker);
+        }
+
+        return breaker;
+    }
+
+    /**
+     * Builds a client with a disk cache in the directory, or without a cache if it is null.
+     */
+    static OkHttpClient buildHttpClient(File cacheDirectory)
+    {
+        OkHttpClient.Builder builder = NetworkTimings.instrument(new OkHttpClient.Builder());
+
+        if (cacheDirectory != null) {
+            builder.cache(new Cache(cacheDirectory, HTTP_CACHE_SIZE));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Returns the Retrofit proxy for the base URI, creating it the first time the URI is seen.
+     * The callback executor is only used when the proxy is first created.
+     *
+     * @param baseUri Base URI of the server.  Must end with a slash, as Retrofit requires.
+     * @param callbackExecutor Executor that Retrofit callbacks are delivered on.
+     */
+    static synchronized NetworkService.NetworkApiService getService(String baseUri, Executor callbackExecutor)
+    {
+        NetworkService.NetworkApiService service = sServices.get(baseUri);
+
+        if (service == null) {
+            service = createService(getHttpClient(), baseUri, callbackExecutor);
+            sServices.put(baseUri, service);
+        }
+
+        return service;
+    }
+
+    /**
+     * Builds a Retrofit proxy on top of the client.  Not cached.
+     */
+    static NetworkService.NetworkApiService createService(OkHttpClient client, String baseUri,
+                                                          Executor callbackExecutor)
+    {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(baseUri)
+                .client(client)
+                .callbackExecutor(callbackExecutor)
+                .addConverterFactory(GsonConverterFactory.create())
+                .build();
+
+        return retrofit.create(NetworkService.NetworkApiService.class);
+    }
+}
@@ -1,22 +1,29 @@
 package com.lausy.contentretriever;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
-import okhttp3.OkHttpClient;
+import okhttp3.MediaType;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 import retrofit2.http.GET;
+import retrofit2.http.Headers;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 /**
  * <h1>NetworkService</h1>
@@ -28,8 +35,46 @@ import retrofit2.http.Path;
  * implement the ContentServiceCallback interface to listen for the data coming back from the
  * server.
  *
- * The user of this class should know the format of the JSON array coming back from the server.
- * This class simply passes on whatever is retrieved from the server.
+ * Retrofit delivers responses to ContentExecutors.parse(), never to the main thread, since a
+ * streaming body cannot be read there.  The body is parsed there by ContentLenientParser, which
+ * keeps entries with a missing title or image and counts the ones it drops by defect.  Decoded
+ * items are posted back to the main thread in immutable chunks so the first rows can be shown
+ * before the whole list has been downloaded.
+ *
+ * Responses go through a bounded HTTP disk cache.  If the server answers a conditional request
+ * with 304, or the cached copy is still fresh, and the caller already holds the parsed list,
+ * the body is not parsed again and the caller is told the content did not change.
+ *
+ * Only one list request is in flight at a time.  Calling fetchContentList again for the same URL
+ * while a request is running joins that request, a different URL cancels it.  cancel() stops
+ * everything in flight, and nothing is delivered to the caller after it returns.
+ *
+ * A list request that times out or gets a 5xx, 408 or 429 is retried with exponential backoff
+ * and jitter, honouring Retry-After, as set by the RetryPolicy.  Repeated failures open the
+ * shared circuit breaker, and requests then fail at once until the server has had time to
+ * recover.  Page requests are not retried here, since the paged window asks again when the
+ * rows are shown, but they go through the same circuit breaker.
+ *
+ * List requests accept the compact binary format of ContentWireFormat ahead of JSON, and the
+ * body is decoded by whichever parser matches its content type.  OkHttp asks for gzip and
+ * unzips the body on its own.
+ *
+ * With more than one source set, fetchContentList fetches them all in parallel through a
+ * ContentFanOutRequest and delivers one merged list, de-duplicated by content ID, as the
+ * sources arrive.  A fan-out fetch always parses its bodies, since a source that has not
+ * changed still has to be merged with the others.  Each source has a circuit breaker of its
+ * own.  Paging uses mBaseUri and mPath only.
+ *
+ * A cached or not modified response is only left unparsed when it is the list the caller
+ * shows:  the URL it was fetched from and its ETag or Last-Modified validator are kept when
+ * its last chunk is delivered, and both must match.  A list from another path, base URI or
+ * source, a delta and a fan-out fetch all clear it.
+ *
+ * A list that comes with an X-Content-Version header is reported to the caller with
+ * onReceiveVersion.  If the caller holds that list and sets its version, the next fetch asks
+ * for the changes since it, and a ContentDelta is delivered with onReceiveDelta instead of the
+ * whole list.  A server that answers 410 no longer has changes that old, and the whole list is
+ * fetched.  A server that answers with a list instead of a delta has it handled as a list.
  *
  * Later on, the format of URL can be made more flexible.  Due to how retrofit formats URLs,
  * this is a larger task left for laer.
@@ -44,7 +89,43 @@ public class NetworkService {
 
     private String mPath;
     private String mBaseUri;
-    private static ContentServiceCallback mCallbackListAdapter;
+    private boolean mHasContent;
+    private String mContentVersion;
+
+    /**
+     * URL and validator of the list last delivered whole, or null if the caller may show
+     * something else.  Only touched on the main thread.
+     */
+    private String mShownList;
+
+    /**
+     * Only read and cleared on the main thread, so a callback checked there cannot be
+     * cancelled before it runs.
+     */
+    private ContentServiceCallback mCallbackListAdapter;
+
+    private RetryPolicy mRetryPolicy = RetryPolicy.DEFAULT;
+    private SingleFlightRequest<ResponseBody> mListRequest = new SingleFlightRequest<>(
+            mRetryPolicy, NetworkClientRegistry.getCircuitBreaker(), ContentExecutors.retry());
+    private final Set<Call<ResponseBody>> mPageCalls = new HashSet<>();
+
+    /**
+     * Sources of a fan-out fetch, and the fetch in flight.  mFanOut is only touched on the
+     * main thread.
+     */
+    private List<ContentSource> mSources = Collections.emptyList();
+    private int mMaxParallelSources = ContentFanOutRequest.DEFAULT_MAX_PARALLEL;
+    private long mSourceTimeoutMillis = ContentFanOutRequest.DEFAULT_SOURCE_TIMEOUT_MILLIS;
+    private ContentFanOutRequest mFanOut;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Executor mMainExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mMainHandler.post(command);
+        }
+    };
 
     /**
      * Constructuctor for the class.
@@ -58,6 +139,8 @@ public class NetworkService {
         mBaseUri = "";
 
         mCallbackListAdapter = (ContentServiceCallback) caller;
+
+        NetworkClientRegistry.setCacheDirectory(new File(context.getCacheDir(), "http"));
     }
 
     /**
@@ -73,71 +156,611 @@ public class NetworkService {
     public void setBaseUri(String base) { mBaseUri = base; }
     public String getBaseUri() { return mBaseUri; }
 
+    /**
+     * Set to true if the caller already holds the list from a previous fetch.  A cached or
+     * not modified response is then not parsed again.
+     */
+    public void setHasContent(boolean hasContent)
+    {
+        mHasContent = hasContent;
+        if (!hasContent) {
+            mShownList = null;
+        }
+    }
+
+    public boolean getHasContent() { return mHasContent; }
+
+    /**
+     * Sets the version of the list the caller holds, as given to onReceiveVersion.  If it is
+     * not null and the caller has content, fetchContentList asks for a delta since it.
+     */
+    public void setContentVersion(String version) { mContentVersion = version; }
+    public String getContentVersion() { return mContentVersion; }
+
+    /**
+     * Sets how failed list requests are retried.  RetryPolicy.NONE turns retries off.  Must be
+     * called before the first fetch.
+     */
+    public void setRetryPolicy(RetryPolicy policy)
+    {
+        mRetryPolicy = policy;
+        mListRequest = new SingleFlightRequest<>(
+                policy, NetworkClientRegistry.getCircuitBreaker(), ContentExecutors.retry());
+    }
+
+    /**
+     * Sets the sources of the list.  With more than one, fetchContentList fetches them all and
+     * merges their lists.  With one or none, mBaseUri and mPath are fetched.
+     */
+    public void setSources(List<ContentSource> sources) { mSources = new ArrayList<>(sources); }
+    public List<ContentSource> getSources() { return Collections.unmodifiableList(mSources); }
+
+    /**
+     * Sets how many sources of a fan-out fetch are requested at once.  Bodies are read on
+     * ContentExecutors.download(), so no more than its DOWNLOAD_THREADS are read at the same
+     * time.  A body waiting for a thread does not use up its source timeout, and a source that
+     * times out frees its thread at once.
+     */
+    public void setMaxParallelSources(int max) { mMaxParallelSources = max; }
+    public int getMaxParallelSources() { return mMaxParallelSources; }
+
+    /**
+     * Sets how long one source of a fan-out fetch may take before it is given up, so a slow
+     * source cannot hold back the end of the list.
+     */
+    public void setSourceTimeoutMillis(long millis) { mSourceTimeoutMillis = millis; }
+    public long getSourceTimeoutMillis() { return mSourceTimeoutMillis; }
+
     /**
      * mPath and mBaseUri must be set before calling this API.  This API will generate a
      * REST call to the server and retrieve a content list.  This content list is then passed
      * to the caller via the callback registered with this class at the time of instantiation.
      *
-     * Only 200 and 404 messages are handled right now.
+     * Only 200 and 404 messages are handled right now.  Transient failures are retried before
+     * an error is reported.
+     *
+     * If a request for the same URL is still in flight, no new request is made and its result
+     * is delivered instead.
      *
      */
     public void fetchContentList()
     {
+        if (mSources.size() > 1) {
+            fetchSources();
+            return;
+        }
+
         if (mPath.equals("") || mBaseUri.equals("")) {
             Log.e(TAG, "Error invalidate host or url.  host=" + mBaseUri + ", url=" + mPath);
             return;
         }
 
-        OkHttpClient.Builder httpClient = new OkHttpClient.Builder();
-        Retrofit.Builder builder = new Retrofit.Builder()
-                .baseUrl(mBaseUri)
-                .client(httpClient.build())
-                .addConverterFactory(GsonConverterFactory.create());
-
-        Retrofit retrofit = builder.build();
-        NetworkApiService client = retrofit.create(NetworkApiService.class);
+        cancelFanOut();
 
-        Call<ResponseBody> call = client.fetchContentList(
-                mPath
-        );
+        final String shown = mHasContent ? mShownList : null;
 
-        call.enqueue(new Callback<ResponseBody>() {
-            @Override
-            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+        if (mContentVersion != null && mHasContent) {
+            fetchDelta(mContentVersion, shown);
+            return;
+        }
 
-                JSONArray jsonArr;
+        final NetworkApiService client = NetworkClientRegistry.getService(mBaseUri, ContentExecutors.parse());
+        final String path = mPath;
 
-                if (response.raw().code() == 200) {
-                    Log.d(TAG, "Received 200 response from server.");
+        mListRequest.enqueue(mBaseUri + path, new SingleFlightRequest.CallFactory<ResponseBody>() {
+            @Override
+            public Call<ResponseBody> create() {
+                return client.fetchContentList(path);
+            }
+        }, new SingleFlightRequest.Listener<ResponseBody>() {
+            @Override
+            public void onResponse(final int generation, Response<ResponseBody> response) {
 
-                    try {
-                        jsonArr = new JSONArray(response.body().string());
-                        mCallbackListAdapter.onReceiveContent(jsonArr);
+                final int code = response.raw().code();
 
-                        Log.v(TAG, jsonArr.toString());
-                    } catch (JSONException e) {
-                        Log.e(TAG, "JSONException caught onResponse.");
-                        e.printStackTrace();
-                    } catch (IOException e) {
-                        Log.e(TAG, "IOException caught onResponse.");
-                        e.printStackTrace();
-                    }
+                if (code == 200) {
+                    receiveList(generation, response, shown);
                 } else {
-                    mCallbackListAdapter.onReceiveError(response.raw().code());
+                    postError(generation, code);
 
-                    if (response.raw().code() == 404) {
+                    if (code == 404) {
                         Log.e(TAG, "Received 404 error code from server.");
                     } else {
-                        Log.e(TAG, "Received unhandled response code from server:  " + response.raw().code());
+                        Log.e(TAG, "Received unhandled response code from server:  " + code);
+                    }
+                }
+
+            }
+
+            @Override
+            public void onFailure(int generation, Throwable t) {
+                postListFailure(generation, t);
+            }
+        });
+
+        logListRequests();
+    }
+
+    /**
+     * Asks for the changes since the version.  Goes through the same single flight request,
+     * retries and circuit breaker as a list request.
+     *
+     * @param shown Key of the list the caller shows, as listKey gives it, or null.
+     */
+    private void fetchDelta(final String version, final String shown)
+    {
+        final NetworkApiService client = NetworkClientRegistry.getService(mBaseUri, ContentExecutors.parse());
+        final String path = mPath;
+
+        mListRequest.enqueue(mBaseUri + path + "?since=" + version, new SingleFlightRequest.CallFactory<ResponseBody>() {
+            @Override
+            public Call<ResponseBody> create() {
+                return client.fetchContentDelta(path, version);
+            }
+        }, new SingleFlightRequest.Listener<ResponseBody>() {
+            @Override
+            public void onResponse(final int generation, Response<ResponseBody> response) {
+
+                final int code = response.raw().code();
+
+                if (code == 410) {
+                    Log.d(TAG, "Version " + version + " is too old for a delta, fetching the whole list.");
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isCurrent(generation)) {
+                                mContentVersion = null;
+                                fetchContentList();
+                            }
+                        }
+                    });
+                } else if (code != 200) {
+                    Log.e(TAG, "Received response code " + code + " for delta since " + version);
+                    postError(generation, code);
+                } else if (isDelta(response.body().contentType())) {
+                    receiveDelta(generation, response.body());
+                } else {
+                    receiveList(generation, response, shown);
+                }
+            }
+
+            @Override
+            public void onFailure(int generation, Throwable t) {
+                postListFailure(generation, t);
+            }
+        });
+
+        logListRequests();
+    }
+
+    /**
+     * Parses a delta and posts it to the main thread.  Called on the parse executor.
+     */
+    private void receiveDelta(final int generation, ResponseBody body)
+    {
+        long start = ContentMetrics.start();
+
+        try {
+            ContentLenientParser parser = new ContentLenientParser();
+            final ContentDelta delta = parser.parseDelta(body.charStream());
+
+            Log.d(TAG, "Parsed delta to version " + delta.getVersion() + ":  upserts="
+                    + delta.getUpsertCount() + ", removed=" + delta.getRemovedCount()
+                    + ", skipped " + parser.getSkippedCount() + " malformed items.");
+            if (parser.getSkippedCount() > 0) {
+                Log.w(TAG, "Malformed delta entries:  " + parser.getDefectSummary());
+            }
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCurrent(generation)) {
+                        mShownList = null;
+                        mCallbackListAdapter.onReceiveDelta(delta);
+                    }
+                }
+            });
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Exception caught parsing delta:  " + e.getMessage());
+            postError(generation, -1);
+        } finally {
+            body.close();
+        }
+
+        ContentMetrics.end(ContentMetrics.Span.PARSE, start);
+    }
+
+    /**
+     * Handles a 200 response carrying the whole list.  Called on the parse executor.
+     *
+     * @param shown Key of the list the caller shows, captured on the main thread when the
+     *              request was made, or null.
+     */
+    private void receiveList(final int generation, Response<ResponseBody> response, String shown)
+    {
+        Log.d(TAG, "Received 200 response from server.");
+
+        ResponseBody body = response.body();
+        final String version = response.headers().get(ContentDelta.VERSION_HEADER);
+        final String key = listKey(response.raw());
+        ContentCacheStats.Outcome outcome =
+                NetworkClientRegistry.getCacheStats().record(response.raw());
+
+        if (outcome != ContentCacheStats.Outcome.MISS && key.equals(shown)) {
+            Log.d(TAG, "Content not modified (" + outcome + "), skipping parse.  "
+                    + NetworkClientRegistry.getCacheStats());
+            body.close();
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCurrent(generation)) {
+                        mCallbackListAdapter.onContentNotModified();
                     }
                 }
+            });
+            return;
+        }
+
+        // Rows are shown with their content ID as stable ID, so an ID is only kept once.
+        final ContentMerger merger = new ContentMerger();
+
+        try {
+            parseBody(body, new ContentChunkListener() {
+                @Override
+                public void onChunk(ContentStore parsed, final boolean first, final boolean last) {
+                    final ContentStore chunk = merger.add(parsed);
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isCurrent(generation)) {
+                                mShownList = last ? key : null;
+                                mCallbackListAdapter.onReceiveContent(chunk, first, last);
+                            }
+                        }
+                    });
+                }
+            });
+            postVersion(generation, version);
 
+            if (merger.getDuplicateCount() > 0) {
+                Log.w(TAG, "Dropped " + merger.getDuplicateCount() + " items with a repeated ID.");
+            }
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Exception caught parsing response:  " + e.getMessage());
+            postError(generation, -1);
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * @return The URL the response was requested from and its validator, which together say
+     *         which list a cached body holds.
+     */
+    private static String listKey(okhttp3.Response response)
+    {
+        String validator = response.header("ETag");
+        if (validator == null) {
+            validator = response.header("Last-Modified");
+        }
+        return response.request().url() + " " + validator;
+    }
+
+    /**
+     * Posts the version of the list just delivered, if the server sent one.  It is posted after
+     * the last chunk, so it is never taken for the list shown before.
+     */
+    private void postVersion(final int generation, final String version)
+    {
+        if (version == null) {
+            return;
+        }
+
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isCurrent(generation)) {
+                    mCallbackListAdapter.onReceiveVersion(version);
+                }
+            }
+        });
+    }
+
+    private void postListFailure(int generation, Throwable t)
+    {
+        postError(generation, -1);
+        if (t instanceof CircuitBreaker.OpenException) {
+            Log.e(TAG, "Not sending the request to server.  " + t.getMessage());
+        } else {
+            Log.e(TAG, "Error in sending the request to server.");
+        }
+    }
+
+    private void logListRequests()
+    {
+        if (mListRequest.getJoinedCount() > 0 || mListRequest.getRetryCount() > 0) {
+            Log.d(TAG, "List requests started=" + mListRequest.getStartedCount()
+                    + ", joined=" + mListRequest.getJoinedCount()
+                    + ", retried=" + mListRequest.getRetryCount());
+        }
+    }
+
+    /**
+     * Fetches every source and merges their lists.  A fetch of the same sources while one is
+     * in flight joins it, the same as for a single list.  Must be called on the main thread.
+     */
+    private void fetchSources()
+    {
+        if (mFanOut != null && !mFanOut.isDone() && mFanOut.getSources().equals(mSources)) {
+            Log.d(TAG, "Joining fan-out fetch of " + mSources.size() + " sources in flight.");
+            return;
+        }
+
+        cancelFanOut();
+        mListRequest.cancel();
+        mShownList = null;
+
+        final ContentFanOutRequest request = new ContentFanOutRequest(mSources, BODY_PARSER,
+                ContentExecutors.parse(), ContentExecutors.download(), mMainExecutor,
+                ContentExecutors.retry());
+        request.setMaxParallel(mMaxParallelSources);
+        request.setSourceTimeoutMillis(mSourceTimeoutMillis);
+        request.setRetryPolicy(mRetryPolicy, SOURCE_BREAKERS);
+        mFanOut = request;
+
+        request.start(new ContentFanOutRequest.Listener() {
+            @Override
+            public void onReceiveContent(ContentStore chunk, boolean first, boolean last) {
+                if (mCallbackListAdapter == null) {
+                    return;
+                }
+                if (last) {
+                    Log.d(TAG, "Merged " + mSources.size() + " sources, failed="
+                            + request.getFailedCount() + ", timed out=" + request.getTimedOutCount()
+                            + ", duplicates dropped=" + request.getDuplicateCount());
+                }
+                mCallbackListAdapter.onReceiveContent(chunk, first, last);
+            }
+
+            @Override
+            public void onSourceFailed(ContentSource source, int errorCode, boolean timedOut) {
+                Log.e(TAG, (timedOut ? "Timed out fetching " : "Error " + errorCode + " fetching ")
+                        + source + ", continuing without it.");
+            }
+
+            @Override
+            public void onReceiveError(int errorCode) {
+                Log.e(TAG, "Every source failed.");
+                if (mCallbackListAdapter != null) {
+                    mCallbackListAdapter.onReceiveError(errorCode);
+                }
+            }
+        });
+    }
+
+    private void cancelFanOut()
+    {
+        if (mFanOut != null) {
+            mFanOut.cancel();
+            mFanOut = null;
+        }
+    }
+
+    private static final ContentFanOutRequest.CircuitBreakers SOURCE_BREAKERS =
+            new ContentFanOutRequest.CircuitBreakers() {
+        @Override
+        public CircuitBreaker of(ContentSource source) {
+            return NetworkClientRegistry.getCircuitBreaker(source);
+        }
+    };
+
+    private static final ContentFanOutRequest.Parser BODY_PARSER = new ContentFanOutRequest.Parser() {
+        @Override
+        public void parse(ResponseBody body, ContentChunkListener listener) throws IOException {
+            parseBody(body, listener);
+        }
+    };
+
+    /**
+     * Fetches one page of the content list using offset and limit query parameters.  The page is
+     * parsed on the background thread and passed to the caller via onReceivePage.
+     *
+     * @param generation Passed back with the page, so the caller can tell a page it no longer
+     *                   wants.
+     * @param offset Index of the first item of the page.
+     * @param limit Maximum number of items in the page.
+     */
+    public void fetchContentPage(final int generation, final int offset, final int limit)
+    {
+        if (mPath.equals("") || mBaseUri.equals("")) {
+            Log.e(TAG, "Error invalidate host or url.  host=" + mBaseUri + ", url=" + mPath);
+            return;
+        }
+
+        final CircuitBreaker breaker = NetworkClientRegistry.getCircuitBreaker();
+        if (!breaker.allowRequest()) {
+            Log.e(TAG, "Not requesting page at offset " + offset + ", circuit open for "
+                    + breaker.getRemainingOpenMillis() + " ms.");
+            postPageError(generation, offset, -1);
+            return;
+        }
+
+        NetworkApiService client = NetworkClientRegistry.getService(mBaseUri, ContentExecutors.parse());
+
+        final Call<ResponseBody> call = client.fetchContentPage(mPath, offset, limit);
+        synchronized (mPageCalls) {
+            mPageCalls.add(call);
+        }
+
+        call.enqueue(new Callback<ResponseBody>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                synchronized (mPageCalls) {
+                    mPageCalls.remove(call);
+                }
+
+                final int code = response.raw().code();
+
+                if (RetryPolicy.isTransient(code)) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+
+                if (code != 200) {
+                    Log.e(TAG, "Received response code " + code + " for page at offset " + offset);
+                    postPageError(generation, offset, code);
+                    return;
+                }
+
+                ResponseBody body = response.body();
+                final ContentStore.Builder page = new ContentStore.Builder(limit);
+
+                try {
+                    parseBody(body, new ContentChunkListener() {
+                        @Override
+                        public void onChunk(ContentStore chunk, boolean first, boolean last) {
+                            page.addAll(chunk);
+                        }
+                    });
+                } catch (IOException | IllegalStateException e) {
+                    Log.e(TAG, "Exception caught parsing page at offset " + offset + ":  " + e.getMessage());
+                    postPageError(generation, offset, -1);
+                    return;
+                } finally {
+                    body.close();
+                }
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mCallbackListAdapter != null) {
+                            mCallbackListAdapter.onReceivePage(generation, offset, page.build().trimmed());
+                        }
+                    }
+                });
             }
 
             @Override
             public void onFailure(Call<ResponseBody> call, Throwable t) {
-                mCallbackListAdapter.onReceiveError(-1);
-                Log.e(TAG, "Error in sending the request to server.");
+                synchronized (mPageCalls) {
+                    mPageCalls.remove(call);
+                }
+
+                if (!call.isCanceled() && RetryPolicy.isTransient(t)) {
+                    breaker.onFailure();
+                }
+
+                Log.e(TAG, "Error in sending the page request to server.");
+                postPageError(generation, offset, -1);
+            }
+        });
+    }
+
+    /**
+     * @return True if a body of the media type is a binary content list.
+     */
+    static boolean isBinary(MediaType type)
+    {
+        return type != null && ContentWireFormat.isBinary(type.type() + "/" + type.subtype());
+    }
+
+    /**
+     * @return True if a body of the media type is a ContentDelta rather than a list.
+     */
+    static boolean isDelta(MediaType type)
+    {
+        return type != null && ContentDelta.MEDIA_TYPE.equals(type.type() + "/" + type.subtype());
+    }
+
+    /**
+     * Parses the body with the parser for its content type, binary or JSON.
+     */
+    private static void parseBody(ResponseBody body, ContentChunkListener listener)
+            throws IOException
+    {
+        long start = ContentMetrics.start();
+
+        if (isBinary(body.contentType())) {
+            ContentBinaryParser parser = new ContentBinaryParser();
+            parser.parse(body.byteStream(), listener);
+
+            Log.d(TAG, "Parsed " + parser.getParsedCount() + " items from binary list.");
+        } else {
+            ContentLenientParser parser = new ContentLenientParser();
+            parser.parse(body.charStream(), listener);
+
+            Log.d(TAG, "Parsed " + parser.getParsedCount() + " items, skipped "
+                    + parser.getSkippedCount() + " malformed items.");
+            String defects = parser.getDefectSummary();
+            if (!defects.isEmpty()) {
+                Log.w(TAG, "Malformed list items:  " + defects);
+            }
+        }
+
+        ContentMetrics.end(ContentMetrics.Span.PARSE, start);
+    }
+
+    /**
+     * Cancels the list request and every page request in flight.  Must be called on the main
+     * thread.  Nothing more is delivered to the caller afterwards, including results that were
+     * already posted, so this is safe to call from onDestroy.
+     */
+    public void cancel()
+    {
+        mListRequest.cancel();
+        cancelFanOut();
+        cancelPages();
+
+        mCallbackListAdapter = null;
+    }
+
+    /**
+     * Cancels every page request in flight.  A page already parsed may still be delivered, so
+     * the caller should drop pages by their generation too.
+     */
+    public void cancelPages()
+    {
+        synchronized (mPageCalls) {
+            for (Call<ResponseBody> call : mPageCalls) {
+                call.cancel();
+            }
+            mPageCalls.clear();
+        }
+    }
+
+    /**
+     * @return True if results of the list request of this generation may still be delivered.
+     *         Only called on the main thread.
+     */
+    private boolean isCurrent(int generation)
+    {
+        return mCallbackListAdapter != null && mListRequest.isCurrent(generation);
+    }
+
+    private void postPageError(final int generation, final int offset, final int errorCode)
+    {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCallbackListAdapter != null) {
+                    mCallbackListAdapter.onReceivePageError(generation, offset, errorCode);
+                }
+            }
+        });
+    }
+
+    /**
+     * Error callbacks are delivered on the main thread, the same as content.
+     */
+    private void postError(final int generation, final int errorCode)
+    {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isCurrent(generation)) {
+                    mCallbackListAdapter.onReceiveError(errorCode);
+                }
             }
         });
     }
@@ -145,10 +768,29 @@ public class NetworkService {
     /**
      * Interface class definition for formatting of the REST call to retrofit.
      */
-    private interface NetworkApiService {
+    interface NetworkApiService {
+        @Streaming
+        @Headers("Accept: " + ContentWireFormat.ACCEPT)
         @GET("{url}")
         Call<ResponseBody> fetchContentList (
                 @Path("url") String url
         );
+
+        @Streaming
+        @Headers("Accept: " + ContentWireFormat.ACCEPT)
+        @GET("{url}")
+        Call<ResponseBody> fetchContentPage (
+                @Path("url") String url,
+                @Query("offset") int offset,
+                @Query("limit") int limit
+        );
+
+        @Streaming
+        @Headers("Accept: " + ContentDelta.MEDIA_TYPE + ", application/json")
+        @GET("{url}")
+        Call<ResponseBody> fetchContentDelta (
+                @Path("url") String url,
+                @Query("since") String version
+        );
     }
 }
@@ -0,0 +1,203 @@
+package com.lausy.contentretriever;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+import javax.net.SocketFactory;
+
+import okhttp3.Dns;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * <h1>NetworkTimings</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Feeds the network spans of ContentMetrics from the shared OkHttpClient.  This OkHttp version
+ * has no event listener, so each stage is timed where the client lets it be replaced:  DNS by a
+ * Dns that wraps the system lookup, connect by a socket factory whose sockets time connect, and
+ * TTFB and body download by a network interceptor.
+ *
+ * DNS and connect cover every connection of the client, images included, since connections are
+ * pooled across requests.  TTFB and body download are only recorded for content list and page
+ * requests, which carry the ContentWireFormat Accept header.  Cache hits do not reach the
+ * network and are not timed.
+ *
+ * Nothing is timed, and no body is wrapped, while metrics are off.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class NetworkTimings {
+
+    private NetworkTimings() {}
+
+    /**
+     * Adds the timed Dns, socket factory and interceptor to the builder.
+     */
+    static OkHttpClient.Builder instrument(OkHttpClient.Builder builder)
+    {
+        return builder
+                .dns(DNS)
+                .socketFactory(SOCKETS)
+                .addNetworkInterceptor(INTERCEPTOR);
+    }
+
+    static final Dns DNS = new Dns() {
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            long start = ContentMetrics.start();
+            List<InetAddress> addresses = Dns.SYSTEM.lookup(hostname);
+            ContentMetrics.end(ContentMetrics.Span.DNS, start);
+            return addresses;
+        }
+    };
+
+    static final SocketFactory SOCKETS = new SocketFactory() {
+        @Override
+        public Socket createSocket() {
+            return new TimedSocket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return connect(new TimedSocket(), new InetSocketAddress(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+                throws IOException {
+            Socket socket = new TimedSocket();
+            socket.bind(new InetSocketAddress(localHost, localPort));
+            return connect(socket, new InetSocketAddress(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return connect(new TimedSocket(), new InetSocketAddress(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                                   int localPort) throws IOException {
+            Socket socket = new TimedSocket();
+            socket.bind(new InetSocketAddress(localAddress, localPort));
+            return connect(socket, new InetSocketAddress(address, port));
+        }
+
+        private Socket connect(Socket socket, SocketAddress address) throws IOException {
+            socket.connect(address);
+            return socket;
+        }
+    };
+
+    /**
+     * Socket that records the time its connect takes.
+     */
+    private static final class TimedSocket extends Socket {
+        @Override
+        public void connect(SocketAddress endpoint, int timeout) throws IOException {
+            long start = ContentMetrics.start();
+            super.connect(endpoint, timeout);
+            ContentMetrics.end(ContentMetrics.Span.CONNECT, start);
+        }
+    }
+
+    static final Interceptor INTERCEPTOR = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            if (!ContentWireFormat.ACCEPT.equals(chain.request().header("Accept"))) {
+                return chain.proceed(chain.request());
+            }
+
+            long start = ContentMetrics.start();
+            Response response = chain.proceed(chain.request());
+            if (start == 0 || response.body() == null) {
+                return response;
+            }
+
+            long headers = System.nanoTime();
+            ContentMetrics.record(ContentMetrics.Span.TTFB, headers - start);
+
+            return response.newBuilder()
+                    .body(new TimedBody(response.body(), headers))
+                    .build();
+        }
+    };
+
+    /**
+     * Body that records the time from the response headers until it has been read to the end,
+     * or closed after all of its declared length was read.  A body closed early is not
+     * recorded.
+     */
+    private static final class TimedBody extends ResponseBody {
+        private final ResponseBody mBody;
+        private final long mStart;
+        private BufferedSource mSource;
+        private long mBytesRead;
+        private boolean mRecorded;
+
+        TimedBody(ResponseBody body, long start) {
+            mBody = body;
+            mStart = start;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mBody.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return mBody.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            if (mSource == null) {
+                mSource = Okio.buffer(new ForwardingSource(mBody.source()) {
+                    @Override
+                    public long read(Buffer sink, long byteCount) throws IOException {
+                        long read = super.read(sink, byteCount);
+                        if (read == -1) {
+                            done();
+                        } else {
+                            mBytesRead += read;
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        if (mBytesRead == mBody.contentLength()) {
+                            done();
+                        }
+                        super.close();
+                    }
+                });
+            }
+            return mSource;
+        }
+
+        private void done()
+        {
+            if (!mRecorded) {
+                mRecorded = true;
+                ContentMetrics.end(ContentMetrics.Span.BODY, mStart);
+            }
+        }
+    }
+}
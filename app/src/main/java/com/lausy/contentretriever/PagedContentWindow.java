@@ -0,0 +1,217 @@
+package com.lausy.contentretriever;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <h1>PagedContentWindow</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Sliding window over a content list that is too large to hold in memory.  The list is fetched
+ * in pages of a fixed size.  Only a bounded number of pages is kept, and when a new page
+ * arrives the page furthest from the last row shown is evicted.  An evicted page is fetched
+ * again the next time one of its rows is shown.
+ *
+ * Reading a row with get has no side effects, so it can be done for item IDs or prefetching.
+ * Pages are only fetched when the caller reports a row as shown with onRowShown.
+ *
+ * The total size of the list is not known up front.  While the end has not been reached, the
+ * count includes one page of placeholder rows past the last loaded row, so scrolling into it
+ * triggers the next fetch.  Rows that are not loaded are returned as null.
+ *
+ * Each page is a ContentStore, and rows are read through a Row accessor supplied by the caller.
+ *
+ * Every reset starts a new generation.  Pages are requested with the generation, and a page or
+ * failure reported for an older one is dropped, so a reply still in flight from before a reset
+ * cannot be taken for a page of the new list.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+class PagedContentWindow {
+    static final int DEFAULT_PAGE_SIZE = 200;
+    static final int DEFAULT_MAX_RESIDENT_PAGES = 8;
+
+    /**
+     * Fetches a page.  The result must be passed to onPageLoaded or onPageFailed with the same
+     * generation.  This may be done before loadPage returns.
+     */
+    interface PageLoader {
+        void loadPage(int generation, int offset, int limit);
+    }
+
+    private final int mPageSize;
+    private final int mMaxResidentPages;
+    private final PageLoader mLoader;
+
+    private final Map<Integer, ContentStore> mPages = new HashMap<>();
+    private final Set<Integer> mLoading = new HashSet<>();
+
+    private int mKnownCount;
+    private boolean mEndReached;
+    private int mCurrentPage;
+    private int mGeneration;
+
+    PagedContentWindow(int pageSize, int maxResidentPages, PageLoader loader) {
+        if (pageSize <= 0 || maxResidentPages < 3) {
+            throw new IllegalArgumentException("pageSize=" + pageSize + ", maxResidentPages=" + maxResidentPages);
+        }
+        mPageSize = pageSize;
+        mMaxResidentPages = maxResidentPages;
+        mLoader = loader;
+    }
+
+    int getPageSize() { return mPageSize; }
+
+    int getGeneration() { return mGeneration; }
+
+    /**
+     * Drops all pages and starts again from the first page, in a new generation.
+     */
+    void reset()
+    {
+        mGeneration++;
+        mPages.clear();
+        mLoading.clear();
+        mKnownCount = 0;
+        mEndReached = false;
+        mCurrentPage = 0;
+
+        requestPage(0);
+    }
+
+    /**
+     * @return Number of rows to show, including one page of placeholders if the end of the
+     *         list has not been reached.
+     */
+    int getCount()
+    {
+        if (mEndReached || mKnownCount == 0) {
+            return mKnownCount;
+        }
+        return mKnownCount + mPageSize;
+    }
+
+    /**
+     * Moves the accessor to the row at the position.  Nothing is fetched.
+     *
+     * @return The accessor, or null if the page of the row is not loaded yet.
+     */
+    ContentStore.Row get(int position, ContentStore.Row row)
+    {
+        int page = position / mPageSize;
+        ContentStore items = mPages.get(page);
+        int index = position - page * mPageSize;
+
+        if (items == null || index >= items.size()) {
+            return null;
+        }
+        return row.moveTo(items, index);
+    }
+
+    /**
+     * Called when the row at the position is shown.  The page holding it and the pages either
+     * side are fetched if they are not loaded, and the pages furthest from it are the first
+     * to be evicted.
+     */
+    void onRowShown(int position)
+    {
+        int page = position / mPageSize;
+        mCurrentPage = page;
+
+        requestPage(page);
+        requestPage(page + 1);
+        if (page > 0) {
+            requestPage(page - 1);
+        }
+    }
+
+    /**
+     * Stores a fetched page and evicts the pages furthest from the current position if the
+     * window is full.
+     *
+     * @param generation Generation the page was requested in.
+     * @param offset Offset the page was requested at.
+     * @param items Rows of the page.  Fewer than a page means the end of the list.
+     * @return False if the page was requested before the last reset and was dropped.
+     */
+    boolean onPageLoaded(int generation, int offset, ContentStore items)
+    {
+        if (generation != mGeneration) {
+            return false;
+        }
+        int page = offset / mPageSize;
+
+        mLoading.remove(page);
+        mPages.put(page, items);
+
+        if (items.size() < mPageSize) {
+            mEndReached = true;
+            mKnownCount = offset + items.size();
+        } else {
+            mKnownCount = Math.max(mKnownCount, offset + items.size());
+        }
+
+        while (mPages.size() > mMaxResidentPages) {
+            evictFurthestPage();
+        }
+        return true;
+    }
+
+    /**
+     * Marks a page as not loading so that it is requested again the next time it is shown.  A
+     * failure from before the last reset is ignored.
+     */
+    void onPageFailed(int generation, int offset)
+    {
+        if (generation == mGeneration) {
+            mLoading.remove(offset / mPageSize);
+        }
+    }
+
+    int getResidentPageCount() { return mPages.size(); }
+
+    int getResidentItemCount()
+    {
+        int count = 0;
+        for (ContentStore items : mPages.values()) {
+            count += items.size();
+        }
+        return count;
+    }
+
+    boolean isEndReached() { return mEndReached; }
+
+    private void requestPage(int page)
+    {
+        if (mEndReached && page * mPageSize >= mKnownCount) {
+            return;
+        }
+        if (mPages.containsKey(page) || mLoading.contains(page)) {
+            return;
+        }
+
+        mLoading.add(page);
+        mLoader.loadPage(mGeneration, page * mPageSize, mPageSize);
+    }
+
+    private void evictFurthestPage()
+    {
+        int furthest = -1;
+        int furthestDistance = -1;
+
+        for (int page : mPages.keySet()) {
+            int distance = Math.abs(page - mCurrentPage);
+
+            if (distance > furthestDistance) {
+                furthest = page;
+                furthestDistance = distance;
+            }
+        }
+
+        mPages.remove(furthest);
+    }
+}
@@ -0,0 +1,300 @@
+package com.lausy.contentretriever;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Random;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * <h1>SingleFlightRequest</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Keeps at most one call in flight.  A request for the same key as the call in flight joins it
+ * instead of starting another call, so repeated refreshes put one request on the wire.  A
+ * request for a different key, or cancel(), cancels the call in flight and makes it stale.
+ *
+ * Every call started gets a generation.  Anything the call delivers later, for example a chunk
+ * posted to the main thread, should be dropped unless isCurrent still returns true for that
+ * generation.  The listener of a stale call is not run at all, and its response body is closed.
+ *
+ * A call stays in flight until its listener returns, so a response that is parsed inside the
+ * listener is joined as well.
+ *
+ * With a RetryPolicy, a transient failure is retried after a backoff and the request stays in
+ * flight meanwhile.  The listener only sees the final outcome.  With a CircuitBreaker, every
+ * attempt is reported to it, and while it is open requests fail at once with a
+ * CircuitBreaker.OpenException.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class SingleFlightRequest<T> {
+
+    /**
+     * Creates the call to run when no call for the key is in flight.  Called again for each
+     * retry.
+     */
+    interface CallFactory<T> {
+        Call<T> create();
+    }
+
+    /**
+     * Receives the result of a call, with the generation it was started under.
+     */
+    interface Listener<T> {
+        void onResponse(int generation, Response<T> response);
+        void onFailure(int generation, Throwable t);
+    }
+
+    private final RetryPolicy mRetryPolicy;
+    private final CircuitBreaker mCircuitBreaker;
+    private final RetryPolicy.Scheduler mScheduler;
+    private final Random mRandom = new Random();
+
+    private Call<T> mCall;
+    private String mKey;
+    private int mGeneration;
+
+    private int mStartedCount;
+    private int mJoinedCount;
+    private int mRetryCount;
+
+    /**
+     * A request without retries or circuit breaker.
+     */
+    SingleFlightRequest() {
+        this(RetryPolicy.NONE, null, null);
+    }
+
+    /**
+     * @param retryPolicy Decides which failures are retried and when.
+     * @param circuitBreaker Shared by the requests to one server.  May be null.
+     * @param scheduler Runs retries after their delay.  May be null without retries.
+     */
+    SingleFlightRequest(RetryPolicy retryPolicy, CircuitBreaker circuitBreaker,
+                        RetryPolicy.Scheduler scheduler) {
+        if (retryPolicy.getMaxAttempts() > 1 && scheduler == null) {
+            throw new IllegalArgumentException("Retries need a scheduler.");
+        }
+        mRetryPolicy = retryPolicy;
+        mCircuitBreaker = circuitBreaker;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Starts a call, or joins the call in flight if it is for the same key.
+     *
+     * @param key Identifies what is requested, for example the URL.
+     * @param factory Creates the call if one has to be started.
+     * @param listener Receives the result of a call that is started here.  Not used if the
+     *                 request joins a call in flight.
+     * @return Generation of the call that will deliver the result.
+     */
+    int enqueue(String key, CallFactory<T> factory, Listener<T> listener)
+    {
+        final int generation;
+
+        synchronized (this) {
+            if (mKey != null && mKey.equals(key)) {
+                mJoinedCount++;
+                return mGeneration;
+            }
+
+            if (mCall != null) {
+                mCall.cancel();
+                mCall = null;
+            }
+
+            generation = ++mGeneration;
+            mKey = key;
+            mStartedCount++;
+        }
+
+        attempt(generation, 1, factory, listener);
+        return generation;
+    }
+
+    /**
+     * Cancels the call in flight, if any, including a retry that is waiting.  Its result and
+     * anything it already delivered under its generation become stale.
+     */
+    synchronized void cancel()
+    {
+        if (mCall != null) {
+            mCall.cancel();
+            mCall = null;
+        }
+        mKey = null;
+        mGeneration++;
+    }
+
+    /**
+     * @return True if the generation belongs to the latest call and it was not cancelled.
+     */
+    synchronized boolean isCurrent(int generation) { return generation == mGeneration; }
+
+    /**
+     * @return True if a call is in flight or waiting to be retried.
+     */
+    synchronized boolean isInFlight() { return mKey != null; }
+
+    /**
+     * @return Number of requests that started a call.  Retries are not counted.
+     */
+    synchronized int getStartedCount() { return mStartedCount; }
+
+    /**
+     * @return Number of requests that joined a call in flight instead of starting one.
+     */
+    synchronized int getJoinedCount() { return mJoinedCount; }
+
+    /**
+     * @return Number of retries made.
+     */
+    synchronized int getRetryCount() { return mRetryCount; }
+
+    private void attempt(final int generation, final int attempt, final CallFactory<T> factory,
+                         final Listener<T> listener)
+    {
+        final Call<T> call;
+
+        synchronized (this) {
+            if (generation != mGeneration) {
+                return;
+            }
+
+            if (mCircuitBreaker != null && !mCircuitBreaker.allowRequest()) {
+                call = null;
+            } else {
+                call = factory.create();
+                mCall = call;
+            }
+        }
+
+        if (call == null) {
+            deliverFailure(generation, listener,
+                    new CircuitBreaker.OpenException(mCircuitBreaker.getRemainingOpenMillis()));
+            return;
+        }
+
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> c, Response<T> response) {
+                if (!isCurrent(generation)) {
+                    close(response);
+                    return;
+                }
+
+                if (RetryPolicy.isTransient(response.code())) {
+                    onAttemptFailed();
+
+                    long retryAfter = RetryPolicy.parseRetryAfter(
+                            response.headers().get("Retry-After"), System.currentTimeMillis());
+                    if (retry(c, generation, attempt, retryAfter, factory, listener)) {
+                        close(response);
+                        return;
+                    }
+                } else if (mCircuitBreaker != null) {
+                    mCircuitBreaker.onSuccess();
+                }
+
+                try {
+                    listener.onResponse(generation, response);
+                } finally {
+                    finish(generation);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<T> c, Throwable t) {
+                if (!isCurrent(generation)) {
+                    return;
+                }
+
+                if (RetryPolicy.isTransient(t)) {
+                    onAttemptFailed();
+
+                    if (retry(c, generation, attempt, -1, factory, listener)) {
+                        return;
+                    }
+                }
+
+                deliverFailure(generation, listener, t);
+            }
+        });
+    }
+
+    private void onAttemptFailed()
+    {
+        if (mCircuitBreaker != null) {
+            mCircuitBreaker.onFailure();
+        }
+    }
+
+    /**
+     * Schedules the next attempt if the policy allows it.
+     *
+     * @return True if a retry was scheduled.
+     */
+    private boolean retry(Call<T> failed, final int generation, final int attempt, long retryAfterMillis,
+                          final CallFactory<T> factory, final Listener<T> listener)
+    {
+        if (attempt >= mRetryPolicy.getMaxAttempts()
+                || !RetryPolicy.isIdempotent(failed.request().method())
+                || (mCircuitBreaker != null && mCircuitBreaker.getState() == CircuitBreaker.State.OPEN)) {
+            return false;
+        }
+
+        long delay;
+        synchronized (this) {
+            delay = mRetryPolicy.delayMillis(attempt, retryAfterMillis, mRandom);
+            if (delay < 0 || generation != mGeneration) {
+                return false;
+            }
+            mCall = null;
+            mRetryCount++;
+        }
+
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                attempt(generation, attempt + 1, factory, listener);
+            }
+        }, delay);
+        return true;
+    }
+
+    private void deliverFailure(int generation, Listener<T> listener, Throwable t)
+    {
+        try {
+            listener.onFailure(generation, t);
+        } finally {
+            finish(generation);
+        }
+    }
+
+    private synchronized void finish(int generation)
+    {
+        if (generation == mGeneration) {
+            mCall = null;
+            mKey = null;
+        }
+    }
+
+    private static void close(Response<?> response)
+    {
+        Object body = response.isSuccessful() ? response.body() : response.errorBody();
+
+        if (body instanceof Closeable) {
+            try {
+                ((Closeable) body).close();
+            } catch (IOException e) {
+                // Nothing to do, the body is not read.
+            }
+        }
+    }
+}
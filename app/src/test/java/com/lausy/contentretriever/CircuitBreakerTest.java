@@ -0,0 +1,95 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>CircuitBreaker Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class CircuitBreakerTest {
+
+    private static final class ManualClock implements RetryPolicy.Scheduler {
+        long mNow;
+
+        @Override
+        public long now() { return mNow; }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final ManualClock mClock = new ManualClock();
+    private final CircuitBreaker mBreaker = new CircuitBreaker(3, 1000, mClock);
+
+    @Test
+    public void opensAfterFailuresInARow() {
+        mBreaker.onFailure();
+        mBreaker.onFailure();
+        mBreaker.onSuccess();
+        mBreaker.onFailure();
+        mBreaker.onFailure();
+        assertTrue(mBreaker.allowRequest());
+
+        mBreaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+        assertFalse(mBreaker.allowRequest());
+        assertEquals(1000, mBreaker.getRemainingOpenMillis());
+    }
+
+    @Test
+    public void letsOneTrialThroughAfterOpenPeriod() {
+        open();
+        mClock.mNow = 999;
+        assertFalse(mBreaker.allowRequest());
+
+        mClock.mNow = 1000;
+        assertTrue(mBreaker.allowRequest());
+        assertFalse(mBreaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, mBreaker.getState());
+
+        mBreaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, mBreaker.getState());
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void failedTrialOpensAgain() {
+        open();
+        mClock.mNow = 1000;
+        assertTrue(mBreaker.allowRequest());
+
+        mBreaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+        assertFalse(mBreaker.allowRequest());
+
+        mClock.mNow = 2000;
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void trialThatNeverReportsIsReplaced() {
+        open();
+        mClock.mNow = 1000;
+        assertTrue(mBreaker.allowRequest());
+
+        mClock.mNow = 1500;
+        assertFalse(mBreaker.allowRequest());
+        mClock.mNow = 2000;
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    private void open()
+    {
+        for (int i = 0; i < 3; i++) {
+            mBreaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.lausy.contentretriever;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.concurrent.Executor;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>HTTP Cache Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Runs a 200, 304, 200 cycle through a client with a disk cache and checks the conditional
+ * headers and the cache counters.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentCacheStatsTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mCacheFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+    private NetworkService.NetworkApiService mService;
+    private ContentCacheStats mStats;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+
+        mService = NetworkClientRegistry.createService(
+                NetworkClientRegistry.buildHttpClient(mCacheFolder.getRoot()),
+                mServer.url("/").toString(), DIRECT);
+        mStats = new ContentCacheStats();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    private ContentCacheStats.Outcome fetch(String expectedBody) throws Exception {
+        Response<ResponseBody> response = mService.fetchContentList("movies.json").execute();
+        assertEquals(200, response.code());
+
+        ContentCacheStats.Outcome outcome = mStats.record(response.raw());
+        assertEquals(expectedBody, response.body().string());
+
+        return outcome;
+    }
+
+    @Test
+    public void okNotModifiedOkCycle() throws Exception {
+        String v1 = "[{\"title\":\"Joe\",\"image\":\"x\",\"id\":\"1\"}]";
+        String v2 = "[{\"title\":\"Igor\",\"image\":\"y\",\"id\":\"2\"}]";
+
+        mServer.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody(v1));
+        mServer.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+        mServer.enqueue(new MockResponse().setHeader("ETag", "\"v2\"").setBody(v2));
+
+        assertEquals(ContentCacheStats.Outcome.MISS, fetch(v1));
+        assertEquals(ContentCacheStats.Outcome.REVALIDATED, fetch(v1));
+        assertEquals(ContentCacheStats.Outcome.MISS, fetch(v2));
+
+        RecordedRequest first = mServer.takeRequest();
+        RecordedRequest second = mServer.takeRequest();
+        RecordedRequest third = mServer.takeRequest();
+
+        assertNull(first.getHeader("If-None-Match"));
+        assertEquals("\"v1\"", second.getHeader("If-None-Match"));
+        assertEquals("\"v1\"", third.getHeader("If-None-Match"));
+
+        assertEquals(0, mStats.getHitCount());
+        assertEquals(1, mStats.getRevalidatedCount());
+        assertEquals(2, mStats.getMissCount());
+        assertEquals(v1.length(), mStats.getBytesSaved());
+    }
+
+    @Test
+    public void freshResponseIsServedWithoutNetwork() throws Exception {
+        String v1 = "[]";
+
+        mServer.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=60").setBody(v1));
+
+        assertEquals(ContentCacheStats.Outcome.MISS, fetch(v1));
+        assertEquals(ContentCacheStats.Outcome.HIT, fetch(v1));
+        assertEquals(1, mServer.getRequestCount());
+    }
+}
@@ -0,0 +1,205 @@
+package com.lausy.contentretriever;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>Delta Sync Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * A MockWebServer serves a versioned list of 100,000 items, and the changes to 1% of it since
+ * that version.  The delta is checked to be a small part of the list on the wire.  Parse and
+ * apply times are measured by ContentDeltaBenchmark.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentDeltaSyncTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final int ITEMS = 100000;
+
+    /**
+     * The delta changes 1% of the list:  every 200th row is updated, every 400th, offset by
+     * 100, is removed, and as many new rows are added.
+     */
+    private static final int UPDATE_EVERY = 200;
+    private static final int REMOVE_EVERY = 400;
+
+    private MockWebServer mServer;
+    private NetworkService.NetworkApiService mService;
+
+    @Before
+    public void setUp() throws Exception {
+        final String full = fullJson();
+        final String delta = deltaJson();
+
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if (path.endsWith("?since=v1")) {
+                    return new MockResponse()
+                            .setHeader("Content-Type", ContentDelta.MEDIA_TYPE)
+                            .setBody(delta);
+                } else if (path.contains("?since=")) {
+                    return new MockResponse().setResponseCode(410);
+                }
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setHeader(ContentDelta.VERSION_HEADER, "v1")
+                        .setBody(full);
+            }
+        });
+        mServer.start();
+
+        mService = NetworkClientRegistry.createService(
+                NetworkClientRegistry.buildHttpClient(null), mServer.url("/").toString(), DIRECT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    private static void appendItem(StringBuilder sb, int id, String title) {
+        sb.append("{\"title\":\"").append(title)
+                .append("\",\"image\":\"http://images.adrise.tv/").append(id)
+                .append(".jpg\",\"id\":\"").append(id).append("\"}");
+    }
+
+    private static String fullJson() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int id = 0; id < ITEMS; id++) {
+            sb.append(id == 0 ? "" : ",");
+            appendItem(sb, id, "Title " + id);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String deltaJson() {
+        StringBuilder sb = new StringBuilder("{\"version\":\"v2\",\"added\":[");
+        for (int id = ITEMS; id < ITEMS + ITEMS / REMOVE_EVERY; id++) {
+            sb.append(id == ITEMS ? "" : ",");
+            appendItem(sb, id, "Title " + id);
+        }
+        sb.append("],\"updated\":[");
+        for (int id = 0; id < ITEMS; id += UPDATE_EVERY) {
+            sb.append(id == 0 ? "" : ",");
+            appendItem(sb, id, "Updated " + id);
+        }
+        sb.append("],\"removed\":[");
+        for (int id = REMOVE_EVERY / 4; id < ITEMS; id += REMOVE_EVERY) {
+            sb.append(id == REMOVE_EVERY / 4 ? "" : ",").append('"').append(id).append('"');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String expectedTitle(int id) {
+        return id < ITEMS && id % UPDATE_EVERY == 0 ? "Updated " + id : "Title " + id;
+    }
+
+    private static boolean isRemoved(int id) {
+        return id < ITEMS && id % REMOVE_EVERY == REMOVE_EVERY / 4;
+    }
+
+    private ContentStore fetchFull() throws IOException {
+        Response<ResponseBody> response = mService.fetchContentList("list").execute();
+        assertEquals("v1", response.headers().get(ContentDelta.VERSION_HEADER));
+
+        final ContentStore.Builder builder = new ContentStore.Builder(ITEMS);
+        ResponseBody body = response.body();
+        try {
+            new ContentLenientParser().parse(body.charStream(), new ContentChunkListener() {
+                @Override
+                public void onChunk(ContentStore chunk, boolean first, boolean last) {
+                    builder.addAll(chunk);
+                }
+            });
+        } finally {
+            body.close();
+        }
+        return builder.build().trimmed();
+    }
+
+    @Test
+    public void deltaBringsListToNewVersion() throws Exception {
+        ContentStore base = fetchFull();
+        assertEquals(ITEMS, base.size());
+
+        Response<ResponseBody> response = mService.fetchContentDelta("list", "v1").execute();
+        assertEquals(200, response.code());
+        assertTrue(NetworkService.isDelta(response.body().contentType()));
+
+        ContentDelta delta;
+        try {
+            delta = new ContentLenientParser().parseDelta(response.body().charStream());
+        } finally {
+            response.body().close();
+        }
+        assertEquals("v2", delta.getVersion());
+
+        ContentStore result = delta.applyTo(base, null);
+
+        int row = 0;
+        for (int id = 0; id < ITEMS + ITEMS / REMOVE_EVERY; id++) {
+            if (isRemoved(id)) {
+                continue;
+            }
+            assertEquals(id, result.getId(row));
+            assertEquals(expectedTitle(id), result.getTitle(row));
+            row++;
+        }
+        assertEquals(row, result.size());
+        assertEquals(ITEMS, result.size());
+    }
+
+    @Test
+    public void tooOldVersionIsGone() throws Exception {
+        Response<ResponseBody> response = mService.fetchContentDelta("list", "v0").execute();
+        response.errorBody().close();
+
+        assertEquals(410, response.code());
+        assertEquals("/list?since=v0", mServer.takeRequest().getPath());
+    }
+
+    @Test
+    public void deltaIsAFractionOfTheFullList() throws Exception {
+        Response<ResponseBody> full = mService.fetchContentList("list").execute();
+        long fullBytes = full.body().contentLength();
+        full.body().close();
+
+        Response<ResponseBody> response = mService.fetchContentDelta("list", "v1").execute();
+        long deltaBytes = response.body().contentLength();
+        ContentDelta delta;
+        try {
+            delta = new ContentLenientParser().parseDelta(response.body().charStream());
+        } finally {
+            response.body().close();
+        }
+
+        assertEquals(ITEMS / REMOVE_EVERY + ITEMS / UPDATE_EVERY, delta.getUpsertCount());
+        assertEquals(ITEMS / REMOVE_EVERY, delta.getRemovedCount());
+        assertTrue(fullBytes + " vs " + deltaBytes, deltaBytes > 0 && deltaBytes * 50 < fullBytes);
+    }
+}
@@ -0,0 +1,386 @@
+package com.lausy.contentretriever;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentFanOutRequest Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Every source is a MockWebServer of its own.  Slow sources throttle their bodies, so they
+ * are still streaming while the others finish.  Responses and bodies go to the executors the
+ * app uses, ContentExecutors.parse() and download().  The listener runs on a single thread
+ * that stands in for the main thread.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentFanOutRequestTest {
+    private static final ContentFanOutRequest.Parser PARSER = new ContentFanOutRequest.Parser() {
+        @Override
+        public void parse(ResponseBody body, ContentChunkListener listener) throws IOException {
+            new ContentLenientParser(50).parse(body.charStream(), listener);
+        }
+    };
+
+    private final List<MockWebServer> mServers = new ArrayList<>();
+    private ExecutorService mMain;
+
+    private final Recorder mRecorder = new Recorder();
+
+    /**
+     * Records what the listener is given, and when.
+     */
+    private static class Recorder implements ContentFanOutRequest.Listener {
+        final List<Integer> ids = new ArrayList<>();
+        final Map<Integer, Long> arrivalNanos = new HashMap<>();
+        final List<String> failures = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        int firsts;
+        int lasts;
+        int errorCode;
+        long firstChunkNanos;
+        long doneNanos;
+
+        @Override
+        public void onReceiveContent(ContentStore chunk, boolean first, boolean last) {
+            if (first) {
+                firsts++;
+                firstChunkNanos = System.nanoTime();
+            }
+            long now = System.nanoTime();
+            for (int row = 0; row < chunk.size(); row++) {
+                ids.add(chunk.getId(row));
+                arrivalNanos.put(chunk.getId(row), now);
+            }
+            if (last) {
+                lasts++;
+                doneNanos = System.nanoTime();
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void onSourceFailed(ContentSource source, int errorCode, boolean timedOut) {
+            failures.add(source.getPath() + (timedOut ? " timed out" : " " + errorCode));
+        }
+
+        @Override
+        public void onReceiveError(int errorCode) {
+            this.errorCode = errorCode;
+            doneNanos = System.nanoTime();
+            done.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mMain = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (MockWebServer server : mServers) {
+            server.shutdown();
+        }
+        mMain.shutdownNow();
+    }
+
+    private static String json(int fromId, int toId) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int id = fromId; id < toId; id++) {
+            sb.append(id == fromId ? "" : ",")
+                    .append("{\"title\":\"Title ").append(id)
+                    .append("\",\"image\":\"http://images.adrise.tv/").append(id)
+                    .append(".jpg\",\"id\":\"").append(id).append("\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    private ContentSource source(MockResponse response) throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(response);
+        server.start();
+        mServers.add(server);
+        return new ContentSource(server.url("/").toString(), "list-" + mServers.size());
+    }
+
+    private ContentSource source(Dispatcher dispatcher) throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+        mServers.add(server);
+        return new ContentSource(server.url("/").toString(), "list-" + mServers.size());
+    }
+
+    private ContentFanOutRequest request(ContentSource... sources) {
+        return request(ContentExecutors.download(), sources);
+    }
+
+    private ContentFanOutRequest request(Executor download, ContentSource... sources) {
+        return new ContentFanOutRequest(Arrays.asList(sources), PARSER, ContentExecutors.parse(),
+                download, mMain, ContentExecutors.retry());
+    }
+
+    private void start(final ContentFanOutRequest request) {
+        mMain.execute(new Runnable() {
+            @Override
+            public void run() {
+                request.start(mRecorder);
+            }
+        });
+    }
+
+    private static Set<Integer> range(int fromId, int toId) {
+        Set<Integer> ids = new HashSet<>();
+        for (int id = fromId; id < toId; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void mergesSourcesAndDropsDuplicateIds() throws Exception {
+        ContentFanOutRequest request = request(
+                source(new MockResponse().setBody(json(0, 300))),
+                source(new MockResponse().setBody(json(200, 500))),
+                source(new MockResponse().setBody(json(400, 600))));
+
+        start(request);
+
+        assertTrue(mRecorder.done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, mRecorder.firsts);
+        assertEquals(1, mRecorder.lasts);
+        assertEquals(600, mRecorder.ids.size());
+        assertEquals(range(0, 600), new HashSet<>(mRecorder.ids));
+        assertEquals(200, request.getDuplicateCount());
+        assertEquals(0, request.getFailedCount());
+        assertTrue(request.isDone());
+    }
+
+    @Test
+    public void rowsArriveBeforeSlowestSourceFinishes() throws Exception {
+        ContentFanOutRequest request = request(
+                source(new MockResponse().setBody(json(0, 300))),
+                source(new MockResponse().setBody(json(300, 500))
+                        .throttleBody(1024, 100, TimeUnit.MILLISECONDS)));
+
+        start(request);
+
+        assertTrue(mRecorder.done.await(20, TimeUnit.SECONDS));
+        assertEquals(range(0, 500), new HashSet<>(mRecorder.ids));
+        assertTrue(mRecorder.failures.isEmpty());
+
+        long shownEarlyMillis = TimeUnit.NANOSECONDS.toMillis(mRecorder.doneNanos - mRecorder.firstChunkNanos);
+        assertTrue("first rows only " + shownEarlyMillis + " ms before the end", shownEarlyMillis > 500);
+    }
+
+    @Test
+    public void slowSourceTimesOutWithoutHoldingBackOthers() throws Exception {
+        ContentFanOutRequest request = request(
+                source(new MockResponse().setBody(json(0, 300))),
+                source(new MockResponse().setBody(json(1000, 1500))
+                        .throttleBody(64, 100, TimeUnit.MILLISECONDS)),
+                source(new MockResponse().setBody(json(300, 600))));
+        request.setSourceTimeoutMillis(1000);
+
+        long start = System.nanoTime();
+        start(request);
+
+        assertTrue(mRecorder.done.await(10, TimeUnit.SECONDS));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(mRecorder.doneNanos - start);
+
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 5000);
+        assertEquals(Arrays.asList("list-2 timed out"), mRecorder.failures);
+        assertEquals(1, request.getTimedOutCount());
+        assertEquals(1, mRecorder.lasts);
+        assertTrue(mRecorder.ids.containsAll(range(0, 600)));
+        assertEquals(new HashSet<>(mRecorder.ids).size(), mRecorder.ids.size());
+    }
+
+    @Test
+    public void timedOutBodyFreesItsDownloadThread() throws Exception {
+        // One download thread, taken by a body that would stream for minutes.
+        ExecutorService download = Executors.newSingleThreadExecutor();
+        try {
+            ContentFanOutRequest request = request(download,
+                    source(new MockResponse().setBody(json(1000, 3000))
+                            .throttleBody(64, 100, TimeUnit.MILLISECONDS)),
+                    source(new Dispatcher() {
+                        @Override
+                        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                            // Answer once the slow body has the thread.
+                            Thread.sleep(300);
+                            return new MockResponse().setBody(json(0, 300));
+                        }
+                    }));
+            request.setSourceTimeoutMillis(1000);
+
+            long start = System.nanoTime();
+            start(request);
+
+            assertTrue(mRecorder.done.await(10, TimeUnit.SECONDS));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(mRecorder.doneNanos - start);
+
+            // The fast body waited for the thread without timing out, and got it once the slow
+            // one timed out.
+            assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 4000);
+            assertEquals(Arrays.asList("list-1 timed out"), mRecorder.failures);
+            assertTrue(mRecorder.ids.containsAll(range(0, 300)));
+        } finally {
+            download.shutdownNow();
+        }
+    }
+
+    @Test
+    public void slowSourcesDoNotHoldBackFastOnes() throws Exception {
+        // More slow bodies than parse threads, all streaming at once.
+        ContentFanOutRequest request = request(
+                source(new MockResponse().setBody(json(1000, 1400))
+                        .throttleBody(1024, 100, TimeUnit.MILLISECONDS)),
+                source(new MockResponse().setBody(json(2000, 2400))
+                        .throttleBody(1024, 100, TimeUnit.MILLISECONDS)),
+                source(new MockResponse().setBody(json(3000, 3400))
+                        .throttleBody(1024, 100, TimeUnit.MILLISECONDS)),
+                source(new MockResponse().setBody(json(0, 300))));
+        request.setSourceTimeoutMillis(8000);
+
+        long start = System.nanoTime();
+        start(request);
+
+        assertTrue(mRecorder.done.await(20, TimeUnit.SECONDS));
+        assertTrue(ContentExecutors.DOWNLOAD_THREADS > ContentExecutors.PARSE_THREADS);
+        assertTrue(mRecorder.failures.isEmpty());
+        assertEquals(1500, mRecorder.ids.size());
+
+        long fastMillis = TimeUnit.NANOSECONDS.toMillis(mRecorder.arrivalNanos.get(299) - start);
+        long slowMillis = TimeUnit.NANOSECONDS.toMillis(mRecorder.doneNanos - start);
+        assertTrue("fast source took " + fastMillis + " of " + slowMillis + " ms", fastMillis * 3 < slowMillis);
+    }
+
+    @Test
+    public void failingSourceOpensOnlyItsOwnCircuit() throws Exception {
+        ContentSource good = source(new MockResponse().setBody(json(0, 100)));
+        ContentSource bad = source(new MockResponse().setResponseCode(503));
+        final Map<ContentSource, CircuitBreaker> breakers = new HashMap<>();
+        breakers.put(good, new CircuitBreaker(1, 60000, ContentExecutors.retry()));
+        breakers.put(bad, new CircuitBreaker(1, 60000, ContentExecutors.retry()));
+
+        ContentFanOutRequest request = request(good, bad);
+        request.setRetryPolicy(RetryPolicy.NONE, new ContentFanOutRequest.CircuitBreakers() {
+            @Override
+            public CircuitBreaker of(ContentSource source) {
+                return breakers.get(source);
+            }
+        });
+        start(request);
+
+        assertTrue(mRecorder.done.await(10, TimeUnit.SECONDS));
+        assertEquals(range(0, 100), new HashSet<>(mRecorder.ids));
+        assertEquals(CircuitBreaker.State.CLOSED, breakers.get(good).getState());
+        assertEquals(CircuitBreaker.State.OPEN, breakers.get(bad).getState());
+    }
+
+    @Test
+    public void parallelismIsBounded() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        ContentSource[] sources = new ContentSource[6];
+
+        for (int i = 0; i < sources.length; i++) {
+            final int fromId = i * 100;
+            sources[i] = source(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest recorded) throws InterruptedException {
+                    int now = inFlight.incrementAndGet();
+                    maxInFlight.set(Math.max(maxInFlight.get(), now));
+                    Thread.sleep(200);
+                    inFlight.decrementAndGet();
+                    return new MockResponse().setBody(json(fromId, fromId + 100));
+                }
+            });
+        }
+
+        ContentFanOutRequest request = request(sources);
+        request.setMaxParallel(2);
+        start(request);
+
+        assertTrue(mRecorder.done.await(10, TimeUnit.SECONDS));
+        assertEquals(range(0, 600), new HashSet<>(mRecorder.ids));
+        assertEquals(2, request.getMaxRunning());
+        assertTrue("max in flight " + maxInFlight.get(), maxInFlight.get() <= 2);
+    }
+
+    @Test
+    public void failedSourceLeavesTheOthers() throws Exception {
+        ContentFanOutRequest request = request(
+                source(new MockResponse().setBody(json(0, 100))),
+                source(new MockResponse().setResponseCode(500)));
+
+        start(request);
+
+        assertTrue(mRecorder.done.await(10, TimeUnit.SECONDS));
+        assertEquals(range(0, 100), new HashSet<>(mRecorder.ids));
+        assertEquals(Arrays.asList("list-2 500"), mRecorder.failures);
+        assertEquals(1, mRecorder.lasts);
+    }
+
+    @Test
+    public void everySourceFailingReportsError() throws Exception {
+        ContentFanOutRequest request = request(
+                source(new MockResponse().setResponseCode(404)),
+                source(new MockResponse().setResponseCode(404)));
+
+        start(request);
+
+        assertTrue(mRecorder.done.await(10, TimeUnit.SECONDS));
+        assertEquals(404, mRecorder.errorCode);
+        assertEquals(0, mRecorder.lasts);
+        assertEquals(2, request.getFailedCount());
+    }
+
+    @Test
+    public void cancelledRequestDeliversNothing() throws Exception {
+        final ContentFanOutRequest request = request(
+                source(new MockResponse().setBody(json(0, 300)).throttleBody(256, 100, TimeUnit.MILLISECONDS)),
+                source(new MockResponse().setBody(json(300, 600)).throttleBody(256, 100, TimeUnit.MILLISECONDS)));
+
+        mMain.execute(new Runnable() {
+            @Override
+            public void run() {
+                request.start(mRecorder);
+                request.cancel();
+            }
+        });
+
+        assertFalse(mRecorder.done.await(1, TimeUnit.SECONDS));
+        assertTrue(request.isCancelled());
+        assertTrue(mRecorder.ids.isEmpty());
+        assertTrue(mRecorder.failures.isEmpty());
+    }
+}
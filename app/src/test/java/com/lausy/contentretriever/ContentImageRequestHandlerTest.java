@@ -0,0 +1,46 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentImageRequestHandler Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentImageRequestHandlerTest {
+
+    @Test
+    public void sampleSizeCoversTarget() {
+        // 214x306 posters into a 60dp square row image.
+        assertEquals(2, ContentImageRequestHandler.sampleSize(214, 306, 90, 90));
+        assertEquals(1, ContentImageRequestHandler.sampleSize(214, 306, 180, 180));
+        assertEquals(4, ContentImageRequestHandler.sampleSize(214, 306, 45, 45));
+    }
+
+    @Test
+    public void sampleSizeWithoutTargetIsOne() {
+        assertEquals(1, ContentImageRequestHandler.sampleSize(214, 306, 0, 0));
+        assertEquals(1, ContentImageRequestHandler.sampleSize(0, 0, 60, 60));
+    }
+
+    @Test
+    public void sampleSizeWithOneSideOpen() {
+        assertEquals(8, ContentImageRequestHandler.sampleSize(2000, 1000, 200, 0));
+    }
+
+    @Test
+    public void statsReportSavings() {
+        ContentImageStats stats = new ContentImageStats();
+        stats.recordDecode(2000000, 107 * 153 * 2, 214, 306);
+        stats.recordDecode(4000000, 107 * 153 * 2, 214, 306);
+
+        assertEquals(2, stats.getDecodeCount());
+        assertEquals(3.0, stats.getAverageDecodeMillis(), 1e-9);
+        assertEquals(2L * (214 * 306 * 4 - 107 * 153 * 2), stats.getBytesSaved());
+    }
+}
@@ -0,0 +1,442 @@
+package com.lausy.contentretriever;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * <h1>ContentLoadHarness</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Serves a SyntheticFeed from a local MockWebServer and fetches it over and over through the
+ * same path as the app:  the Retrofit service of NetworkClientRegistry and a SingleFlightRequest
+ * deliver the response to a parse thread, ContentLenientParser streams it into chunks, and the
+ * chunks are posted to a single thread that stands in for the main thread and builds the list
+ * with the ContentListAssembler of ContentListDataAdapter.  NetworkService and the adapter themselves need a Looper,
+ * so their JVM-safe parts are driven here instead.
+ *
+ * Each fetch is timed to the complete list, and a fetch into an empty list to its first row
+ * too, since a refresh keeps showing the old list until it is done.  The report gives the
+ * percentiles of both, the throughput, the peak heap, and the ContentMetrics spans recorded
+ * meanwhile.  Nothing leaves the machine, so it runs headless in CI.  Reports are written to
+ * text files under the load.reportDir system property, build/reports/load by default, for CI
+ * to archive.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentLoadHarness {
+
+    /**
+     * How the fake server answers:  the time before the response headers, and the bandwidth
+     * of the body.
+     */
+    enum ServerProfile {
+        LOCAL(0, 0),
+        LAN(2, 50000000),
+        WIFI(30, 4000000),
+        MOBILE(120, 750000);
+
+        final long latencyMillis;
+        /** Zero for no limit. */
+        final long bytesPerSecond;
+
+        ServerProfile(long latencyMillis, long bytesPerSecond) {
+            this.latencyMillis = latencyMillis;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+    }
+
+    /**
+     * Results of a run.
+     */
+    static final class Report {
+        final ContentHistogram firstRow = new ContentHistogram();
+        final ContentHistogram complete = new ContentHistogram();
+        int fetches;
+        int failures;
+        int parsedCount;
+        int skippedCount;
+        long bytes;
+        long elapsedNanos;
+        long baselineHeapBytes;
+        long peakHeapBytes;
+        String spans;
+        ContentStore store;
+
+        double getItemsPerSecond() { return parsedCount * 1e9 / elapsedNanos; }
+
+        double getBytesPerSecond() { return bytes * 1e9 / elapsedNanos; }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.US,
+                    "%d fetches, %d failed, %d items, %d skipped, %.1f MB\n"
+                            + "first row  p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms\n"
+                            + "complete   p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms\n"
+                            + "throughput %.0f items/s, %.1f MB/s\n"
+                            + "heap       baseline %.1f MB, peak %.1f MB\n%s",
+                    fetches, failures, parsedCount, skippedCount, bytes / 1e6,
+                    millis(firstRow, 50), millis(firstRow, 90), millis(firstRow, 99), firstRow.getMaxNanos() / 1e6,
+                    millis(complete, 50), millis(complete, 90), millis(complete, 99), complete.getMaxNanos() / 1e6,
+                    getItemsPerSecond(), getBytesPerSecond() / 1e6,
+                    baselineHeapBytes / 1e6, peakHeapBytes / 1e6, spans);
+        }
+
+        /**
+         * Writes the report under a title line to a file in the report directory, replacing
+         * the file if there is one.
+         *
+         * @return The file written.
+         */
+        File write(String name, String title) throws IOException
+        {
+            File dir = new File(System.getProperty("load.reportDir", "build/reports/load"));
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            File file = new File(dir, name + ".txt");
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+            try {
+                writer.write(title + "\n" + this + "\n");
+            } finally {
+                writer.close();
+            }
+            return file;
+        }
+
+        private static double millis(ContentHistogram histogram, double percentile)
+        {
+            return histogram.getPercentileNanos(percentile) / 1e6;
+        }
+    }
+
+    /**
+     * Builds the list from chunks on the stand-in main thread with the ContentListAssembler the
+     * adapter uses:  the first list streams in and is shown chunk by chunk, and a refresh over a
+     * list is collected and diffed against it, on the diff thread if it is long.
+     */
+    private final class ListSink implements ContentListAssembler.Listener {
+        final ContentListAssembler assembler;
+        ContentStore store = ContentStore.EMPTY;
+        long startNanos;
+        boolean shown;
+
+        /**
+         * Counted down once the body has been parsed and once the list is complete.
+         */
+        CountDownLatch done;
+
+        ListSink(Executor diffExecutor, Executor mainExecutor) {
+            assembler = new ContentListAssembler(this, diffExecutor, mainExecutor);
+            assembler.setIncrementalUpdates(mIncrementalUpdates);
+        }
+
+        void onChunk(ContentStore chunk, boolean first, boolean last)
+        {
+            long start = ContentMetrics.start();
+            assembler.onChunk(store, chunk, first, last);
+            ContentMetrics.end(ContentMetrics.Span.BUILD, start);
+        }
+
+        @Override
+        public void onListStarted(ContentStore list)
+        {
+            store = list;
+            onRowsShown(list);
+        }
+
+        @Override
+        public void onRowsAppended(ContentStore list, int start, int count)
+        {
+            store = list;
+            onRowsShown(list);
+        }
+
+        @Override
+        public void onListComplete(ContentStore list)
+        {
+            store = list;
+            if (!shown) {
+                // An empty list counts as shown once it is complete.
+                shown = true;
+                mReport.firstRow.record(System.nanoTime() - startNanos);
+            }
+            onComplete();
+        }
+
+        @Override
+        public void onRefreshComplete(ContentStore list, ContentListDiff diff)
+        {
+            store = list;
+            onComplete();
+        }
+
+        @Override
+        public boolean isDiffWanted() { return true; }
+
+        private void onRowsShown(ContentStore list)
+        {
+            if (!shown && list.size() > 0) {
+                shown = true;
+                mReport.firstRow.record(System.nanoTime() - startNanos);
+            }
+        }
+
+        private void onComplete()
+        {
+            mReport.complete.record(System.nanoTime() - startNanos);
+            done.countDown();
+        }
+
+        /**
+         * Called once the whole body has been parsed, after its last chunk.
+         */
+        void onParsed(int parsedCount, int skippedCount)
+        {
+            mReport.parsedCount += parsedCount;
+            mReport.skippedCount += skippedCount;
+            done.countDown();
+        }
+
+        void onError()
+        {
+            mReport.failures++;
+            assembler.reset();
+            while (done.getCount() > 0) {
+                done.countDown();
+            }
+        }
+    }
+
+    private final SyntheticFeed.Feed mFeed;
+    private final ServerProfile mProfile;
+
+    private int mIterations = 10;
+    private int mWarmupIterations = 2;
+    private boolean mIncrementalUpdates;
+    private int mChunkSize = ContentLenientParser.DEFAULT_CHUNK_SIZE;
+
+    private Report mReport;
+
+    ContentLoadHarness(SyntheticFeed.Feed feed, ServerProfile profile) {
+        mFeed = feed;
+        mProfile = profile;
+    }
+
+    void setIterations(int iterations) { mIterations = iterations; }
+    void setWarmupIterations(int iterations) { mWarmupIterations = iterations; }
+    void setChunkSize(int chunkSize) { mChunkSize = chunkSize; }
+
+    /**
+     * When true the list is kept between fetches, so every fetch after the first is a refresh
+     * that is diffed against it.  When false every fetch starts from an empty list.
+     */
+    void setIncrementalUpdates(boolean incremental) { mIncrementalUpdates = incremental; }
+
+    /**
+     * Runs the warm-up fetches, then the timed ones.
+     */
+    Report run() throws Exception
+    {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mProfile.latencyMillis > 0) {
+                    Thread.sleep(mProfile.latencyMillis);
+                }
+                MockResponse response = new MockResponse()
+                        .setHeader("Content-Type", "application/json; charset=utf-8")
+                        .setBody(new Buffer().write(mFeed.getJson()));
+                if (mProfile.bytesPerSecond > 0) {
+                    response.throttleBody(Math.max(1, mProfile.bytesPerSecond / 100), 10, TimeUnit.MILLISECONDS);
+                }
+                return response;
+            }
+        });
+        server.start();
+
+        ExecutorService parse = Executors.newFixedThreadPool(2);
+        ExecutorService main = Executors.newSingleThreadExecutor();
+        ExecutorService diff = Executors.newSingleThreadExecutor();
+        boolean metricsEnabled = ContentMetrics.isEnabled();
+
+        try {
+            NetworkService.NetworkApiService client = NetworkClientRegistry.createService(
+                    NetworkClientRegistry.buildHttpClient(null), server.url("/").toString(), parse);
+            SingleFlightRequest<ResponseBody> request = new SingleFlightRequest<>();
+            ListSink sink = new ListSink(diff, main);
+
+            mReport = new Report();
+            for (int i = 0; i < mWarmupIterations; i++) {
+                fetch(client, request, sink, main);
+            }
+
+            mReport = new Report();
+            ContentMetrics.reset();
+            ContentMetrics.setEnabled(true);
+            mReport.baselineHeapBytes = resetHeapPeak();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < mIterations; i++) {
+                fetch(client, request, sink, main);
+            }
+            mReport.elapsedNanos = System.nanoTime() - start;
+
+            mReport.peakHeapBytes = getHeapPeak();
+            mReport.fetches = mIterations;
+            mReport.bytes = (long) mFeed.getJson().length * mIterations;
+            mReport.store = sink.store;
+
+            StringWriter spans = new StringWriter();
+            ContentMetrics.dump(spans);
+            mReport.spans = spans.toString();
+
+            return mReport;
+        } finally {
+            ContentMetrics.setEnabled(metricsEnabled);
+            main.shutdownNow();
+            diff.shutdownNow();
+            parse.shutdownNow();
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Fetches the list once and waits until it is built or has failed.
+     */
+    private void fetch(final NetworkService.NetworkApiService client, SingleFlightRequest<ResponseBody> request,
+                       final ListSink sink, final ExecutorService main) throws InterruptedException
+    {
+        if (!mIncrementalUpdates) {
+            sink.store = ContentStore.EMPTY;
+            sink.assembler.reset();
+        }
+        sink.shown = false;
+        sink.done = new CountDownLatch(2);
+        sink.startNanos = System.nanoTime();
+
+        // A new key each time, so every fetch is a request of its own instead of a join.
+        request.enqueue("list#" + sink.startNanos, new SingleFlightRequest.CallFactory<ResponseBody>() {
+            @Override
+            public Call<ResponseBody> create() {
+                return client.fetchContentList("list");
+            }
+        }, new SingleFlightRequest.Listener<ResponseBody>() {
+            @Override
+            public void onResponse(int generation, Response<ResponseBody> response) {
+                if (response.code() != 200) {
+                    postError(sink, main);
+                    return;
+                }
+
+                ResponseBody body = response.body();
+                long start = ContentMetrics.start();
+                try {
+                    ContentLenientParser parser = new ContentLenientParser(mChunkSize);
+                    parser.parse(body.charStream(), new ContentChunkListener() {
+                        @Override
+                        public void onChunk(final ContentStore chunk, final boolean first, final boolean last) {
+                            main.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    sink.onChunk(chunk, first, last);
+                                }
+                            });
+                        }
+                    });
+                    ContentMetrics.end(ContentMetrics.Span.PARSE, start);
+
+                    final int parsedCount = parser.getParsedCount();
+                    final int skippedCount = parser.getSkippedCount();
+                    main.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            sink.onParsed(parsedCount, skippedCount);
+                        }
+                    });
+                } catch (IOException | IllegalStateException e) {
+                    postError(sink, main);
+                } finally {
+                    body.close();
+                }
+            }
+
+            @Override
+            public void onFailure(int generation, Throwable t) {
+                postError(sink, main);
+            }
+        });
+
+        if (!sink.done.await(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Fetch did not finish.");
+        }
+    }
+
+    private static void postError(final ListSink sink, ExecutorService main)
+    {
+        main.execute(new Runnable() {
+            @Override
+            public void run() {
+                sink.onError();
+            }
+        });
+    }
+
+    /**
+     * Collects garbage, resets the peak of every heap pool, and returns the heap in use.
+     */
+    private static long resetHeapPeak()
+    {
+        System.gc();
+
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * @return Sum of the peaks of the heap pools since they were reset.  The pools peak at
+     *         different times, so this is an upper bound on the peak of the whole heap.
+     */
+    private static long getHeapPeak()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
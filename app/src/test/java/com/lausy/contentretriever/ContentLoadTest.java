@@ -0,0 +1,128 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>Content Load Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Runs ContentLoadHarness over synthetic feeds and writes its reports, see the harness.  Only
+ * the results are checked, never the timings.  The main run can be scaled from the command line:
+ *
+ *   ./gradlew :app:testDebugUnitTest --tests '*ContentLoadTest' \
+ *           -Dload.items=100000 -Dload.iterations=20 -Dload.profile=WIFI -Dload.malformed=0.05
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentLoadTest {
+    private static final int ITEMS = Integer.getInteger("load.items", 20000);
+    private static final int ITERATIONS = Integer.getInteger("load.iterations", 10);
+    private static final ContentLoadHarness.ServerProfile PROFILE =
+            ContentLoadHarness.ServerProfile.valueOf(System.getProperty("load.profile", "LOCAL"));
+    private static final double MALFORMED_RATE = Double.parseDouble(System.getProperty("load.malformed", "0.02"));
+
+    private static void assertSameRows(ContentStore expected, ContentStore actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals(expected.getId(row), actual.getId(row));
+            assertTrue("row " + row, expected.sameContent(row, actual, row));
+        }
+    }
+
+    @Test
+    public void generatorIsRepeatableAndCountsMalformedEntries() {
+        SyntheticFeed settings = new SyntheticFeed(5000)
+                .setSeed(7)
+                .setTitleLength(SyntheticFeed.TitleLength.LONG)
+                .setUrlPattern(SyntheticFeed.UrlPattern.SHARED)
+                .setMalformedRate(0.5);
+        SyntheticFeed.Feed feed = settings.generate();
+
+        assertArrayEquals(feed.getJson(), settings.generate().getJson());
+        assertEquals(5000, feed.getEntryCount());
+        assertTrue(feed.getMalformedCount() > 2000 && feed.getMalformedCount() < 3000);
+        for (SyntheticFeed.Malformation malformation : SyntheticFeed.Malformation.values()) {
+            assertTrue(malformation.name(), feed.getMalformedCount(malformation) > 0);
+        }
+    }
+
+    @Test
+    public void coldFetchesParseEveryValidEntry() throws Exception {
+        SyntheticFeed.Feed feed = new SyntheticFeed(ITEMS).setMalformedRate(MALFORMED_RATE).generate();
+        ContentLoadHarness harness = new ContentLoadHarness(feed, PROFILE);
+        harness.setIterations(ITERATIONS);
+
+        ContentLoadHarness.Report report = harness.run();
+        report.write("cold-fetches", "Cold fetches of " + ITEMS + " items, " + PROFILE);
+
+        assertEquals(0, report.failures);
+        assertEquals(ITERATIONS, report.complete.getCount());
+        assertEquals(feed.getExpected().size() * ITERATIONS, report.parsedCount);
+        assertEquals(feed.getDroppedCount() * ITERATIONS, report.skippedCount);
+        assertEquals(ITERATIONS, report.firstRow.getCount());
+        assertEquals((long) feed.getJson().length * ITERATIONS, report.bytes);
+        assertSameRows(feed.getExpected(), report.store);
+    }
+
+    @Test
+    public void refreshesOverThrottledServer() throws Exception {
+        for (SyntheticFeed.TitleLength titleLength : Arrays.asList(
+                SyntheticFeed.TitleLength.SHORT, SyntheticFeed.TitleLength.LONG)) {
+            SyntheticFeed.Feed feed = new SyntheticFeed(5000)
+                    .setTitleLength(titleLength)
+                    .setUrlPattern(SyntheticFeed.UrlPattern.PLAIN)
+                    .generate();
+            ContentLoadHarness harness = new ContentLoadHarness(feed, ContentLoadHarness.ServerProfile.WIFI);
+            harness.setIterations(5);
+            harness.setWarmupIterations(1);
+            harness.setIncrementalUpdates(true);
+
+            ContentLoadHarness.Report report = harness.run();
+            report.write("refreshes-" + titleLength.name().toLowerCase(Locale.ROOT),
+                    "Refreshes of 5000 items, " + titleLength + " titles, WIFI");
+
+            assertEquals(0, report.failures);
+            assertEquals(5, report.complete.getCount());
+            assertSameRows(feed.getExpected(), report.store);
+        }
+    }
+
+    @Test
+    public void stringPoolReusesTitlesAndUrlsAcrossRefreshes() {
+        SyntheticFeed settings = new SyntheticFeed(ITEMS).setUrlPattern(SyntheticFeed.UrlPattern.SHARED);
+        ContentStringPool titles = new ContentStringPool(2 * ITEMS);
+        ContentStringPool urls = new ContentStringPool(2 * ITEMS);
+
+        // The first list, then a refresh that brings the same content back in a new store.
+        for (int refresh = 0; refresh < 2; refresh++) {
+            ContentStore store = settings.generate().getExpected();
+            long titleHits = titles.getHitCount();
+            long urlHits = urls.getHitCount();
+            titles.nextGeneration();
+            urls.nextGeneration();
+
+            String[] lowerTitles = new String[store.size()];
+            for (int row = 0; row < store.size(); row++) {
+                lowerTitles[row] = titles.getLowerTitle(store, row);
+                assertEquals(store.getTitle(row).toLowerCase(Locale.ROOT), lowerTitles[row]);
+                assertEquals(store.getImgUrl(row), urls.getImgUrl(store, row));
+            }
+
+            if (refresh == 0) {
+                // Shared URLs repeat within the first list already.
+                assertTrue(urls.getHitCount() > 0);
+            } else {
+                // Everything the refresh brings back was built for the first list.
+                assertEquals(store.size(), titles.getHitCount() - titleHits);
+                assertEquals(store.size(), urls.getHitCount() - urlHits);
+            }
+        }
+    }
+}
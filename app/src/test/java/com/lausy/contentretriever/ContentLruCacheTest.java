@@ -0,0 +1,319 @@
+package com.lausy.contentretriever;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentLruCache Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Byte arrays stand in for bitmaps.  Keys are built like Picasso's, a URL and a line of
+ * transformations, so pins apply to every size of a URL.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentLruCacheTest {
+
+    private static class ByteCache extends ContentLruCache<byte[]> {
+        int pinKeyCalls;
+
+        ByteCache(long maxBytes) {
+            super(maxBytes);
+        }
+
+        @Override
+        protected int sizeOf(byte[] value) {
+            return value.length;
+        }
+
+        @Override
+        protected String pinKeyOf(String key) {
+            pinKeyCalls++;
+            int end = key.indexOf('\n');
+            return end < 0 ? key : key.substring(0, end);
+        }
+    }
+
+    private final ByteCache mCache = new ByteCache(100);
+
+    private static String key(int i) {
+        return "http://images/" + i + "\nresize:10x10";
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBySize() {
+        mCache.put(key(1), new byte[40]);
+        mCache.put(key(2), new byte[40]);
+        assertNotNull(mCache.get(key(1)));
+
+        mCache.put(key(3), new byte[40]);
+
+        assertNotNull(mCache.get(key(1)));
+        assertNull(mCache.get(key(2)));
+        assertNotNull(mCache.get(key(3)));
+        assertEquals(80, mCache.getBytes());
+        assertEquals(1, mCache.getEvictionCount());
+        assertEquals(40, mCache.getEvictedBytes());
+    }
+
+    @Test
+    public void replacingAValueUpdatesBytes() {
+        mCache.put(key(1), new byte[40]);
+        mCache.put(key(1), new byte[10]);
+
+        assertEquals(10, mCache.getBytes());
+        assertEquals(1, mCache.getCount());
+        assertEquals(0, mCache.getEvictionCount());
+    }
+
+    @Test
+    public void valueLargerThanCacheIsNotKept() {
+        mCache.put(key(1), new byte[40]);
+        mCache.put(key(1), new byte[101]);
+
+        assertNull(mCache.get(key(1)));
+        assertEquals(0, mCache.getBytes());
+    }
+
+    @Test
+    public void pinnedValuesAreEvictedLast() {
+        mCache.put(key(1), new byte[30]);
+        mCache.put(key(2), new byte[30]);
+        mCache.put(key(3), new byte[30]);
+        mCache.pin("http://images/1");
+
+        mCache.put(key(4), new byte[30]);
+        mCache.put(key(5), new byte[30]);
+
+        assertNotNull(mCache.get(key(1)));
+        assertNull(mCache.get(key(2)));
+        assertNull(mCache.get(key(3)));
+
+        // An unpinned value that does not fit beside the pinned ones is dropped itself.
+        mCache.put(key(6), new byte[90]);
+        assertNotNull(mCache.get(key(1)));
+        assertNull(mCache.get(key(6)));
+
+        // Once only pinned values are left, they go too, so the cache stays bounded.
+        mCache.pin("http://images/7");
+        mCache.put(key(7), new byte[90]);
+        assertNull(mCache.get(key(1)));
+        assertNotNull(mCache.get(key(7)));
+        assertEquals(90, mCache.getBytes());
+    }
+
+    @Test
+    public void evictionDoesNotAllocateOrDerivePinKeys() {
+        ByteCache cache = new ByteCache(1 << 20);
+        byte[] value = new byte[10];
+        for (int i = 0; i < 10000; i++) {
+            cache.put(key(i), value);
+            if (i % 2 == 0) {
+                cache.pin("http://images/" + i);
+            }
+        }
+        assertEquals(10000, cache.pinKeyCalls);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        cache.trimToSize(50000);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+        assertEquals(50000, cache.getBytes());
+        assertTrue(cache.isPinned(key(9998)));
+        assertNull(cache.get(key(9999)));
+        assertEquals(10000, cache.pinKeyCalls);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void pinsAreCounted() {
+        mCache.pin("http://images/1");
+        mCache.pin("http://images/1");
+        mCache.unpin("http://images/1");
+        assertTrue(mCache.isPinned(key(1)));
+
+        mCache.unpin("http://images/1");
+        assertFalse(mCache.isPinned(key(1)));
+
+        mCache.unpin("http://images/1");
+        assertFalse(mCache.isPinned(key(1)));
+    }
+
+    @Test
+    public void removePinKeyDropsEverySize() {
+        mCache.put("http://images/1\nresize:10x10", new byte[10]);
+        mCache.put("http://images/1\nresize:20x20", new byte[20]);
+        mCache.put("http://images/10\nresize:10x10", new byte[30]);
+
+        mCache.removePinKey("http://images/1");
+
+        assertEquals(1, mCache.getCount());
+        assertEquals(30, mCache.getBytes());
+    }
+
+    @Test
+    public void trimMemoryShrinksByLevel() {
+        for (int i = 0; i < 10; i++) {
+            mCache.put(key(i), new byte[10]);
+        }
+
+        mCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(100, mCache.getBytes());
+
+        mCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(50, mCache.getBytes());
+        assertNotNull(mCache.get(key(9)));
+        assertNull(mCache.get(key(0)));
+
+        mCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(20, mCache.getBytes());
+
+        mCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(0, mCache.getBytes());
+        assertEquals(0, mCache.getCount());
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        mCache.put(key(1), new byte[10]);
+        mCache.get(key(1));
+        mCache.get(key(1));
+        mCache.get(key(2));
+
+        assertEquals(2, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+        assertEquals(1, mCache.getPutCount());
+        assertEquals(2f / 3, mCache.getHitRate(), 1e-6);
+    }
+
+    @Test
+    public void staysBoundedUnderConcurrentAccess() throws Exception {
+        final ByteCache cache = new ByteCache(64 * 1024);
+        final int threads = 8;
+        final int operations = 20000;
+        final AtomicLong gets = new AtomicLong();
+        final AtomicLong puts = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        // A few rows stay on screen for the whole run.
+        for (int i = 0; i < 4; i++) {
+            cache.pin("http://images/" + i);
+            cache.put(key(i), new byte[1024]);
+        }
+
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < operations; i++) {
+                            int row = 4 + random.nextInt(500);
+                            int op = random.nextInt(10);
+
+                            if (op < 6) {
+                                cache.get(key(row));
+                                gets.incrementAndGet();
+                            } else if (op < 9) {
+                                cache.put(key(row), new byte[256 + random.nextInt(2048)]);
+                                puts.incrementAndGet();
+                            } else {
+                                cache.pin("http://images/" + row);
+                                cache.put(key(row), new byte[512]);
+                                puts.incrementAndGet();
+                                cache.unpin("http://images/" + row);
+                            }
+
+                            if (cache.getBytes() > cache.getMaxBytes()) {
+                                throw new AssertionError("Cache over its limit:  " + cache);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        assertEquals(gets.get(), cache.getHitCount() + cache.getMissCount());
+        assertEquals(puts.get() + 4, cache.getPutCount());
+        assertTrue(cache.getEvictionCount() > 0);
+
+        long bytes = 0;
+        for (int i = 0; i < 504; i++) {
+            byte[] value = cache.remove(key(i));
+            if (value != null) {
+                bytes += value.length;
+            }
+        }
+        assertEquals(0, cache.getBytes());
+        assertTrue(bytes <= cache.getMaxBytes());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(cache.isPinned(key(i)));
+        }
+    }
+
+    @Test
+    public void pinnedValuesSurviveConcurrentChurn() throws Exception {
+        final ByteCache cache = new ByteCache(32 * 1024);
+        final CountDownLatch done = new CountDownLatch(4);
+
+        for (int i = 0; i < 8; i++) {
+            cache.pin("http://images/" + i);
+            cache.put(key(i), new byte[1024]);
+        }
+
+        for (int t = 0; t < 4; t++) {
+            final int base = 1000 * (t + 1);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 5000; i++) {
+                        cache.put(key(base + i % 500), new byte[1024]);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        for (int i = 0; i < 8; i++) {
+            assertNotNull(cache.get(key(i)));
+        }
+        assertTrue(cache.getBytes() <= cache.getMaxBytes());
+    }
+}
@@ -0,0 +1,173 @@
+package com.lausy.contentretriever;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentMetrics Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Allocation is measured with the per-thread allocation counter of the HotSpot JVM that runs
+ * the unit tests.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentMetricsTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        ContentMetrics.reset();
+        ContentMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        ContentMetrics.setEnabled(false);
+        ContentMetrics.reset();
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (int bucket = 1; bucket < ContentHistogram.BUCKETS; bucket++) {
+            long lower = ContentHistogram.lowerBound(bucket);
+            assertEquals(bucket, ContentHistogram.bucketOf(lower));
+            assertEquals(bucket - 1, ContentHistogram.bucketOf(lower - 1));
+        }
+        assertEquals(ContentHistogram.BUCKETS - 1, ContentHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreWithinAnEighth() {
+        ContentHistogram histogram = new ContentHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getMeanNanos());
+        assertEquals(1000000, histogram.getMaxNanos());
+        assertEquals(500000, histogram.getPercentileNanos(50), 500000 / 8);
+        assertEquals(990000, histogram.getPercentileNanos(99), 990000 / 8);
+        assertEquals(1000000, histogram.getPercentileNanos(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void nothingIsRecordedWhileDisabled() {
+        ContentMetrics.setEnabled(false);
+
+        long start = ContentMetrics.start();
+        ContentMetrics.end(ContentMetrics.Span.BIND, start);
+        ContentMetrics.record(ContentMetrics.Span.PARSE, 1000);
+
+        assertEquals(0, start);
+        assertEquals(0, ContentMetrics.get(ContentMetrics.Span.BIND).getCount());
+        assertEquals(0, ContentMetrics.get(ContentMetrics.Span.PARSE).getCount());
+    }
+
+    @Test
+    public void timingASpanDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        // Warm up, then measure what reading the counter itself allocates.
+        bindSpans(100000);
+        long before = threads.getThreadAllocatedBytes(thread);
+        long after = threads.getThreadAllocatedBytes(thread);
+        long overhead = after - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        bindSpans(1000000);
+        after = threads.getThreadAllocatedBytes(thread);
+
+        // An allocation per span would be at least 16 MB.  A few bytes can come from the JIT.
+        long allocated = after - before - overhead;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        assertEquals(1100000, ContentMetrics.get(ContentMetrics.Span.BIND).getCount());
+    }
+
+    private static void bindSpans(int count)
+    {
+        for (int i = 0; i < count; i++) {
+            long start = ContentMetrics.start();
+            ContentMetrics.end(ContentMetrics.Span.BIND, start);
+        }
+    }
+
+    @Test
+    public void networkSpansAreRecorded() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("[{\"id\":\"1\",\"title\":\"a\",\"image\":\"\"}]"));
+        server.start();
+
+        try {
+            NetworkService.NetworkApiService service = NetworkClientRegistry.createService(
+                    NetworkClientRegistry.buildHttpClient(null), server.url("/").toString(), DIRECT);
+            ResponseBody body = service.fetchContentList("fixture/movies.json").execute().body();
+            body.string();
+        } finally {
+            server.shutdown();
+        }
+
+        assertEquals(1, ContentMetrics.get(ContentMetrics.Span.CONNECT).getCount());
+        assertEquals(1, ContentMetrics.get(ContentMetrics.Span.TTFB).getCount());
+        assertEquals(1, ContentMetrics.get(ContentMetrics.Span.BODY).getCount());
+    }
+
+    @Test
+    public void dumpHasALinePerSpanAndPool() throws Exception {
+        ContentMetrics.record(ContentMetrics.Span.SORT, 2500000);
+        StringWriter out = new StringWriter();
+
+        ContentMetrics.dump(out);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(ContentMetrics.Span.values().length + ContentMetrics.Pool.values().length + 2, lines.length);
+        assertTrue(out.toString().contains("SORT 1 2.500 "));
+    }
+
+    @Test
+    public void poolCountsAreRecorded() {
+        ContentStringPool pool = new ContentStringPool(10);
+        pool.intern("Joe");
+        pool.intern(new String("Joe"));
+        pool.intern("Igor");
+
+        ContentMetrics.recordPool(ContentMetrics.Pool.TITLE, pool);
+
+        assertEquals(2, ContentMetrics.getPoolCount(ContentMetrics.Pool.TITLE, ContentMetrics.PoolCount.SIZE));
+        assertEquals(1, ContentMetrics.getPoolCount(ContentMetrics.Pool.TITLE, ContentMetrics.PoolCount.HITS));
+        assertEquals(2, ContentMetrics.getPoolCount(ContentMetrics.Pool.TITLE, ContentMetrics.PoolCount.MISSES));
+        assertEquals(pool.getSavedBytes(),
+                ContentMetrics.getPoolCount(ContentMetrics.Pool.TITLE, ContentMetrics.PoolCount.SAVED_BYTES));
+        assertEquals(0, ContentMetrics.getPoolCount(ContentMetrics.Pool.URL, ContentMetrics.PoolCount.HITS));
+
+        ContentMetrics.reset();
+        assertEquals(0, ContentMetrics.getPoolCount(ContentMetrics.Pool.TITLE, ContentMetrics.PoolCount.HITS));
+    }
+}
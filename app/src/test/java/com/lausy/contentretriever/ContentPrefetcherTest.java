@@ -0,0 +1,153 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentPrefetcher Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentPrefetcherTest {
+    private static final int COUNT = 10000;
+
+    private final ContentPrefetcher mPrefetcher = new ContentPrefetcher();
+    private long mNow = 1000;
+
+    @Test
+    public void firstBindQueuesMinimumAhead() {
+        mPrefetcher.onBind(0, mNow, COUNT);
+
+        assertEquals(ContentPrefetcher.MIN_LOOKAHEAD, mPrefetcher.getLookahead());
+        assertEquals(1, mPrefetcher.poll());
+        assertEquals(2, mPrefetcher.poll());
+        assertEquals(-1, mPrefetcher.poll());
+    }
+
+    @Test
+    public void lookaheadFollowsBindRate() {
+        scroll(0, 40, 1, 400);
+        assertEquals(ContentPrefetcher.MIN_LOOKAHEAD, mPrefetcher.getLookahead());
+
+        scroll(40, 80, 1, 50);
+        int medium = mPrefetcher.getLookahead();
+        assertEquals(20, mPrefetcher.getRowsPerSecond(), 1);
+        assertTrue(medium > ContentPrefetcher.MIN_LOOKAHEAD && medium < ContentPrefetcher.MAX_LOOKAHEAD);
+
+        scroll(80, 200, 1, 8);
+        assertEquals(ContentPrefetcher.MAX_LOOKAHEAD, mPrefetcher.getLookahead());
+    }
+
+    @Test
+    public void idleGapStartsOver() {
+        scroll(0, 100, 1, 8);
+        mNow += ContentPrefetcher.IDLE_MILLIS;
+        mPrefetcher.onBind(101, mNow, COUNT);
+
+        assertEquals(0, mPrefetcher.getRowsPerSecond(), 0);
+        assertEquals(ContentPrefetcher.MIN_LOOKAHEAD, mPrefetcher.getLookahead());
+    }
+
+    @Test
+    public void rowsAreQueuedOnceAndPolledNearestFirst() {
+        scroll(0, 100, 1, 16);
+        drain();
+
+        mNow += 16;
+        mPrefetcher.onBind(101, mNow, COUNT);
+        int lookahead = mPrefetcher.getLookahead();
+
+        // Only the row that came into range is new.
+        assertEquals(101 + lookahead, mPrefetcher.poll());
+        assertEquals(-1, mPrefetcher.poll());
+    }
+
+    @Test
+    public void reversalDropsRowsAhead() {
+        scroll(0, 100, 1, 16);
+        assertTrue(mPrefetcher.getQueueSize() > 0);
+
+        mNow += 16;
+        mPrefetcher.onBind(99, mNow, COUNT);
+
+        assertEquals(-1, mPrefetcher.getDirection());
+        int last = 99;
+        for (int p = mPrefetcher.poll(); p >= 0; p = mPrefetcher.poll()) {
+            assertEquals(last - 1, p);
+            last = p;
+        }
+        assertTrue(last < 99);
+    }
+
+    @Test
+    public void rowsScrolledPastAreDropped() {
+        scroll(0, 50, 1, 8);
+        int dropped = mPrefetcher.getDroppedCount();
+
+        // A jump within the queued rows, as when several rows are bound in one frame.
+        mNow += 16;
+        mPrefetcher.onBind(60, mNow, COUNT);
+
+        assertTrue(mPrefetcher.getDroppedCount() > dropped);
+        int previous = 60;
+        for (int p = mPrefetcher.poll(); p >= 0; p = mPrefetcher.poll()) {
+            assertTrue(p > previous);
+            previous = p;
+        }
+    }
+
+    @Test
+    public void queueIsBounded() {
+        for (int p = 0; p < 1000; p++) {
+            mNow += 4;
+            mPrefetcher.onBind(p, mNow, COUNT);
+            assertTrue(mPrefetcher.getQueueSize() <= ContentPrefetcher.QUEUE_CAPACITY);
+        }
+        assertEquals(1000, mPrefetcher.poll());
+    }
+
+    @Test
+    public void stopsAtEndsOfList() {
+        scroll(0, 95, 1, 8);
+        drain();
+        mPrefetcher.onBind(99, mNow + 8, 100);
+        assertEquals(-1, mPrefetcher.poll());
+
+        mPrefetcher.reset();
+        mPrefetcher.onBind(1, mNow, 100);
+        mPrefetcher.onBind(0, mNow + 8, 100);
+        assertEquals(-1, mPrefetcher.poll());
+    }
+
+    @Test
+    public void resetEmptiesQueue() {
+        scroll(0, 100, 1, 16);
+        mPrefetcher.reset();
+
+        assertEquals(0, mPrefetcher.getQueueSize());
+        assertEquals(-1, mPrefetcher.poll());
+    }
+
+    /**
+     * Binds rows from start up to end, one bind every interval.
+     */
+    private void scroll(int start, int end, int step, long intervalMillis)
+    {
+        for (int p = start; p <= end; p += step) {
+            mPrefetcher.onBind(p, mNow, COUNT);
+            mNow += intervalMillis;
+        }
+        mNow -= intervalMillis;
+    }
+
+    private void drain()
+    {
+        while (mPrefetcher.poll() >= 0) {
+            // Polled rows are not queued again.
+        }
+    }
+}
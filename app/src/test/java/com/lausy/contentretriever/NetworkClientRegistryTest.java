@@ -0,0 +1,162 @@
+package com.lausy.contentretriever;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>NetworkClientRegistry Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class NetworkClientRegistryTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void sameBaseUriReturnsSameService() {
+        String baseUri = mServer.url("/").toString();
+
+        NetworkService.NetworkApiService first = NetworkClientRegistry.getService(baseUri, DIRECT);
+        NetworkService.NetworkApiService second = NetworkClientRegistry.getService(baseUri, DIRECT);
+
+        assertSame(first, second);
+    }
+
+    @Test
+    public void repeatedRefreshesReuseOneConnection() throws Exception {
+        String baseUri = mServer.url("/").toString();
+        int refreshes = 5;
+
+        for (int i = 0; i < refreshes; i++) {
+            mServer.enqueue(new MockResponse().setBody("[]"));
+        }
+
+        for (int i = 0; i < refreshes; i++) {
+            Response<ResponseBody> response = NetworkClientRegistry.getService(baseUri, DIRECT)
+                    .fetchContentList("fixture/movies.json").execute();
+            assertEquals(200, response.code());
+            response.body().close();
+        }
+
+        for (int i = 0; i < refreshes; i++) {
+            // The sequence number counts requests made on the same socket.
+            assertEquals(i, mServer.takeRequest().getSequenceNumber());
+        }
+    }
+
+    @Test
+    public void callbacksAreDeliveredOnParseExecutor() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("[]"));
+        final AtomicBoolean onWorker = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        NetworkClientRegistry.createService(NetworkClientRegistry.buildHttpClient(null),
+                mServer.url("/").toString(), ContentExecutors.parse())
+                .fetchContentList("fixture/movies.json").enqueue(new Callback<ResponseBody>() {
+                    @Override
+                    public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                        onWorker.set(ContentExecutors.isWorkerThread());
+                        response.body().close();
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onFailure(Call<ResponseBody> call, Throwable t) {
+                        done.countDown();
+                    }
+                });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(onWorker.get());
+    }
+
+    @Test
+    public void mediaTypeSelectsParser() {
+        assertTrue(NetworkService.isBinary(MediaType.parse("application/x-content-list")));
+        assertTrue(NetworkService.isBinary(MediaType.parse("application/x-content-list; charset=binary")));
+        assertFalse(NetworkService.isBinary(MediaType.parse("application/json; charset=utf-8")));
+        assertFalse(NetworkService.isBinary(null));
+    }
+
+    @Test
+    public void requestNegotiatesBinaryAndGzip() throws Exception {
+        ContentStore store = new ContentStore.Builder()
+                .add(1, "Joe", "http://images.adrise.tv/a.jpg")
+                .add(2, "Igor", "http://images.adrise.tv/b.jpg")
+                .build();
+        Buffer gzipped = new Buffer();
+        GZIPOutputStream gzip = new GZIPOutputStream(gzipped.outputStream());
+        gzip.write(encode(store));
+        gzip.close();
+
+        mServer.enqueue(new MockResponse()
+                .setHeader("Content-Type", ContentWireFormat.MEDIA_TYPE)
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(gzipped));
+
+        NetworkService.NetworkApiService service = NetworkClientRegistry.createService(
+                NetworkClientRegistry.buildHttpClient(null), mServer.url("/").toString(), DIRECT);
+        Response<ResponseBody> response = service.fetchContentList("fixture/movies.json").execute();
+
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals(ContentWireFormat.ACCEPT, request.getHeader("Accept"));
+        assertEquals("gzip", request.getHeader("Accept-Encoding"));
+
+        ResponseBody body = response.body();
+        assertTrue(NetworkService.isBinary(body.contentType()));
+        assertEquals(2, new ContentBinaryParser().parse(body.byteStream(), new ContentChunkListener() {
+            @Override
+            public void onChunk(ContentStore chunk, boolean first, boolean last) {
+            }
+        }));
+        body.close();
+    }
+
+    private static byte[] encode(ContentStore store) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ContentWireFormat.write(store, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,244 @@
+package com.lausy.contentretriever;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>PagedContentWindow Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Scrolls through a synthetic catalogue of one million items served a page at a time by a
+ * local server, and checks that the number of items held in memory stays bounded.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class PagedContentWindowTest {
+    private static final int CATALOGUE_SIZE = 1000000;
+    private static final int PAGE_SIZE = 2000;
+    private static final int MAX_PAGES = 4;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private MockWebServer mServer;
+    private final AtomicInteger mPageRequests = new AtomicInteger();
+
+    /**
+     * Serves pages of the synthetic catalogue for the offset and limit query parameters.
+     */
+    private class CatalogueDispatcher extends Dispatcher {
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            HttpUrl url = request.getRequestUrl();
+            int offset = Integer.parseInt(url.queryParameter("offset"));
+            int limit = Integer.parseInt(url.queryParameter("limit"));
+            int end = Math.min(CATALOGUE_SIZE, offset + limit);
+
+            mPageRequests.incrementAndGet();
+
+            StringBuilder sb = new StringBuilder(limit * 100).append('[');
+            for (int i = offset; i < end; i++) {
+                if (i > offset) {
+                    sb.append(',');
+                }
+                sb.append("{\"title\":\"Title ").append(i)
+                        .append("\",\"image\":\"http://images.adrise.tv/").append(i)
+                        .append(".jpg\",\"id\":\"").append(i).append("\"}");
+            }
+            return new MockResponse().setBody(sb.append(']').toString());
+        }
+    }
+
+    /**
+     * Fetches pages synchronously so the window is filled before get returns.
+     */
+    private class ServerPageLoader implements PagedContentWindow.PageLoader {
+        private final NetworkService.NetworkApiService mService;
+        PagedContentWindow window;
+
+        ServerPageLoader(NetworkService.NetworkApiService service) {
+            mService = service;
+        }
+
+        @Override
+        public void loadPage(int generation, int offset, int limit) {
+            final ContentStore.Builder page = new ContentStore.Builder(limit);
+
+            try {
+                Response<ResponseBody> response = mService.fetchContentPage("movies.json", offset, limit).execute();
+                new ContentLenientParser().parse(response.body().charStream(), new ContentChunkListener() {
+                    @Override
+                    public void onChunk(ContentStore chunk, boolean first, boolean last) {
+                        page.addAll(chunk);
+                    }
+                });
+                response.body().close();
+            } catch (IOException e) {
+                window.onPageFailed(generation, offset);
+                return;
+            }
+
+            window.onPageLoaded(generation, offset, page.build());
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new CatalogueDispatcher());
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    private PagedContentWindow newWindow() {
+        ServerPageLoader loader = new ServerPageLoader(NetworkClientRegistry.createService(
+                NetworkClientRegistry.buildHttpClient(null), mServer.url("/").toString(), DIRECT));
+        PagedContentWindow window = new PagedContentWindow(PAGE_SIZE, MAX_PAGES, loader);
+        loader.window = window;
+        return window;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void scrollingMillionItemsKeepsMemoryBounded() {
+        PagedContentWindow window = newWindow();
+        window.reset();
+
+        ContentStore.Row row = new ContentStore.Row();
+        long baseline = usedHeap();
+        long peak = 0;
+        int position = 0;
+
+        while (position < window.getCount()) {
+            window.onRowShown(position);
+            ContentStore.Row data = window.get(position, row);
+
+            assertNotNull("row " + position, data);
+            assertEquals(position, data.getId());
+            assertTrue(window.getResidentItemCount() <= MAX_PAGES * PAGE_SIZE);
+
+            if (position % (CATALOGUE_SIZE / 10) == 0) {
+                peak = Math.max(peak, usedHeap() - baseline);
+            }
+            position++;
+        }
+
+        assertTrue(window.isEndReached());
+        assertEquals(CATALOGUE_SIZE, position);
+        assertEquals(CATALOGUE_SIZE, window.getCount());
+
+        // A fully loaded list of this size takes well over 100 MB.
+        assertTrue("heap grew by " + peak + " bytes", peak < 32L * 1024 * 1024);
+    }
+
+    @Test
+    public void readingRowsFetchesNothing() {
+        PagedContentWindow window = newWindow();
+        window.reset();
+        assertEquals(1, mPageRequests.get());
+
+        ContentStore.Row row = new ContentStore.Row();
+        for (int position = 0; position < window.getCount(); position++) {
+            window.get(position, row);
+        }
+        assertEquals(1, mPageRequests.get());
+        assertNull(window.get(PAGE_SIZE, row));
+
+        window.onRowShown(PAGE_SIZE);
+        assertEquals(PAGE_SIZE, window.get(PAGE_SIZE, row).getId());
+        assertEquals(3, mPageRequests.get());
+    }
+
+    @Test
+    public void evictedPageIsFetchedAgain() {
+        PagedContentWindow window = newWindow();
+        window.reset();
+
+        for (int position = 0; position < PAGE_SIZE * (MAX_PAGES + 2); position++) {
+            window.onRowShown(position);
+        }
+        int requests = mPageRequests.get();
+        assertNull(window.get(0, new ContentStore.Row()));
+
+        window.onRowShown(0);
+        assertEquals(0, window.get(0, new ContentStore.Row()).getId());
+        assertTrue(mPageRequests.get() > requests);
+        assertTrue(window.getResidentPageCount() <= MAX_PAGES);
+    }
+
+    @Test
+    public void lateReplyAfterResetIsDropped() {
+        // Pages are answered by the test, in any order.
+        final List<int[]> requests = new ArrayList<>();
+        PagedContentWindow window = new PagedContentWindow(PAGE_SIZE, MAX_PAGES,
+                new PagedContentWindow.PageLoader() {
+                    @Override
+                    public void loadPage(int generation, int offset, int limit) {
+                        requests.add(new int[] { generation, offset });
+                    }
+                });
+
+        window.reset();
+        window.reset();
+        assertEquals(2, requests.size());
+        int[] before = requests.get(0);
+        int[] after = requests.get(1);
+        assertEquals(before[1], after[1]);
+
+        // The page of the list before the refresh arrives last, and neither fills nor frees
+        // the slot of the page being fetched now.
+        assertFalse(window.onPageLoaded(before[0], before[1], page(5000, 10)));
+        window.onPageFailed(before[0], before[1]);
+        assertEquals(0, window.getCount());
+        window.onRowShown(0);
+        for (int i = 2; i < requests.size(); i++) {
+            assertNotEquals(0, requests.get(i)[1]);
+        }
+
+        assertTrue(window.onPageLoaded(after[0], after[1], page(0, 10)));
+        assertEquals(0, window.get(0, new ContentStore.Row()).getId());
+        assertEquals(10, window.getCount());
+    }
+
+    private static ContentStore page(int firstId, int count) {
+        ContentStore.Builder builder = new ContentStore.Builder();
+        for (int id = firstId; id < firstId + count; id++) {
+            builder.add(id, "Title " + id, "http://images.adrise.tv/" + id + ".jpg");
+        }
+        return builder.build();
+    }
+}
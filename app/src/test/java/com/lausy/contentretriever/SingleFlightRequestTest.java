@@ -0,0 +1,161 @@
+package com.lausy.contentretriever;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>SingleFlightRequest Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class SingleFlightRequestTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private MockWebServer mServer;
+    private CountDownLatch mRelease;
+    private NetworkService.NetworkApiService mService;
+
+    private final SingleFlightRequest<ResponseBody> mRequest = new SingleFlightRequest<>();
+    private final AtomicInteger mResponses = new AtomicInteger();
+    private final AtomicInteger mFailures = new AtomicInteger();
+    private final AtomicInteger mLastPath = new AtomicInteger();
+    private final CountDownLatch mDelivered = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        mRelease = new CountDownLatch(1);
+        mServer = new MockWebServer();
+
+        // Every response is held back until the test releases it, so calls stay in flight.
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                mRelease.await(5, TimeUnit.SECONDS);
+                return new MockResponse().setBody(request.getPath().substring(1));
+            }
+        });
+        mServer.start();
+
+        mService = NetworkClientRegistry.createService(
+                NetworkClientRegistry.buildHttpClient(null), mServer.url("/").toString(), DIRECT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mRelease.countDown();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void rapidRefreshesPutOneRequestOnTheWire() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            fetch("1");
+        }
+        mRelease.countDown();
+
+        assertTrue(mDelivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(1, mRequest.getStartedCount());
+        assertEquals(49, mRequest.getJoinedCount());
+        assertEquals(1, mResponses.get());
+        assertEquals(1, mLastPath.get());
+    }
+
+    @Test
+    public void newerRequestCancelsStaleOne() throws Exception {
+        int stale = fetch("1");
+        int current = fetch("2");
+        mRelease.countDown();
+
+        assertTrue(mDelivered.await(5, TimeUnit.SECONDS));
+        assertFalse(mRequest.isCurrent(stale));
+        assertTrue(mRequest.isCurrent(current));
+        assertEquals(2, mRequest.getStartedCount());
+        assertEquals(1, mResponses.get());
+        assertEquals(2, mLastPath.get());
+        assertEquals(0, mFailures.get());
+    }
+
+    @Test
+    public void cancelledRequestDeliversNothing() throws Exception {
+        int generation = fetch("1");
+        mRequest.cancel();
+        mRelease.countDown();
+
+        assertFalse(mDelivered.await(500, TimeUnit.MILLISECONDS));
+        assertFalse(mRequest.isCurrent(generation));
+        assertFalse(mRequest.isInFlight());
+        assertEquals(0, mResponses.get());
+        assertEquals(0, mFailures.get());
+    }
+
+    @Test
+    public void refreshAfterCompletionStartsNewRequest() throws Exception {
+        mRelease.countDown();
+        fetch("1");
+        assertTrue(mDelivered.await(5, TimeUnit.SECONDS));
+
+        // The first call is finished once its listener has returned.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mRequest.isInFlight() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        fetch("1");
+
+        assertEquals(2, mRequest.getStartedCount());
+        assertEquals(0, mRequest.getJoinedCount());
+    }
+
+    private int fetch(final String path)
+    {
+        return mRequest.enqueue(path, new SingleFlightRequest.CallFactory<ResponseBody>() {
+            @Override
+            public Call<ResponseBody> create() {
+                return mService.fetchContentList(path);
+            }
+        }, new SingleFlightRequest.Listener<ResponseBody>() {
+            @Override
+            public void onResponse(int generation, Response<ResponseBody> response) {
+                try {
+                    mLastPath.set(Integer.parseInt(response.body().string()));
+                } catch (Exception e) {
+                    mFailures.incrementAndGet();
+                }
+                response.body().close();
+                mResponses.incrementAndGet();
+                mDelivered.countDown();
+            }
+
+            @Override
+            public void onFailure(int generation, Throwable t) {
+                mFailures.incrementAndGet();
+                mDelivered.countDown();
+            }
+        });
+    }
+}
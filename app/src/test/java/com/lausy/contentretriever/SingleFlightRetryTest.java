@@ -0,0 +1,263 @@
+package com.lausy.contentretriever;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import retrofit2.Call;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>SingleFlightRequest Retry Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * RetryPolicy and CircuitBreaker applied to real requests.  Failure sequences are scripted on
+ * a MockWebServer.  Retries wait on a virtual clock that the test advances, so backoff is
+ * checked exactly without sleeping.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class SingleFlightRetryTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Virtual clock.  Each scheduled retry is reported as an event with its delay, and runs
+     * when the test advances the clock to it.
+     */
+    private final class VirtualScheduler implements RetryPolicy.Scheduler {
+        long mNow;
+        Runnable mPending;
+
+        @Override
+        public synchronized long now() { return mNow; }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            synchronized (this) {
+                mPending = task;
+            }
+            mEvents.add(delayMillis);
+        }
+
+        void advance(long millis) {
+            Runnable task;
+            synchronized (this) {
+                mNow += millis;
+                task = mPending;
+                mPending = null;
+            }
+            if (task != null) {
+                task.run();
+            }
+        }
+    }
+
+    private final BlockingQueue<Object> mEvents = new LinkedBlockingQueue<>();
+    private final VirtualScheduler mClock = new VirtualScheduler();
+
+    private MockWebServer mServer;
+    private NetworkService.NetworkApiService mService;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+
+        OkHttpClient client = new OkHttpClient.Builder()
+                .readTimeout(200, TimeUnit.MILLISECONDS)
+                .build();
+        mService = NetworkClientRegistry.createService(client, mServer.url("/").toString(), DIRECT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void serverErrorsAreRetriedUntilSuccess() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        mServer.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "7"));
+        mServer.enqueue(new MockResponse().setBody("[]"));
+
+        SingleFlightRequest<ResponseBody> request = newRequest(new RetryPolicy(4, 500, 8000, 0, 30000), null);
+        fetch(request);
+
+        assertEquals(500L, nextEvent());
+        mClock.advance(500);
+        // The server asked for seven seconds, more than the one second of backoff.
+        assertEquals(7000L, nextEvent());
+        mClock.advance(7000);
+        assertEquals(200, nextEvent());
+
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(2, request.getRetryCount());
+        assertEquals(7500, mClock.now());
+    }
+
+    @Test
+    public void timeoutIsRetried() throws Exception {
+        mServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        mServer.enqueue(new MockResponse().setBody("[]"));
+
+        SingleFlightRequest<ResponseBody> request = newRequest(new RetryPolicy(2, 500, 8000, 0, 30000), null);
+        fetch(request);
+
+        assertEquals(500L, nextEvent());
+        mClock.advance(500);
+        assertEquals(200, nextEvent());
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void clientErrorIsNotRetried() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(404));
+
+        fetch(newRequest(RetryPolicy.DEFAULT, null));
+
+        assertEquals(404, nextEvent());
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void lastFailureIsReportedWhenAttemptsRunOut() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mServer.enqueue(new MockResponse().setResponseCode(500));
+        }
+
+        fetch(newRequest(new RetryPolicy(3, 100, 8000, 0, 30000), null));
+
+        assertEquals(100L, nextEvent());
+        mClock.advance(100);
+        assertEquals(200L, nextEvent());
+        mClock.advance(200);
+        assertEquals(500, nextEvent());
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void tooLongRetryAfterIsNotWaitedFor() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "120"));
+
+        fetch(newRequest(new RetryPolicy(4, 500, 8000, 0, 30000), null));
+
+        assertEquals(503, nextEvent());
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void openCircuitFailsFastUntilItRecovers() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mServer.enqueue(new MockResponse().setResponseCode(503));
+        }
+        mServer.enqueue(new MockResponse().setBody("[]"));
+
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000, mClock);
+        SingleFlightRequest<ResponseBody> request = newRequest(new RetryPolicy(2, 100, 8000, 0, 30000), breaker);
+
+        // Two failed attempts.
+        fetch(request);
+        assertEquals(100L, nextEvent());
+        mClock.advance(100);
+        assertEquals(503, nextEvent());
+
+        // The third failure opens the circuit, so it is not retried.
+        fetch(request);
+        assertEquals(503, nextEvent());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // Fails without going to the server.
+        fetch(request);
+        assertTrue(nextEvent() instanceof CircuitBreaker.OpenException);
+        assertEquals(3, mServer.getRequestCount());
+
+        // After the open period one trial request goes through and closes the circuit.
+        mClock.advance(60000);
+        fetch(request);
+        assertEquals(200, nextEvent());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(4, mServer.getRequestCount());
+    }
+
+    @Test
+    public void cancelledRetryIsNotSent() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        mServer.enqueue(new MockResponse().setBody("[]"));
+
+        SingleFlightRequest<ResponseBody> request = newRequest(new RetryPolicy(4, 500, 8000, 0, 30000), null);
+        fetch(request);
+        assertEquals(500L, nextEvent());
+
+        request.cancel();
+        mClock.advance(500);
+
+        assertNull(mEvents.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    private SingleFlightRequest<ResponseBody> newRequest(RetryPolicy policy, CircuitBreaker breaker)
+    {
+        return new SingleFlightRequest<>(policy, breaker, mClock);
+    }
+
+    private void fetch(SingleFlightRequest<ResponseBody> request) throws InterruptedException
+    {
+        // The previous request is finished once its listener has returned, which may be just
+        // after it reported its event.  Until then a new request would join it.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (request.isInFlight() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        request.enqueue("list", new SingleFlightRequest.CallFactory<ResponseBody>() {
+            @Override
+            public Call<ResponseBody> create() {
+                return mService.fetchContentList("fixture/movies.json");
+            }
+        }, new SingleFlightRequest.Listener<ResponseBody>() {
+            @Override
+            public void onResponse(int generation, Response<ResponseBody> response) {
+                if (response.isSuccessful()) {
+                    response.body().close();
+                } else {
+                    response.errorBody().close();
+                }
+                mEvents.add(response.code());
+            }
+
+            @Override
+            public void onFailure(int generation, Throwable t) {
+                mEvents.add(t);
+            }
+        });
+    }
+
+    /**
+     * @return The next retry delay as a Long, final response code as an Integer, or failure.
+     */
+    private Object nextEvent() throws InterruptedException
+    {
+        Object event = mEvents.poll(5, TimeUnit.SECONDS);
+        assertNotNull("timed out waiting for the request", event);
+        return event;
+    }
+}
@@ -0,0 +1,325 @@
+package com.lausy.contentretriever;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * <h1>SyntheticFeed</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Generates content lists in the JSON format of the server, at any size, for load tests.  The
+ * length of titles, the shape of image URLs and the share of malformed entries can be set.
+ * Every entry the app keeps is also kept in a ContentStore, so a test can check what was
+ * parsed.  The same settings always give the same bytes.
+ *
+ * Titles are drawn from a small vocabulary, so short titles repeat the way real ones do across
+ * seasons and regions.  A few contain a quote or an accented letter, so escapes and multi-byte
+ * characters are decoded too.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class SyntheticFeed {
+
+    /**
+     * How many words a title has.
+     */
+    enum TitleLength {
+        /** One or two words. */
+        SHORT,
+        /** Mostly two to four words, with a tail up to twelve, like the real feed. */
+        TYPICAL,
+        /** Eight to twenty words. */
+        LONG
+    }
+
+    /**
+     * What the image URLs look like.
+     */
+    enum UrlPattern {
+        /** Long signed thumbnail URLs, one per item, like the real feed. */
+        SIGNED,
+        /** Short CDN URLs, one per item. */
+        PLAIN,
+        /** A few hundred placeholder URLs shared by every item. */
+        SHARED
+    }
+
+    /**
+     * Ways an entry can be malformed.  Entries without a usable ID are dropped, the others are
+     * kept with the bad field left empty, the way ContentLenientParser reads them.
+     */
+    enum Malformation {
+        MISSING_IMAGE(false),
+        NON_NUMERIC_ID(true),
+        NULL_TITLE(false),
+        NOT_AN_OBJECT(true),
+        TITLE_NOT_A_STRING(false);
+
+        private final boolean mDropped;
+
+        Malformation(boolean dropped) {
+            mDropped = dropped;
+        }
+
+        boolean isDropped() { return mDropped; }
+    }
+
+    private static final Malformation[] MALFORMATIONS = Malformation.values();
+
+    private static final String[] WORDS = {
+            "The", "Man", "On", "A", "Ledge", "Hunted", "Town", "That", "Dreaded", "Sundown",
+            "Wild", "Card", "Frozen", "Possession", "Joe", "Igor", "Night", "Last", "Run", "Home",
+            "Of", "In", "Dark", "River", "Summer", "Red", "Blue", "Return", "City", "Lost",
+            "Secret", "Island", "Fire", "Road", "Heart", "King", "Queen", "Storm", "Ghost", "Moon"
+    };
+
+    private static final int SHARED_URLS = 300;
+
+    /**
+     * A generated list.
+     */
+    static final class Feed {
+        private final byte[] mJson;
+        private final ContentStore mExpected;
+        private final int[] mMalformedCounts;
+
+        private Feed(byte[] json, ContentStore expected, int[] malformedCounts) {
+            mJson = json;
+            mExpected = expected;
+            mMalformedCounts = malformedCounts;
+        }
+
+        /**
+         * @return The list as the server sends it, UTF-8 encoded.
+         */
+        byte[] getJson() { return mJson; }
+
+        /**
+         * @return Every entry that is kept, in order.
+         */
+        ContentStore getExpected() { return mExpected; }
+
+        int getMalformedCount(Malformation malformation) { return mMalformedCounts[malformation.ordinal()]; }
+
+        int getMalformedCount()
+        {
+            int count = 0;
+            for (int c : mMalformedCounts) {
+                count += c;
+            }
+            return count;
+        }
+
+        /**
+         * @return Number of malformed entries that are dropped.
+         */
+        int getDroppedCount()
+        {
+            int count = 0;
+            for (Malformation malformation : MALFORMATIONS) {
+                if (malformation.isDropped()) {
+                    count += mMalformedCounts[malformation.ordinal()];
+                }
+            }
+            return count;
+        }
+
+        int getEntryCount() { return mExpected.size() + getDroppedCount(); }
+    }
+
+    private final int mItems;
+    private long mSeed = 1;
+    private TitleLength mTitleLength = TitleLength.TYPICAL;
+    private UrlPattern mUrlPattern = UrlPattern.SIGNED;
+    private double mMalformedRate;
+
+    /**
+     * @param items Number of entries, malformed ones included.
+     */
+    SyntheticFeed(int items) {
+        if (items < 0) {
+            throw new IllegalArgumentException("items must not be negative: " + items);
+        }
+        mItems = items;
+    }
+
+    SyntheticFeed setSeed(long seed)
+    {
+        mSeed = seed;
+        return this;
+    }
+
+    SyntheticFeed setTitleLength(TitleLength titleLength)
+    {
+        mTitleLength = titleLength;
+        return this;
+    }
+
+    SyntheticFeed setUrlPattern(UrlPattern urlPattern)
+    {
+        mUrlPattern = urlPattern;
+        return this;
+    }
+
+    /**
+     * @param rate Share of entries that are malformed, from 0 to 1.  The kinds are spread evenly.
+     */
+    SyntheticFeed setMalformedRate(double rate)
+    {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("rate must be from 0 to 1: " + rate);
+        }
+        mMalformedRate = rate;
+        return this;
+    }
+
+    Feed generate()
+    {
+        Random random = new Random(mSeed);
+        StringBuilder sb = new StringBuilder(mItems * 160).append('[');
+        ContentStore.Builder expected = new ContentStore.Builder(mItems);
+        int[] malformedCounts = new int[MALFORMATIONS.length];
+
+        // Unique IDs in shuffled order, in the range the server uses.
+        int[] ids = new int[mItems];
+        for (int i = 0; i < mItems; i++) {
+            ids[i] = 300000 + i;
+        }
+        for (int i = mItems - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+
+        for (int i = 0; i < mItems; i++) {
+            String title = title(random);
+            String url = url(random, i);
+
+            if (i > 0) {
+                sb.append(',');
+            }
+
+            if (random.nextDouble() < mMalformedRate) {
+                Malformation malformation = MALFORMATIONS[random.nextInt(MALFORMATIONS.length)];
+                malformedCounts[malformation.ordinal()]++;
+                appendMalformed(sb, malformation, ids[i], title, url);
+                if (malformation == Malformation.MISSING_IMAGE) {
+                    expected.add(ids[i], title, "");
+                } else if (!malformation.isDropped()) {
+                    expected.add(ids[i], "", url);
+                }
+            } else {
+                expected.add(ids[i], title, url);
+                appendItem(sb, Integer.toString(ids[i]), title, url);
+            }
+        }
+
+        byte[] json = sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        return new Feed(json, expected.build().trimmed(), malformedCounts);
+    }
+
+    private String title(Random random)
+    {
+        int words;
+        switch (mTitleLength) {
+            case SHORT:
+                words = 1 + random.nextInt(2);
+                break;
+            case LONG:
+                words = 8 + random.nextInt(13);
+                break;
+            default:
+                double r = random.nextDouble();
+                words = r < 0.15 ? 1 : r < 0.85 ? 2 + random.nextInt(3) : 5 + random.nextInt(8);
+                break;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            sb.append(w == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+
+        int extra = random.nextInt(100);
+        if (extra == 0) {
+            sb.append(" \"Redux\"");
+        } else if (extra == 1) {
+            sb.append(" Caf\u00e9");
+        } else if (extra < 20) {
+            sb.append(" ").append(1 + random.nextInt(9));
+        }
+        return sb.toString();
+    }
+
+    private String url(Random random, int i)
+    {
+        switch (mUrlPattern) {
+            case PLAIN:
+                return "http://img.adrise.tv/" + i + ".jpg";
+            case SHARED:
+                return "http://img.adrise.tv/placeholder/" + random.nextInt(SHARED_URLS) + ".jpg";
+            default:
+                long h = i * 0x9E3779B97F4A7C15L;
+                return String.format(Locale.US,
+                        "http://images.adrise.tv/%016x%011x=/214x306/smart/img.adrise.tv/%08x-%04x-%012x.jpg",
+                        h, h >>> 20, (int) (h >>> 32), i & 0xffff, h & 0xffffffffffffL);
+        }
+    }
+
+    private static void appendItem(StringBuilder sb, String id, String title, String url)
+    {
+        sb.append("{\"title\":");
+        appendString(sb, title);
+        sb.append(",\"image\":");
+        appendString(sb, url);
+        sb.append(",\"id\":");
+        appendString(sb, id);
+        sb.append('}');
+    }
+
+    private static void appendMalformed(StringBuilder sb, Malformation malformation, int id,
+                                        String title, String url)
+    {
+        switch (malformation) {
+            case MISSING_IMAGE:
+                sb.append("{\"title\":");
+                appendString(sb, title);
+                sb.append(",\"id\":\"").append(id).append("\"}");
+                break;
+            case NON_NUMERIC_ID:
+                appendItem(sb, "tt" + id, title, url);
+                break;
+            case NULL_TITLE:
+                sb.append("{\"title\":null,\"image\":");
+                appendString(sb, url);
+                sb.append(",\"id\":\"").append(id).append("\"}");
+                break;
+            case NOT_AN_OBJECT:
+                appendString(sb, title);
+                break;
+            case TITLE_NOT_A_STRING:
+                sb.append("{\"title\":{\"en\":");
+                appendString(sb, title);
+                sb.append("},\"image\":");
+                appendString(sb, url);
+                sb.append(",\"id\":\"").append(id).append("\"}");
+                break;
+        }
+    }
+
+    private static void appendString(StringBuilder sb, String value)
+    {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
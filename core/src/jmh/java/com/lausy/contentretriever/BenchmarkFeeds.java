@@ -0,0 +1,199 @@
+package com.lausy.contentretriever;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * <h1>BenchmarkFeeds</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Synthetic content lists for the benchmarks.  Rows look like the real feed:  an ID in the
+ * range the server uses, a title of a few words with a number, and an image URL with its own
+ * signature and file name after the shared host.  The same size always gives the same list.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class BenchmarkFeeds {
+    private static final String[] WORDS = {
+            "The", "Man", "On", "A", "Ledge", "Hunted", "Town", "That", "Dreaded", "Sundown",
+            "Wild", "Card", "Frozen", "Possession", "Joe", "Igor", "Night", "Last", "Run", "Home"
+    };
+
+    private BenchmarkFeeds() {}
+
+    static ContentStore store(int items)
+    {
+        Random random = new Random(items);
+        ContentStore.Builder builder = new ContentStore.Builder(items);
+
+        // Unique IDs in shuffled order, so that sorting by ID has work to do.
+        int[] ids = new int[items];
+        for (int i = 0; i < items; i++) {
+            ids[i] = 300000 + i;
+        }
+        for (int i = items - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+
+        for (int i = 0; i < items; i++) {
+            builder.add(ids[i], title(random, i), url(i));
+        }
+        return builder.build();
+    }
+
+    static String title(Random random, int i)
+    {
+        StringBuilder sb = new StringBuilder();
+        int words = 1 + random.nextInt(4);
+        for (int w = 0; w < words; w++) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return sb.append(i).toString();
+    }
+
+    static String url(int i)
+    {
+        long h = i * 0x9E3779B97F4A7C15L;
+        return String.format(Locale.US,
+                "http://images.adrise.tv/%016x%011x=/214x306/smart/img.adrise.tv/%08x-%04x-%012x.jpg",
+                h, h >>> 20, (int) (h >>> 32), i & 0xffff, h & 0xffffffffffffL);
+    }
+
+    /**
+     * @return The list as the server sends it, a JSON array of objects with string fields.
+     */
+    static byte[] json(ContentStore store)
+    {
+        StringBuilder sb = new StringBuilder(store.size() * 160).append('[');
+        for (int row = 0; row < store.size(); row++) {
+            sb.append(row == 0 ? "" : ",")
+                    .append("{\"title\":\"").append(store.getTitle(row))
+                    .append("\",\"image\":\"").append(store.getImgUrl(row))
+                    .append("\",\"id\":\"").append(store.getId(row)).append("\"}");
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param badRate Share of rows, from 0 to 1, written in one of five malformed shapes:  no
+     *                image, a non-numeric ID, a null title, a bare string, or a title object.
+     * @return The list as the server sends it, with the malformed rows in place of good ones.
+     */
+    static byte[] json(ContentStore store, double badRate)
+    {
+        Random random = new Random(store.size() + 2);
+        StringBuilder sb = new StringBuilder(store.size() * 160).append('[');
+        for (int row = 0; row < store.size(); row++) {
+            String title = store.getTitle(row);
+            String url = store.getImgUrl(row);
+            int id = store.getId(row);
+            sb.append(row == 0 ? "" : ",");
+
+            if (random.nextDouble() >= badRate) {
+                sb.append("{\"title\":\"").append(title).append("\",\"image\":\"").append(url)
+                        .append("\",\"id\":\"").append(id).append("\"}");
+                continue;
+            }
+
+            switch (random.nextInt(5)) {
+                case 0:
+                    sb.append("{\"title\":\"").append(title).append("\",\"id\":\"").append(id).append("\"}");
+                    break;
+                case 1:
+                    sb.append("{\"title\":\"").append(title).append("\",\"image\":\"").append(url)
+                            .append("\",\"id\":\"tt").append(id).append("\"}");
+                    break;
+                case 2:
+                    sb.append("{\"title\":null,\"image\":\"").append(url)
+                            .append("\",\"id\":\"").append(id).append("\"}");
+                    break;
+                case 3:
+                    sb.append('"').append(title).append('"');
+                    break;
+                default:
+                    sb.append("{\"title\":{\"en\":\"").append(title).append("\"},\"image\":\"").append(url)
+                            .append("\",\"id\":\"").append(id).append("\"}");
+                    break;
+            }
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The changes to one row in a hundred of the store, as the server sends them:
+     *         every 200th row updated, every 400th removed and as many new rows added.
+     */
+    static byte[] deltaJson(ContentStore store)
+    {
+        Random random = new Random(store.size() + 3);
+        StringBuilder sb = new StringBuilder(store.size() * 2).append("{\"version\":\"v2\",\"added\":[");
+        for (int i = 0; i < store.size() / 400; i++) {
+            int id = 300000 + store.size() + i;
+            sb.append(i == 0 ? "" : ",");
+            appendItem(sb, id, title(random, i), url(id));
+        }
+        sb.append("],\"updated\":[");
+        for (int row = 0; row < store.size(); row += 200) {
+            sb.append(row == 0 ? "" : ",");
+            appendItem(sb, store.getId(row), store.getTitle(row) + " (Director's Cut)", store.getImgUrl(row));
+        }
+        sb.append("],\"removed\":[");
+        for (int row = 100; row < store.size(); row += 400) {
+            sb.append(row == 100 ? "" : ",").append('"').append(store.getId(row)).append('"');
+        }
+        return sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendItem(StringBuilder sb, int id, String title, String url)
+    {
+        sb.append("{\"title\":\"").append(title).append("\",\"image\":\"").append(url)
+                .append("\",\"id\":\"").append(id).append("\"}");
+    }
+
+    static byte[] binary(ContentStore store) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ContentWireFormat.write(store, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return The store with about one row in a hundred removed, inserted, moved or retitled,
+     *         as between two refreshes of the feed.
+     */
+    static ContentStore edited(ContentStore store)
+    {
+        Random random = new Random(store.size() + 1);
+        ContentStore.Builder builder = new ContentStore.Builder(store.size());
+        int moved = -1;
+
+        for (int row = 0; row < store.size(); row++) {
+            int edit = random.nextInt(400);
+
+            if (edit == 0) {
+                continue;
+            } else if (edit == 1) {
+                builder.add(300000 + store.size() + row, title(random, row), url(row));
+            } else if (edit == 2 && moved < 0) {
+                moved = row;
+                continue;
+            }
+
+            String title = edit == 3 ? store.getTitle(row) + " (Director's Cut)" : store.getTitle(row);
+            builder.add(store.getId(row), title, store.getImgUrl(row));
+        }
+
+        if (moved >= 0) {
+            builder.add(store.getId(moved), store.getTitle(moved), store.getImgUrl(moved));
+        }
+        return builder.build();
+    }
+}
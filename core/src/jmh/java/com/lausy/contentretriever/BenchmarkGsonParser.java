@@ -0,0 +1,95 @@
+package com.lausy.contentretriever;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * <h1>BenchmarkGsonParser</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * The Gson JsonReader loop that decoded the content list before ContentLenientParser, kept as
+ * a baseline for the benchmarks.  It builds a String per field and drops any entry without an
+ * ID, title and image.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class BenchmarkGsonParser {
+
+    private BenchmarkGsonParser() {}
+
+    /**
+     * @return The number of items decoded.
+     */
+    static int parse(Reader reader, ContentChunkListener listener) throws IOException
+    {
+        int chunkSize = ContentLenientParser.DEFAULT_CHUNK_SIZE;
+        JsonReader json = new JsonReader(reader);
+        ContentStore.Builder chunk = new ContentStore.Builder(chunkSize);
+        boolean first = true;
+        int parsed = 0;
+
+        json.beginArray();
+        while (json.hasNext()) {
+            if (!readItem(json, chunk)) {
+                continue;
+            }
+            parsed++;
+
+            if (chunk.size() == chunkSize) {
+                listener.onChunk(chunk.build(), first, false);
+                chunk = new ContentStore.Builder(chunkSize);
+                first = false;
+            }
+        }
+        json.endArray();
+
+        listener.onChunk(chunk.build(), first, true);
+        return parsed;
+    }
+
+    private static boolean readItem(JsonReader json, ContentStore.Builder chunk) throws IOException
+    {
+        if (json.peek() != JsonToken.BEGIN_OBJECT) {
+            json.skipValue();
+            return false;
+        }
+
+        String id = null;
+        String title = null;
+        String image = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            JsonToken token = json.peek();
+
+            if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+                json.skipValue();
+            } else if (name.equals("id")) {
+                id = json.nextString();
+            } else if (name.equals("title")) {
+                title = json.nextString();
+            } else if (name.equals("image")) {
+                image = json.nextString();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (id == null || title == null || image == null) {
+            return false;
+        }
+        try {
+            chunk.add(Integer.parseInt(id), title, image);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,61 @@
+package com.lausy.contentretriever;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>ContentDeltaBenchmark</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Taking in the changes to one row in a hundred since the last version:  parsing the delta and
+ * applying it to the list shown.  ContentParseBenchmark.parseJson is the whole list it saves.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentDeltaBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int items;
+
+    private ContentStore mStore;
+    private byte[] mDeltaJson;
+    private ContentDelta mDelta;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        mStore = BenchmarkFeeds.store(items);
+        mDeltaJson = BenchmarkFeeds.deltaJson(mStore);
+        mDelta = parseDelta();
+    }
+
+    @Benchmark
+    public ContentDelta parseDelta() throws IOException
+    {
+        return new ContentLenientParser().parseDelta(new InputStreamReader(
+                new ByteArrayInputStream(mDeltaJson), StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public ContentStore applyDelta()
+    {
+        return mDelta.applyTo(mStore, null);
+    }
+}
@@ -0,0 +1,55 @@
+package com.lausy.contentretriever;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>ContentDiffBenchmark</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Diffing a refreshed list against the one on screen, with about one row in a hundred
+ * changed.  The diff is O(n log n) in the size whatever the number of changes, so it is run up
+ * to a million rows.  Only compute is timed; dispatch is a loop over the recorded operations.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentDiffBenchmark {
+
+    @Param({"100", "10000", "100000", "1000000"})
+    public int items;
+
+    private ContentStore mCurrent;
+    private ContentStore mIncoming;
+
+    @Setup
+    public void setUp()
+    {
+        mCurrent = BenchmarkFeeds.store(items);
+        mIncoming = BenchmarkFeeds.edited(mCurrent);
+    }
+
+    @Benchmark
+    public int diffUnchanged()
+    {
+        return ContentListDiff.compute(mCurrent, mCurrent).getOperationCount();
+    }
+
+    @Benchmark
+    public int diffEdited()
+    {
+        return ContentListDiff.compute(mCurrent, mIncoming).getOperationCount();
+    }
+}
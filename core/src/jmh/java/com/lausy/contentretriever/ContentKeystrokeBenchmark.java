@@ -0,0 +1,85 @@
+package com.lausy.contentretriever;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>ContentKeystrokeBenchmark</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Filtering as the user types into the search box.  Unlike ContentQueryBenchmark the engine is
+ * built once, so its indexes are in place as they are after the first query, and each
+ * invocation types a word one keystroke at a time.  Results are per keystroke.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentKeystrokeBenchmark {
+
+    private static final String TYPED = "the town";
+
+    @Param({"10000", "100000", "1000000"})
+    public int items;
+
+    private ContentQueryEngine mEngine;
+    private ContentQueryEngine.Query[] mPrefixKeystrokes;
+    private ContentQueryEngine.Query[] mSubstringKeystrokes;
+
+    @Setup
+    public void setUp()
+    {
+        mEngine = new ContentQueryEngine(BenchmarkFeeds.store(items));
+        mPrefixKeystrokes = keystrokes(ContentQueryEngine.FilterType.PREFIX);
+        mSubstringKeystrokes = keystrokes(ContentQueryEngine.FilterType.SUBSTRING);
+
+        // Build the indexes before the first measurement.
+        mEngine.run(mPrefixKeystrokes[0], null);
+        mEngine.run(mSubstringKeystrokes[0], null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public int typePrefix()
+    {
+        return type(mPrefixKeystrokes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public int typeSubstring()
+    {
+        return type(mSubstringKeystrokes);
+    }
+
+    private int type(ContentQueryEngine.Query[] keystrokes)
+    {
+        int matches = 0;
+        for (ContentQueryEngine.Query keystroke : keystrokes) {
+            matches += mEngine.run(keystroke, null).length;
+        }
+        return matches;
+    }
+
+    private static ContentQueryEngine.Query[] keystrokes(ContentQueryEngine.FilterType type)
+    {
+        ContentQueryEngine.Query[] queries = new ContentQueryEngine.Query[TYPED.length()];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = new ContentQueryEngine.Query(TYPED.substring(0, i + 1), type,
+                    ContentQueryEngine.SortKey.TITLE);
+        }
+        return queries;
+    }
+}
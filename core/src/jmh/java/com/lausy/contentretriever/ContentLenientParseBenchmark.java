@@ -0,0 +1,89 @@
+package com.lausy.contentretriever;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>ContentLenientParseBenchmark</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Decoding a JSON list with a share of malformed rows:  ContentLenientParser, the Gson loop it
+ * replaced in BenchmarkGsonParser, and the org.json loop of the old setList, which catches an
+ * exception for every bad row.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentLenientParseBenchmark {
+
+    @Param({"10000", "100000"})
+    public int items;
+
+    @Param({"0", "0.05", "0.5"})
+    public double badRate;
+
+    private byte[] mJson;
+
+    private static final ContentChunkListener DISCARD = new ContentChunkListener() {
+        @Override
+        public void onChunk(ContentStore chunk, boolean first, boolean last) {
+        }
+    };
+
+    @Setup
+    public void setUp()
+    {
+        mJson = BenchmarkFeeds.json(BenchmarkFeeds.store(items), badRate);
+    }
+
+    @Benchmark
+    public int parseLenient() throws IOException
+    {
+        return new ContentLenientParser().parse(new InputStreamReader(
+                new ByteArrayInputStream(mJson), StandardCharsets.UTF_8), DISCARD);
+    }
+
+    @Benchmark
+    public int parseStreaming() throws IOException
+    {
+        return BenchmarkGsonParser.parse(new InputStreamReader(
+                new ByteArrayInputStream(mJson), StandardCharsets.UTF_8), DISCARD);
+    }
+
+    @Benchmark
+    public int parseOrgJson() throws JSONException
+    {
+        JSONArray jsonArray = new JSONArray(new String(mJson, StandardCharsets.UTF_8));
+        ContentStore.Builder builder = new ContentStore.Builder(jsonArray.length());
+
+        for (int i = 0; i < jsonArray.length(); i++) {
+            try {
+                JSONObject item = jsonArray.getJSONObject(i);
+                builder.add(Integer.parseInt(item.getString("id")), item.getString("title"),
+                        item.getString("image"));
+            } catch (JSONException | NumberFormatException e) {
+                // Dropped, as before.
+            }
+        }
+        return builder.size();
+    }
+}
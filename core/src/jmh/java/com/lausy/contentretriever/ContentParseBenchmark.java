@@ -0,0 +1,172 @@
+package com.lausy.contentretriever;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <h1>ContentParseBenchmark</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Decoding the content list as it comes off the network:  JSON and the binary format, plain
+ * and gzipped, into the chunks that ContentListDataAdapter appends.  Also encoding the binary
+ * format, which the server side does.
+ *
+ * parseOrgJson is the baseline:  the whole body read into a String, a JSONArray built from it,
+ * and a row added per JSONObject, as the original setList did.  It shows nothing until all of
+ * it is done, so it is also its own first chunk time.  The firstChunk benchmarks stop each
+ * streaming parser at its first chunk, the time before the user sees the first rows.
+ *
+ * The build runs every benchmark with the gc profiler, so each result also has the bytes
+ * allocated per operation (gc.alloc.rate.norm) and the collections it caused.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentParseBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int items;
+
+    private ContentStore mStore;
+    private byte[] mJson;
+    private byte[] mGzipJson;
+    private byte[] mBinary;
+    private byte[] mGzipBinary;
+
+    private static final ContentChunkListener DISCARD = new ContentChunkListener() {
+        @Override
+        public void onChunk(ContentStore chunk, boolean first, boolean last) {
+        }
+    };
+
+    /**
+     * Thrown from the listener to stop a parse at its first chunk.  Shared and without a stack
+     * trace, so stopping costs nothing.
+     */
+    private static final RuntimeException FIRST_CHUNK = new RuntimeException("first chunk") {
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    };
+
+    private static final ContentChunkListener STOP_AT_FIRST = new ContentChunkListener() {
+        @Override
+        public void onChunk(ContentStore chunk, boolean first, boolean last) {
+            throw FIRST_CHUNK;
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        mStore = BenchmarkFeeds.store(items);
+        mJson = BenchmarkFeeds.json(mStore);
+        mGzipJson = gzip(mJson);
+        mBinary = BenchmarkFeeds.binary(mStore);
+        mGzipBinary = gzip(mBinary);
+    }
+
+    @Benchmark
+    public int parseJson() throws IOException
+    {
+        return new ContentLenientParser().parse(new InputStreamReader(
+                new ByteArrayInputStream(mJson), StandardCharsets.UTF_8), DISCARD);
+    }
+
+    @Benchmark
+    public int parseOrgJson() throws JSONException
+    {
+        JSONArray jsonArray = new JSONArray(new String(mJson, StandardCharsets.UTF_8));
+        ContentStore.Builder builder = new ContentStore.Builder(jsonArray.length());
+
+        for (int i = 0; i < jsonArray.length(); i++) {
+            JSONObject item = jsonArray.getJSONObject(i);
+            builder.add(Integer.parseInt(item.getString("id")), item.getString("title"),
+                    item.getString("image"));
+        }
+        return builder.size();
+    }
+
+    @Benchmark
+    public boolean firstChunkJson() throws IOException
+    {
+        try {
+            new ContentLenientParser().parse(new InputStreamReader(
+                    new ByteArrayInputStream(mJson), StandardCharsets.UTF_8), STOP_AT_FIRST);
+            return false;
+        } catch (RuntimeException e) {
+            return e == FIRST_CHUNK;
+        }
+    }
+
+    @Benchmark
+    public boolean firstChunkBinary() throws IOException
+    {
+        try {
+            new ContentBinaryParser().parse(new ByteArrayInputStream(mBinary), STOP_AT_FIRST);
+            return false;
+        } catch (RuntimeException e) {
+            return e == FIRST_CHUNK;
+        }
+    }
+
+    @Benchmark
+    public int parseGzipJson() throws IOException
+    {
+        return new ContentLenientParser().parse(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(mGzipJson), 8192), StandardCharsets.UTF_8), DISCARD);
+    }
+
+    @Benchmark
+    public int parseBinary() throws IOException
+    {
+        return new ContentBinaryParser().parse(new ByteArrayInputStream(mBinary), DISCARD);
+    }
+
+    @Benchmark
+    public int parseGzipBinary() throws IOException
+    {
+        return new ContentBinaryParser().parse(
+                new GZIPInputStream(new ByteArrayInputStream(mGzipBinary), 8192), DISCARD);
+    }
+
+    @Benchmark
+    public int writeBinary() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(mBinary.length);
+        ContentWireFormat.write(mStore, out);
+        return out.size();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,159 @@
+package com.lausy.contentretriever;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>ContentQueryBenchmark</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Sorting and filtering a freshly received list.  Every invocation uses a new engine, so the
+ * sort orders and title index it caches are built each time, as after a refresh.
+ *
+ * The engine sorts in ascending order only.  The adapter shows a descending sort by reading
+ * the result from the end, so the descending benchmarks sort and then read every row that way.
+ *
+ * The baseline benchmarks are the sort the adapter had before the engine:  Collections.sort
+ * over an ArrayList of ViewData objects, compared by subtracting IDs, and for descending order
+ * a Comparator that swaps the arguments.  Each sorts a fresh copy of the list, since a sorted
+ * list would be the best case from the second invocation on.  The copy is part of the time.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentQueryBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int items;
+
+    private ContentStore mStore;
+    private List<ViewData> mViewData;
+
+    /**
+     * A row as the adapter held it before ContentStore.
+     */
+    private static final class ViewData implements Comparable<ViewData> {
+        final String title;
+        final int contentID;
+        final String imgUrl;
+
+        ViewData(String title, int contentID, String imgUrl) {
+            this.title = title;
+            this.contentID = contentID;
+            this.imgUrl = imgUrl;
+        }
+
+        @Override
+        public int compareTo(ViewData o) {
+            return this.contentID - o.contentID;
+        }
+    }
+
+    private static final Comparator<ViewData> REVERSE = new Comparator<ViewData>() {
+        @Override
+        public int compare(ViewData o1, ViewData o2) {
+            return o2.compareTo(o1);
+        }
+    };
+
+    private static final ContentQueryEngine.Query BY_ID = new ContentQueryEngine.Query(
+            "", ContentQueryEngine.FilterType.SUBSTRING, ContentQueryEngine.SortKey.ID);
+    private static final ContentQueryEngine.Query BY_TITLE = new ContentQueryEngine.Query(
+            "", ContentQueryEngine.FilterType.SUBSTRING, ContentQueryEngine.SortKey.TITLE);
+    private static final ContentQueryEngine.Query SUBSTRING = new ContentQueryEngine.Query(
+            "town", ContentQueryEngine.FilterType.SUBSTRING, ContentQueryEngine.SortKey.NONE);
+    private static final ContentQueryEngine.Query PREFIX = new ContentQueryEngine.Query(
+            "the town", ContentQueryEngine.FilterType.PREFIX, ContentQueryEngine.SortKey.TITLE);
+
+    @Setup
+    public void setUp()
+    {
+        mStore = BenchmarkFeeds.store(items);
+
+        mViewData = new ArrayList<>(items);
+        for (int row = 0; row < items; row++) {
+            mViewData.add(new ViewData(mStore.getTitle(row), mStore.getId(row), mStore.getImgUrl(row)));
+        }
+    }
+
+    @Benchmark
+    public List<ViewData> baselineSortIdAscending()
+    {
+        List<ViewData> list = new ArrayList<>(mViewData);
+        Collections.sort(list);
+        return list;
+    }
+
+    @Benchmark
+    public List<ViewData> baselineSortIdDescending()
+    {
+        List<ViewData> list = new ArrayList<>(mViewData);
+        Collections.sort(list, REVERSE);
+        return list;
+    }
+
+    @Benchmark
+    public int[] sortIdAscending()
+    {
+        return new ContentQueryEngine(mStore).run(BY_ID, null);
+    }
+
+    @Benchmark
+    public long sortIdDescending()
+    {
+        return readDescending(new ContentQueryEngine(mStore).run(BY_ID, null));
+    }
+
+    @Benchmark
+    public int[] sortTitleAscending()
+    {
+        return new ContentQueryEngine(mStore).run(BY_TITLE, null);
+    }
+
+    @Benchmark
+    public long sortTitleDescending()
+    {
+        return readDescending(new ContentQueryEngine(mStore).run(BY_TITLE, null));
+    }
+
+    @Benchmark
+    public int[] filterSubstring()
+    {
+        return new ContentQueryEngine(mStore).run(SUBSTRING, null);
+    }
+
+    @Benchmark
+    public int[] filterPrefix()
+    {
+        return new ContentQueryEngine(mStore).run(PREFIX, null);
+    }
+
+    /**
+     * Reads the IDs of the rows from the last to the first, the way the adapter binds a
+     * descending list.
+     */
+    private long readDescending(int[] rows)
+    {
+        long sum = 0;
+        for (int i = rows.length - 1; i >= 0; i--) {
+            sum += mStore.getId(rows[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,116 @@
+package com.lausy.contentretriever;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>ContentStoreBenchmark</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Building the list:  adding rows one at a time, appending parsed chunks the way the adapter
+ * does while a list streams in, and writing and reading the snapshot file shown on cold start.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentStoreBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int items;
+
+    private int[] mIds;
+    private String[] mTitles;
+    private String[] mUrls;
+    private final List<ContentStore> mChunks = new ArrayList<>();
+    private ContentStore mStore;
+    private ContentSnapshotFile mSnapshot;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        mStore = BenchmarkFeeds.store(items);
+
+        mIds = new int[items];
+        mTitles = new String[items];
+        mUrls = new String[items];
+        for (int row = 0; row < items; row++) {
+            mIds[row] = mStore.getId(row);
+            mTitles[row] = mStore.getTitle(row);
+            mUrls[row] = mStore.getImgUrl(row);
+        }
+
+        for (int start = 0; start < items; start += ContentLenientParser.DEFAULT_CHUNK_SIZE) {
+            int end = Math.min(items, start + ContentLenientParser.DEFAULT_CHUNK_SIZE);
+            ContentStore.Builder chunk = new ContentStore.Builder(end - start);
+            for (int row = start; row < end; row++) {
+                chunk.add(mIds[row], mTitles[row], mUrls[row]);
+            }
+            mChunks.add(chunk.build());
+        }
+
+        File file = File.createTempFile("snapshot", ".bin");
+        mSnapshot = new ContentSnapshotFile(file);
+        mSnapshot.write(mStore);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        mSnapshot.delete();
+    }
+
+    @Benchmark
+    public ContentStore buildRowByRow()
+    {
+        ContentStore.Builder builder = new ContentStore.Builder(items);
+        for (int row = 0; row < items; row++) {
+            builder.add(mIds[row], mTitles[row], mUrls[row]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Appends every chunk and takes a snapshot of the store after each, then trims it, as
+     * onReceiveContent does.
+     */
+    @Benchmark
+    public ContentStore buildFromChunks()
+    {
+        ContentStore.Builder builder = new ContentStore.Builder(mChunks.get(0).size());
+        ContentStore store = ContentStore.EMPTY;
+        for (ContentStore chunk : mChunks) {
+            builder.addAll(chunk);
+            store = builder.build();
+        }
+        return store.trimmed();
+    }
+
+    @Benchmark
+    public void writeSnapshot() throws IOException
+    {
+        mSnapshot.write(mStore);
+    }
+
+    @Benchmark
+    public ContentStore readSnapshot() throws IOException
+    {
+        return mSnapshot.read();
+    }
+}
@@ -0,0 +1,194 @@
+package com.lausy.contentretriever;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h1>ContentBinaryParser</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Streaming parser for the binary content list described in ContentWireFormat.  Rows are
+ * decoded straight from the bytes into the columns of a ContentStore, with no String per title
+ * or URL, and handed to the listener in chunks the same way as ContentLenientParser.
+ *
+ * Unlike the JSON parser nothing is skipped, since a binary list has no optional fields.  Any
+ * inconsistency in the stream is an IOException.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+class ContentBinaryParser {
+    private final int mChunkSize;
+
+    private InputStream mIn;
+    private final byte[] mBuffer = new byte[8192];
+    private int mPosition;
+    private int mLimit;
+
+    private byte[] mTitle = new byte[256];
+    private byte[] mUrl = new byte[256];
+
+    private int mParsedCount;
+
+    ContentBinaryParser() {
+        this(ContentLenientParser.DEFAULT_CHUNK_SIZE);
+    }
+
+    ContentBinaryParser(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Parses a binary content list from the stream.  The stream is not closed.
+     *
+     * @param in Stream positioned at the magic number.
+     * @param listener Receives the decoded items in chunks of at most the chunk size.
+     * @return The number of items decoded.
+     * @throws IOException If the stream cannot be read or is not a valid list.
+     */
+    int parse(InputStream in, ContentChunkListener listener) throws IOException
+    {
+        ContentExecutors.checkNotMainThread("Parsing the content list");
+
+        mIn = in;
+        mPosition = 0;
+        mLimit = 0;
+        mParsedCount = 0;
+
+        for (byte b : ContentWireFormat.MAGIC) {
+            if (readByte() != b) {
+                throw new IOException("Not a binary content list.");
+            }
+        }
+
+        int prefixCount = readVarint();
+        if (prefixCount < 1 || prefixCount > 0xffff) {
+            throw new IOException("Bad prefix count " + prefixCount);
+        }
+        String[] prefixes = new String[prefixCount];
+        for (int i = 0; i < prefixCount; i++) {
+            int length = readLength();
+            mUrl = readInto(mUrl, length);
+            prefixes[i] = new String(mUrl, 0, length, StandardCharsets.UTF_8);
+        }
+        if (!prefixes[0].isEmpty()) {
+            throw new IOException("Prefix 0 must be empty.");
+        }
+
+        int count = readVarint();
+        if (count < 0) {
+            throw new IOException("Bad item count " + count);
+        }
+
+        ContentStore.Builder chunk = new ContentStore.Builder(Math.min(count, mChunkSize));
+        boolean first = true;
+
+        for (int i = 0; i < count; i++) {
+            int zigzag = readVarint();
+            int id = (zigzag >>> 1) ^ -(zigzag & 1);
+
+            int titleLength = readLength();
+            mTitle = readInto(mTitle, titleLength);
+
+            int prefix = readVarint();
+            if (prefix < 0 || prefix >= prefixCount) {
+                throw new IOException("Bad prefix index " + prefix + " in item " + i);
+            }
+
+            int urlLength = readLength();
+            mUrl = readInto(mUrl, urlLength);
+
+            chunk.addEncoded(id, mTitle, 0, titleLength, prefixes[prefix], mUrl, 0, urlLength);
+            mParsedCount++;
+
+            if (chunk.size() == mChunkSize && i + 1 < count) {
+                listener.onChunk(chunk.build(), first, false);
+                chunk = new ContentStore.Builder(Math.min(count - i - 1, mChunkSize));
+                first = false;
+            }
+        }
+
+        listener.onChunk(chunk.build(), first, true);
+        mIn = null;
+
+        return mParsedCount;
+    }
+
+    /**
+     * @return Number of items decoded by the last call to parse.
+     */
+    int getParsedCount() { return mParsedCount; }
+
+    private int readByte() throws IOException
+    {
+        if (mPosition == mLimit) {
+            fill();
+        }
+        return mBuffer[mPosition++] & 0xff;
+    }
+
+    private int readVarint() throws IOException
+    {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    private int readLength() throws IOException
+    {
+        int length = readVarint();
+
+        if (length < 0 || length > ContentWireFormat.MAX_STRING_BYTES) {
+            throw new IOException("Bad string length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Reads the bytes into the scratch array, growing it if needed.
+     *
+     * @return The scratch array, or a larger one.
+     */
+    private byte[] readInto(byte[] scratch, int length) throws IOException
+    {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+
+        int done = 0;
+        while (done < length) {
+            if (mPosition == mLimit) {
+                fill();
+            }
+            int n = Math.min(length - done, mLimit - mPosition);
+            System.arraycopy(mBuffer, mPosition, scratch, done, n);
+            mPosition += n;
+            done += n;
+        }
+        return scratch;
+    }
+
+    private void fill() throws IOException
+    {
+        int n = mIn.read(mBuffer, 0, mBuffer.length);
+
+        if (n <= 0) {
+            throw new EOFException("Binary content list ended early.");
+        }
+        mPosition = 0;
+        mLimit = n;
+    }
+}
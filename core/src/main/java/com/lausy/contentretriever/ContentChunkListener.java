@@ -0,0 +1,17 @@
+package com.lausy.contentretriever;
+
+/**
+ * <h1>ContentChunkListener</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Listener for the chunks ContentLenientParser and ContentBinaryParser decode a list into.  The
+ * first chunk of a list is flagged so the receiver knows to drop the previous list.  The last
+ * chunk may be empty.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+interface ContentChunkListener {
+    void onChunk(ContentStore chunk, boolean first, boolean last);
+}
@@ -0,0 +1,155 @@
+package com.lausy.contentretriever;
+
+import java.util.Arrays;
+
+/**
+ * <h1>ContentDelta</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * The changes to the content list between two versions, as sent by the server when asked for
+ * the list since a version token:
+ *
+ * <pre>
+ *   GET {path}?since={version}
+ *
+ *   200  Content-Type: application/x-content-delta+json
+ *   {"version": "...", "added": [{id, title, image}, ...], "updated": [...], "removed": ["id", ...]}
+ *
+ *   410  The version is too old to send changes for.  Fetch the whole list instead.
+ * </pre>
+ *
+ * A whole list carries its version in the X-Content-Version header.  A server that does not
+ * send that header is never asked for a delta.
+ *
+ * Added and updated items are both applied as upserts:  a row with the ID is replaced where it
+ * is, and an ID not in the list is appended.  Removed IDs are dropped.  An ID that is both
+ * removed and upserted is kept with the new content.
+ *
+ * Applying a delta copies the unchanged rows of the current store column to column, so no row
+ * is parsed or turned into Strings again, and reports each row removed, changed or inserted to
+ * a ContentListDiff.Callback so only those rows are rebound.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentDelta {
+    static final String MEDIA_TYPE = "application/x-content-delta+json";
+    static final String VERSION_HEADER = "X-Content-Version";
+
+    private final String mVersion;
+    private final ContentStore mUpserts;
+    private final int[] mRemovedIds;
+
+    /**
+     * mUpserts sorted by ID, and the row of mUpserts each sorted ID is at, for lookups.
+     */
+    private final int[] mSortedUpsertIds;
+    private final int[] mUpsertRows;
+    private final int[] mSortedRemovedIds;
+
+    /**
+     * @param version Version of the list once the delta is applied.
+     * @param upserts Added and updated rows.
+     * @param removedIds IDs of removed rows.
+     */
+    ContentDelta(String version, ContentStore upserts, int[] removedIds) {
+        if (version == null) {
+            throw new IllegalArgumentException("A delta needs the version it brings the list to.");
+        }
+        mVersion = version;
+        mUpserts = upserts;
+        mRemovedIds = removedIds.clone();
+
+        int[] ids = new int[upserts.size()];
+        for (int row = 0; row < ids.length; row++) {
+            ids[row] = upserts.getId(row);
+        }
+        mUpsertRows = ContentSortIndex.ascendingOrder(ids);
+        mSortedUpsertIds = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            mSortedUpsertIds[i] = ids[mUpsertRows[i]];
+        }
+
+        mSortedRemovedIds = removedIds.clone();
+        Arrays.sort(mSortedRemovedIds);
+    }
+
+    String getVersion() { return mVersion; }
+    ContentStore getUpserts() { return mUpserts; }
+    int getUpsertCount() { return mUpserts.size(); }
+    int getRemovedCount() { return mRemovedIds.length; }
+
+    /**
+     * @return True if the delta changes nothing.
+     */
+    boolean isEmpty() { return mUpserts.size() == 0 && mRemovedIds.length == 0; }
+
+    /**
+     * Applies the delta to the store.  Removals are reported first, from the last row up, so
+     * every position is one of the current list.  Changes and insertions follow, at their
+     * positions in the new list.
+     *
+     * @param base The list shown to the user.
+     * @param callback Receives every operation.  May be null.
+     * @return The new list.
+     */
+    ContentStore applyTo(ContentStore base, ContentListDiff.Callback callback)
+    {
+        int size = base.size();
+
+        if (callback != null) {
+            for (int row = size - 1; row >= 0; row--) {
+                int id = base.getId(row);
+                if (isRemoved(id) && upsertRowOf(id) < 0) {
+                    callback.onRemoved(row);
+                }
+            }
+        }
+
+        ContentStore.Builder builder = new ContentStore.Builder(size + mUpserts.size());
+        boolean[] applied = new boolean[mUpserts.size()];
+
+        for (int row = 0; row < size; row++) {
+            int id = base.getId(row);
+            int upsert = upsertRowOf(id);
+
+            if (upsert >= 0) {
+                applied[upsert] = true;
+                builder.addRow(mUpserts, upsert);
+                if (callback != null && !base.sameContent(row, mUpserts, upsert)) {
+                    callback.onChanged(builder.size() - 1);
+                }
+            } else if (!isRemoved(id)) {
+                builder.addRow(base, row);
+            }
+        }
+
+        for (int upsert = 0; upsert < mUpserts.size(); upsert++) {
+            // Only the row found for an ID is used, so an ID sent twice is added once.
+            if (applied[upsert] || upsertRowOf(mUpserts.getId(upsert)) != upsert) {
+                continue;
+            }
+            builder.addRow(mUpserts, upsert);
+            if (callback != null) {
+                callback.onInserted(builder.size() - 1);
+            }
+        }
+
+        return builder.build().trimmed();
+    }
+
+    /**
+     * @return The row of mUpserts with the ID, or -1 if there is none.
+     */
+    private int upsertRowOf(int id)
+    {
+        int index = Arrays.binarySearch(mSortedUpsertIds, id);
+        return index < 0 ? -1 : mUpsertRows[index];
+    }
+
+    private boolean isRemoved(int id)
+    {
+        return Arrays.binarySearch(mSortedRemovedIds, id) >= 0;
+    }
+}
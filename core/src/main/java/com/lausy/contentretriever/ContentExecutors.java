@@ -0,0 +1,186 @@
+package com.lausy.contentretriever;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>ContentExecutors</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Threads of the content pipeline.  Responses are read and parsed on the parse executor, a small
+ * bounded pool that Retrofit delivers its callbacks to.  The bodies of a fan-out fetch are read
+ * on the download executor instead, which has a thread for each source in flight, so a slow
+ * source does not hold back the others behind two parse threads.  Sorting, filtering and the
+ * snapshot file run on the query executor, a single thread, so the query engine only ever sees
+ * one thread.
+ * Results are posted to the main thread as immutable ContentStores, and only the main thread
+ * touches the adapter.  Retries wait on the retry scheduler, which only starts the next call.
+ *
+ * checkNotMainThread and checkMainThread enforce this.  They throw once the main thread has been
+ * set, so a change that parses on the main thread fails in tests instead of dropping frames.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentExecutors {
+    static final int PARSE_THREADS = 2;
+    static final int PARSE_QUEUE_SIZE = 16;
+
+    /**
+     * Threads reading fan-out bodies.  The same as ContentFanOutRequest.DEFAULT_MAX_PARALLEL,
+     * which lives in the app module.
+     */
+    static final int DOWNLOAD_THREADS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static volatile Thread sMainThread;
+
+    private static final ThreadPoolExecutor sParseExecutor = new ThreadPoolExecutor(
+            PARSE_THREADS, PARSE_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(PARSE_QUEUE_SIZE),
+            new WorkerThreadFactory("content-parse-"), new RunOnWorkerPolicy());
+
+    private static final ThreadPoolExecutor sDownloadExecutor = new ThreadPoolExecutor(
+            DOWNLOAD_THREADS, DOWNLOAD_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new WorkerThreadFactory("content-download-"));
+
+    private static final ThreadPoolExecutor sQueryExecutor = new ThreadPoolExecutor(
+            1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new WorkerThreadFactory("content-query-"));
+
+    private static final ScheduledThreadPoolExecutor sRetryExecutor = new ScheduledThreadPoolExecutor(
+            1, new WorkerThreadFactory("content-retry-"));
+
+    private static final RetryPolicy.Scheduler sRetryScheduler = new RetryPolicy.Scheduler() {
+        @Override
+        public long now() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            sRetryExecutor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    };
+
+    static {
+        sParseExecutor.allowCoreThreadTimeOut(true);
+        sDownloadExecutor.allowCoreThreadTimeOut(true);
+        sQueryExecutor.allowCoreThreadTimeOut(true);
+        sRetryExecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    private ContentExecutors() {}
+
+    /**
+     * @return Executor that responses are read and parsed on.
+     */
+    static Executor parse() { return sParseExecutor; }
+
+    /**
+     * @return Executor that the bodies of a fan-out fetch are read and parsed on, with
+     *         DOWNLOAD_THREADS threads.  Bodies past that wait in order.
+     */
+    static Executor download() { return sDownloadExecutor; }
+
+    /**
+     * @return Single thread executor for queries and snapshot file access.  Tasks run in the
+     *         order they are submitted.
+     */
+    static Executor query() { return sQueryExecutor; }
+
+    /**
+     * @return Clock and timer that network retries wait on.
+     */
+    static RetryPolicy.Scheduler retry() { return sRetryScheduler; }
+
+    /**
+     * Sets the thread that must not parse or do disk access.  Called with the UI thread at
+     * startup, or with a test thread in unit tests.  Null turns the checks off.
+     */
+    static void setMainThread(Thread thread) { sMainThread = thread; }
+
+    /**
+     * @return True if the caller is on the main thread.  False if no main thread has been set.
+     */
+    static boolean isMainThread() { return Thread.currentThread() == sMainThread; }
+
+    /**
+     * @return True if the caller is a thread of one of the executors.
+     */
+    static boolean isWorkerThread() { return Thread.currentThread() instanceof WorkerThread; }
+
+    /**
+     * @param what What the caller is about to do, for the exception message.
+     * @throws IllegalStateException If called on the main thread.
+     */
+    static void checkNotMainThread(String what)
+    {
+        if (isMainThread()) {
+            throw new IllegalStateException(what + " must not run on the main thread.");
+        }
+    }
+
+    /**
+     * @param what What the caller is about to do, for the exception message.
+     * @throws IllegalStateException If a main thread has been set and this is another thread.
+     */
+    static void checkMainThread(String what)
+    {
+        Thread main = sMainThread;
+
+        if (main != null && Thread.currentThread() != main) {
+            throw new IllegalStateException(what + " must run on the main thread, not on "
+                    + Thread.currentThread().getName() + ".");
+        }
+    }
+
+    private static final class WorkerThread extends Thread {
+        WorkerThread(Runnable r, String name) {
+            super(r, name);
+            setDaemon(true);
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final String mPrefix;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        WorkerThreadFactory(String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new WorkerThread(r, mPrefix + mCount.incrementAndGet());
+        }
+    }
+
+    /**
+     * When the parse queue is full the task runs on the thread that submitted it, which holds
+     * back the network thread delivering responses.  The main thread is never used.
+     */
+    private static final class RunOnWorkerPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Parse executor is shut down.");
+            }
+            if (isMainThread()) {
+                throw new RejectedExecutionException("Parse queue is full.");
+            }
+            r.run();
+        }
+    }
+}
@@ -0,0 +1,793 @@
+package com.lausy.contentretriever;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * <h1>ContentLenientParser</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Fast, error-tolerant decoder for the JSON content list.  The stream is scanned by hand from a
+ * char buffer:  IDs are parsed digit by digit as they are read, titles and image URLs are
+ * unescaped into reusable char buffers and appended straight to the columns of a ContentStore,
+ * and field names are matched in place.  No String is built for a row, and no token object for
+ * a value.
+ *
+ * An entry is kept whenever it has a usable ID.  A missing or null title is kept as empty, and a
+ * missing or null image as none, so the row shows the placeholder.  Entries without a usable ID,
+ * or that are not objects, are dropped.  Every problem is counted by its Defect instead of being
+ * logged per row, so a feed with many bad rows costs no more than the rows themselves.  An entry
+ * can have more than one defect.
+ *
+ * Only the entries are lenient.  A stream that is not a JSON array, or is cut off, still fails
+ * with an IOException.
+ *
+ * parseDelta reads the changes since a version, described in ContentDelta, with the same rules
+ * for each added or updated entry.  A delta is small, so it is returned whole rather than in
+ * chunks.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentLenientParser {
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /**
+     * Problems found in an entry.
+     */
+    enum Defect {
+        /** The element is not an object.  Dropped. */
+        NOT_AN_OBJECT,
+        /** The entry has no ID.  Dropped. */
+        MISSING_ID,
+        /** The ID is not an integer, or is out of range.  Dropped. */
+        BAD_ID,
+        /** The title is missing or null.  Kept with an empty title. */
+        MISSING_TITLE,
+        /** The image is missing or null.  Kept without an image. */
+        MISSING_IMAGE,
+        /** The title or image is an object, array or boolean.  Kept as if it were missing. */
+        WRONG_TYPE
+    }
+
+    private static final Defect[] DEFECTS = Defect.values();
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int FIELD_OTHER = 0;
+    private static final int FIELD_ID = 1;
+    private static final int FIELD_TITLE = 2;
+    private static final int FIELD_IMAGE = 3;
+
+    /**
+     * Buffers that strings are unescaped into.
+     */
+    private static final int SLOT_NAME = 0;
+    private static final int SLOT_TITLE = 1;
+    private static final int SLOT_IMAGE = 2;
+
+    /**
+     * Result of reading a title or image value.
+     */
+    private static final int VALUE_PRESENT = 0;
+    private static final int VALUE_NULL = 1;
+    private static final int VALUE_WRONG_TYPE = 2;
+
+    private final int mChunkSize;
+
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+    private final char[][] mSlots = { new char[16], new char[64], new char[128] };
+    private final int[] mSlotLengths = new int[3];
+    private Reader mReader;
+    private int mPos;
+    private int mLimit;
+    private long mOffset;
+
+    /**
+     * State of the ID of the entry being read.
+     */
+    private boolean mHasId;
+    private boolean mBadId;
+    private int mId;
+
+    private int mParsedCount;
+    private int mSkippedCount;
+    private final int[] mDefectCounts = new int[DEFECTS.length];
+
+    ContentLenientParser() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    ContentLenientParser(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Parses a JSON array of content from the reader.  The reader is not closed.
+     *
+     * @param reader Character stream positioned at the start of the JSON array.
+     * @param listener Receives the decoded items in chunks of at most the chunk size.
+     * @return The number of items decoded.
+     * @throws IOException If the stream cannot be read or is not a JSON array.
+     */
+    int parse(Reader reader, ContentChunkListener listener) throws IOException
+    {
+        ContentExecutors.checkNotMainThread("Parsing the content feed");
+        begin(reader);
+
+        ContentStore.Builder chunk = new ContentStore.Builder(mChunkSize);
+        boolean first = true;
+
+        expect('[');
+        if (peek() == ']') {
+            mPos++;
+        } else {
+            while (true) {
+                if (readEntry(chunk)) {
+                    mParsedCount++;
+
+                    if (chunk.size() == mChunkSize) {
+                        listener.onChunk(chunk.build(), first, false);
+                        chunk = new ContentStore.Builder(mChunkSize);
+                        first = false;
+                    }
+                } else {
+                    mSkippedCount++;
+                }
+
+                int c = peek();
+                mPos++;
+                if (c == ']') {
+                    break;
+                } else if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+            }
+        }
+
+        listener.onChunk(chunk.build(), first, true);
+        mReader = null;
+
+        return mParsedCount;
+    }
+
+    /**
+     * Parses a delta object from the reader.  Added and updated entries are read by the rules
+     * of a list, and a removed ID that is not usable is dropped and counted as MISSING_ID or
+     * BAD_ID.  Fields other than version, added, updated and removed are skipped.  The reader
+     * is not closed.
+     *
+     * @return The delta.
+     * @throws IOException If the stream cannot be read, is not a JSON object or has no version.
+     */
+    ContentDelta parseDelta(Reader reader) throws IOException
+    {
+        ContentExecutors.checkNotMainThread("Parsing a content delta");
+        begin(reader);
+
+        ContentStore.Builder upserts = new ContentStore.Builder(mChunkSize);
+        int[] removed = new int[16];
+        int removedCount = 0;
+        String version = null;
+
+        expect('{');
+        if (peek() == '}') {
+            mPos++;
+        } else {
+            while (true) {
+                expect('"');
+                int length = readString(SLOT_NAME);
+                expect(':');
+                int c = peek();
+
+                if (c == '"' && nameEquals(length, "version")) {
+                    mPos++;
+                    version = new String(mSlots[SLOT_NAME], 0, readString(SLOT_NAME));
+                } else if (c == '[' && (nameEquals(length, "added") || nameEquals(length, "updated"))) {
+                    mPos++;
+                    while (peek() != ']') {
+                        if (readEntry(upserts)) {
+                            mParsedCount++;
+                        } else {
+                            mSkippedCount++;
+                        }
+                        if (!nextElement(']')) {
+                            break;
+                        }
+                    }
+                    expect(']');
+                } else if (c == '[' && nameEquals(length, "removed")) {
+                    mPos++;
+                    while (peek() != ']') {
+                        if (readRemovedId()) {
+                            if (removedCount == removed.length) {
+                                removed = Arrays.copyOf(removed, removedCount * 2);
+                            }
+                            removed[removedCount++] = mId;
+                            mParsedCount++;
+                        } else {
+                            mSkippedCount++;
+                        }
+                        if (!nextElement(']')) {
+                            break;
+                        }
+                    }
+                    expect(']');
+                } else {
+                    skipValue();
+                }
+
+                int next = peek();
+                mPos++;
+                if (next == '}') {
+                    break;
+                } else if (next != ',') {
+                    throw syntaxError("Expected ',' or '}'");
+                }
+            }
+        }
+        mReader = null;
+
+        if (version == null) {
+            throw new IOException("Delta has no version");
+        }
+
+        return new ContentDelta(version, upserts.build().trimmed(), Arrays.copyOf(removed, removedCount));
+    }
+
+    /**
+     * @return Number of items decoded by the last call to parse.
+     */
+    int getParsedCount() { return mParsedCount; }
+
+    /**
+     * @return Number of entries dropped by the last call to parse.
+     */
+    int getSkippedCount() { return mSkippedCount; }
+
+    /**
+     * @return Number of entries of the last call to parse with the defect, kept or dropped.
+     */
+    int getDefectCount(Defect defect) { return mDefectCounts[defect.ordinal()]; }
+
+    /**
+     * @return The defect counts as text, for example "MISSING_IMAGE=3 BAD_ID=1", or an empty
+     *         string if there were none.
+     */
+    String getDefectSummary()
+    {
+        return summarize(mDefectCounts);
+    }
+
+    /**
+     * @param counts Count of each Defect, indexed by ordinal.
+     * @return The counts as text, in the format of getDefectSummary.
+     */
+    static String summarize(int[] counts)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Defect defect : DEFECTS) {
+            int count = counts[defect.ordinal()];
+            if (count > 0) {
+                sb.append(sb.length() == 0 ? "" : " ").append(defect.name()).append('=').append(count);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void begin(Reader reader)
+    {
+        mReader = reader;
+        mPos = 0;
+        mLimit = 0;
+        mOffset = 0;
+        mParsedCount = 0;
+        mSkippedCount = 0;
+        Arrays.fill(mDefectCounts, 0);
+    }
+
+    /**
+     * Reads the comma after an element of an array, if there is one.
+     *
+     * @return False if the array ends instead.  The closing bracket is not read.
+     */
+    private boolean nextElement(char close) throws IOException
+    {
+        int c = peek();
+        if (c == close) {
+            return false;
+        } else if (c != ',') {
+            throw syntaxError("Expected ',' or '" + close + "'");
+        }
+        mPos++;
+        return true;
+    }
+
+    /**
+     * Reads one element of an array of removed IDs into mId.
+     *
+     * @return True if it is a usable ID.
+     */
+    private boolean readRemovedId() throws IOException
+    {
+        if (peek() == 'n') {
+            skipLiteral();
+            mDefectCounts[Defect.MISSING_ID.ordinal()]++;
+            return false;
+        }
+        readId();
+        if (mBadId) {
+            mDefectCounts[Defect.BAD_ID.ordinal()]++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the field name just read into its slot is the name.
+     */
+    private boolean nameEquals(int length, String name)
+    {
+        if (length != name.length()) {
+            return false;
+        }
+        char[] chars = mSlots[SLOT_NAME];
+        for (int i = 0; i < length; i++) {
+            if (chars[i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads one element of the array and appends it to the chunk if it can be shown.  The
+     * stream is always left after the element.
+     *
+     * @return True if a row was appended.
+     */
+    private boolean readEntry(ContentStore.Builder chunk) throws IOException
+    {
+        if (peek() != '{') {
+            skipValue();
+            mDefectCounts[Defect.NOT_AN_OBJECT.ordinal()]++;
+            return false;
+        }
+        mPos++;
+
+        mHasId = false;
+        mBadId = false;
+        int title = VALUE_NULL;
+        int image = VALUE_NULL;
+
+        if (peek() == '}') {
+            mPos++;
+        } else {
+            while (true) {
+                expect('"');
+                int field = readFieldName();
+                expect(':');
+
+                switch (field) {
+                    case FIELD_ID:
+                        readId();
+                        break;
+                    case FIELD_TITLE:
+                        title = readText(SLOT_TITLE);
+                        break;
+                    case FIELD_IMAGE:
+                        image = readText(SLOT_IMAGE);
+                        break;
+                    default:
+                        skipValue();
+                        break;
+                }
+
+                int c = peek();
+                mPos++;
+                if (c == '}') {
+                    break;
+                } else if (c != ',') {
+                    throw syntaxError("Expected ',' or '}'");
+                }
+            }
+        }
+
+        if (title == VALUE_WRONG_TYPE || image == VALUE_WRONG_TYPE) {
+            mDefectCounts[Defect.WRONG_TYPE.ordinal()]++;
+        }
+        if (title == VALUE_NULL) {
+            mDefectCounts[Defect.MISSING_TITLE.ordinal()]++;
+        }
+        if (image == VALUE_NULL) {
+            mDefectCounts[Defect.MISSING_IMAGE.ordinal()]++;
+        }
+
+        if (!mHasId) {
+            mDefectCounts[Defect.MISSING_ID.ordinal()]++;
+            return false;
+        }
+        if (mBadId) {
+            mDefectCounts[Defect.BAD_ID.ordinal()]++;
+            return false;
+        }
+
+        chunk.addChars(mId,
+                mSlots[SLOT_TITLE], 0, title == VALUE_PRESENT ? mSlotLengths[SLOT_TITLE] : 0,
+                mSlots[SLOT_IMAGE], 0, image == VALUE_PRESENT ? mSlotLengths[SLOT_IMAGE] : 0);
+        return true;
+    }
+
+    /**
+     * Reads a field name, after its opening quote, and the closing quote.
+     */
+    private int readFieldName() throws IOException
+    {
+        int length = readString(SLOT_NAME);
+        char[] name = mSlots[SLOT_NAME];
+
+        if (length == 2 && name[0] == 'i' && name[1] == 'd') {
+            return FIELD_ID;
+        } else if (length == 5 && name[0] == 't' && name[1] == 'i' && name[2] == 't'
+                && name[3] == 'l' && name[4] == 'e') {
+            return FIELD_TITLE;
+        } else if (length == 5 && name[0] == 'i' && name[1] == 'm' && name[2] == 'a'
+                && name[3] == 'g' && name[4] == 'e') {
+            return FIELD_IMAGE;
+        }
+        return FIELD_OTHER;
+    }
+
+    /**
+     * Reads an ID, quoted or not, straight into mId.  Anything but an optional minus sign and
+     * digits that fit in an int sets mBadId.
+     */
+    private void readId() throws IOException
+    {
+        int c = peek();
+
+        mHasId = true;
+        mBadId = false;
+
+        if (c == '"') {
+            mPos++;
+            mBadId = !readDigits('"');
+            if (mBadId) {
+                // Skip what is left of the string, escapes included.
+                skipStringRest();
+            } else {
+                mPos++;
+            }
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            mBadId = !readDigits(-1);
+            if (mBadId) {
+                skipLiteral();
+            }
+        } else {
+            skipValue();
+            mBadId = true;
+        }
+    }
+
+    /**
+     * Reads an optional minus sign and digits into mId, stopping before the terminator.  A
+     * terminator of -1 stops at the end of a literal.
+     *
+     * @return False if something else was found first, or the value does not fit in an int.
+     *         The stream is then left at that char.
+     */
+    private boolean readDigits(int terminator) throws IOException
+    {
+        boolean negative = false;
+        long value = 0;
+        int digits = 0;
+
+        int c = read();
+        if (c == '-') {
+            negative = true;
+            c = read();
+        }
+
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            if (++digits > 10) {
+                mPos--;
+                return false;
+            }
+            c = read();
+        }
+        mPos--;
+
+        if (digits == 0) {
+            return false;
+        }
+        if (terminator < 0 ? !isLiteralEnd(c) : c != terminator) {
+            return false;
+        }
+
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return false;
+        }
+        mId = (int) value;
+        return true;
+    }
+
+    /**
+     * Reads a title or image value into the slot.  Numbers are kept as their text.
+     *
+     * @return VALUE_PRESENT, VALUE_NULL, or VALUE_WRONG_TYPE if it was skipped.
+     */
+    private int readText(int slot) throws IOException
+    {
+        int c = peek();
+
+        if (c == '"') {
+            mPos++;
+            mSlotLengths[slot] = readString(slot);
+            return VALUE_PRESENT;
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            mSlotLengths[slot] = readLiteral(slot);
+            return VALUE_PRESENT;
+        } else if (c == 'n') {
+            skipLiteral();
+            return VALUE_NULL;
+        }
+
+        skipValue();
+        return VALUE_WRONG_TYPE;
+    }
+
+    /**
+     * Unescapes a string, after its opening quote, into the slot and reads the closing quote.
+     * Runs without escapes are copied from the read buffer in one go.
+     *
+     * @return Length of the string.
+     */
+    private int readString(int slot) throws IOException
+    {
+        char[] out = mSlots[slot];
+        int length = 0;
+
+        while (true) {
+            int start = mPos;
+            while (mPos < mLimit) {
+                char c = mBuffer[mPos];
+                if (c == '"' || c == '\\') {
+                    break;
+                }
+                mPos++;
+            }
+
+            int run = mPos - start;
+            if (run > 0) {
+                out = ensureSlot(slot, length + run);
+                System.arraycopy(mBuffer, start, out, length, run);
+                length += run;
+            }
+
+            if (mPos == mLimit) {
+                if (!fill()) {
+                    throw new EOFException("Unterminated string at " + (mOffset + mPos));
+                }
+                continue;
+            }
+
+            char c = mBuffer[mPos++];
+            if (c == '"') {
+                return length;
+            }
+
+            out = ensureSlot(slot, length + 1);
+            out[length++] = readEscape();
+        }
+    }
+
+    /**
+     * Reads an escape sequence after its backslash.
+     */
+    private char readEscape() throws IOException
+    {
+        int c = read();
+
+        switch (c) {
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int h = read();
+                    int digit = Character.digit(h, 16);
+                    if (h < 0 || digit < 0) {
+                        throw syntaxError("Bad \\u escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            default:
+                throw syntaxError("Bad escape");
+        }
+    }
+
+    /**
+     * Reads a number or other bare literal into the slot as text.
+     *
+     * @return Length of the literal.
+     */
+    private int readLiteral(int slot) throws IOException
+    {
+        char[] out = mSlots[slot];
+        int length = 0;
+
+        while (true) {
+            int c = read();
+            if (isLiteralEnd(c)) {
+                mPos--;
+                return length;
+            }
+            out = ensureSlot(slot, length + 1);
+            out[length++] = (char) c;
+        }
+    }
+
+    /**
+     * Skips the rest of a string whose opening quote has been read, and its closing quote.
+     */
+    private void skipStringRest() throws IOException
+    {
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                throw new EOFException("Unterminated string at " + (mOffset + mPos));
+            } else if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readEscape();
+            }
+        }
+    }
+
+    private void skipLiteral() throws IOException
+    {
+        while (!isLiteralEnd(read())) {
+        }
+        mPos--;
+    }
+
+    /**
+     * Skips one value of any type, nested objects and arrays included.
+     */
+    private void skipValue() throws IOException
+    {
+        int c = peek();
+
+        if (c == '"') {
+            mPos++;
+            skipStringRest();
+            return;
+        } else if (c != '{' && c != '[') {
+            if (c < 0 || c == ',' || c == '}' || c == ']') {
+                throw syntaxError("Expected a value");
+            }
+            skipLiteral();
+            return;
+        }
+
+        int depth = 0;
+        do {
+            c = read();
+            if (c < 0) {
+                throw new EOFException("Unterminated value at " + (mOffset + mPos));
+            } else if (c == '"') {
+                skipStringRest();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private static boolean isLiteralEnd(int c)
+    {
+        return c < 0 || c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r'
+                || c == '\t';
+    }
+
+    private void expect(char expected) throws IOException
+    {
+        if (peek() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+        mPos++;
+    }
+
+    /**
+     * @return The next char that is not white space, without consuming it, or -1 at the end
+     *         of the stream.
+     */
+    private int peek() throws IOException
+    {
+        while (true) {
+            if (mPos == mLimit && !fill()) {
+                return -1;
+            }
+            char c = mBuffer[mPos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            mPos++;
+        }
+    }
+
+    /**
+     * @return The next char, consumed, or -1 at the end of the stream.  At the end mPos is
+     *         still moved on, so a caller may step back over it as over any char.
+     */
+    private int read() throws IOException
+    {
+        if (mPos == mLimit && !fill()) {
+            mPos++;
+            return -1;
+        }
+        return mBuffer[mPos++];
+    }
+
+    /**
+     * Refills the read buffer once it has been used up.  A char stepped back over with
+     * mPos-- is never lost, since the buffer is only refilled when every char was read.
+     *
+     * @return False at the end of the stream.
+     */
+    private boolean fill() throws IOException
+    {
+        if (mPos > mLimit) {
+            // Stepped past the end of the stream.
+            return false;
+        }
+
+        mOffset += mLimit;
+        mPos = 0;
+        mLimit = 0;
+
+        int read = mReader.read(mBuffer, 0, mBuffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        mLimit = read;
+        return true;
+    }
+
+    private char[] ensureSlot(int slot, int length)
+    {
+        char[] chars = mSlots[slot];
+        if (length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(length, chars.length * 2));
+            mSlots[slot] = chars;
+        }
+        return chars;
+    }
+
+    private IOException syntaxError(String message)
+    {
+        return new IOException(message + " at " + (mOffset + mPos));
+    }
+}
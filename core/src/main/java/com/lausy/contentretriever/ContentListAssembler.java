@@ -0,0 +1,197 @@
+package com.lausy.contentretriever;
+
+import java.util.concurrent.Executor;
+
+/**
+ * <h1>ContentListAssembler</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Builds the list to show from the chunks of a fetch.  A list that arrives while nothing is
+ * shown, or with incremental updates off, streams in:  each chunk is appended and the list so
+ * far is handed to the listener, so rows render before the whole payload has been downloaded.
+ * A list that arrives over one that is shown is a refresh.  Its chunks are collected instead,
+ * and once the last one arrives the complete list is diffed against the one shown and both are
+ * handed over together, so only the rows that changed are rebound.
+ *
+ * The diff of a long list is worked out on the diff executor, and the list shown stays as it is
+ * until it is done.  A diff that is no longer wanted when it is done, because a newer list
+ * started or reset was called, is dropped.  If the listener says positions in the list are not
+ * view positions, as when it is sorted or filtered, no diff is worked out.
+ *
+ * The caller owns the list shown and passes it in with each chunk.  It must call reset
+ * whenever it replaces that list some other way.  Not thread safe; chunks, reset and the
+ * listener all run on the main executor.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentListAssembler {
+
+    /**
+     * Lists shorter than this are diffed on the calling thread.  They take less time than a
+     * frame, and this avoids showing the old list for a frame.
+     */
+    static final int BACKGROUND_DIFF_THRESHOLD = 2000;
+
+    /**
+     * Receives the list as it is built.  Called on the main executor.
+     */
+    interface Listener {
+        /**
+         * The first chunk of a streamed list.  It replaces the list shown.
+         */
+        void onListStarted(ContentStore list);
+
+        /**
+         * More rows of the streamed list.
+         *
+         * @param list The whole list so far.
+         * @param start Position of the first new row.
+         * @param count Number of new rows.
+         */
+        void onRowsAppended(ContentStore list, int start, int count);
+
+        /**
+         * The streamed list is complete.  It holds the same rows as the last list given, with
+         * no room left for more.
+         */
+        void onListComplete(ContentStore list);
+
+        /**
+         * A refresh is complete.
+         *
+         * @param list The new list, to replace the list shown.
+         * @param diff Operations that turn the list shown into the new one, or null if no diff
+         *             was wanted.
+         */
+        void onRefreshComplete(ContentStore list, ContentListDiff diff);
+
+        /**
+         * @return True if positions in the list shown are view positions, so a diff can be
+         *         applied.  Asked when a refresh is complete, and again when its diff is.
+         */
+        boolean isDiffWanted();
+    }
+
+    private final Listener mListener;
+    private final Executor mDiffExecutor;
+    private final Executor mMainExecutor;
+
+    private boolean mIncrementalUpdates = true;
+
+    private ContentStore.Builder mStreamBuilder;
+    private ContentStore.Builder mPendingBuilder;
+
+    /**
+     * Changes whenever a list is started or reset is called, so a diff still running for an
+     * older list is dropped.
+     */
+    private int mGeneration;
+
+    /**
+     * @param listener Receives the list.
+     * @param diffExecutor Runs the diffs of long lists.  Never the main thread.
+     * @param mainExecutor Runs the listener once a diff is done.  The thread chunks arrive on.
+     */
+    ContentListAssembler(Listener listener, Executor diffExecutor, Executor mainExecutor) {
+        mListener = listener;
+        mDiffExecutor = diffExecutor;
+        mMainExecutor = mainExecutor;
+    }
+
+    /**
+     * Turns incremental updates on or off.  When off, every list streams in.
+     */
+    void setIncrementalUpdates(boolean incremental) { mIncrementalUpdates = incremental; }
+    boolean getIncrementalUpdates() { return mIncrementalUpdates; }
+
+    /**
+     * Drops the list being built and any diff still running.
+     */
+    void reset()
+    {
+        mStreamBuilder = null;
+        mPendingBuilder = null;
+        mGeneration++;
+    }
+
+    /**
+     * Takes in a chunk of a list.
+     *
+     * @param shown The list shown now.
+     * @param chunk Items decoded from the stream since the previous chunk.
+     * @param first True if this is the first chunk of a new list.
+     * @param last True if no more chunks will follow for this list.
+     */
+    void onChunk(ContentStore shown, ContentStore chunk, boolean first, boolean last)
+    {
+        if (first) {
+            mGeneration++;
+            mStreamBuilder = null;
+            mPendingBuilder = (mIncrementalUpdates && shown.size() > 0)
+                    ? new ContentStore.Builder(shown.size()) : null;
+        }
+
+        if (mPendingBuilder != null) {
+            mPendingBuilder.addAll(chunk);
+
+            if (last) {
+                ContentStore incoming = mPendingBuilder.build().trimmed();
+                mPendingBuilder = null;
+                diff(shown, incoming);
+            }
+            return;
+        }
+
+        if (mStreamBuilder == null) {
+            mStreamBuilder = new ContentStore.Builder(chunk.size());
+            mStreamBuilder.addAll(chunk);
+            mListener.onListStarted(mStreamBuilder.build());
+        } else {
+            int start = mStreamBuilder.size();
+            mStreamBuilder.addAll(chunk);
+            mListener.onRowsAppended(mStreamBuilder.build(), start, chunk.size());
+        }
+
+        if (last) {
+            // The stream is complete, so drop the room the builder kept for more rows.
+            ContentStore list = mStreamBuilder.build().trimmed();
+            mStreamBuilder = null;
+            mListener.onListComplete(list);
+        }
+    }
+
+    private void diff(final ContentStore shown, final ContentStore incoming)
+    {
+        if (!mListener.isDiffWanted()) {
+            mListener.onRefreshComplete(incoming, null);
+            return;
+        }
+
+        if (shown.size() + incoming.size() < BACKGROUND_DIFF_THRESHOLD) {
+            mListener.onRefreshComplete(incoming, ContentListDiff.compute(shown, incoming));
+            return;
+        }
+
+        final int generation = mGeneration;
+
+        mDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ContentListDiff diff = ContentListDiff.compute(shown, incoming);
+
+                mMainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        // The list may have been sorted or filtered while the diff ran.
+                        mListener.onRefreshComplete(incoming, mListener.isDiffWanted() ? diff : null);
+                    }
+                });
+            }
+        });
+    }
+}
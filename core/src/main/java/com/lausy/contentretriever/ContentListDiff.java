@@ -0,0 +1,360 @@
+package com.lausy.contentretriever;
+
+import java.util.Arrays;
+
+/**
+ * <h1>ContentListDiff</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Incremental update of the content list.  The incoming list is matched against the current
+ * list by content ID, and the remove, insert, move and change operations that turn the current
+ * list into the incoming one are worked out in order.  Every operation is reported to a callback
+ * with the position it applies at, so the view can update only the rows that moved or changed.
+ * Both lists are immutable stores; the caller switches to the incoming store once the
+ * operations have been reported.
+ *
+ * An item whose title or image URL differs is reported as changed.  The longest run of kept
+ * items that are already in order stays in place, and only the items outside that run are moved.
+ *
+ * If an ID appears more than once, only the first occurrence on each side is matched.  Other
+ * occurrences are removed or inserted.
+ *
+ * compute does the work and records the operations, and only reads the two stores, so it can
+ * run off the UI thread.  dispatch then reports them to the callback.  Nothing is kept as a
+ * list of boxed positions:  IDs are matched through a sorted array, and the position of a row
+ * that has yet to be placed is its rank in a Fenwick tree of the rows left, so the whole diff
+ * is O(n log n) however many rows move.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+class ContentListDiff {
+
+    /**
+     * Receives each operation in the order it applies to the current list.
+     */
+    interface Callback {
+        void onInserted(int position);
+        void onRemoved(int position);
+        void onMoved(int fromPosition, int toPosition);
+        void onChanged(int position);
+    }
+
+    private static final int INSERTED = 0;
+    private static final int REMOVED = 1;
+    private static final int MOVED = 2;
+    private static final int CHANGED = 3;
+
+    /**
+     * Operations in the order they apply, three ints each:  the kind and two positions.  The
+     * second position is only used by a move.
+     */
+    private int[] mOps = new int[48];
+    private int mOpLength;
+
+    private int mInserted;
+    private int mRemoved;
+    private int mMoved;
+    private int mChanged;
+
+    private ContentListDiff() {}
+
+    int getInsertedCount() { return mInserted; }
+    int getRemovedCount() { return mRemoved; }
+    int getMovedCount() { return mMoved; }
+    int getChangedCount() { return mChanged; }
+
+    /**
+     * @return Total number of operations applied.  Zero means the lists were already equal.
+     */
+    int getOperationCount() { return mInserted + mRemoved + mMoved + mChanged; }
+
+    /**
+     * Works out the steps that turn current into incoming and reports each to the callback.
+     * Same as compute followed by dispatch.
+     *
+     * @param current The list shown to the user.
+     * @param incoming The new list.
+     * @param callback Receives every operation.  May be null.
+     * @return Counts of the operations that were reported.
+     */
+    static ContentListDiff apply(ContentStore current, ContentStore incoming, Callback callback)
+    {
+        ContentListDiff diff = compute(current, incoming);
+        if (callback != null) {
+            diff.dispatch(callback);
+        }
+        return diff;
+    }
+
+    /**
+     * Works out the steps that turn current into incoming without reporting them.  May be
+     * called on any thread.
+     *
+     * @param current The list shown to the user.
+     * @param incoming The new list.
+     * @return The operations, to be passed to dispatch.
+     */
+    static ContentListDiff compute(ContentStore current, ContentStore incoming)
+    {
+        ContentListDiff diff = new ContentListDiff();
+        int oldSize = current.size();
+        int newSize = incoming.size();
+
+        int[] match = match(current, incoming);
+        boolean[] oldUsed = new boolean[oldSize];
+        for (int i = 0; i < newSize; i++) {
+            if (match[i] >= 0) {
+                oldUsed[match[i]] = true;
+            }
+        }
+
+        for (int i = oldSize - 1; i >= 0; i--) {
+            if (!oldUsed[i]) {
+                diff.record(REMOVED, i, 0);
+                diff.mRemoved++;
+            }
+        }
+
+        // Rows are placed one new position at a time, so the first i rows of the list are
+        // final.  The rows after them are the kept rows not placed yet, in the order of their
+        // keys.  A row's key starts as its old index, and a row parked at the end gets a key
+        // past every old index.
+        int[] keyOf = new int[oldSize];
+        int[] rowOfKey = new int[oldSize * 2];
+        RankTree left = new RankTree(oldSize * 2);
+        int leftCount = 0;
+        int nextParkedKey = oldSize;
+
+        for (int i = 0; i < oldSize; i++) {
+            if (oldUsed[i]) {
+                keyOf[i] = i;
+                rowOfKey[i] = i;
+                left.add(i, 1);
+                leftCount++;
+            }
+        }
+
+        boolean[] stable = longestIncreasingRun(match, oldSize);
+
+        for (int i = 0; i < newSize; i++) {
+            if (match[i] < 0) {
+                diff.record(INSERTED, i, 0);
+                diff.mInserted++;
+                continue;
+            }
+
+            int item = match[i];
+
+            if (stable[item]) {
+                // Anything in the way is an item that has moved further down.  Park it at the
+                // end until its own position comes up.
+                while (left.countBelow(keyOf[item]) > 0) {
+                    int key = left.keyAt(0);
+                    int parked = rowOfKey[key];
+
+                    left.add(key, -1);
+                    keyOf[parked] = nextParkedKey;
+                    rowOfKey[nextParkedKey] = parked;
+                    left.add(nextParkedKey, 1);
+                    nextParkedKey++;
+
+                    diff.record(MOVED, i, i + leftCount - 1);
+                    diff.mMoved++;
+                }
+            } else {
+                int from = i + left.countBelow(keyOf[item]);
+                if (from != i) {
+                    diff.record(MOVED, from, i);
+                    diff.mMoved++;
+                }
+            }
+
+            left.add(keyOf[item], -1);
+            leftCount--;
+
+            if (!current.sameContent(item, incoming, i)) {
+                diff.record(CHANGED, i, 0);
+                diff.mChanged++;
+            }
+        }
+
+        return diff;
+    }
+
+    /**
+     * Reports the operations to the callback in the order they apply.  Must be called on the
+     * thread that owns the view.
+     */
+    void dispatch(Callback callback)
+    {
+        for (int op = 0; op < mOpLength; op += 3) {
+            int position = mOps[op + 1];
+
+            switch (mOps[op]) {
+                case INSERTED:
+                    callback.onInserted(position);
+                    break;
+                case REMOVED:
+                    callback.onRemoved(position);
+                    break;
+                case MOVED:
+                    callback.onMoved(position, mOps[op + 2]);
+                    break;
+                default:
+                    callback.onChanged(position);
+                    break;
+            }
+        }
+    }
+
+    private void record(int kind, int position, int toPosition)
+    {
+        if (mOpLength + 3 > mOps.length) {
+            mOps = Arrays.copyOf(mOps, mOps.length * 2);
+        }
+        mOps[mOpLength++] = kind;
+        mOps[mOpLength++] = position;
+        mOps[mOpLength++] = toPosition;
+    }
+
+    /**
+     * Matches each incoming item to the first current item with the same ID, unless an earlier
+     * incoming item took it.  The current IDs are sorted with their indices packed into longs,
+     * so the first occurrence of an ID is the first of its run.
+     *
+     * @return The current index matched to each incoming item, or -1.
+     */
+    private static int[] match(ContentStore current, ContentStore incoming)
+    {
+        int oldSize = current.size();
+        long[] sorted = new long[oldSize];
+        for (int i = 0; i < oldSize; i++) {
+            sorted[i] = ((long) current.getId(i) << 32) | i;
+        }
+        Arrays.sort(sorted);
+
+        int[] ids = new int[oldSize];
+        int[] firstIndex = new int[oldSize];
+        int unique = 0;
+        for (long packed : sorted) {
+            int id = (int) (packed >> 32);
+            if (unique == 0 || ids[unique - 1] != id) {
+                ids[unique] = id;
+                firstIndex[unique] = (int) packed;
+                unique++;
+            }
+        }
+
+        boolean[] taken = new boolean[unique];
+        int[] match = new int[incoming.size()];
+        for (int i = 0; i < match.length; i++) {
+            int found = Arrays.binarySearch(ids, 0, unique, incoming.getId(i));
+
+            if (found >= 0 && !taken[found]) {
+                taken[found] = true;
+                match[i] = firstIndex[found];
+            } else {
+                match[i] = -1;
+            }
+        }
+
+        return match;
+    }
+
+    /**
+     * Marks the old indices that form the longest increasing subsequence of matched old indices
+     * taken in new order.  These items are already in the right relative order and do not move.
+     */
+    private static boolean[] longestIncreasingRun(int[] match, int oldSize)
+    {
+        int n = match.length;
+        int[] tailValue = new int[n];
+        int[] tailIndex = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+
+        for (int i = 0; i < n; i++) {
+            int value = match[i];
+            if (value < 0) {
+                continue;
+            }
+
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (tailValue[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            tailValue[lo] = value;
+            tailIndex[lo] = i;
+            previous[i] = lo > 0 ? tailIndex[lo - 1] : -1;
+
+            if (lo == length) {
+                length++;
+            }
+        }
+
+        boolean[] stable = new boolean[oldSize];
+        for (int i = length > 0 ? tailIndex[length - 1] : -1; i >= 0; i = previous[i]) {
+            stable[match[i]] = true;
+        }
+
+        return stable;
+    }
+
+    /**
+     * Fenwick tree counting the keys present, giving the number of keys below a key and the
+     * key at a rank in O(log n).
+     */
+    private static final class RankTree {
+        private final int[] mCounts;
+        private final int mTopBit;
+
+        RankTree(int size) {
+            mCounts = new int[size + 1];
+            mTopBit = Integer.highestOneBit(Math.max(size, 1));
+        }
+
+        void add(int key, int delta)
+        {
+            for (int i = key + 1; i < mCounts.length; i += i & -i) {
+                mCounts[i] += delta;
+            }
+        }
+
+        /**
+         * @return Number of keys present that are less than the key.
+         */
+        int countBelow(int key)
+        {
+            int count = 0;
+            for (int i = key; i > 0; i -= i & -i) {
+                count += mCounts[i];
+            }
+            return count;
+        }
+
+        /**
+         * @return The key present with rank keys below it.
+         */
+        int keyAt(int rank)
+        {
+            int position = 0;
+            for (int bit = mTopBit; bit > 0; bit >>= 1) {
+                int next = position + bit;
+                if (next < mCounts.length && mCounts[next] <= rank) {
+                    position = next;
+                    rank -= mCounts[next];
+                }
+            }
+            return position;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.lausy.contentretriever;
+
+/**
+ * <h1>ContentMerger</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Merges the lists of several sources into one as their chunks arrive, in whatever order the
+ * sources deliver them.  Rows are matched by content ID, and the first row to arrive with an ID
+ * is kept.  Later rows with the same ID, from the same source or another one, are dropped.
+ *
+ * The IDs seen are kept in an open addressing set of ints, so a million rows cost a few MB
+ * rather than a boxed Integer each.  A chunk without duplicates is passed on as is.
+ *
+ * Not thread safe.  The network service uses one merger per fetch, on the main thread.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentMerger {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Zero marks a free slot, so ID zero is tracked by mHasZero.
+     */
+    private int[] mSlots = new int[INITIAL_CAPACITY];
+    private int mSize;
+    private boolean mHasZero;
+
+    private int mDuplicateCount;
+
+    /**
+     * @return The rows of the chunk whose IDs have not been seen before.  The chunk itself if
+     *         every row is new.
+     */
+    ContentStore add(ContentStore chunk)
+    {
+        boolean[] dropped = null;
+        int kept = 0;
+
+        for (int row = 0; row < chunk.size(); row++) {
+            if (addId(chunk.getId(row))) {
+                kept++;
+            } else {
+                if (dropped == null) {
+                    dropped = new boolean[chunk.size()];
+                }
+                dropped[row] = true;
+                mDuplicateCount++;
+            }
+        }
+
+        if (dropped == null) {
+            return chunk;
+        }
+
+        ContentStore.Builder builder = new ContentStore.Builder(kept);
+        for (int row = 0; row < chunk.size(); row++) {
+            if (!dropped[row]) {
+                builder.addRow(chunk, row);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return Number of rows kept so far.
+     */
+    int size() { return mSize + (mHasZero ? 1 : 0); }
+
+    /**
+     * @return Number of rows dropped because their ID had been seen.
+     */
+    int getDuplicateCount() { return mDuplicateCount; }
+
+    /**
+     * @return True if the ID had not been seen and was added.
+     */
+    private boolean addId(int id)
+    {
+        if (id == 0) {
+            boolean added = !mHasZero;
+            mHasZero = true;
+            return added;
+        }
+
+        // Keep the table at most half full.
+        if ((mSize + 1) * 2 > mSlots.length) {
+            grow();
+        }
+
+        int mask = mSlots.length - 1;
+        for (int i = mix(id) & mask; ; i = (i + 1) & mask) {
+            int slot = mSlots[i];
+            if (slot == id) {
+                return false;
+            }
+            if (slot == 0) {
+                mSlots[i] = id;
+                mSize++;
+                return true;
+            }
+        }
+    }
+
+    private void grow()
+    {
+        int[] old = mSlots;
+        mSlots = new int[old.length * 2];
+        int mask = mSlots.length - 1;
+
+        for (int id : old) {
+            if (id != 0) {
+                int i = mix(id) & mask;
+                while (mSlots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                mSlots[i] = id;
+            }
+        }
+    }
+
+    /**
+     * Spreads IDs that are close together, as server IDs are, over the table.
+     */
+    private static int mix(int id)
+    {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
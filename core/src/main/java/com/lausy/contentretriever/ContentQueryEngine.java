@@ -0,0 +1,287 @@
+package com.lausy.contentretriever;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <h1>ContentQueryEngine</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Sorts and filters a fixed snapshot of the content list, held as an immutable ContentStore.
+ * A query is a case-insensitive title filter plus a sort key, and the result is the matching
+ * row indices in ascending order of the sort key.  Descending order is the same result read
+ * back to front.
+ *
+ * Indexes are built the first time they are needed and kept for later queries on the same
+ * snapshot:  lower case titles, rows in title order with their sorted titles for binary search,
+ * and rows in ID order.  Lower case titles can be taken from a ContentStringPool, so a title
+ * that repeats, or that was in the list before a refresh, is one String.
+ *
+ * A prefix filter is a binary search on the sorted titles.  A substring filter is a scan, but
+ * when the new text extends the previous text, as it does while the user types, only the
+ * previous result is scanned.
+ *
+ * An engine is not thread safe.  It is meant to be owned by one worker thread.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+class ContentQueryEngine {
+
+    /**
+     * How the filter text is matched against titles.
+     */
+    enum FilterType {
+        PREFIX,
+        SUBSTRING
+    }
+
+    /**
+     * Order of the result.  NONE keeps the order of the snapshot.
+     */
+    enum SortKey {
+        NONE,
+        ID,
+        TITLE
+    }
+
+    /**
+     * Checked while a query runs.  A cancelled query returns null.
+     */
+    interface Cancellation {
+        boolean isCancelled();
+    }
+
+    /**
+     * Immutable description of a query.  The text is matched in lower case.
+     */
+    static final class Query {
+        final String text;
+        final FilterType filterType;
+        final SortKey sortKey;
+
+        Query(String text, FilterType filterType, SortKey sortKey) {
+            this.text = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+            this.filterType = filterType;
+            this.sortKey = sortKey;
+        }
+
+        /**
+         * @return True if the query keeps every row in snapshot order.
+         */
+        boolean isTrivial() {
+            return text.isEmpty() && sortKey == SortKey.NONE;
+        }
+
+        /**
+         * @return True if every row matching this query also matches the previous query, and
+         *         the two results are in the same order.
+         */
+        boolean refines(Query previous) {
+            if (previous == null || previous.filterType != filterType || previous.sortKey != sortKey
+                    || previous.text.isEmpty()) {
+                return false;
+            }
+            return filterType == FilterType.PREFIX ? text.startsWith(previous.text) : text.contains(previous.text);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Query)) {
+                return false;
+            }
+            Query q = (Query) o;
+            return text.equals(q.text) && filterType == q.filterType && sortKey == q.sortKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return (text.hashCode() * 31 + filterType.hashCode()) * 31 + sortKey.hashCode();
+        }
+    }
+
+    private static final int CANCELLATION_CHECK_INTERVAL = 4096;
+
+    private final ContentStore mRows;
+    private final ContentStringPool mTitlePool;
+
+    private String[] mLowerTitles;
+    private int[] mTitleOrder;
+    private String[] mSortedTitles;
+    private int[] mIdOrder;
+    private int[] mSnapshotOrder;
+
+    private Query mLastQuery;
+    private int[] mLastResult;
+
+    /**
+     * @param rows Snapshot of the content list.
+     */
+    ContentQueryEngine(ContentStore rows) {
+        this(rows, null);
+    }
+
+    /**
+     * @param rows Snapshot of the content list.
+     * @param titlePool Pool for the lower case titles, owned by the same thread as the engine.
+     *                  May be null.
+     */
+    ContentQueryEngine(ContentStore rows, ContentStringPool titlePool) {
+        mRows = rows;
+        mTitlePool = titlePool;
+    }
+
+    int size() { return mRows.size(); }
+
+    /**
+     * Runs a query.
+     *
+     * @param query The query to run.
+     * @param cancellation Checked while the query runs.  May be null.
+     * @return Matching row indices in ascending order of the sort key, or null if cancelled.
+     *         The array must not be changed.
+     */
+    int[] run(Query query, Cancellation cancellation)
+    {
+        int[] result;
+
+        if (query.text.isEmpty()) {
+            result = order(query.sortKey);
+        } else if (query.filterType == FilterType.PREFIX) {
+            result = prefixMatches(query);
+        } else {
+            int[] candidates = query.refines(mLastQuery) ? mLastResult : order(query.sortKey);
+            result = substringMatches(query.text, candidates, cancellation);
+        }
+
+        if (result != null) {
+            mLastQuery = query;
+            mLastResult = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return All rows in ascending order of the key.
+     */
+    private int[] order(SortKey key)
+    {
+        switch (key) {
+            case ID:
+                if (mIdOrder == null) {
+                    mIdOrder = ContentSortIndex.ascendingOrder(ContentSortIndex.ids(mRows));
+                }
+                return mIdOrder;
+            case TITLE:
+                buildTitleIndex();
+                return mTitleOrder;
+            default:
+                if (mSnapshotOrder == null) {
+                    mSnapshotOrder = new int[mRows.size()];
+                    for (int i = 0; i < mSnapshotOrder.length; i++) {
+                        mSnapshotOrder[i] = i;
+                    }
+                }
+                return mSnapshotOrder;
+        }
+    }
+
+    private int[] prefixMatches(Query query)
+    {
+        buildTitleIndex();
+
+        int from = lowerBound(mSortedTitles, query.text);
+        int to = from;
+        while (to < mSortedTitles.length && mSortedTitles[to].startsWith(query.text)) {
+            to++;
+        }
+
+        int[] rows = Arrays.copyOfRange(mTitleOrder, from, to);
+
+        switch (query.sortKey) {
+            case TITLE:
+                return rows;
+            case ID:
+                int[] ids = new int[rows.length];
+                for (int i = 0; i < rows.length; i++) {
+                    ids[i] = mRows.getId(rows[i]);
+                }
+                int[] byId = ContentSortIndex.ascendingOrder(ids);
+                int[] result = new int[rows.length];
+                for (int i = 0; i < rows.length; i++) {
+                    result[i] = rows[byId[i]];
+                }
+                return result;
+            default:
+                Arrays.sort(rows);
+                return rows;
+        }
+    }
+
+    private int[] substringMatches(String text, int[] candidates, Cancellation cancellation)
+    {
+        buildLowerTitles();
+
+        int[] matches = new int[candidates.length];
+        int count = 0;
+
+        for (int i = 0; i < candidates.length; i++) {
+            if (cancellation != null && i % CANCELLATION_CHECK_INTERVAL == 0 && cancellation.isCancelled()) {
+                return null;
+            }
+            if (mLowerTitles[candidates[i]].contains(text)) {
+                matches[count++] = candidates[i];
+            }
+        }
+
+        return Arrays.copyOf(matches, count);
+    }
+
+    private void buildLowerTitles()
+    {
+        if (mLowerTitles != null) {
+            return;
+        }
+
+        mLowerTitles = new String[mRows.size()];
+        for (int i = 0; i < mLowerTitles.length; i++) {
+            mLowerTitles[i] = mTitlePool != null ? mTitlePool.getLowerTitle(mRows, i)
+                    : mRows.getTitle(i).toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private void buildTitleIndex()
+    {
+        if (mTitleOrder != null) {
+            return;
+        }
+        buildLowerTitles();
+
+        // Rows with the same title keep their snapshot order.
+        mTitleOrder = ContentSortIndex.titleOrder(mLowerTitles);
+        mSortedTitles = new String[mTitleOrder.length];
+        for (int i = 0; i < mTitleOrder.length; i++) {
+            mSortedTitles[i] = mLowerTitles[mTitleOrder[i]];
+        }
+    }
+
+    /**
+     * @return Index of the first title that is not less than the key.
+     */
+    private static int lowerBound(String[] sorted, String key)
+    {
+        int lo = 0;
+        int hi = sorted.length;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
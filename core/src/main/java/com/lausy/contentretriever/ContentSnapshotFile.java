@@ -0,0 +1,158 @@
+package com.lausy.contentretriever;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * <h1>ContentSnapshotFile</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * The last content list fetched from the server, saved so the next launch can show it before
+ * the network answers.  The file is the columns of a ContentStore behind a small header:
+ *
+ * <pre>
+ *   int   magic "CRS1"
+ *   int   format version
+ *   int   payload length
+ *   long  CRC32 of the payload
+ *   ...   payload written by ContentStore.writeTo
+ * </pre>
+ *
+ * The file is memory-mapped both ways, so the columns are copied straight between the page
+ * cache and the arrays of the store.  A new snapshot is written to a temporary file and renamed
+ * over the old one, so a crash while saving leaves the previous snapshot in place.  A file that
+ * is short, has the wrong header or fails the checksum is rejected with an IOException.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentSnapshotFile {
+    static final String FILE_NAME = "content_snapshot.bin";
+
+    /**
+     * Magic, version, payload length and checksum.
+     */
+    static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+    private static final int MAGIC = 0x43525331;
+    private static final int VERSION = 1;
+    private static final int CHECKSUM_CHUNK = 64 * 1024;
+
+    private final File mFile;
+
+    ContentSnapshotFile(File file) {
+        mFile = file;
+    }
+
+    File getFile() { return mFile; }
+
+    boolean exists() { return mFile.isFile(); }
+
+    boolean delete() { return mFile.delete(); }
+
+    /**
+     * Saves the store, replacing any previous snapshot.
+     *
+     * @throws IOException If the file cannot be written.  The previous snapshot is kept.
+     */
+    void write(ContentStore store) throws IOException
+    {
+        ContentExecutors.checkNotMainThread("Writing the content snapshot");
+
+        int payloadLength = store.getSerializedSize();
+        File temp = new File(mFile.getPath() + ".tmp");
+
+        RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + payloadLength);
+
+            buffer.position(HEADER_SIZE);
+            store.writeTo(buffer);
+
+            buffer.position(HEADER_SIZE);
+            long checksum = checksum(buffer);
+
+            buffer.position(0);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(payloadLength).putLong(checksum);
+            buffer.force();
+        } finally {
+            raf.close();
+        }
+
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            throw new IOException("Could not replace " + mFile);
+        }
+    }
+
+    /**
+     * Loads the saved store.
+     *
+     * @throws java.io.FileNotFoundException If there is no snapshot.
+     * @throws IOException If the snapshot cannot be read or is damaged.
+     */
+    ContentStore read() throws IOException
+    {
+        ContentExecutors.checkNotMainThread("Reading the content snapshot");
+
+        RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+
+            if (length < HEADER_SIZE) {
+                throw new IOException("Truncated snapshot:  " + length + " bytes");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a content snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int payloadLength = buffer.getInt();
+            long checksum = buffer.getLong();
+
+            if (payloadLength < 0 || payloadLength != length - HEADER_SIZE) {
+                throw new IOException("Truncated snapshot:  payload " + payloadLength + " bytes, file "
+                        + length + " bytes");
+            }
+            if (checksum(buffer) != checksum) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+
+            buffer.position(HEADER_SIZE);
+            return ContentStore.readFrom(buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return CRC32 of the buffer from its position to its limit.  The position is unchanged.
+     */
+    private static long checksum(ByteBuffer buffer)
+    {
+        ByteBuffer data = buffer.duplicate();
+        byte[] chunk = new byte[CHECKSUM_CHUNK];
+        CRC32 crc = new CRC32();
+
+        while (data.hasRemaining()) {
+            int length = Math.min(chunk.length, data.remaining());
+            data.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,112 @@
+package com.lausy.contentretriever;
+
+import java.util.Arrays;
+
+/**
+ * <h1>ContentSortIndex</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Sorts content by ID on primitive arrays.  Each ID is packed with its row index into a long
+ * and the longs are sorted with Arrays.sort, so there is no comparator, no boxing and no
+ * subtraction that can overflow.  The result is a permutation of row indices.  Rows with equal
+ * IDs keep their original order.
+ *
+ * Titles cannot be packed that way, so they are sorted with a merge sort on the int[] of row
+ * indices itself, comparing the titles the indices point at.  It is stable too.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentSortIndex {
+
+    private ContentSortIndex() {}
+
+    /**
+     * @param store Rows to read the IDs from.
+     * @return The content IDs of the rows, in row order.
+     */
+    static int[] ids(ContentStore store)
+    {
+        return store.copyIds();
+    }
+
+    /**
+     * @param ids Content IDs in row order.
+     * @return Row indices in ascending order of ID.  Reverse it for descending order.
+     */
+    static int[] ascendingOrder(int[] ids)
+    {
+        int n = ids.length;
+        long[] keys = new long[n];
+
+        // The ID goes in the high half so it decides the order.  The row index is never
+        // negative, so it can sit in the low half without touching the sign.
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) ids[i] << 32) | i;
+        }
+
+        Arrays.sort(keys);
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * @param titles Titles in row order.
+     * @return Row indices in ascending order of title.  Rows with equal titles keep their
+     *         original order.
+     */
+    static int[] titleOrder(String[] titles)
+    {
+        int[] order = new int[titles.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        mergeSort(titles, order.clone(), order, 0, order.length);
+        return order;
+    }
+
+    private static final int INSERTION_SORT_THRESHOLD = 7;
+
+    /**
+     * Sorts dst from index from to index to by title.  src holds the same indices in that
+     * range on entry, and is used as scratch.
+     */
+    private static void mergeSort(String[] titles, int[] src, int[] dst, int from, int to)
+    {
+        if (to - from < INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int row = dst[i];
+                int j = i - 1;
+                while (j >= from && titles[dst[j]].compareTo(titles[row]) > 0) {
+                    dst[j + 1] = dst[j];
+                    j--;
+                }
+                dst[j + 1] = row;
+            }
+            return;
+        }
+
+        // Sort both halves into src, then merge them back into dst.
+        int mid = (from + to) >>> 1;
+        mergeSort(titles, dst, src, from, mid);
+        mergeSort(titles, dst, src, mid, to);
+
+        if (titles[src[mid - 1]].compareTo(titles[src[mid]]) <= 0) {
+            System.arraycopy(src, from, dst, from, to - from);
+            return;
+        }
+
+        for (int i = from, p = from, q = mid; i < to; i++) {
+            if (q >= to || (p < mid && titles[src[p]].compareTo(titles[src[q]]) <= 0)) {
+                dst[i] = src[p++];
+            } else {
+                dst[i] = src[q++];
+            }
+        }
+    }
+}
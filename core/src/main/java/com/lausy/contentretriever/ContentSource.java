@@ -0,0 +1,52 @@
+package com.lausy.contentretriever;
+
+/**
+ * <h1>ContentSource</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * One place a content list is fetched from, a base URI and a path as Retrofit wants them.  The
+ * catalogue may be split over several sources, which are fetched together and merged.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentSource {
+    private final String mBaseUri;
+    private final String mPath;
+
+    ContentSource(String baseUri, String path) {
+        if (baseUri == null || path == null) {
+            throw new IllegalArgumentException("Base URI and path must not be null.");
+        }
+        mBaseUri = baseUri;
+        mPath = path;
+    }
+
+    String getBaseUri() { return mBaseUri; }
+    String getPath() { return mPath; }
+
+    /**
+     * @return The full URL, used as the key of the request.
+     */
+    String getUrl() { return mBaseUri + mPath; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ContentSource)) {
+            return false;
+        }
+        ContentSource s = (ContentSource) o;
+        return mBaseUri.equals(s.mBaseUri) && mPath.equals(s.mPath);
+    }
+
+    @Override
+    public int hashCode() {
+        return mBaseUri.hashCode() * 31 + mPath.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getUrl();
+    }
+}
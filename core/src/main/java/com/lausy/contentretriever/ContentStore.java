@@ -0,0 +1,767 @@
+package com.lausy.contentretriever;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h1>ContentStore</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Columnar storage for the content list.  Instead of one object per row with its own title and
+ * URL strings, the rows are kept in a few shared arrays:  an int array of content IDs, one char
+ * buffer holding every title with an offset array, and one byte buffer holding every image URL
+ * as UTF-8 with an offset array.  The scheme and host part of each URL is kept once in a prefix
+ * table and each row only stores the index of its prefix, since nearly every image comes from
+ * the same host.
+ *
+ * Titles stay as chars so a row can be shown without building a String.  URLs are only ever
+ * handed to the image loader as Strings, and are nearly always ASCII, so bytes halve their size.
+ *
+ * A store is immutable.  Stores are built with a Builder, which can hand out snapshots while it
+ * is still being appended to.  A snapshot shares the builder's arrays and only reads rows that
+ * were complete when it was taken.
+ *
+ * Rows are read through a reusable Row accessor, so binding a row does not have to allocate.
+ *
+ * The columns can be written to and read back from a ByteBuffer as they are, which is how the
+ * list is saved between launches.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentStore {
+    static final ContentStore EMPTY = new Builder(0).build();
+
+    /**
+     * A URL prefix index is stored in a short.  URLs beyond this many distinct prefixes are
+     * stored whole under the empty prefix.
+     */
+    private static final int MAX_PREFIXES = Short.MAX_VALUE;
+
+    /**
+     * Average title and URL lengths used to size a new builder.
+     */
+    private static final int EXPECTED_TITLE_CHARS = 24;
+    private static final int EXPECTED_URL_BYTES = 24;
+
+    private final int mSize;
+    private final int[] mIds;
+    private final int[] mTitleOffsets;
+    private final char[] mTitleChars;
+    private final short[] mUrlPrefixes;
+    private final int[] mUrlOffsets;
+    private final byte[] mUrlBytes;
+    private final String[] mPrefixTable;
+
+    private ContentStore(int size, int[] ids, int[] titleOffsets, char[] titleChars, short[] urlPrefixes,
+                         int[] urlOffsets, byte[] urlBytes, String[] prefixTable) {
+        mSize = size;
+        mIds = ids;
+        mTitleOffsets = titleOffsets;
+        mTitleChars = titleChars;
+        mUrlPrefixes = urlPrefixes;
+        mUrlOffsets = urlOffsets;
+        mUrlBytes = urlBytes;
+        mPrefixTable = prefixTable;
+    }
+
+    int size() { return mSize; }
+
+    int getId(int row) { return mIds[row]; }
+
+    /**
+     * @return The title of the row.  This allocates a String; use getTitleBuffer to avoid it.
+     */
+    String getTitle(int row)
+    {
+        return new String(mTitleChars, mTitleOffsets[row], mTitleOffsets[row + 1] - mTitleOffsets[row]);
+    }
+
+    /**
+     * The buffer holding every title.  The title of a row is getTitleLength(row) chars starting
+     * at getTitleStart(row).  The buffer must not be changed.
+     */
+    char[] getTitleBuffer() { return mTitleChars; }
+    int getTitleStart(int row) { return mTitleOffsets[row]; }
+    int getTitleLength(int row) { return mTitleOffsets[row + 1] - mTitleOffsets[row]; }
+
+    /**
+     * @return The image URL of the row.  This allocates a String.
+     */
+    String getImgUrl(int row)
+    {
+        String prefix = mPrefixTable[mUrlPrefixes[row]];
+        int start = mUrlOffsets[row];
+        int end = mUrlOffsets[row + 1];
+
+        StringBuilder sb = new StringBuilder(prefix.length() + end - start).append(prefix);
+
+        for (int i = start; i < end; i++) {
+            byte b = mUrlBytes[i];
+            if (b < 0) {
+                // Not ASCII, so decode the rest properly.
+                return sb.append(new String(mUrlBytes, i, end - i, StandardCharsets.UTF_8)).toString();
+            }
+            sb.append((char) b);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The image URL of a row is the prefix at getUrlPrefix(row) in the prefix table followed by
+     * getUrlLength(row) UTF-8 bytes starting at getUrlStart(row) in the URL buffer.  Neither
+     * must be changed.
+     */
+    int getPrefixCount() { return mPrefixTable.length; }
+    String getPrefix(int index) { return mPrefixTable[index]; }
+    int getUrlPrefix(int row) { return mUrlPrefixes[row]; }
+    byte[] getUrlBuffer() { return mUrlBytes; }
+    int getUrlStart(int row) { return mUrlOffsets[row]; }
+    int getUrlLength(int row) { return mUrlOffsets[row + 1] - mUrlOffsets[row]; }
+
+    /**
+     * @return True if the row has a non-empty image URL.
+     */
+    boolean hasImgUrl(int row)
+    {
+        return mUrlOffsets[row + 1] > mUrlOffsets[row] || !mPrefixTable[mUrlPrefixes[row]].isEmpty();
+    }
+
+    /**
+     * Compares the image URL of the row with a URL without building a String for it.
+     *
+     * @return True if getImgUrl(row) would equal url.
+     */
+    boolean imgUrlEquals(int row, String url)
+    {
+        String prefix = mPrefixTable[mUrlPrefixes[row]];
+        int start = mUrlOffsets[row];
+        int end = mUrlOffsets[row + 1];
+
+        if (url == null || !url.startsWith(prefix)) {
+            return false;
+        }
+
+        int pos = prefix.length();
+        for (int i = start; i < end; i++, pos++) {
+            byte b = mUrlBytes[i];
+            if (b < 0) {
+                // Not ASCII.  Rare enough to compare the long way.
+                return url.equals(getImgUrl(row));
+            }
+            if (pos == url.length() || url.charAt(pos) != (char) b) {
+                return false;
+            }
+        }
+        return pos == url.length();
+    }
+
+    /**
+     * @return True if the row has the same title and image URL as the row of the other store.
+     *         IDs are not compared.
+     */
+    boolean sameContent(int row, ContentStore other, int otherRow)
+    {
+        if (!mPrefixTable[mUrlPrefixes[row]].equals(other.mPrefixTable[other.mUrlPrefixes[otherRow]])) {
+            return false;
+        }
+
+        int titleStart = mTitleOffsets[row];
+        int titleLength = mTitleOffsets[row + 1] - titleStart;
+        int otherTitleStart = other.mTitleOffsets[otherRow];
+        if (titleLength != other.mTitleOffsets[otherRow + 1] - otherTitleStart) {
+            return false;
+        }
+        for (int i = 0; i < titleLength; i++) {
+            if (mTitleChars[titleStart + i] != other.mTitleChars[otherTitleStart + i]) {
+                return false;
+            }
+        }
+
+        int urlStart = mUrlOffsets[row];
+        int urlLength = mUrlOffsets[row + 1] - urlStart;
+        int otherUrlStart = other.mUrlOffsets[otherRow];
+        if (urlLength != other.mUrlOffsets[otherRow + 1] - otherUrlStart) {
+            return false;
+        }
+        for (int i = 0; i < urlLength; i++) {
+            if (mUrlBytes[urlStart + i] != other.mUrlBytes[otherUrlStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The content IDs in row order.  The array is a copy.
+     */
+    int[] copyIds() { return Arrays.copyOf(mIds, mSize); }
+
+    /**
+     * A builder leaves room at the end of its arrays for more rows.  Once a list is complete,
+     * this drops that room.
+     *
+     * @return A store with the same rows and arrays cut to size, or this store if they already are.
+     */
+    ContentStore trimmed()
+    {
+        if (mIds.length == mSize && mTitleChars.length == mTitleOffsets[mSize]
+                && mUrlBytes.length == mUrlOffsets[mSize]) {
+            return this;
+        }
+        return new ContentStore(mSize, Arrays.copyOf(mIds, mSize),
+                Arrays.copyOf(mTitleOffsets, mSize + 1), Arrays.copyOf(mTitleChars, mTitleOffsets[mSize]),
+                Arrays.copyOf(mUrlPrefixes, mSize), Arrays.copyOf(mUrlOffsets, mSize + 1),
+                Arrays.copyOf(mUrlBytes, mUrlOffsets[mSize]), mPrefixTable);
+    }
+
+    /**
+     * @return Approximate heap used by the arrays of this store, for measurement.
+     */
+    long getRetainedBytes()
+    {
+        long bytes = 4L * mIds.length + 4L * mTitleOffsets.length + 2L * mTitleChars.length
+                + 2L * mUrlPrefixes.length + 4L * mUrlOffsets.length + mUrlBytes.length;
+        for (String prefix : mPrefixTable) {
+            bytes += 40 + 2L * prefix.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Number of bytes writeTo will write.
+     */
+    int getSerializedSize()
+    {
+        long size = 4L * 4 + 4L * mSize + 4L * (mSize + 1) * 2 + 2L * mSize
+                + 2L * mTitleOffsets[mSize] + mUrlOffsets[mSize];
+        for (String prefix : mPrefixTable) {
+            size += 4 + 2L * prefix.length();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Store too large to serialize:  " + size + " bytes");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Writes the columns to the buffer:  the row, prefix, title char and URL byte counts, then
+     * IDs, title offsets, URL offsets, URL prefix indexes, the prefix table, title chars and URL
+     * bytes.
+     */
+    void writeTo(ByteBuffer buffer)
+    {
+        int titleChars = mTitleOffsets[mSize];
+        int urlBytes = mUrlOffsets[mSize];
+
+        buffer.putInt(mSize).putInt(mPrefixTable.length).putInt(titleChars).putInt(urlBytes);
+
+        buffer.asIntBuffer().put(mIds, 0, mSize);
+        buffer.position(buffer.position() + 4 * mSize);
+        buffer.asIntBuffer().put(mTitleOffsets, 0, mSize + 1);
+        buffer.position(buffer.position() + 4 * (mSize + 1));
+        buffer.asIntBuffer().put(mUrlOffsets, 0, mSize + 1);
+        buffer.position(buffer.position() + 4 * (mSize + 1));
+        buffer.asShortBuffer().put(mUrlPrefixes, 0, mSize);
+        buffer.position(buffer.position() + 2 * mSize);
+
+        for (String prefix : mPrefixTable) {
+            buffer.putInt(prefix.length());
+            for (int i = 0; i < prefix.length(); i++) {
+                buffer.putChar(prefix.charAt(i));
+            }
+        }
+
+        buffer.asCharBuffer().put(mTitleChars, 0, titleChars);
+        buffer.position(buffer.position() + 2 * titleChars);
+        buffer.put(mUrlBytes, 0, urlBytes);
+    }
+
+    /**
+     * Reads a store written by writeTo.  Every count and offset is checked, so a damaged buffer
+     * fails here rather than when a row is read.
+     *
+     * @throws IOException If the buffer is short or the columns do not fit together.
+     */
+    static ContentStore readFrom(ByteBuffer buffer) throws IOException
+    {
+        int size = readCount(buffer, "rows");
+        int prefixCount = readCount(buffer, "prefixes");
+        int titleChars = readCount(buffer, "title chars");
+        int urlBytes = readCount(buffer, "URL bytes");
+
+        require(buffer, 4L * size + 8L * (size + 1) + 2L * size);
+
+        int[] ids = new int[size];
+        buffer.asIntBuffer().get(ids);
+        buffer.position(buffer.position() + 4 * size);
+        int[] titleOffsets = new int[size + 1];
+        buffer.asIntBuffer().get(titleOffsets);
+        buffer.position(buffer.position() + 4 * (size + 1));
+        int[] urlOffsets = new int[size + 1];
+        buffer.asIntBuffer().get(urlOffsets);
+        buffer.position(buffer.position() + 4 * (size + 1));
+        short[] urlPrefixes = new short[size];
+        buffer.asShortBuffer().get(urlPrefixes);
+        buffer.position(buffer.position() + 2 * size);
+
+        if (prefixCount < 1 || prefixCount > MAX_PREFIXES) {
+            throw new IOException("Bad prefix count " + prefixCount);
+        }
+        String[] prefixTable = new String[prefixCount];
+        for (int p = 0; p < prefixCount; p++) {
+            int length = readCount(buffer, "prefix length");
+            require(buffer, 2L * length);
+            char[] chars = new char[length];
+            buffer.asCharBuffer().get(chars);
+            buffer.position(buffer.position() + 2 * length);
+            prefixTable[p] = new String(chars);
+        }
+        if (!prefixTable[0].isEmpty()) {
+            throw new IOException("First prefix must be empty");
+        }
+
+        require(buffer, 2L * titleChars + urlBytes);
+        char[] titles = new char[titleChars];
+        buffer.asCharBuffer().get(titles);
+        buffer.position(buffer.position() + 2 * titleChars);
+        byte[] urls = new byte[urlBytes];
+        buffer.get(urls);
+
+        checkOffsets(titleOffsets, titleChars, "title");
+        checkOffsets(urlOffsets, urlBytes, "URL");
+        for (short prefix : urlPrefixes) {
+            if (prefix < 0 || prefix >= prefixCount) {
+                throw new IOException("Bad URL prefix index " + prefix);
+            }
+        }
+
+        return new ContentStore(size, ids, titleOffsets, titles, urlPrefixes, urlOffsets, urls, prefixTable);
+    }
+
+    private static int readCount(ByteBuffer buffer, String what) throws IOException
+    {
+        require(buffer, 4);
+        int count = buffer.getInt();
+        if (count < 0) {
+            throw new IOException("Negative count of " + what + ":  " + count);
+        }
+        return count;
+    }
+
+    private static void require(ByteBuffer buffer, long bytes) throws IOException
+    {
+        if (buffer.remaining() < bytes) {
+            throw new IOException("Truncated:  need " + bytes + " bytes, " + buffer.remaining() + " left");
+        }
+    }
+
+    private static void checkOffsets(int[] offsets, int total, String what) throws IOException
+    {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != total) {
+            throw new IOException("Bad " + what + " offsets");
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                throw new IOException("Bad " + what + " offset at row " + (i - 1));
+            }
+        }
+    }
+
+    /**
+     * Reusable accessor for one row of a store.  Move it to a row, then read the fields.
+     */
+    static final class Row {
+        private ContentStore mStore;
+        private int mRow;
+
+        Row moveTo(ContentStore store, int row)
+        {
+            mStore = store;
+            mRow = row;
+            return this;
+        }
+
+        int getId() { return mStore.getId(mRow); }
+        String getTitle() { return mStore.getTitle(mRow); }
+        char[] getTitleBuffer() { return mStore.getTitleBuffer(); }
+        int getTitleStart() { return mStore.getTitleStart(mRow); }
+        int getTitleLength() { return mStore.getTitleLength(mRow); }
+        String getImgUrl() { return mStore.getImgUrl(mRow); }
+        String getImgUrl(ContentStringPool pool) { return pool.getImgUrl(mStore, mRow); }
+        boolean hasImgUrl() { return mStore.hasImgUrl(mRow); }
+        boolean imgUrlEquals(String url) { return mStore.imgUrlEquals(mRow, url); }
+    }
+
+    /**
+     * Appends rows to growable columns.  build may be called at any time and returns a store
+     * of the rows added so far.  A builder is not thread safe, but the stores it returns are.
+     */
+    static final class Builder {
+        private int mSize;
+        private int[] mIds;
+        private int[] mTitleOffsets;
+        private char[] mTitleChars;
+        private short[] mUrlPrefixes;
+        private int[] mUrlOffsets;
+        private byte[] mUrlBytes;
+
+        private final List<String> mPrefixes = new ArrayList<>();
+        private final Map<String, Integer> mPrefixIndex = new HashMap<>();
+        private String[] mPrefixTable;
+
+        /**
+         * Prefix of the last URL added by addChars, so the next URL from the same host is
+         * matched without building a String.
+         */
+        private String mLastPrefix;
+        private int mLastPrefixIndex;
+
+        Builder() {
+            this(16);
+        }
+
+        Builder(int expectedRows) {
+            int rows = Math.max(expectedRows, 1);
+            mIds = new int[rows];
+            mTitleOffsets = new int[rows + 1];
+            mTitleChars = new char[rows * EXPECTED_TITLE_CHARS];
+            mUrlPrefixes = new short[rows];
+            mUrlOffsets = new int[rows + 1];
+            mUrlBytes = new byte[rows * EXPECTED_URL_BYTES];
+
+            mPrefixes.add("");
+            mPrefixIndex.put("", 0);
+        }
+
+        int size() { return mSize; }
+
+        /**
+         * Appends a row.  Null title or URL are stored as empty.
+         */
+        Builder add(int id, String title, String imgUrl)
+        {
+            ensureRows(mSize + 1);
+
+            if (title == null) {
+                title = "";
+            }
+            if (imgUrl == null) {
+                imgUrl = "";
+            }
+
+            mIds[mSize] = id;
+
+            int titleStart = mTitleOffsets[mSize];
+            mTitleChars = ensureChars(mTitleChars, titleStart + title.length());
+            title.getChars(0, title.length(), mTitleChars, titleStart);
+            mTitleOffsets[mSize + 1] = titleStart + title.length();
+
+            int prefixLength = prefixLength(imgUrl);
+            int prefix = prefixIndex(imgUrl.substring(0, prefixLength));
+            if (prefix == 0) {
+                prefixLength = 0;
+            }
+            mUrlPrefixes[mSize] = (short) prefix;
+
+            appendUrl(imgUrl, prefixLength);
+
+            mSize++;
+            return this;
+        }
+
+        /**
+         * Appends every row of the store.
+         */
+        Builder addAll(ContentStore store)
+        {
+            for (int row = 0; row < store.mSize; row++) {
+                addRow(store, row);
+            }
+            return this;
+        }
+
+        /**
+         * Appends one row of another store without building its strings.
+         */
+        Builder addRow(ContentStore store, int row)
+        {
+            String prefix = store.mPrefixTable[store.mUrlPrefixes[row]];
+            int index = prefixIndex(prefix);
+
+            if (index == 0 && !prefix.isEmpty()) {
+                // The prefix table is full, so the whole URL goes into the URL buffer.
+                return add(store.getId(row), store.getTitle(row), store.getImgUrl(row));
+            }
+
+            ensureRows(mSize + 1);
+
+            mIds[mSize] = store.mIds[row];
+
+            int titleStart = mTitleOffsets[mSize];
+            int titleLength = store.getTitleLength(row);
+            mTitleChars = ensureChars(mTitleChars, titleStart + titleLength);
+            System.arraycopy(store.mTitleChars, store.mTitleOffsets[row], mTitleChars, titleStart, titleLength);
+            mTitleOffsets[mSize + 1] = titleStart + titleLength;
+
+            mUrlPrefixes[mSize] = (short) index;
+
+            int urlStart = mUrlOffsets[mSize];
+            int urlLength = store.mUrlOffsets[row + 1] - store.mUrlOffsets[row];
+            mUrlBytes = ensureBytes(mUrlBytes, urlStart + urlLength);
+            System.arraycopy(store.mUrlBytes, store.mUrlOffsets[row], mUrlBytes, urlStart, urlLength);
+            mUrlOffsets[mSize + 1] = urlStart + urlLength;
+
+            mSize++;
+            return this;
+        }
+
+        /**
+         * Appends a row whose title and image URL suffix are UTF-8 bytes, as decoded from the
+         * binary wire format, without building Strings for them.
+         *
+         * @param prefix Prefix of the image URL.  The URL is the prefix followed by the suffix.
+         */
+        Builder addEncoded(int id, byte[] title, int titleStart, int titleLength,
+                           String prefix, byte[] url, int urlStart, int urlLength)
+        {
+            int index = prefixIndex(prefix);
+
+            if (index == 0 && !prefix.isEmpty()) {
+                // The prefix table is full, so the whole URL goes into the URL buffer.
+                return add(id, new String(title, titleStart, titleLength, StandardCharsets.UTF_8),
+                        prefix + new String(url, urlStart, urlLength, StandardCharsets.UTF_8));
+            }
+
+            ensureRows(mSize + 1);
+
+            mIds[mSize] = id;
+
+            int start = mTitleOffsets[mSize];
+            mTitleChars = ensureChars(mTitleChars, start + titleLength);
+            int length = 0;
+            while (length < titleLength && title[titleStart + length] >= 0) {
+                mTitleChars[start + length] = (char) title[titleStart + length];
+                length++;
+            }
+            if (length < titleLength) {
+                // Not ASCII, so decode the whole title properly.
+                String decoded = new String(title, titleStart, titleLength, StandardCharsets.UTF_8);
+                length = decoded.length();
+                decoded.getChars(0, length, mTitleChars, start);
+            }
+            mTitleOffsets[mSize + 1] = start + length;
+
+            mUrlPrefixes[mSize] = (short) index;
+
+            int urlOffset = mUrlOffsets[mSize];
+            mUrlBytes = ensureBytes(mUrlBytes, urlOffset + urlLength);
+            System.arraycopy(url, urlStart, mUrlBytes, urlOffset, urlLength);
+            mUrlOffsets[mSize + 1] = urlOffset + urlLength;
+
+            mSize++;
+            return this;
+        }
+
+        /**
+         * Appends a row whose title and image URL are chars, as decoded from a JSON stream,
+         * without building Strings for them.  The URL prefix is only turned into a String when
+         * it differs from the one of the previous row.
+         */
+        Builder addChars(int id, char[] title, int titleStart, int titleLength,
+                         char[] url, int urlStart, int urlLength)
+        {
+            int prefixLength = prefixLength(url, urlStart, urlLength);
+            int index = 0;
+
+            if (prefixLength > 0) {
+                if (mLastPrefix != null && mLastPrefix.length() == prefixLength
+                        && regionMatches(mLastPrefix, url, urlStart)) {
+                    index = mLastPrefixIndex;
+                } else {
+                    mLastPrefix = new String(url, urlStart, prefixLength);
+                    mLastPrefixIndex = prefixIndex(mLastPrefix);
+                    index = mLastPrefixIndex;
+                }
+                if (index == 0) {
+                    // The prefix table is full, so the whole URL goes into the URL buffer.
+                    prefixLength = 0;
+                }
+            }
+
+            ensureRows(mSize + 1);
+
+            mIds[mSize] = id;
+
+            int start = mTitleOffsets[mSize];
+            mTitleChars = ensureChars(mTitleChars, start + titleLength);
+            System.arraycopy(title, titleStart, mTitleChars, start, titleLength);
+            mTitleOffsets[mSize + 1] = start + titleLength;
+
+            mUrlPrefixes[mSize] = (short) index;
+
+            int urlOffset = mUrlOffsets[mSize];
+            int length = urlLength - prefixLength;
+            boolean ascii = true;
+
+            mUrlBytes = ensureBytes(mUrlBytes, urlOffset + length);
+            for (int i = 0; i < length; i++) {
+                char c = url[urlStart + prefixLength + i];
+                if (c >= 0x80) {
+                    ascii = false;
+                    break;
+                }
+                mUrlBytes[urlOffset + i] = (byte) c;
+            }
+
+            if (!ascii) {
+                byte[] encoded = new String(url, urlStart + prefixLength, length).getBytes(StandardCharsets.UTF_8);
+                length = encoded.length;
+                mUrlBytes = ensureBytes(mUrlBytes, urlOffset + length);
+                System.arraycopy(encoded, 0, mUrlBytes, urlOffset, length);
+            }
+            mUrlOffsets[mSize + 1] = urlOffset + length;
+
+            mSize++;
+            return this;
+        }
+
+        /**
+         * @return A store of the rows added so far.  Later adds do not change it.
+         */
+        ContentStore build()
+        {
+            if (mPrefixTable == null || mPrefixTable.length != mPrefixes.size()) {
+                mPrefixTable = mPrefixes.toArray(new String[mPrefixes.size()]);
+            }
+            return new ContentStore(mSize, mIds, mTitleOffsets, mTitleChars, mUrlPrefixes,
+                    mUrlOffsets, mUrlBytes, mPrefixTable);
+        }
+
+        /**
+         * Writes the URL from the given index on as UTF-8.  ASCII, which is nearly every URL, is
+         * copied a char at a time without encoding.
+         */
+        private void appendUrl(String url, int from)
+        {
+            int start = mUrlOffsets[mSize];
+            int length = url.length() - from;
+            boolean ascii = true;
+
+            mUrlBytes = ensureBytes(mUrlBytes, start + length);
+            for (int i = 0; i < length; i++) {
+                char c = url.charAt(from + i);
+                if (c >= 0x80) {
+                    ascii = false;
+                    break;
+                }
+                mUrlBytes[start + i] = (byte) c;
+            }
+
+            if (!ascii) {
+                byte[] encoded = url.substring(from).getBytes(StandardCharsets.UTF_8);
+                length = encoded.length;
+                mUrlBytes = ensureBytes(mUrlBytes, start + length);
+                System.arraycopy(encoded, 0, mUrlBytes, start, length);
+            }
+
+            mUrlOffsets[mSize + 1] = start + length;
+        }
+
+        private int prefixIndex(String prefix)
+        {
+            Integer index = mPrefixIndex.get(prefix);
+
+            if (index == null) {
+                if (mPrefixes.size() >= MAX_PREFIXES) {
+                    return 0;
+                }
+                index = mPrefixes.size();
+                mPrefixes.add(prefix);
+                mPrefixIndex.put(prefix, index);
+            }
+            return index;
+        }
+
+        private void ensureRows(int rows)
+        {
+            if (rows <= mIds.length) {
+                return;
+            }
+
+            int capacity = Math.max(rows, mIds.length + (mIds.length >> 1) + 1);
+            mIds = Arrays.copyOf(mIds, capacity);
+            mUrlPrefixes = Arrays.copyOf(mUrlPrefixes, capacity);
+            mTitleOffsets = Arrays.copyOf(mTitleOffsets, capacity + 1);
+            mUrlOffsets = Arrays.copyOf(mUrlOffsets, capacity + 1);
+        }
+
+        private static char[] ensureChars(char[] chars, int length)
+        {
+            if (length <= chars.length) {
+                return chars;
+            }
+            return Arrays.copyOf(chars, Math.max(length, chars.length + (chars.length >> 1) + 1));
+        }
+
+        private static byte[] ensureBytes(byte[] bytes, int length)
+        {
+            if (length <= bytes.length) {
+                return bytes;
+            }
+            return Arrays.copyOf(bytes, Math.max(length, bytes.length + (bytes.length >> 1) + 1));
+        }
+
+        /**
+         * @return Length of the scheme and host part of the URL including the slash after the
+         *         host, or zero if the URL has no host.
+         */
+        private static int prefixLength(String url)
+        {
+            int scheme = url.indexOf("://");
+            if (scheme < 0) {
+                return 0;
+            }
+
+            int slash = url.indexOf('/', scheme + 3);
+            return slash < 0 ? 0 : slash + 1;
+        }
+
+        /**
+         * Same as prefixLength for a URL held in chars.
+         */
+        private static int prefixLength(char[] url, int start, int length)
+        {
+            int end = start + length;
+
+            for (int i = start; i + 2 < end; i++) {
+                if (url[i] == ':' && url[i + 1] == '/' && url[i + 2] == '/') {
+                    for (int j = i + 3; j < end; j++) {
+                        if (url[j] == '/') {
+                            return j + 1 - start;
+                        }
+                    }
+                    return 0;
+                }
+            }
+            return 0;
+        }
+
+        private static boolean regionMatches(String prefix, char[] chars, int start)
+        {
+            for (int i = prefix.length() - 1; i >= 0; i--) {
+                if (prefix.charAt(i) != chars[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.lausy.contentretriever;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <h1>ContentStringPool</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Deduplicates the Strings built from a ContentStore.  Titles and image URLs are kept as chars
+ * and bytes in the store, but some callers still need Strings:  the query engine keeps a lower
+ * case copy of every title, and the image loader takes URLs.  Titles repeat across seasons and
+ * regions, placeholder images are shared, and a refresh brings back nearly the same list, so
+ * most of these Strings were built before.  The pool hands back the instance it already has.
+ *
+ * Lookups hash the chars or bytes in place the way String.hashCode does, and compare them with
+ * the pooled String, so a hit does not allocate.
+ *
+ * The pool is bounded by generations rather than references.  The owner calls nextGeneration
+ * whenever a new list is taken in, and the Strings the previous list did not use are dropped.
+ * So the Strings of a list stay pooled across one refresh, and titles that left the feed go
+ * with the refresh after.  The pool also never holds more than its maximum number of Strings;
+ * Strings past it are built but not pooled.
+ *
+ * Hits, misses and an estimate of the bytes the hits did not allocate are counted.
+ *
+ * A pool is not thread safe.  It is meant to be owned by one thread.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentStringPool {
+
+    /**
+     * Estimated size of a String without its chars:  the String object and the header of its
+     * char array.
+     */
+    static final int STRING_OVERHEAD_BYTES = 40;
+
+    private static final int INITIAL_SLOTS = 256;
+
+    private final int mMaxEntries;
+
+    /**
+     * Open addressing table, at most half full.  mHashes and mLastUse are parallel to mStrings.
+     */
+    private String[] mStrings = new String[INITIAL_SLOTS];
+    private int[] mHashes = new int[INITIAL_SLOTS];
+    private int[] mLastUse = new int[INITIAL_SLOTS];
+    private int mSize;
+    private int mGeneration;
+    private int mSweptGeneration = -1;
+
+    private char[] mScratch = new char[64];
+
+    private long mHits;
+    private long mMisses;
+    private long mSavedBytes;
+
+    /**
+     * @param maxEntries Most Strings the pool holds at once.
+     */
+    ContentStringPool(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        mMaxEntries = maxEntries;
+    }
+
+    /**
+     * @return A String of the chars, from the pool if it has one.
+     */
+    String intern(char[] chars, int start, int length)
+    {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        int slot = find(hash, chars, start, length);
+        if (mStrings[slot] != null) {
+            return hit(slot);
+        }
+        return add(slot, hash, new String(chars, start, length));
+    }
+
+    /**
+     * @return The String from the pool if it has an equal one, or else the String itself,
+     *         which is then pooled.
+     */
+    String intern(String s)
+    {
+        int hash = s.hashCode();
+        int mask = mStrings.length - 1;
+        int slot = hash & mask;
+
+        while (mStrings[slot] != null) {
+            if (mHashes[slot] == hash && mStrings[slot].equals(s)) {
+                return hit(slot);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return add(slot, hash, s);
+    }
+
+    /**
+     * @return The title of the row.
+     */
+    String getTitle(ContentStore store, int row)
+    {
+        return intern(store.getTitleBuffer(), store.getTitleStart(row), store.getTitleLength(row));
+    }
+
+    /**
+     * @return The title of the row in lower case, as String.toLowerCase(Locale.ROOT) gives it.
+     *         Only titles with non-ASCII letters build a String to look up.
+     */
+    String getLowerTitle(ContentStore store, int row)
+    {
+        char[] chars = store.getTitleBuffer();
+        int start = store.getTitleStart(row);
+        int length = store.getTitleLength(row);
+
+        if (mScratch.length < length) {
+            mScratch = new char[Math.max(length, mScratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            char c = chars[start + i];
+            if (c >= 0x80) {
+                return intern(store.getTitle(row).toLowerCase(Locale.ROOT));
+            }
+            mScratch[i] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return intern(mScratch, 0, length);
+    }
+
+    /**
+     * @return The image URL of the row.  Only URLs with non-ASCII chars build a String to look
+     *         up.
+     */
+    String getImgUrl(ContentStore store, int row)
+    {
+        String prefix = store.getPrefix(store.getUrlPrefix(row));
+        byte[] bytes = store.getUrlBuffer();
+        int start = store.getUrlStart(row);
+        int end = start + store.getUrlLength(row);
+
+        int hash = prefix.hashCode();
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < 0) {
+                return intern(store.getImgUrl(row));
+            }
+            hash = 31 * hash + bytes[i];
+        }
+
+        int mask = mStrings.length - 1;
+        int slot = hash & mask;
+
+        while (mStrings[slot] != null) {
+            if (mHashes[slot] == hash && store.imgUrlEquals(row, mStrings[slot])) {
+                return hit(slot);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return add(slot, hash, store.getImgUrl(row));
+    }
+
+    /**
+     * Starts a new generation, and drops the Strings not used in the one that ended.
+     */
+    void nextGeneration()
+    {
+        mGeneration++;
+        sweep(mGeneration - 1);
+    }
+
+    /**
+     * Drops every String.  The counts are kept.
+     */
+    void clear()
+    {
+        Arrays.fill(mStrings, null);
+        mSize = 0;
+    }
+
+    int size() { return mSize; }
+
+    int getMaxEntries() { return mMaxEntries; }
+
+    long getHitCount() { return mHits; }
+
+    long getMissCount() { return mMisses; }
+
+    /**
+     * @return Share of lookups that were hits, from 0 to 1.
+     */
+    double getHitRate()
+    {
+        long lookups = mHits + mMisses;
+        return lookups == 0 ? 0 : (double) mHits / lookups;
+    }
+
+    /**
+     * @return Estimate of the bytes the hits did not allocate, at two bytes per char plus
+     *         STRING_OVERHEAD_BYTES per String.
+     */
+    long getSavedBytes() { return mSavedBytes; }
+
+    @Override
+    public String toString()
+    {
+        return String.format(Locale.US, "%d strings, %d hits, %d misses (%.1f%% hit), %d KB saved",
+                mSize, mHits, mMisses, getHitRate() * 100, mSavedBytes / 1024);
+    }
+
+    /**
+     * @return The slot holding the chars, or the empty slot they would go in.
+     */
+    private int find(int hash, char[] chars, int start, int length)
+    {
+        int mask = mStrings.length - 1;
+        int slot = hash & mask;
+
+        while (mStrings[slot] != null) {
+            if (mHashes[slot] == hash && regionEquals(mStrings[slot], chars, start, length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private String hit(int slot)
+    {
+        String s = mStrings[slot];
+        mLastUse[slot] = mGeneration;
+        mHits++;
+        mSavedBytes += STRING_OVERHEAD_BYTES + 2L * s.length();
+        return s;
+    }
+
+    /**
+     * Pools the String in the empty slot, if there is room.
+     */
+    private String add(int slot, int hash, String s)
+    {
+        mMisses++;
+
+        if (mSize >= mMaxEntries) {
+            // Full.  Make room from older generations, once per generation, since after that
+            // every String is from this one.
+            if (mSweptGeneration == mGeneration) {
+                return s;
+            }
+            mSweptGeneration = mGeneration;
+            sweep(mGeneration);
+            if (mSize >= mMaxEntries) {
+                return s;
+            }
+            slot = emptySlot(hash);
+        }
+
+        mStrings[slot] = s;
+        mHashes[slot] = hash;
+        mLastUse[slot] = mGeneration;
+        mSize++;
+
+        if (mSize * 2 > mStrings.length) {
+            rehash(mStrings.length * 2, mGeneration);
+        }
+        return s;
+    }
+
+    private int emptySlot(int hash)
+    {
+        int mask = mStrings.length - 1;
+        int slot = hash & mask;
+
+        while (mStrings[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Drops the Strings last used before the generation.
+     */
+    private void sweep(int oldestKept)
+    {
+        rehash(mStrings.length, oldestKept);
+
+        // Shrink back when most of the table went unused.
+        int slots = mStrings.length;
+        while (slots > INITIAL_SLOTS && mSize * 8 < slots) {
+            slots /= 2;
+        }
+        if (slots < mStrings.length) {
+            rehash(slots, oldestKept);
+        }
+    }
+
+    private void rehash(int slots, int oldestKept)
+    {
+        String[] strings = mStrings;
+        int[] hashes = mHashes;
+        int[] lastUse = mLastUse;
+
+        mStrings = new String[slots];
+        mHashes = new int[slots];
+        mLastUse = new int[slots];
+        mSize = 0;
+
+        for (int i = 0; i < strings.length; i++) {
+            if (strings[i] != null && lastUse[i] >= oldestKept) {
+                int slot = emptySlot(hashes[i]);
+                mStrings[slot] = strings[i];
+                mHashes[slot] = hashes[i];
+                mLastUse[slot] = lastUse[i];
+                mSize++;
+            }
+        }
+    }
+
+    private static boolean regionEquals(String s, char[] chars, int start, int length)
+    {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,153 @@
+package com.lausy.contentretriever;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h1>ContentWireFormat</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Compact binary encoding of the content list, served as application/x-content-list.  Requests
+ * accept it ahead of JSON, and a server that does not know it answers with JSON as before.
+ *
+ * Every number is an unsigned LEB128 varint, and IDs are zigzag encoded first.  Strings are a
+ * varint byte length followed by UTF-8.  The layout is:
+ *
+ *   magic "CLB1"
+ *   prefix count, then each URL prefix as a string
+ *   item count
+ *   per item:  id, title, prefix index, image URL after the prefix
+ *
+ * Prefix 0 is always the empty string.  Field names are not repeated and the long image host
+ * is sent once in the prefix table, so the list is about a third smaller than the JSON and
+ * decodes several times faster.  Gzip still applies on top.  ContentBinaryParser decodes it.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class ContentWireFormat {
+    static final String MEDIA_TYPE = "application/x-content-list";
+
+    /**
+     * Accept header of list requests.  JSON is the fallback.
+     */
+    static final String ACCEPT = MEDIA_TYPE + ", application/json;q=0.9";
+
+    static final byte[] MAGIC = { 'C', 'L', 'B', '1' };
+
+    /**
+     * Longest string accepted by the parser, so a damaged length cannot exhaust memory.
+     */
+    static final int MAX_STRING_BYTES = 64 * 1024;
+
+    private ContentWireFormat() {}
+
+    /**
+     * @param type Type and subtype of a body, without parameters, or null.
+     * @return True if a body of the media type is in this format.
+     */
+    static boolean isBinary(String type)
+    {
+        return MEDIA_TYPE.equalsIgnoreCase(type);
+    }
+
+    /**
+     * Encodes the store.  The stream is not closed.
+     */
+    static void write(ContentStore store, OutputStream out) throws IOException
+    {
+        Writer writer = new Writer(out);
+
+        out.write(MAGIC);
+
+        writer.writeVarint(store.getPrefixCount());
+        for (int i = 0; i < store.getPrefixCount(); i++) {
+            byte[] prefix = store.getPrefix(i).getBytes(StandardCharsets.UTF_8);
+            writer.writeBytes(prefix, 0, prefix.length);
+        }
+
+        writer.writeVarint(store.size());
+
+        char[] titles = store.getTitleBuffer();
+        byte[] urls = store.getUrlBuffer();
+
+        for (int row = 0; row < store.size(); row++) {
+            int id = store.getId(row);
+            writer.writeVarint((id << 1) ^ (id >> 31));
+            writer.writeChars(titles, store.getTitleStart(row), store.getTitleLength(row));
+            writer.writeVarint(store.getUrlPrefix(row));
+            writer.writeBytes(urls, store.getUrlStart(row), store.getUrlLength(row));
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Buffers the output and encodes titles without building Strings.
+     */
+    private static final class Writer {
+        private final OutputStream mOut;
+        private byte[] mBuffer = new byte[8192];
+        private int mCount;
+
+        Writer(OutputStream out) {
+            mOut = out;
+        }
+
+        void writeVarint(int value) throws IOException
+        {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                mBuffer[mCount++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBuffer[mCount++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes, int start, int length) throws IOException
+        {
+            writeVarint(length);
+            ensure(length);
+            System.arraycopy(bytes, start, mBuffer, mCount, length);
+            mCount += length;
+        }
+
+        void writeChars(char[] chars, int start, int length) throws IOException
+        {
+            for (int i = start; i < start + length; i++) {
+                if (chars[i] >= 0x80) {
+                    byte[] encoded = new String(chars, start, length).getBytes(StandardCharsets.UTF_8);
+                    writeBytes(encoded, 0, encoded.length);
+                    return;
+                }
+            }
+
+            writeVarint(length);
+            ensure(length);
+            for (int i = 0; i < length; i++) {
+                mBuffer[mCount++] = (byte) chars[start + i];
+            }
+        }
+
+        void flush() throws IOException
+        {
+            mOut.write(mBuffer, 0, mCount);
+            mCount = 0;
+            mOut.flush();
+        }
+
+        private void ensure(int length) throws IOException
+        {
+            if (mCount + length <= mBuffer.length) {
+                return;
+            }
+            mOut.write(mBuffer, 0, mCount);
+            mCount = 0;
+            if (length > mBuffer.length) {
+                mBuffer = new byte[length];
+            }
+        }
+    }
+}
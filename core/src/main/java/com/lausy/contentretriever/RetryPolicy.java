@@ -0,0 +1,163 @@
+package com.lausy.contentretriever;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * <h1>RetryPolicy</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Decides whether a failed request is tried again and how long to wait first.  Only idempotent
+ * requests are retried, and only after a transient failure:  a timeout, a refused or reset
+ * connection, an unknown host, or a 408, 429, 500, 502, 503 or 504 response.
+ *
+ * The wait doubles with every retry up to a maximum, and a random part of it is taken off so
+ * clients that failed together do not retry together.  A Retry-After header from the server is
+ * honoured, unless it asks for a longer wait than the policy allows, in which case the failure
+ * is reported instead.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+final class RetryPolicy {
+
+    /**
+     * Time source and timer for retries, so tests can run them on a virtual clock.
+     */
+    interface Scheduler {
+        /**
+         * @return Monotonic time in milliseconds.
+         */
+        long now();
+
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * Four attempts, waiting about 0.5, 1 and 2 seconds in between.
+     */
+    static final RetryPolicy DEFAULT = new RetryPolicy(4, 500, 8000, 0.5, 30000);
+
+    /**
+     * A single attempt.
+     */
+    static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, 0, 0);
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final double mJitter;
+    private final long mMaxRetryAfterMillis;
+
+    /**
+     * @param maxAttempts Attempts including the first one.
+     * @param baseDelayMillis Wait before the first retry, before jitter.
+     * @param maxDelayMillis Longest wait computed by backoff.
+     * @param jitter Largest fraction of the wait taken off at random, from 0 to 1.
+     * @param maxRetryAfterMillis Longest Retry-After that is waited for.
+     */
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, double jitter,
+                long maxRetryAfterMillis) {
+        if (maxAttempts < 1 || baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis
+                || jitter < 0 || jitter > 1 || maxRetryAfterMillis < 0) {
+            throw new IllegalArgumentException("Invalid retry policy.");
+        }
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mJitter = jitter;
+        mMaxRetryAfterMillis = maxRetryAfterMillis;
+    }
+
+    int getMaxAttempts() { return mMaxAttempts; }
+
+    /**
+     * @return True if a request with the HTTP method can be sent again safely.
+     */
+    static boolean isIdempotent(String method)
+    {
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+
+    /**
+     * @return True if a response with the status code may succeed when tried again.
+     */
+    static boolean isTransient(int code)
+    {
+        return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * @return True if the request failure may not happen when tried again.
+     */
+    static boolean isTransient(Throwable t)
+    {
+        return t instanceof InterruptedIOException
+                || t instanceof ConnectException
+                || t instanceof SocketException
+                || t instanceof UnknownHostException;
+    }
+
+    /**
+     * Returns how long to wait before the retry.
+     *
+     * @param retry 1 for the first retry, 2 for the second and so on.
+     * @param retryAfterMillis Wait asked for by the server, or -1 if none.
+     * @param random Source of the jitter.
+     * @return The wait in milliseconds, or -1 if the server asked for a longer wait than allowed.
+     */
+    long delayMillis(int retry, long retryAfterMillis, Random random)
+    {
+        if (retryAfterMillis > mMaxRetryAfterMillis) {
+            return -1;
+        }
+
+        long delay = mBaseDelayMillis << Math.min(retry - 1, 30);
+        if (delay > mMaxDelayMillis || delay < 0) {
+            delay = mMaxDelayMillis;
+        }
+        delay -= (long) (delay * mJitter * random.nextDouble());
+
+        return Math.max(delay, retryAfterMillis);
+    }
+
+    /**
+     * Parses a Retry-After header, either a number of seconds or an HTTP date.
+     *
+     * @param value The header value, or null.
+     * @param nowMillis Current wall clock time, for a date.
+     * @return The wait in milliseconds, or -1 if there is no usable header.
+     */
+    static long parseRetryAfter(String value, long nowMillis)
+    {
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds < 0 ? -1 : seconds * 1000;
+        } catch (NumberFormatException e) {
+            // Not a number, so it should be a date.
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = format.parse(value);
+            return Math.max(0, date.getTime() - nowMillis);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
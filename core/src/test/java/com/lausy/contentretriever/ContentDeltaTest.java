@@ -0,0 +1,216 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentDelta Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Each applyTo test replays the reported operations on a mirror list of rows to check that the
+ * positions are right and that only the rows that changed are reported.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentDeltaTest {
+
+    /**
+     * Replays operations on a mirror list of "id:title" rows.
+     */
+    private static class Mirror implements ContentListDiff.Callback {
+        final List<String> rows;
+        final List<String> incomingRows;
+        int inserted;
+        int removed;
+        int changed;
+
+        Mirror(ContentStore current, ContentStore incoming) {
+            rows = rowsOf(current);
+            incomingRows = rowsOf(incoming);
+        }
+
+        @Override
+        public void onInserted(int position) {
+            rows.add(position, incomingRows.get(position));
+            inserted++;
+        }
+
+        @Override
+        public void onRemoved(int position) {
+            rows.remove(position);
+            removed++;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            fail("A delta never moves a row.");
+        }
+
+        @Override
+        public void onChanged(int position) {
+            rows.set(position, incomingRows.get(position));
+            changed++;
+        }
+    }
+
+    private static ContentStore store(int... ids) {
+        ContentStore.Builder builder = new ContentStore.Builder(ids.length);
+        for (int id : ids) {
+            builder.add(id, "Title " + id, "http://images.adrise.tv/" + id + ".jpg");
+        }
+        return builder.build();
+    }
+
+    private static List<String> rowsOf(ContentStore store) {
+        List<String> rows = new ArrayList<>();
+        for (int row = 0; row < store.size(); row++) {
+            rows.add(store.getId(row) + ":" + store.getTitle(row));
+        }
+        return rows;
+    }
+
+    private static Mirror check(ContentStore base, ContentDelta delta, String... expected) {
+        ContentStore result = delta.applyTo(base, null);
+        Mirror mirror = new Mirror(base, result);
+
+        assertEquals(Arrays.asList(expected), rowsOf(result));
+        assertEquals(rowsOf(result), rowsOf(delta.applyTo(base, mirror)));
+        assertEquals(rowsOf(result), mirror.rows);
+        return mirror;
+    }
+
+    @Test
+    public void upsertsReplaceInPlaceAndAppendNewIds() {
+        ContentStore.Builder upserts = new ContentStore.Builder(3);
+        upserts.add(5, "Title 5", "http://images.adrise.tv/5.jpg")
+                .add(2, "Renamed 2", "http://images.adrise.tv/2.jpg")
+                .add(3, "Title 3", "http://images.adrise.tv/3.jpg");
+        ContentDelta delta = new ContentDelta("v2", upserts.build(), new int[0]);
+
+        Mirror mirror = check(store(1, 2, 3, 4), delta, "1:Title 1", "2:Renamed 2", "3:Title 3", "4:Title 4", "5:Title 5");
+
+        // 3 came back unchanged, so only 2 is rebound.
+        assertEquals(1, mirror.changed);
+        assertEquals(1, mirror.inserted);
+        assertEquals(0, mirror.removed);
+    }
+
+    @Test
+    public void removedIdsAreDropped() {
+        ContentDelta delta = new ContentDelta("v2", ContentStore.EMPTY, new int[] { 4, 1, 9 });
+
+        Mirror mirror = check(store(1, 2, 3, 4, 5), delta, "2:Title 2", "3:Title 3", "5:Title 5");
+
+        assertEquals(2, mirror.removed);
+        assertEquals(0, mirror.changed);
+    }
+
+    @Test
+    public void idRemovedAndUpsertedIsKept() {
+        ContentStore.Builder upserts = new ContentStore.Builder(1);
+        upserts.add(2, "Back again", "http://images.adrise.tv/2.jpg");
+        ContentDelta delta = new ContentDelta("v2", upserts.build(), new int[] { 2, 3 });
+
+        Mirror mirror = check(store(1, 2, 3), delta, "1:Title 1", "2:Back again");
+
+        assertEquals(1, mirror.removed);
+        assertEquals(1, mirror.changed);
+    }
+
+    @Test
+    public void idSentTwiceIsAddedOnce() {
+        ContentStore.Builder upserts = new ContentStore.Builder(2);
+        upserts.add(7, "First", "").add(7, "Second", "");
+        ContentDelta delta = new ContentDelta("v2", upserts.build(), new int[0]);
+
+        ContentStore result = delta.applyTo(store(1), null);
+
+        assertEquals(2, result.size());
+        assertEquals(7, result.getId(1));
+    }
+
+    @Test
+    public void mixedDeltaOnLargeList() {
+        int size = 10000;
+        int[] ids = new int[size];
+        for (int row = 0; row < size; row++) {
+            ids[row] = row * 2;
+        }
+
+        ContentStore.Builder upserts = new ContentStore.Builder(100);
+        for (int row = 0; row < size; row += 200) {
+            upserts.add(ids[row], "Updated " + ids[row], "");
+            upserts.add(size * 2 + row + 1, "Added", "");
+        }
+        int[] removed = new int[50];
+        for (int i = 0; i < removed.length; i++) {
+            removed[i] = ids[i * 200 + 100];
+        }
+        ContentDelta delta = new ContentDelta("v2", upserts.build(), removed);
+
+        ContentStore base = store(ids);
+        ContentStore result = delta.applyTo(base, null);
+        Mirror mirror = new Mirror(base, result);
+        delta.applyTo(base, mirror);
+
+        assertEquals(size, result.size());
+        assertEquals(rowsOf(result), mirror.rows);
+        assertEquals(50, mirror.changed);
+        assertEquals(50, mirror.inserted);
+        assertEquals(50, mirror.removed);
+        assertEquals("Updated 0", result.getTitle(0));
+    }
+
+    @Test
+    public void parsesDelta() throws IOException {
+        String json = "{\"version\":\"v7\",\"unknown\":{\"a\":[1]},"
+                + "\"added\":[{\"id\":\"9\",\"title\":\"Nine\",\"image\":\"http://images.adrise.tv/9.jpg\"},{\"id\":\"x\"}],"
+                + "\"updated\":[{\"id\":2,\"title\":\"Two\",\"image\":\"\"}],"
+                + "\"removed\":[\"3\",4,\"bad\",null]}";
+
+        ContentLenientParser parser = new ContentLenientParser();
+        ContentDelta delta = parser.parseDelta(new StringReader(json));
+
+        assertEquals("v7", delta.getVersion());
+        assertEquals(2, delta.getUpsertCount());
+        assertEquals(9, delta.getUpserts().getId(0));
+        assertEquals("Two", delta.getUpserts().getTitle(1));
+        assertEquals(2, delta.getRemovedCount());
+        assertEquals(3, parser.getSkippedCount());
+        assertFalse(delta.isEmpty());
+
+        assertEquals(Arrays.asList("1:Title 1", "2:Two", "9:Nine"),
+                rowsOf(delta.applyTo(store(1, 2, 3, 4), null)));
+    }
+
+    @Test
+    public void deltaKeepsRowsWithoutTitleOrImage() throws IOException {
+        String json = "{\"version\":\"v8\",\"updated\":["
+                + "{\"id\":\"2\",\"title\":null,\"image\":\"http://images.adrise.tv/2.jpg\"},"
+                + "{\"id\":\"3\",\"title\":\"Three\"}],\"added\":[],\"removed\":[]}";
+
+        ContentLenientParser parser = new ContentLenientParser();
+        ContentDelta delta = parser.parseDelta(new StringReader(json));
+
+        assertEquals(2, delta.getUpsertCount());
+        assertEquals("", delta.getUpserts().getTitle(0));
+        assertEquals("Three", delta.getUpserts().getTitle(1));
+        assertFalse(delta.getUpserts().hasImgUrl(1));
+        assertEquals(0, parser.getSkippedCount());
+        assertEquals("MISSING_TITLE=1 MISSING_IMAGE=1", parser.getDefectSummary());
+    }
+
+    @Test(expected = IOException.class)
+    public void deltaWithoutVersionIsRejected() throws IOException {
+        new ContentLenientParser().parseDelta(new StringReader("{\"added\":[],\"removed\":[]}"));
+    }
+}
@@ -0,0 +1,185 @@
+package com.lausy.contentretriever;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentExecutors Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * The test thread plays the main thread.  Anything posted to the main thread is queued and run
+ * by the test, the way a Handler would.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentExecutorsTest {
+    private final BlockingQueue<Runnable> mMainQueue = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() {
+        ContentExecutors.setMainThread(Thread.currentThread());
+    }
+
+    @After
+    public void tearDown() {
+        ContentExecutors.setMainThread(null);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void parsingOnMainThreadFails() throws Exception {
+        new ContentLenientParser().parse(new StringReader("[]"), new ContentChunkListener() {
+            @Override
+            public void onChunk(ContentStore chunk, boolean first, boolean last) {
+            }
+        });
+    }
+
+    @Test
+    public void responseIsParsedOffMainAndDeliveredOnMain() throws Exception {
+        MockWebServer server = new MockWebServer();
+        StringBuilder feed = new StringBuilder("[");
+        for (int i = 0; i < 1200; i++) {
+            feed.append(i == 0 ? "" : ",").append("{\"id\":\"").append(i)
+                    .append("\",\"title\":\"t").append(i).append("\",\"image\":\"http://a/").append(i).append("\"}");
+        }
+        server.enqueue(new MockResponse().setBody(feed.append("]").toString()));
+        server.start();
+
+        final AtomicBoolean parsedOnWorker = new AtomicBoolean();
+        final AtomicInteger delivered = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        try {
+            final OkHttpClient client = new OkHttpClient();
+            final Request request = new Request.Builder().url(server.url("/fixture/movies.json")).build();
+
+            // The app's Retrofit services deliver their callbacks to the parse executor this way.
+            ContentExecutors.parse().execute(new Runnable() {
+                @Override
+                public void run() {
+                    parsedOnWorker.set(ContentExecutors.isWorkerThread() && !ContentExecutors.isMainThread());
+                    Response response = null;
+                    try {
+                        response = client.newCall(request).execute();
+                        new ContentLenientParser().parse(response.body().charStream(), new ContentChunkListener() {
+                            @Override
+                            public void onChunk(final ContentStore chunk, boolean first, boolean last) {
+                                mMainQueue.add(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        ContentExecutors.checkMainThread("onReceiveContent");
+                                        delivered.addAndGet(chunk.size());
+                                    }
+                                });
+                            }
+                        });
+                    } catch (IOException e) {
+                        fail(e.getMessage());
+                    } finally {
+                        if (response != null) {
+                            response.close();
+                        }
+                        done.countDown();
+                    }
+                }
+            });
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            server.shutdown();
+        }
+
+        Runnable r;
+        while ((r = mMainQueue.poll()) != null) {
+            r.run();
+        }
+
+        assertTrue(parsedOnWorker.get());
+        assertEquals(1200, delivered.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void deliveryOffMainThreadFails() throws Throwable {
+        final Throwable[] thrown = new Throwable[1];
+
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ContentExecutors.checkMainThread("onReceiveContent");
+                } catch (Throwable t) {
+                    thrown[0] = t;
+                }
+            }
+        });
+        worker.start();
+        worker.join();
+
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+    }
+
+    @Test
+    public void fullParseQueueRunsOnSubmittingWorker() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(
+                ContentExecutors.PARSE_THREADS + ContentExecutors.PARSE_QUEUE_SIZE);
+        Runnable blocked = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finished.countDown();
+            }
+        };
+
+        for (int i = 0; i < ContentExecutors.PARSE_THREADS + ContentExecutors.PARSE_QUEUE_SIZE; i++) {
+            ContentExecutors.parse().execute(blocked);
+        }
+
+        // A network thread submitting one more task runs it itself instead of queueing it.
+        final AtomicBoolean ranOnSubmitter = new AtomicBoolean();
+        final Thread[] submitter = new Thread[1];
+        submitter[0] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ContentExecutors.parse().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ranOnSubmitter.set(Thread.currentThread() == submitter[0]);
+                    }
+                });
+            }
+        });
+        submitter[0].start();
+        submitter[0].join();
+        release.countDown();
+
+        assertTrue(ranOnSubmitter.get());
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+    }
+}
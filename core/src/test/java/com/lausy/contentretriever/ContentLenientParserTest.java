@@ -0,0 +1,179 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentLenientParser Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentLenientParserTest {
+
+    /**
+     * Collects every chunk into one store.
+     */
+    private static class Collector implements ContentChunkListener {
+        final ContentStore.Builder builder = new ContentStore.Builder();
+        final List<Integer> chunkSizes = new ArrayList<>();
+        int firstCount;
+        int lastCount;
+
+        @Override
+        public void onChunk(ContentStore chunk, boolean first, boolean last) {
+            if (first) {
+                assertEquals(0, builder.size());
+                firstCount++;
+            }
+            if (last) {
+                lastCount++;
+            }
+            chunkSizes.add(chunk.size());
+            builder.addAll(chunk);
+        }
+    }
+
+    /**
+     * Hands out one char per read, so every value crosses a buffer boundary.
+     */
+    private static class TrickleReader extends FilterReader {
+        TrickleReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 1));
+        }
+    }
+
+    private static final String MIXED = "["
+            + "{\"title\":\"Ledge \\\"Redux\\\" \\u00e9\\n\",\"image\":\"http://images.adrise.tv/a.jpg\",\"id\":\"12\"},"
+            + "{\"id\":-7,\"extra\":{\"nested\":[1,{\"x\":\"]}\"}],\"b\":true},\"title\":42,\"image\":null},"
+            + "{\"title\":\"No image\",\"id\":\"13\"},"
+            + "{\"title\":\"Bad id\",\"image\":\"\",\"id\":\"tt13\"},"
+            + "{\"title\":\"Too big\",\"image\":\"\",\"id\":\"99999999999\"},"
+            + "{\"title\":\"Fraction\",\"image\":\"\",\"id\":1.5},"
+            + "{\"title\":\"No id\",\"image\":\"http://images.adrise.tv/b.jpg\"},"
+            + "\"not an object\", 17, null, [1, 2],"
+            + "{\"title\":{\"en\":\"Object\"},\"image\":[\"x\"],\"id\":\"14\"},"
+            + " { \"id\" : \"15\" , \"title\" : \"Spaced\" , \"image\" : \"https://other.host/c.png\" } "
+            + "]";
+
+    private static Collector parse(ContentLenientParser parser, Reader reader) throws IOException {
+        Collector collector = new Collector();
+        parser.parse(reader, collector);
+        assertEquals(1, collector.firstCount);
+        assertEquals(1, collector.lastCount);
+        return collector;
+    }
+
+    @Test
+    public void keepsEveryEntryWithUsableId() throws Exception {
+        ContentLenientParser parser = new ContentLenientParser();
+        ContentStore store = parse(parser, new StringReader(MIXED)).builder.build();
+
+        assertEquals(5, store.size());
+        assertEquals(5, parser.getParsedCount());
+        assertEquals(8, parser.getSkippedCount());
+
+        assertEquals(12, store.getId(0));
+        assertEquals("Ledge \"Redux\" \u00e9\n", store.getTitle(0));
+        assertEquals("http://images.adrise.tv/a.jpg", store.getImgUrl(0));
+
+        assertEquals(-7, store.getId(1));
+        assertEquals("42", store.getTitle(1));
+        assertFalse(store.hasImgUrl(1));
+
+        assertEquals(13, store.getId(2));
+        assertEquals("No image", store.getTitle(2));
+        assertFalse(store.hasImgUrl(2));
+
+        assertEquals(14, store.getId(3));
+        assertEquals("", store.getTitle(3));
+        assertFalse(store.hasImgUrl(3));
+
+        assertEquals(15, store.getId(4));
+        assertEquals("Spaced", store.getTitle(4));
+        assertEquals("https://other.host/c.png", store.getImgUrl(4));
+    }
+
+    @Test
+    public void countsDefectsByType() throws Exception {
+        ContentLenientParser parser = new ContentLenientParser();
+        parse(parser, new StringReader(MIXED));
+
+        assertEquals(4, parser.getDefectCount(ContentLenientParser.Defect.NOT_AN_OBJECT));
+        assertEquals(1, parser.getDefectCount(ContentLenientParser.Defect.MISSING_ID));
+        assertEquals(3, parser.getDefectCount(ContentLenientParser.Defect.BAD_ID));
+        assertEquals(0, parser.getDefectCount(ContentLenientParser.Defect.MISSING_TITLE));
+        assertEquals(2, parser.getDefectCount(ContentLenientParser.Defect.MISSING_IMAGE));
+        assertEquals(1, parser.getDefectCount(ContentLenientParser.Defect.WRONG_TYPE));
+        assertEquals("NOT_AN_OBJECT=4 MISSING_ID=1 BAD_ID=3 MISSING_IMAGE=2 WRONG_TYPE=1",
+                parser.getDefectSummary());
+    }
+
+    @Test
+    public void bufferBoundariesDoNotChangeTheResult() throws Exception {
+        ContentStore whole = parse(new ContentLenientParser(), new StringReader(MIXED)).builder.build();
+        ContentStore trickled = parse(new ContentLenientParser(),
+                new TrickleReader(new StringReader(MIXED))).builder.build();
+
+        assertEquals(whole.size(), trickled.size());
+        for (int row = 0; row < whole.size(); row++) {
+            assertEquals(whole.getId(row), trickled.getId(row));
+            assertTrue(whole.sameContent(row, trickled, row));
+        }
+    }
+
+    @Test
+    public void validFeedIsDeliveredInChunks() throws Exception {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            sb.append(i == 0 ? "" : ",")
+                    .append("{\"title\":\"Title ").append(i).append(i % 7 == 0 ? " \\u00fc\\/" : "")
+                    .append("\",\"image\":\"http://images.adrise.tv/").append(i)
+                    .append(".jpg\",\"id\":\"").append(300000 + i).append("\"}");
+        }
+        String json = sb.append(']').toString();
+
+        Collector collector = parse(new ContentLenientParser(300), new StringReader(json));
+
+        assertEquals(Arrays.asList(300, 300, 300, 300, 300, 300, 200), collector.chunkSizes);
+        ContentStore store = collector.builder.build();
+        assertEquals(2000, store.size());
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(300000 + i, store.getId(i));
+            assertEquals("Title " + i + (i % 7 == 0 ? " \u00fc/" : ""), store.getTitle(i));
+            assertEquals("http://images.adrise.tv/" + i + ".jpg", store.getImgUrl(i));
+        }
+    }
+
+    @Test
+    public void emptyListStillSignalsFirstAndLast() throws Exception {
+        Collector collector = parse(new ContentLenientParser(), new StringReader(" [ ] "));
+        assertEquals(0, collector.builder.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedStreamFails() throws Exception {
+        new ContentLenientParser().parse(new StringReader("[{\"id\":\"1\",\"title\":\"Cut"), new Collector());
+    }
+
+    @Test(expected = IOException.class)
+    public void notAnArrayFails() throws Exception {
+        new ContentLenientParser().parse(new StringReader("{\"id\":\"1\"}"), new Collector());
+    }
+}
@@ -0,0 +1,204 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentListAssembler Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * The executors queue their tasks, so each test decides when a background diff runs and when
+ * its result is posted back.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentListAssemblerTest {
+
+    private static final class QueuedExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll()
+        {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+
+    /**
+     * Records the calls, and keeps the list shown the way the adapter does.
+     */
+    private static final class Recorder implements ContentListAssembler.Listener {
+        final List<String> calls = new ArrayList<>();
+        ContentStore shown = ContentStore.EMPTY;
+        ContentListDiff diff;
+        boolean diffWanted = true;
+
+        @Override
+        public void onListStarted(ContentStore list) {
+            shown = list;
+            calls.add("started " + list.size());
+        }
+
+        @Override
+        public void onRowsAppended(ContentStore list, int start, int count) {
+            shown = list;
+            calls.add("appended " + start + " " + count);
+        }
+
+        @Override
+        public void onListComplete(ContentStore list) {
+            shown = list;
+            calls.add("complete " + list.size());
+        }
+
+        @Override
+        public void onRefreshComplete(ContentStore list, ContentListDiff diff) {
+            shown = list;
+            this.diff = diff;
+            calls.add("refreshed " + list.size() + (diff != null ? " diff" : ""));
+        }
+
+        @Override
+        public boolean isDiffWanted() {
+            return diffWanted;
+        }
+    }
+
+    private final QueuedExecutor mDiff = new QueuedExecutor();
+    private final QueuedExecutor mMain = new QueuedExecutor();
+    private final Recorder mRecorder = new Recorder();
+    private final ContentListAssembler mAssembler = new ContentListAssembler(mRecorder, mDiff, mMain);
+
+    private static ContentStore list(int firstId, int count)
+    {
+        ContentStore.Builder builder = new ContentStore.Builder();
+        for (int i = 0; i < count; i++) {
+            builder.add(firstId + i, "Title " + (firstId + i), "http://images.adrise.tv/" + i + ".jpg");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Sends the list in chunks of the size, as the parser would.
+     */
+    private void send(ContentStore list, int chunkSize)
+    {
+        int start = 0;
+        do {
+            ContentStore.Builder chunk = new ContentStore.Builder();
+            int end = Math.min(list.size(), start + chunkSize);
+            for (int i = start; i < end; i++) {
+                chunk.add(list.getId(i), list.getTitle(i), list.getImgUrl(i));
+            }
+            mAssembler.onChunk(mRecorder.shown, chunk.build(), start == 0, end == list.size());
+            start = end;
+        } while (start < list.size());
+    }
+
+    @Test
+    public void listStreamsIntoEmptyList() {
+        send(list(1, 5), 2);
+
+        assertEquals("[started 2, appended 2 2, appended 4 1, complete 5]", mRecorder.calls.toString());
+        assertEquals(5, mRecorder.shown.size());
+        assertEquals(5, mRecorder.shown.getId(4));
+    }
+
+    @Test
+    public void shortRefreshIsDiffedInline() {
+        send(list(1, 5), 5);
+        mRecorder.calls.clear();
+
+        send(list(3, 5), 2);
+
+        assertEquals("[refreshed 5 diff]", mRecorder.calls.toString());
+        assertEquals(2, mRecorder.diff.getInsertedCount());
+        assertEquals(2, mRecorder.diff.getRemovedCount());
+        assertTrue(mDiff.tasks.isEmpty());
+    }
+
+    @Test
+    public void refreshStreamsWithIncrementalUpdatesOff() {
+        send(list(1, 5), 5);
+        mRecorder.calls.clear();
+        mAssembler.setIncrementalUpdates(false);
+
+        send(list(3, 5), 3);
+
+        assertEquals("[started 3, appended 3 2, complete 5]", mRecorder.calls.toString());
+    }
+
+    @Test
+    public void longRefreshIsDiffedOnDiffExecutor() {
+        int size = ContentListAssembler.BACKGROUND_DIFF_THRESHOLD;
+        send(list(1, size), size);
+        mRecorder.calls.clear();
+
+        send(list(2, size), 500);
+
+        // The list shown stays until the diff is done.
+        assertTrue(mRecorder.calls.isEmpty());
+        assertEquals(1, mRecorder.shown.getId(0));
+
+        mDiff.runAll();
+        assertTrue(mRecorder.calls.isEmpty());
+        mMain.runAll();
+
+        assertEquals("[refreshed " + size + " diff]", mRecorder.calls.toString());
+        assertEquals(1, mRecorder.diff.getInsertedCount());
+        assertEquals(1, mRecorder.diff.getRemovedCount());
+    }
+
+    @Test
+    public void staleDiffIsDropped() {
+        int size = ContentListAssembler.BACKGROUND_DIFF_THRESHOLD;
+        send(list(1, size), size);
+        send(list(2, size), size);
+        mRecorder.calls.clear();
+
+        mAssembler.reset();
+        mDiff.runAll();
+        mMain.runAll();
+
+        assertTrue(mRecorder.calls.isEmpty());
+        assertEquals(1, mRecorder.shown.getId(0));
+    }
+
+    @Test
+    public void noDiffWhenPositionsAreNotViewPositions() {
+        send(list(1, 5), 5);
+        mRecorder.calls.clear();
+        mRecorder.diffWanted = false;
+
+        send(list(3, 5), 5);
+        assertEquals("[refreshed 5]", mRecorder.calls.toString());
+
+        // Sorting while a long diff runs drops the diff but keeps the list.
+        int size = ContentListAssembler.BACKGROUND_DIFF_THRESHOLD;
+        send(list(1, size), size);
+        mRecorder.diffWanted = true;
+        send(list(2, size), size);
+        mRecorder.diffWanted = false;
+        mRecorder.calls.clear();
+        mDiff.runAll();
+        mMain.runAll();
+
+        assertEquals("[refreshed " + size + "]", mRecorder.calls.toString());
+        assertNull(mRecorder.diff);
+    }
+}
@@ -0,0 +1,210 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentListDiff Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Each test replays the reported operations on a mirror list of rows to check that the
+ * positions are right and that every changed row is reported.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentListDiffTest {
+
+    /**
+     * One row of a fixture list.
+     */
+    private static final class Item {
+        final int id;
+        String title;
+
+        Item(int id, String title) {
+            this.id = id;
+            this.title = title;
+        }
+    }
+
+    /**
+     * Replays operations on a mirror list of "id:title" rows.
+     */
+    private static class Mirror implements ContentListDiff.Callback {
+        final List<String> rows;
+        final List<String> incomingRows;
+        int changed;
+
+        Mirror(List<Item> current, List<Item> incoming) {
+            rows = rowsOf(current);
+            incomingRows = rowsOf(incoming);
+        }
+
+        @Override
+        public void onInserted(int position) {
+            rows.add(position, incomingRows.get(position));
+        }
+
+        @Override
+        public void onRemoved(int position) {
+            rows.remove(position);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            rows.add(toPosition, rows.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position) {
+            rows.set(position, incomingRows.get(position));
+            changed++;
+        }
+    }
+
+    private static Item item(int id, String title) {
+        return new Item(id, title);
+    }
+
+    private static List<Item> items(int... ids) {
+        List<Item> list = new ArrayList<>();
+        for (int id : ids) {
+            list.add(item(id, "Title " + id));
+        }
+        return list;
+    }
+
+    private static List<String> rowsOf(List<Item> list) {
+        List<String> rows = new ArrayList<>();
+        for (Item data : list) {
+            rows.add(data.id + ":" + data.title);
+        }
+        return rows;
+    }
+
+    private static ContentStore storeOf(List<Item> list) {
+        ContentStore.Builder builder = new ContentStore.Builder(list.size());
+        for (Item data : list) {
+            builder.add(data.id, data.title, "http://images.adrise.tv/" + data.id + ".jpg");
+        }
+        return builder.build();
+    }
+
+    private static ContentListDiff check(List<Item> current,
+                                         List<Item> incoming) {
+        Mirror mirror = new Mirror(current, incoming);
+        ContentListDiff diff = ContentListDiff.apply(storeOf(current), storeOf(incoming), mirror);
+
+        assertEquals(rowsOf(incoming), mirror.rows);
+        assertEquals(diff.getChangedCount(), mirror.changed);
+        return diff;
+    }
+
+    @Test
+    public void identicalListsProduceNoOperations() {
+        ContentListDiff diff = check(items(1, 2, 3), items(1, 2, 3));
+        assertEquals(0, diff.getOperationCount());
+    }
+
+    @Test
+    public void renamedItemIsReportedAsChanged() {
+        List<Item> incoming = items(3, 2, 4);
+        incoming.set(1, item(2, "Renamed"));
+
+        ContentListDiff diff = check(items(1, 2, 3), incoming);
+
+        assertEquals(1, diff.getChangedCount());
+        assertEquals(1, diff.getRemovedCount());
+        assertEquals(1, diff.getInsertedCount());
+    }
+
+    @Test
+    public void singleMoveIsOneOperation() {
+        List<Item> current = items(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        ContentListDiff diff = check(current, items(0, 2, 3, 4, 5, 6, 7, 8, 1, 9));
+
+        assertEquals(0, diff.getInsertedCount());
+        assertEquals(0, diff.getRemovedCount());
+        assertTrue(diff.getMovedCount() <= 2);
+    }
+
+    @Test
+    public void duplicateIdsAreHandled() {
+        check(items(1, 1, 2), items(2, 1, 1, 1));
+    }
+
+    @Test
+    public void computedOperationsAreReportedLater() {
+        List<Item> current = items(5, 1, 2, 3, 4);
+        List<Item> incoming = items(1, 2, 6, 3, 5);
+        ContentListDiff diff = ContentListDiff.compute(storeOf(current), storeOf(incoming));
+
+        Mirror mirror = new Mirror(current, incoming);
+        diff.dispatch(mirror);
+        assertEquals(rowsOf(incoming), mirror.rows);
+
+        // The operations are kept, so they can be reported again to another list.
+        Mirror again = new Mirror(current, incoming);
+        diff.dispatch(again);
+        assertEquals(rowsOf(incoming), again.rows);
+        assertEquals(1, diff.getInsertedCount());
+        assertEquals(1, diff.getRemovedCount());
+        assertEquals(1, diff.getMovedCount());
+    }
+
+    @Test
+    public void reversedListMovesEachItemAtMostTwice() {
+        int size = 100000;
+        ContentStore.Builder forward = new ContentStore.Builder(size);
+        ContentStore.Builder reversed = new ContentStore.Builder(size);
+        for (int i = 0; i < size; i++) {
+            forward.add(i, "Title " + i, "");
+            reversed.add(size - 1 - i, "Title " + (size - 1 - i), "");
+        }
+
+        ContentListDiff diff = ContentListDiff.compute(forward.build(), reversed.build());
+
+        assertEquals(0, diff.getInsertedCount());
+        assertEquals(0, diff.getRemovedCount());
+        assertEquals(0, diff.getChangedCount());
+        assertTrue(diff.getMovedCount() > 0);
+        assertTrue(diff.getMovedCount() <= 2 * size);
+    }
+
+    @Test
+    public void randomDeltasOnLargeList() {
+        Random random = new Random(42);
+        List<Item> current = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            current.add(item(i, "Title " + i));
+        }
+
+        for (int round = 0; round < 5; round++) {
+            List<Item> incoming = new ArrayList<>();
+            for (Item data : current) {
+                if (random.nextInt(100) != 0) {
+                    incoming.add(item(data.id, data.title));
+                }
+            }
+            for (int i = 0; i < 50; i++) {
+                incoming.add(random.nextInt(incoming.size()), item(20000 + round * 100 + i, "New"));
+            }
+            for (int i = 0; i < 20; i++) {
+                Collections.swap(incoming, random.nextInt(incoming.size()), random.nextInt(incoming.size()));
+            }
+            incoming.get(random.nextInt(incoming.size())).title = "Changed " + round;
+
+            ContentListDiff diff = check(current, incoming);
+            assertTrue(diff.getOperationCount() < incoming.size() / 10);
+            current = incoming;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentMerger Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentMergerTest {
+
+    private static ContentStore chunk(int... ids) {
+        ContentStore.Builder builder = new ContentStore.Builder(ids.length);
+        for (int id : ids) {
+            builder.add(id, "Title " + id, "http://images.adrise.tv/" + id + ".jpg");
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void chunkWithNewIdsIsPassedOnAsIs() {
+        ContentMerger merger = new ContentMerger();
+        ContentStore first = chunk(1, 2, 3);
+
+        assertSame(first, merger.add(first));
+        assertEquals(3, merger.size());
+        assertEquals(0, merger.getDuplicateCount());
+    }
+
+    @Test
+    public void firstRowWithAnIdIsKept() {
+        ContentMerger merger = new ContentMerger();
+        merger.add(chunk(1, 2, 3));
+
+        ContentStore.Builder builder = new ContentStore.Builder(4);
+        builder.add(2, "Other title", "http://images.adrise.tv/other.jpg")
+                .add(4, "Title 4", "http://images.adrise.tv/4.jpg")
+                .add(4, "Title 4 again", "")
+                .add(5, "Title 5", "http://images.adrise.tv/5.jpg");
+        ContentStore merged = merger.add(builder.build());
+
+        assertEquals(2, merged.size());
+        assertEquals(4, merged.getId(0));
+        assertEquals("Title 4", merged.getTitle(0));
+        assertEquals("http://images.adrise.tv/4.jpg", merged.getImgUrl(0));
+        assertEquals(5, merged.getId(1));
+        assertEquals(5, merger.size());
+        assertEquals(2, merger.getDuplicateCount());
+    }
+
+    @Test
+    public void extremeIdsAreTracked() {
+        ContentMerger merger = new ContentMerger();
+        merger.add(chunk(0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE));
+
+        assertEquals(0, merger.add(chunk(Integer.MAX_VALUE, 0, Integer.MIN_VALUE, -1)).size());
+        assertEquals(4, merger.size());
+        assertEquals(4, merger.getDuplicateCount());
+    }
+
+    @Test
+    public void manyIdsMatchASet() {
+        ContentMerger merger = new ContentMerger();
+        Set<Integer> offered = new HashSet<>();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(7);
+        int kept = 0;
+
+        for (int c = 0; c < 200; c++) {
+            int[] ids = new int[500];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = 300000 + random.nextInt(80000);
+                offered.add(ids[i]);
+            }
+
+            ContentStore merged = merger.add(chunk(ids));
+            for (int row = 0; row < merged.size(); row++) {
+                assertTrue(expected.add(merged.getId(row)));
+            }
+            kept += merged.size();
+        }
+
+        assertEquals(offered, expected);
+        assertEquals(expected.size(), kept);
+        assertEquals(expected.size(), merger.size());
+        assertEquals(200 * 500 - kept, merger.getDuplicateCount());
+    }
+}
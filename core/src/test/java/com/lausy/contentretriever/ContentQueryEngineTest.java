@@ -0,0 +1,141 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentQueryEngine Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentQueryEngineTest {
+
+    private static ContentStore sample() {
+        return new ContentStore.Builder()
+                .add(369854, "Joe", "")
+                .add(302437, "Man On A Ledge", "")
+                .add(307852, "The Hunted", "")
+                .add(334155, "Igor", "")
+                .add(348457, "The Town That Dreaded Sundown", "")
+                .add(376177, "Wild Card", "")
+                .add(348935, "Frozen", "")
+                .add(348949, "The Possession", "")
+                .build();
+    }
+
+    private static ContentQueryEngine.Query query(String text, ContentQueryEngine.FilterType type,
+                                                  ContentQueryEngine.SortKey key) {
+        return new ContentQueryEngine.Query(text, type, key);
+    }
+
+    @Test
+    public void emptyQuerySortsById() {
+        ContentQueryEngine engine = new ContentQueryEngine(sample());
+
+        int[] rows = engine.run(query("", ContentQueryEngine.FilterType.SUBSTRING, ContentQueryEngine.SortKey.ID), null);
+
+        assertArrayEquals(new int[] {1, 2, 3, 4, 6, 7, 0, 5}, rows);
+    }
+
+    @Test
+    public void emptyQuerySortsByTitleIgnoringCase() {
+        ContentStore rows = new ContentStore.Builder().add(1, "beta", "").add(2, "Alpha", "").add(3, "alpha", "").build();
+        ContentQueryEngine engine = new ContentQueryEngine(rows);
+
+        int[] result = engine.run(query("", ContentQueryEngine.FilterType.SUBSTRING, ContentQueryEngine.SortKey.TITLE), null);
+
+        assertArrayEquals(new int[] {1, 2, 0}, result);
+    }
+
+    @Test
+    public void prefixFilterIsCaseInsensitive() {
+        ContentQueryEngine engine = new ContentQueryEngine(sample());
+
+        int[] byTitle = engine.run(query("THE ", ContentQueryEngine.FilterType.PREFIX, ContentQueryEngine.SortKey.TITLE), null);
+        int[] byId = engine.run(query("the ", ContentQueryEngine.FilterType.PREFIX, ContentQueryEngine.SortKey.ID), null);
+        int[] unsorted = engine.run(query("the ", ContentQueryEngine.FilterType.PREFIX, ContentQueryEngine.SortKey.NONE), null);
+
+        assertArrayEquals(new int[] {2, 7, 4}, byTitle);
+        assertArrayEquals(new int[] {2, 4, 7}, byId);
+        assertArrayEquals(new int[] {2, 4, 7}, unsorted);
+    }
+
+    @Test
+    public void substringFilterMatchesAnywhere() {
+        ContentQueryEngine engine = new ContentQueryEngine(sample());
+
+        int[] rows = engine.run(query("on", ContentQueryEngine.FilterType.SUBSTRING, ContentQueryEngine.SortKey.NONE), null);
+
+        assertArrayEquals(new int[] {1, 7}, rows);
+    }
+
+    @Test
+    public void refinedQueryMatchesFreshQuery() {
+        Random random = new Random(3);
+        String letters = "abcde ";
+        ContentStore.Builder builder = new ContentStore.Builder(5000);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int j = 0; j < 12; j++) {
+                title.append(letters.charAt(random.nextInt(letters.length())));
+            }
+            builder.add(random.nextInt(), title.toString(), "");
+        }
+        ContentStore rows = builder.build();
+
+        ContentQueryEngine typing = new ContentQueryEngine(rows);
+        String typed = "";
+        for (char c : "ab c".toCharArray()) {
+            typed += c;
+            for (ContentQueryEngine.SortKey key : ContentQueryEngine.SortKey.values()) {
+                ContentQueryEngine.Query q = query(typed, ContentQueryEngine.FilterType.SUBSTRING, key);
+                int[] fresh = new ContentQueryEngine(rows).run(q, null);
+                assertArrayEquals(typed + " " + key, fresh, typing.run(q, null));
+            }
+        }
+    }
+
+    @Test
+    public void cancelledQueryReturnsNull() {
+        ContentQueryEngine engine = new ContentQueryEngine(sample());
+
+        int[] rows = engine.run(query("o", ContentQueryEngine.FilterType.SUBSTRING, ContentQueryEngine.SortKey.NONE),
+                new ContentQueryEngine.Cancellation() {
+                    @Override
+                    public boolean isCancelled() {
+                        return true;
+                    }
+                });
+
+        assertNull(rows);
+    }
+
+    @Test
+    public void keystrokesOnLargeListMatchFreshQueries() {
+        Random random = new Random(11);
+        ContentStore.Builder builder = new ContentStore.Builder(100000);
+        for (int i = 0; i < 100000; i++) {
+            builder.add(i, "Title " + Integer.toString(random.nextInt(1 << 30), 36), "");
+        }
+
+        ContentStore store = builder.build();
+        ContentQueryEngine engine = new ContentQueryEngine(store);
+        engine.run(query("", ContentQueryEngine.FilterType.PREFIX, ContentQueryEngine.SortKey.TITLE), null);
+
+        // Time per keystroke is measured by ContentKeystrokeBenchmark.
+        String typed = "title a";
+        for (ContentQueryEngine.FilterType type : ContentQueryEngine.FilterType.values()) {
+            for (int i = 1; i <= typed.length(); i++) {
+                ContentQueryEngine.Query keystroke = query(typed.substring(0, i), type,
+                        ContentQueryEngine.SortKey.TITLE);
+                assertArrayEquals(new ContentQueryEngine(store).run(keystroke, null), engine.run(keystroke, null));
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.lausy.contentretriever;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentSnapshotFile Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Writes and reloads a 100k row snapshot, and checks that damaged files are rejected.  The
+ * write and read times are measured by ContentStoreBenchmark.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentSnapshotFileTest {
+    private static final int ROWS = 100000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static ContentStore catalogue(int rows) {
+        ContentStore.Builder builder = new ContentStore.Builder(rows);
+        for (int i = 0; i < rows; i++) {
+            String url = i % 10 == 0
+                    ? "https://cdn.example.com/" + i + ".png"
+                    : "http://images.adrise.tv/" + Integer.toString(i * 7919, 36) + "/214x306.jpg";
+            builder.add(300000 + i, "Title " + i + (i % 1000 == 0 ? " \u00e9t\u00e9" : ""), url);
+        }
+        return builder.build();
+    }
+
+    private ContentSnapshotFile snapshot() throws IOException {
+        return new ContentSnapshotFile(new File(mFolder.getRoot(), ContentSnapshotFile.FILE_NAME));
+    }
+
+    @Test
+    public void writeAndReloadLargeSnapshot() throws IOException {
+        ContentStore store = catalogue(ROWS);
+        ContentSnapshotFile file = snapshot();
+
+        file.write(store);
+        assertEquals(ContentSnapshotFile.HEADER_SIZE + store.getSerializedSize(), file.getFile().length());
+
+        ContentStore loaded = file.read();
+        assertEquals(ROWS, loaded.size());
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(store.getId(i), loaded.getId(i));
+            assertTrue("row " + i, store.sameContent(i, loaded, i));
+        }
+        assertEquals(store.getImgUrl(10), loaded.getImgUrl(10));
+        assertEquals(store.getTitle(1000), loaded.getTitle(1000));
+    }
+
+    @Test
+    public void emptyStoreRoundTrips() throws IOException {
+        ContentSnapshotFile file = snapshot();
+        file.write(ContentStore.EMPTY);
+
+        assertEquals(0, file.read().size());
+    }
+
+    @Test
+    public void rewriteReplacesSnapshot() throws IOException {
+        ContentSnapshotFile file = snapshot();
+        file.write(catalogue(100));
+        file.write(catalogue(10));
+
+        assertEquals(10, file.read().size());
+        assertFalse(new File(file.getFile().getPath() + ".tmp").exists());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void missingSnapshotIsReported() throws IOException {
+        snapshot().read();
+    }
+
+    @Test
+    public void truncatedSnapshotIsRejected() throws IOException {
+        ContentSnapshotFile file = snapshot();
+        file.write(catalogue(1000));
+        long length = file.getFile().length();
+
+        for (long cut : new long[] {0, 7, 20, length / 2, length - 1}) {
+            file.write(catalogue(1000));
+            RandomAccessFile raf = new RandomAccessFile(file.getFile(), "rw");
+            raf.setLength(cut);
+            raf.close();
+
+            try {
+                file.read();
+                fail("read a snapshot cut to " + cut + " bytes");
+            } catch (IOException expected) {
+                // Rejected.
+            }
+        }
+    }
+
+    @Test
+    public void corruptSnapshotIsRejected() throws IOException {
+        ContentSnapshotFile file = snapshot();
+        file.write(catalogue(1000));
+        long length = file.getFile().length();
+
+        for (long offset : new long[] {0, 5, 12, 30, length / 2, length - 1}) {
+            file.write(catalogue(1000));
+            RandomAccessFile raf = new RandomAccessFile(file.getFile(), "rw");
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0x5a);
+            raf.close();
+
+            try {
+                file.read();
+                fail("read a snapshot with byte " + offset + " changed");
+            } catch (IOException expected) {
+                // Rejected.
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentSortIndex Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentSortIndexTest {
+
+    @Test
+    public void sortsAscending() {
+        int[] ids = {369854, 302437, 307852, 334155};
+        int[] order = ContentSortIndex.ascendingOrder(ids);
+
+        assertArrayEquals(new int[] {1, 2, 3, 0}, order);
+    }
+
+    @Test
+    public void extremeIdsDoNotOverflow() {
+        int[] ids = {Integer.MAX_VALUE, Integer.MIN_VALUE, 0, -1, 1};
+        int[] order = ContentSortIndex.ascendingOrder(ids);
+
+        assertArrayEquals(new int[] {1, 3, 2, 4, 0}, order);
+    }
+
+    @Test
+    public void equalIdsKeepRowOrder() {
+        int[] ids = {5, 3, 5, 3, 5};
+        int[] order = ContentSortIndex.ascendingOrder(ids);
+
+        assertArrayEquals(new int[] {1, 3, 0, 2, 4}, order);
+    }
+
+    @Test
+    public void equalTitlesKeepRowOrder() {
+        String[] titles = {"joe", "igor", "joe", "frozen", "igor", "joe"};
+        int[] order = ContentSortIndex.titleOrder(titles);
+
+        assertArrayEquals(new int[] {3, 1, 4, 0, 2, 5}, order);
+    }
+
+    @Test
+    public void largeRandomTitleListIsOrdered() {
+        Random random = new Random(9);
+        String[] titles = new String[100000];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = Integer.toString(random.nextInt(5000), 36);
+        }
+
+        int[] order = ContentSortIndex.titleOrder(titles);
+
+        boolean[] seen = new boolean[titles.length];
+        for (int i = 0; i < order.length; i++) {
+            assertFalse(seen[order[i]]);
+            seen[order[i]] = true;
+            if (i > 0) {
+                int c = titles[order[i - 1]].compareTo(titles[order[i]]);
+                assertTrue(c < 0 || (c == 0 && order[i - 1] < order[i]));
+            }
+        }
+    }
+
+    @Test
+    public void largeRandomListIsOrdered() {
+        Random random = new Random(7);
+        int[] ids = new int[100000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextInt();
+        }
+
+        int[] order = ContentSortIndex.ascendingOrder(ids);
+
+        boolean[] seen = new boolean[ids.length];
+        for (int i = 0; i < order.length; i++) {
+            assertFalse(seen[order[i]]);
+            seen[order[i]] = true;
+            if (i > 0) {
+                assertTrue(ids[order[i - 1]] <= ids[order[i]]);
+            }
+        }
+    }
+}
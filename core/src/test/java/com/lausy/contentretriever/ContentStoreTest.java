@@ -0,0 +1,161 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentStore Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Checks that rows read back as they were added, and compares the heap used per row with a
+ * list of one object per row, each with its own title and URL Strings, the way the adapter held
+ * the rows before.  On a desktop JVM with compact strings the
+ * store takes about half the heap of the list.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentStoreTest {
+    private static final int ROWS = 100000;
+
+    /**
+     * One row as an object, the layout the store replaced.
+     */
+    private static final class ObjectRow {
+        final int id;
+        final String title;
+        final String imgUrl;
+
+        ObjectRow(int id, String title, String imgUrl) {
+            this.id = id;
+            this.title = title;
+            this.imgUrl = imgUrl;
+        }
+    }
+
+    private static String title(int i) {
+        return "The Town That Dreaded Sundown " + i;
+    }
+
+    private static String url(int i) {
+        return "http://images.adrise.tv/" + Integer.toString(i * 7919, 36) + "/214x306.jpg";
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void rowsReadBackAsAdded() {
+        ContentStore.Builder builder = new ContentStore.Builder(2);
+        builder.add(369854, "Joe", "http://images.adrise.tv/a.jpg")
+                .add(-1, "", "no-host.jpg")
+                .add(302437, "Man On A Ledge", "https://cdn.example.com/b/c.jpg")
+                .add(7, null, null)
+                .add(8, "Caf\u00e9", "http://images.adrise.tv/caf\u00e9.jpg");
+        ContentStore store = builder.build();
+
+        assertEquals(5, store.size());
+        assertEquals("http://images.adrise.tv/caf\u00e9.jpg", store.getImgUrl(4));
+        assertEquals(369854, store.getId(0));
+        assertEquals("Joe", store.getTitle(0));
+        assertEquals("http://images.adrise.tv/a.jpg", store.getImgUrl(0));
+        assertEquals("no-host.jpg", store.getImgUrl(1));
+        assertEquals("https://cdn.example.com/b/c.jpg", store.getImgUrl(2));
+        assertTrue(store.hasImgUrl(1));
+        assertFalse(store.hasImgUrl(3));
+        assertEquals("", store.getTitle(3));
+        assertEquals("", store.getImgUrl(3));
+
+        ContentStore.Row row = new ContentStore.Row().moveTo(store, 2);
+        assertEquals("Man On A Ledge",
+                new String(row.getTitleBuffer(), row.getTitleStart(), row.getTitleLength()));
+    }
+
+    @Test
+    public void imgUrlComparesWithoutBuildingIt() {
+        ContentStore.Builder builder = new ContentStore.Builder(2);
+        builder.add(1, "Joe", "http://images.adrise.tv/a.jpg")
+                .add(2, "Caf\u00e9", "http://images.adrise.tv/caf\u00e9.jpg")
+                .add(3, "None", null);
+        ContentStore store = builder.build();
+
+        assertTrue(store.imgUrlEquals(0, "http://images.adrise.tv/a.jpg"));
+        assertFalse(store.imgUrlEquals(0, "http://images.adrise.tv/a.jp"));
+        assertFalse(store.imgUrlEquals(0, "http://images.adrise.tv/a.jpgx"));
+        assertFalse(store.imgUrlEquals(0, "http://images.adrise.tv/b.jpg"));
+        assertFalse(store.imgUrlEquals(0, "https://images.adrise.tv/a.jpg"));
+        assertFalse(store.imgUrlEquals(0, null));
+        assertTrue(store.imgUrlEquals(1, "http://images.adrise.tv/caf\u00e9.jpg"));
+        assertFalse(store.imgUrlEquals(1, "http://images.adrise.tv/cafe.jpg"));
+        assertTrue(store.imgUrlEquals(2, ""));
+        assertFalse(store.imgUrlEquals(2, "http://images.adrise.tv/a.jpg"));
+    }
+
+    @Test
+    public void snapshotIsNotChangedByLaterRows() {
+        ContentStore.Builder builder = new ContentStore.Builder(1);
+        builder.add(1, "One", "http://images.adrise.tv/1.jpg");
+        ContentStore snapshot = builder.build();
+
+        for (int i = 2; i < 1000; i++) {
+            builder.add(i, title(i), url(i));
+        }
+
+        assertEquals(1, snapshot.size());
+        assertEquals("One", snapshot.getTitle(0));
+        assertEquals(999, builder.build().size());
+    }
+
+    @Test
+    public void copiedRowsMatchAcrossStores() {
+        ContentStore.Builder a = new ContentStore.Builder();
+        for (int i = 0; i < 100; i++) {
+            a.add(i, title(i), url(i));
+        }
+        ContentStore source = a.build();
+        ContentStore copy = new ContentStore.Builder().addAll(source).build();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(source.getId(i), copy.getId(i));
+            assertEquals(url(i), copy.getImgUrl(i));
+            assertTrue(source.sameContent(i, copy, i));
+        }
+        assertFalse(source.sameContent(0, copy, 1));
+    }
+
+    @Test
+    public void storeUsesLessHeapPerRowThanObjectList() {
+        long before = usedHeap();
+        List<ObjectRow> list = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            list.add(new ObjectRow(i, title(i), url(i)));
+        }
+        long listBytes = usedHeap() - before;
+        assertEquals(ROWS, list.size());
+        list = null;
+
+        before = usedHeap();
+        ContentStore.Builder builder = new ContentStore.Builder(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            builder.add(i, title(i), url(i));
+        }
+        ContentStore store = builder.build().trimmed();
+        builder = null;
+        long storeBytes = usedHeap() - before;
+        assertEquals(ROWS, store.size());
+
+        assertTrue("store " + storeBytes + " bytes, list " + listBytes + " bytes", storeBytes * 3 < listBytes * 2);
+        assertTrue("arrays " + store.getRetainedBytes() + " bytes, list " + listBytes + " bytes",
+                store.getRetainedBytes() * 3 < listBytes * 2);
+    }
+}
@@ -0,0 +1,110 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentStringPool Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentStringPoolTest {
+
+    private static ContentStore sample() {
+        return new ContentStore.Builder()
+                .add(1, "Man On A Ledge", "http://images.adrise.tv/a.jpg")
+                .add(2, "The Hunted", "http://images.adrise.tv/b.jpg")
+                .add(3, "Man On A Ledge", "http://images.adrise.tv/a.jpg")
+                .add(4, "Caf\u00c9 Night", "http://images.adrise.tv/caf\u00e9.jpg")
+                .add(5, "", "")
+                .build();
+    }
+
+    @Test
+    public void equalTitlesShareOneInstance() {
+        ContentStore store = sample();
+        ContentStringPool pool = new ContentStringPool(100);
+
+        String first = pool.getTitle(store, 0);
+        assertEquals("Man On A Ledge", first);
+        assertSame(first, pool.getTitle(store, 2));
+        assertSame(first, pool.intern(new String("Man On A Ledge")));
+        assertEquals("The Hunted", pool.getTitle(store, 1));
+
+        assertEquals(2, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+        assertEquals(2 * (ContentStringPool.STRING_OVERHEAD_BYTES + 2 * 14), pool.getSavedBytes());
+        assertEquals(0.5, pool.getHitRate(), 0);
+    }
+
+    @Test
+    public void lowerTitlesMatchToLowerCase() {
+        ContentStore store = sample();
+        ContentStringPool pool = new ContentStringPool(100);
+
+        for (int row = 0; row < store.size(); row++) {
+            assertEquals(store.getTitle(row).toLowerCase(Locale.ROOT), pool.getLowerTitle(store, row));
+        }
+        assertSame(pool.getLowerTitle(store, 0), pool.getLowerTitle(store, 2));
+        assertSame(pool.getLowerTitle(store, 3), pool.getLowerTitle(store, 3));
+    }
+
+    @Test
+    public void urlsAreLookedUpWithoutBuildingThem() {
+        ContentStore store = sample();
+        ContentStringPool pool = new ContentStringPool(100);
+
+        for (int row = 0; row < store.size(); row++) {
+            assertEquals(store.getImgUrl(row), pool.getImgUrl(store, row));
+        }
+        assertSame(pool.getImgUrl(store, 0), pool.getImgUrl(store, 2));
+        assertSame(pool.getImgUrl(store, 3), pool.getImgUrl(store, 3));
+
+        // A URL pooled from a String is found from the columns, so the hashes agree.
+        ContentStringPool other = new ContentStringPool(100);
+        String url = other.intern(new String("http://images.adrise.tv/b.jpg"));
+        assertSame(url, other.getImgUrl(store, 1));
+    }
+
+    @Test
+    public void stringsSurviveOneGenerationWithoutUse() {
+        ContentStore store = sample();
+        ContentStringPool pool = new ContentStringPool(100);
+
+        String ledge = pool.getTitle(store, 0);
+        String hunted = pool.getTitle(store, 1);
+        pool.nextGeneration();
+        assertSame(ledge, pool.getTitle(store, 0));
+        pool.nextGeneration();
+
+        assertEquals(1, pool.size());
+        assertSame(ledge, pool.getTitle(store, 0));
+        assertNotSame(hunted, pool.getTitle(store, 1));
+    }
+
+    @Test
+    public void poolNeverHoldsMoreThanItsMaximum() {
+        ContentStringPool pool = new ContentStringPool(50);
+
+        for (int i = 0; i < 1000; i++) {
+            pool.intern(Integer.toString(i));
+            assertTrue(pool.size() <= 50);
+        }
+
+        // Once full, older generations make room for the current one.
+        pool.nextGeneration();
+        for (int i = 1000; i < 1020; i++) {
+            pool.intern(Integer.toString(i));
+        }
+        assertEquals(20, pool.size());
+        String kept = pool.intern(new String("1000"));
+        assertEquals(1, pool.getHitCount());
+        assertEquals("1000", kept);
+    }
+}
@@ -0,0 +1,163 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>ContentWireFormat Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Also checks that the binary format is smaller than JSON on the wire, with and without gzip.
+ * Decode times are measured by ContentParseBenchmark.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class ContentWireFormatTest {
+    @Test
+    public void roundTripKeepsEveryRow() throws Exception {
+        ContentStore store = new ContentStore.Builder()
+                .add(369854, "Joe", "http://images.adrise.tv/JkC/214x306/img.jpg")
+                .add(-7, "Café 漢字", "http://images.adrise.tv/café.png")
+                .add(0, "", "")
+                .add(Integer.MAX_VALUE, "No image", null)
+                .add(Integer.MIN_VALUE, "Other host", "https://cdn.example.com/a.jpg")
+                .build();
+
+        ContentStore decoded = decode(encode(store), 2);
+
+        assertEquals(store.size(), decoded.size());
+        for (int row = 0; row < store.size(); row++) {
+            assertEquals(store.getId(row), decoded.getId(row));
+            assertEquals(store.getTitle(row), decoded.getTitle(row));
+            assertEquals(store.getImgUrl(row), decoded.getImgUrl(row));
+        }
+    }
+
+    @Test
+    public void chunksMatchJsonParser() throws Exception {
+        final int[] chunks = new int[2];
+        byte[] bytes = encode(feed(1234));
+
+        int count = new ContentBinaryParser(500).parse(new ByteArrayInputStream(bytes),
+                new ContentChunkListener() {
+                    @Override
+                    public void onChunk(ContentStore chunk, boolean first, boolean last) {
+                        assertEquals(chunks[0] == 0, first);
+                        chunks[0]++;
+                        if (last) {
+                            chunks[1] = chunk.size();
+                        }
+                    }
+                });
+
+        assertEquals(1234, count);
+        assertEquals(3, chunks[0]);
+        assertEquals(234, chunks[1]);
+    }
+
+    @Test
+    public void emptyList() throws Exception {
+        assertEquals(0, decode(encode(ContentStore.EMPTY), 10).size());
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedListFails() throws Exception {
+        byte[] bytes = encode(feed(100));
+        decode(Arrays.copyOf(bytes, bytes.length - 3), 10);
+    }
+
+    @Test(expected = IOException.class)
+    public void jsonIsNotMistakenForBinary() throws Exception {
+        decode("[{\"id\":\"1\"}]".getBytes(StandardCharsets.UTF_8), 10);
+    }
+
+    @Test(expected = IOException.class)
+    public void badPrefixIndexFails() throws Exception {
+        byte[] bytes = encode(new ContentStore.Builder().add(1, "a", "http://h/x").build());
+        // magic, prefix count 2, "" and "http://h/", item count, id, title "a", then the index.
+        int index = 4 + 1 + 1 + 1 + "http://h/".length() + 1 + 1 + 2;
+        assertEquals(1, bytes[index]);
+        bytes[index] = 9;
+        decode(bytes, 10);
+    }
+
+    @Test
+    public void binaryIsSmallerThanJson() throws Exception {
+        for (int items : new int[] { 10000, 100000 }) {
+            ContentStore store = feed(items);
+            byte[] json = json(store).getBytes(StandardCharsets.UTF_8);
+            byte[] binary = encode(store);
+
+            assertTrue(binary.length + " vs " + json.length, binary.length * 4 < json.length * 3);
+            assertTrue(gzip(binary).length < gzip(json).length);
+            assertEquals(items, decode(binary, 1000).size());
+        }
+    }
+
+    private static ContentStore feed(int items)
+    {
+        ContentStore.Builder builder = new ContentStore.Builder(items);
+        for (int i = 0; i < items; i++) {
+            // Like the real feed, every URL has its own signature and image name after the host.
+            long h = i * 0x9E3779B97F4A7C15L;
+            builder.add(300000 + i, "Movie title number " + i,
+                    String.format(Locale.US, "http://images.adrise.tv/%016x%011x=/214x306/smart/img.adrise.tv/%08x-%04x-%012x.jpg",
+                            h, h >>> 20, (int) (h >>> 32), i & 0xffff, h & 0xffffffffffffL));
+        }
+        return builder.build();
+    }
+
+    private static String json(ContentStore store)
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int row = 0; row < store.size(); row++) {
+            sb.append(row == 0 ? "" : ",")
+                    .append("{\"title\":\"").append(store.getTitle(row))
+                    .append("\",\"image\":\"").append(store.getImgUrl(row))
+                    .append("\",\"id\":\"").append(store.getId(row)).append("\"}");
+        }
+        return sb.append("]").toString();
+    }
+
+    private static byte[] encode(ContentStore store) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ContentWireFormat.write(store, out);
+        return out.toByteArray();
+    }
+
+    private static ContentStore decode(byte[] bytes, int chunkSize) throws IOException
+    {
+        final ContentStore.Builder all = new ContentStore.Builder();
+
+        new ContentBinaryParser(chunkSize).parse(new ByteArrayInputStream(bytes),
+                new ContentChunkListener() {
+                    @Override
+                    public void onChunk(ContentStore chunk, boolean first, boolean last) {
+                        all.addAll(chunk);
+                    }
+                });
+        return all.build();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,86 @@
+package com.lausy.contentretriever;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.util.Random;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h1>RetryPolicy Unit Tests</h1>
+ *
+ * Copyright 2018:  Rick Lau
+ *
+ * Retries of real requests are tested through SingleFlightRequest in the app module.
+ *
+ * @author Rick Lau
+ * @version 1.0
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void backoffDoublesUpToMaximum() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0, 5000);
+        Random random = new Random(1);
+
+        assertEquals(100, policy.delayMillis(1, -1, random));
+        assertEquals(200, policy.delayMillis(2, -1, random));
+        assertEquals(400, policy.delayMillis(3, -1, random));
+        assertEquals(800, policy.delayMillis(4, -1, random));
+        assertEquals(1000, policy.delayMillis(5, -1, random));
+        assertEquals(1000, policy.delayMillis(60, -1, random));
+    }
+
+    @Test
+    public void jitterStaysWithinBounds() {
+        RetryPolicy policy = new RetryPolicy(4, 1000, 8000, 0.5, 5000);
+        Random random = new Random(42);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.delayMillis(2, -1, random);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+
+        assertTrue(min >= 1000);
+        assertTrue(max <= 2000);
+        assertTrue("delays should spread out", max - min > 500);
+    }
+
+    @Test
+    public void retryAfterIsHonouredUpToLimit() {
+        RetryPolicy policy = new RetryPolicy(4, 100, 1000, 0, 5000);
+        Random random = new Random(1);
+
+        assertEquals(3000, policy.delayMillis(1, 3000, random));
+        assertEquals(200, policy.delayMillis(2, 50, random));
+        assertEquals(-1, policy.delayMillis(1, 6000, random));
+
+        assertEquals(7000, RetryPolicy.parseRetryAfter("7", 0));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon", 0));
+        assertEquals(-1, RetryPolicy.parseRetryAfter(null, 0));
+        // Thu, 01 Jan 1970 00:00:10 GMT is ten seconds after the epoch.
+        assertEquals(4000, RetryPolicy.parseRetryAfter("Thu, 01 Jan 1970 00:00:10 GMT", 6000));
+    }
+
+    @Test
+    public void onlyTransientFailuresOfIdempotentRequestsAreRetried() {
+        assertTrue(RetryPolicy.isTransient(503));
+        assertTrue(RetryPolicy.isTransient(429));
+        assertFalse(RetryPolicy.isTransient(404));
+        assertFalse(RetryPolicy.isTransient(501));
+
+        assertTrue(RetryPolicy.isTransient(new InterruptedIOException("timeout")));
+        assertTrue(RetryPolicy.isTransient(new ConnectException()));
+        assertFalse(RetryPolicy.isTransient(new SSLHandshakeException("bad certificate")));
+
+        assertTrue(RetryPolicy.isIdempotent("GET"));
+        assertFalse(RetryPolicy.isIdempotent("POST"));
+    }
+}